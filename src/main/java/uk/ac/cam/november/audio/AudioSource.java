@@ -0,0 +1,24 @@
+package uk.ac.cam.november.audio;
+
+/**
+ * A source of continuous sound, rendered block by block on the
+ * {@link ToneSynthesizer} render thread.
+ * <p>
+ * Implementations are called in real time, so {@link #render} must not
+ * allocate, block or take locks.
+ */
+public interface AudioSource {
+
+    /**
+     * Adds the next block of sound to the given buffers.
+     *
+     * @param left
+     *            Left channel samples, to be added to.
+     * @param right
+     *            Right channel samples, to be added to.
+     * @param frames
+     *            Number of frames in the block.
+     */
+    public void render(float[] left, float[] right, int frames);
+
+}
@@ -0,0 +1,116 @@
+package uk.ac.cam.november.audio;
+
+import uk.ac.cam.november.decoder.AlertMessage;
+
+/**
+ * Short, distinct tones played through the {@link ToneSynthesizer} as soon as
+ * an alert is raised, ahead of the spoken explanation.
+ * <p>
+ * The pitch identifies the sensor and the rhythm identifies the alert type:
+ * <ul>
+ * <li>CriticalChange: two rising notes</li>
+ * <li>CriticalMax: three quick high pulses</li>
+ * <li>CriticalMin: three falling notes</li>
+ * <li>TimeOut: one long low note</li>
+ * <li>Arrival: a rising chime</li>
+ * <li>Departure: a falling chime</li>
+ * <li>ShallowAhead: four quick low pulses</li>
+ * <li>WaypointReached: two long rising notes</li>
+ * <li>OffTrack: two notes alternating twice</li>
+ * <li>RouteComplete: a rising chime ending on the octave</li>
+ * </ul>
+ * All earcons are rendered once, when the class is loaded.
+ */
+public class Earcons {
+
+    /** Base pitch (Hz) for each sensor, indexed as in {@link AlertMessage} */
+    private static final float[] SENSOR_PITCH = { 440f, 554f, 659f, 784f, 880f, 988f };
+
+    private static final int ALERT_TYPES = 10;
+
+    /** Attack and release time of each note, to avoid clicks (seconds) */
+    private static final float RAMP_TIME = 0.005f;
+
+    private static final float VOLUME = 0.5f;
+
+    private static final float[][][] earcons = new float[ALERT_TYPES][SENSOR_PITCH.length][];
+
+    static {
+        for (int sensor = 0; sensor < SENSOR_PITCH.length; sensor++) {
+            float f = SENSOR_PITCH[sensor];
+            /* CriticalChange */
+            earcons[0][sensor] = notes(new float[] { f, f * 1.5f }, 0.07f, 0.01f);
+            /* CriticalMax */
+            earcons[1][sensor] = notes(new float[] { f * 2, f * 2, f * 2 }, 0.05f, 0.03f);
+            /* CriticalMin */
+            earcons[2][sensor] = notes(new float[] { f, f * 0.75f, f * 0.5f }, 0.07f, 0.01f);
+            /* TimeOut */
+            earcons[3][sensor] = notes(new float[] { f * 0.5f }, 0.25f, 0f);
+            /* Arrival */
+            earcons[4][sensor] = notes(new float[] { f, f * 1.25f, f * 1.5f }, 0.1f, 0.02f);
+            /* Departure */
+            earcons[5][sensor] = notes(new float[] { f * 1.5f, f * 1.25f, f }, 0.1f, 0.02f);
+            /* ShallowAhead */
+            earcons[6][sensor] = notes(new float[] { f * 0.5f, f * 0.5f, f * 0.5f, f * 0.5f }, 0.04f, 0.04f);
+            /* WaypointReached */
+            earcons[7][sensor] = notes(new float[] { f, f * 1.5f }, 0.15f, 0.02f);
+            /* OffTrack */
+            earcons[8][sensor] = notes(new float[] { f, f * 1.2f, f, f * 1.2f }, 0.06f, 0.01f);
+            /* RouteComplete */
+            earcons[9][sensor] = notes(new float[] { f, f * 1.25f, f * 1.5f, f * 2 }, 0.1f, 0.02f);
+        }
+    }
+
+    // Prevents instantiation
+    private Earcons() {}
+
+    /**
+     * Plays the earcon for an alert. Returns immediately.
+     *
+     * @param alert The alert which has just been raised.
+     */
+    public static void play(AlertMessage alert) {
+        float[] earcon = get(alert.getAlertType(), alert.getSensor());
+        if (earcon != null) {
+            ToneSynthesizer.play(earcon);
+        }
+    }
+
+    /**
+     * Returns the samples of the earcon for an alert type and sensor, or
+     * {@code null} if there is no earcon for them.
+     */
+    static float[] get(int alertType, int sensor) {
+        if (alertType < 0 || alertType >= ALERT_TYPES || sensor < 0 || sensor >= SENSOR_PITCH.length) {
+            return null;
+        }
+        return earcons[alertType][sensor];
+    }
+
+    /**
+     * Renders a sequence of equal-length sine notes separated by gaps.
+     */
+    private static float[] notes(float[] pitches, float noteTime, float gapTime) {
+        int noteFrames = (int) (noteTime * ToneSynthesizer.SAMPLE_RATE);
+        int gapFrames = (int) (gapTime * ToneSynthesizer.SAMPLE_RATE);
+        int rampFrames = (int) (RAMP_TIME * ToneSynthesizer.SAMPLE_RATE);
+
+        float[] samples = new float[pitches.length * (noteFrames + gapFrames)];
+        int pos = 0;
+        for (float pitch : pitches) {
+            double step = 2 * Math.PI * pitch / ToneSynthesizer.SAMPLE_RATE;
+            for (int i = 0; i < noteFrames; i++) {
+                float envelope = 1f;
+                if (i < rampFrames) {
+                    envelope = (float) i / rampFrames;
+                } else if (i > noteFrames - rampFrames) {
+                    envelope = (float) (noteFrames - i) / rampFrames;
+                }
+                samples[pos + i] = (float) Math.sin(step * i) * envelope * VOLUME;
+            }
+            pos += noteFrames + gapFrames;
+        }
+        return samples;
+    }
+
+}
@@ -0,0 +1,231 @@
+package uk.ac.cam.november.audio;
+
+import uk.ac.cam.november.decoder.BoatState;
+
+/**
+ * Continuous sonification of the boat state, so that a helmsman can steer
+ * without pressing buttons. Each channel can be switched on separately:
+ * <ul>
+ * <li>Heading: a tone whose pitch rises with the error from the target
+ * heading, panned towards the side to steer to. Close to the target the
+ * tone is quiet and centred.</li>
+ * <li>Depth: clicks, repeating faster as the water gets shallower.</li>
+ * <li>Wind: a low tone whose pitch rises as the apparent wind moves from the
+ * bow to the stern, panned to the side the wind comes from.</li>
+ * </ul>
+ * The sonifier is an {@link AudioSource} for the {@link ToneSynthesizer}.
+ * Once per block it reads a snapshot of the decoder's {@link BoatState},
+ * whose fields are volatile, so no locks are taken and nothing is allocated
+ * on the render thread.
+ */
+public class Sonifier implements AudioSource {
+
+    public static final String HEADING = "heading";
+    public static final String DEPTH = "depth";
+    public static final String WIND = "wind";
+
+    private static final float SAMPLE_RATE = ToneSynthesizer.SAMPLE_RATE;
+
+    private static final int SINE_TABLE_SIZE = 4096;
+    private static final float[] SINE = new float[SINE_TABLE_SIZE];
+
+    static {
+        for (int i = 0; i < SINE_TABLE_SIZE; i++) {
+            SINE[i] = (float) Math.sin(2 * Math.PI * i / SINE_TABLE_SIZE);
+        }
+    }
+
+    /** Heading error (degrees) at which the tone is fully panned */
+    private static final float FULL_PAN_ERROR = 45f;
+    /** Heading error (degrees) considered on course */
+    private static final float ON_COURSE_ERROR = 2f;
+    private static final float HEADING_BASE_PITCH = 330f;
+    private static final float HEADING_PITCH_PER_DEGREE = 8f;
+    private static final float HEADING_MAX_PITCH = 1100f;
+
+    /** Depth clicks per second are this divided by depth (meters) */
+    private static final float CLICK_RATE_DEPTH = 60f;
+    private static final float MIN_CLICK_RATE = 0.5f;
+    private static final float MAX_CLICK_RATE = 15f;
+    private static final float CLICK_PITCH = 2000f;
+    private static final int CLICK_FRAMES = (int) (0.004f * SAMPLE_RATE);
+
+    private static final float WIND_BASE_PITCH = 180f;
+    private static final float WIND_PITCH_RANGE = 240f;
+
+    private static final float VOLUME = 0.25f;
+    /** Smoothing applied to parameters each block, to avoid zipper noise */
+    private static final float SMOOTHING = 0.2f;
+
+    private final BoatState state;
+
+    private volatile boolean headingEnabled = false;
+    private volatile boolean depthEnabled = false;
+    private volatile boolean windEnabled = false;
+    private volatile float targetHeading = 0f;
+
+    /* Render state, only touched by the render thread */
+    private float headingPhase;
+    private float headingPitch = HEADING_BASE_PITCH;
+    private float headingPan;
+    private float headingGain;
+    private float clickPhase;
+    private float windPhase;
+    private float windPitch = WIND_BASE_PITCH;
+    private float windPan;
+
+    public Sonifier(BoatState state) {
+        this.state = state;
+    }
+
+    /**
+     * Switches on exactly the channels named in a comma-separated list, e.g.
+     * {@code "heading,depth"}. Unknown names are ignored.
+     */
+    public void setChannels(String channels) {
+        boolean heading = false;
+        boolean depth = false;
+        boolean wind = false;
+        for (String c : channels.split(",")) {
+            c = c.trim();
+            if (c.equalsIgnoreCase(HEADING)) {
+                heading = true;
+            } else if (c.equalsIgnoreCase(DEPTH)) {
+                depth = true;
+            } else if (c.equalsIgnoreCase(WIND)) {
+                wind = true;
+            }
+        }
+        headingEnabled = heading;
+        depthEnabled = depth;
+        windEnabled = wind;
+    }
+
+    public void setHeadingEnabled(boolean enabled) {
+        headingEnabled = enabled;
+    }
+
+    public boolean isHeadingEnabled() {
+        return headingEnabled;
+    }
+
+    public void setDepthEnabled(boolean enabled) {
+        depthEnabled = enabled;
+    }
+
+    public void setWindEnabled(boolean enabled) {
+        windEnabled = enabled;
+    }
+
+    /**
+     * Sets the heading to steer to.
+     *
+     * @param heading Compass heading in degrees.
+     */
+    public void setTargetHeading(float heading) {
+        targetHeading = heading;
+    }
+
+    public float getTargetHeading() {
+        return targetHeading;
+    }
+
+    @Override
+    public void render(float[] left, float[] right, int frames) {
+        if (headingEnabled) {
+            renderHeading(left, right, frames);
+        }
+        if (depthEnabled) {
+            renderDepth(left, right, frames);
+        }
+        if (windEnabled) {
+            renderWind(left, right, frames);
+        }
+    }
+
+    private void renderHeading(float[] left, float[] right, int frames) {
+        float error = state.getHeading() - targetHeading;
+        while (error > 180f) {
+            error -= 360f;
+        }
+        while (error < -180f) {
+            error += 360f;
+        }
+        float absError = Math.abs(error);
+
+        float pitch = Math.min(HEADING_BASE_PITCH + absError * HEADING_PITCH_PER_DEGREE, HEADING_MAX_PITCH);
+        // positive error means the boat is right of the target, so steer left
+        float pan = clamp(-error / FULL_PAN_ERROR, -1f, 1f);
+        float gain = absError < ON_COURSE_ERROR ? 0.3f : 1f;
+
+        headingPitch += (pitch - headingPitch) * SMOOTHING;
+        headingPan += (pan - headingPan) * SMOOTHING;
+        headingGain += (gain - headingGain) * SMOOTHING;
+
+        float step = headingPitch * SINE_TABLE_SIZE / SAMPLE_RATE;
+        float l = VOLUME * headingGain * (1f - headingPan) * 0.5f;
+        float r = VOLUME * headingGain * (1f + headingPan) * 0.5f;
+        for (int i = 0; i < frames; i++) {
+            float v = SINE[(int) headingPhase];
+            left[i] += v * l;
+            right[i] += v * r;
+            headingPhase += step;
+            if (headingPhase >= SINE_TABLE_SIZE) {
+                headingPhase -= SINE_TABLE_SIZE;
+            }
+        }
+    }
+
+    private void renderDepth(float[] left, float[] right, int frames) {
+        float depth = Math.max(state.getDepth(), 0.1f);
+        float rate = clamp(CLICK_RATE_DEPTH / depth, MIN_CLICK_RATE, MAX_CLICK_RATE);
+
+        // clickPhase counts frames since the last click started
+        float period = SAMPLE_RATE / rate;
+        float step = CLICK_PITCH * SINE_TABLE_SIZE / SAMPLE_RATE;
+        for (int i = 0; i < frames; i++) {
+            if (clickPhase >= period) {
+                clickPhase = 0f;
+            }
+            if (clickPhase < CLICK_FRAMES) {
+                float envelope = 1f - clickPhase / CLICK_FRAMES;
+                float v = SINE[(int) (clickPhase * step) % SINE_TABLE_SIZE] * envelope * VOLUME;
+                left[i] += v;
+                right[i] += v;
+            }
+            clickPhase += 1f;
+        }
+    }
+
+    private void renderWind(float[] left, float[] right, int frames) {
+        float angle = state.getWindAngle();
+        // 0 at the bow, 180 at the stern, on either side
+        float offBow = angle > 180f ? 360f - angle : angle;
+        float pitch = WIND_BASE_PITCH + (offBow / 180f) * WIND_PITCH_RANGE;
+        float pan = angle > 180f ? -0.6f : 0.6f;
+        if (offBow < 5f || offBow > 175f) {
+            pan = 0f;
+        }
+
+        windPitch += (pitch - windPitch) * SMOOTHING;
+        windPan += (pan - windPan) * SMOOTHING;
+
+        float step = windPitch * SINE_TABLE_SIZE / SAMPLE_RATE;
+        float l = VOLUME * 0.6f * (1f - windPan) * 0.5f;
+        float r = VOLUME * 0.6f * (1f + windPan) * 0.5f;
+        for (int i = 0; i < frames; i++) {
+            float v = SINE[(int) windPhase];
+            left[i] += v * l;
+            right[i] += v * r;
+            windPhase += step;
+            if (windPhase >= SINE_TABLE_SIZE) {
+                windPhase -= SINE_TABLE_SIZE;
+            }
+        }
+    }
+
+    private static float clamp(float v, float min, float max) {
+        return v < min ? min : (v > max ? max : v);
+    }
+
+}
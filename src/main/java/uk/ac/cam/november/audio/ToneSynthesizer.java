@@ -0,0 +1,168 @@
+package uk.ac.cam.november.audio;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A small real-time synthesizer built on Java Sound, used for sounds which
+ * must be heard immediately rather than after speech synthesis.
+ * <p>
+ * Once started, it keeps a low-latency output line open and a render thread
+ * writes short blocks to it continuously (silence when there is nothing to
+ * play), so a new sound is audible within one line buffer, about 20ms.
+ * Sounds are pre-rendered mono sample arrays; playing one replaces whatever
+ * sound is currently playing. A continuous {@link AudioSource} can also be
+ * set, which is mixed underneath the sounds.
+ */
+public class ToneSynthesizer {
+
+    public static final float SAMPLE_RATE = 44100f;
+
+    /** Frames rendered per block; 256 frames is about 6ms */
+    static final int BLOCK_FRAMES = 256;
+    /** Size of the output line buffer, in blocks */
+    private static final int LINE_BUFFER_BLOCKS = 3;
+
+    private static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+
+    private static volatile SourceDataLine line = null;
+
+    /** Sound waiting to be picked up by the render thread; only set while running */
+    static final AtomicReference<float[]> pendingSound = new AtomicReference<float[]>();
+
+    /** Continuous sound mixed under the pre-rendered sounds, or null */
+    private static volatile AudioSource continuousSource = null;
+
+    // Prevents instantiation
+    private ToneSynthesizer() {}
+
+    /**
+     * Opens the output line and starts the render thread. Does nothing if the
+     * synthesizer is already running.
+     *
+     * @return whether the synthesizer is running.
+     */
+    public static synchronized boolean start() {
+        if (line != null) {
+            return true;
+        }
+        try {
+            SourceDataLine l = AudioSystem.getSourceDataLine(FORMAT);
+            l.open(FORMAT, BLOCK_FRAMES * LINE_BUFFER_BLOCKS * FORMAT.getFrameSize());
+            l.start();
+            line = l;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            System.err.println("[Error in ToneSynthesizer]");
+            System.err.println(" -- no audio output line available: " + e.getMessage());
+            return false;
+        }
+
+        Thread renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                render();
+            }
+        }, "Tone-Synthesizer");
+        renderThread.setDaemon(true);
+        renderThread.setPriority(Thread.MAX_PRIORITY);
+        renderThread.start();
+        return true;
+    }
+
+    /**
+     * Returns whether the synthesizer has an open output line.
+     */
+    public static synchronized boolean isRunning() {
+        return line != null;
+    }
+
+    /**
+     * Plays a pre-rendered sound, replacing any sound currently playing.
+     * Returns immediately; does nothing if the synthesizer is not running, so
+     * a sound played before {@link #start()} is dropped rather than heard late.
+     *
+     * @param samples Mono samples in the range -1 to 1, at {@link #SAMPLE_RATE}.
+     */
+    public static void play(float[] samples) {
+        if (line == null) {
+            return;
+        }
+        pendingSound.set(samples);
+    }
+
+    /**
+     * Sets the continuous source of sound, replacing any previous one.
+     *
+     * @param source The source to render, or {@code null} for none.
+     */
+    public static void setContinuousSource(AudioSource source) {
+        continuousSource = source;
+    }
+
+    /**
+     * The render loop. Nothing in the loop allocates; writing each block
+     * blocks until the line has room, which paces the loop.
+     */
+    private static void render() {
+        final float[] left = new float[BLOCK_FRAMES];
+        final float[] right = new float[BLOCK_FRAMES];
+        final byte[] out = new byte[BLOCK_FRAMES * FORMAT.getFrameSize()];
+
+        float[] sound = null;
+        int soundPos = 0;
+
+        while (true) {
+            float[] next = pendingSound.getAndSet(null);
+            if (next != null) {
+                sound = next;
+                soundPos = 0;
+            }
+
+            for (int i = 0; i < BLOCK_FRAMES; i++) {
+                left[i] = 0f;
+                right[i] = 0f;
+            }
+
+            AudioSource source = continuousSource;
+            if (source != null) {
+                source.render(left, right, BLOCK_FRAMES);
+            }
+
+            for (int i = 0; i < BLOCK_FRAMES; i++) {
+                float v = 0f;
+                if (sound != null && soundPos < sound.length) {
+                    v = sound[soundPos++];
+                }
+                left[i] += v;
+                right[i] += v;
+            }
+            if (sound != null && soundPos >= sound.length) {
+                sound = null;
+            }
+
+            for (int i = 0, j = 0; i < BLOCK_FRAMES; i++) {
+                short l = toSample(left[i]);
+                short r = toSample(right[i]);
+                out[j++] = (byte) l;
+                out[j++] = (byte) (l >> 8);
+                out[j++] = (byte) r;
+                out[j++] = (byte) (r >> 8);
+            }
+            line.write(out, 0, out.length);
+        }
+    }
+
+    private static short toSample(float v) {
+        if (v > 1f) {
+            v = 1f;
+        } else if (v < -1f) {
+            v = -1f;
+        }
+        return (short) (v * Short.MAX_VALUE);
+    }
+
+}
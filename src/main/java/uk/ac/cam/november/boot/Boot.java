@@ -1,12 +1,40 @@
 package uk.ac.cam.november.boot;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import uk.ac.cam.november.audio.Sonifier;
+import uk.ac.cam.november.audio.ToneSynthesizer;
+import uk.ac.cam.november.buttons.ButtonDispatcher;
+import uk.ac.cam.november.buttons.ButtonInput;
 import uk.ac.cam.november.buttons.ButtonsListener;
+import uk.ac.cam.november.buttons.KeyboardButtonInput;
+import uk.ac.cam.november.buttons.ScriptedButtonInput;
+import uk.ac.cam.november.buttons.SocketButtonInput;
+import uk.ac.cam.november.buttons.StdinButtonInput;
 import uk.ac.cam.november.decoder.AlertHandler;
+import uk.ac.cam.november.decoder.AlertMessage;
 import uk.ac.cam.november.decoder.MessageDecoder;
 import uk.ac.cam.november.input.CanBoatFacade;
+import uk.ac.cam.november.location.Route;
 import uk.ac.cam.november.logging.LogConfig;
 import uk.ac.cam.november.messages.MessageFormatter;
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.FleetSimulator;
+import uk.ac.cam.november.simulation.InputScript;
 import uk.ac.cam.november.simulation.Simulator;
+import uk.ac.cam.november.simulation.SimulatorChart;
+import uk.ac.cam.november.simulation.SteppedClock;
+import uk.ac.cam.november.simulation.network.QueuePacketSink;
 import uk.ac.cam.november.simulation.network.SimulatorServer;
 
 /**
@@ -21,10 +49,138 @@ class Boot {
 
     public static final int A_LOT_OF_TIME = 1000000000;
 
+    /** Packets a headless simulation may get ahead of the decoder by */
+    private static final int HEADLESS_QUEUE_CAPACITY = 300;
+
     private static boolean suppliedCoordinatesCorrect(final float latitude, final float longtitude) {
         return (latitude >= -89.0 && latitude <= 89.0 && longtitude >= -179.0 && longtitude <= 179.0);
     }
 
+    /**
+     * Creates the button input named by the {@code sbs.buttons} property:
+     * {@code gpio} (the default), {@code keyboard}, {@code stdin} or
+     * {@code socket}. Falls back to standard input if the GPIO buttons cannot
+     * be used, e.g. when not running on a Raspberry Pi.
+     */
+    private static ButtonInput createButtonInput(final String name) {
+        if (name.equalsIgnoreCase("keyboard")) {
+            return new KeyboardButtonInput();
+        } else if (name.equalsIgnoreCase("stdin")) {
+            return new StdinButtonInput();
+        } else if (name.equalsIgnoreCase("socket")) {
+            return new SocketButtonInput();
+        }
+        try {
+            return new ButtonsListener();
+        } catch (UnsatisfiedLinkError e) {
+            return gpioFallback();
+        }
+    }
+
+    /**
+     * Returns the button input used when the Pi4J library cannot be loaded,
+     * either when the GPIO buttons are created or when they are started.
+     */
+    private static ButtonInput gpioFallback() {
+        System.err.println("Failed to load Pi4J library.");
+        System.err.println("Most likely you're not on a RaspberryPi; reading buttons from standard input.");
+        return new StdinButtonInput();
+    }
+
+    /**
+     * Follows a route, if there is one in route.json (or -Dsbs.route=<file>).
+     */
+    private static void loadRoute(final MessageDecoder messageDec) throws Exception {
+        final File routeFile = new File(System.getProperty("sbs.route", "route.json"));
+        if (routeFile.exists()) {
+            try (Reader in = new InputStreamReader(new FileInputStream(routeFile), StandardCharsets.UTF_8)) {
+                messageDec.setRoute(Route.load(in));
+                System.out.println("Following route from " + routeFile);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring route in " + routeFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs a scripted scenario on a headless simulator, as fast as the decoder
+     * can take the packets, and prints the alerts it raises instead of
+     * speaking them. Exits once the scenario is over.
+     */
+    private static void runHeadless(final File scriptFile, final float latitude, final float longtitude)
+            throws Exception {
+        final InputScript script;
+        try (Reader in = new InputStreamReader(new FileInputStream(scriptFile), StandardCharsets.UTF_8)) {
+            script = InputScript.parse(in);
+        }
+        runScenario(script, latitude, longtitude, Long.getLong("sbs.seed", Simulator.DEFAULT_SEED), System.out);
+        System.exit(0);
+    }
+
+    /**
+     * Runs a scenario on a headless simulator against an in-process decoder,
+     * printing each alert, then a summary, once every packet has been decoded
+     * and every alert printed. Alerts are timed by the simulated clock, so
+     * they depend only on the script, the start position and the seed, and
+     * not on how fast the host is.
+     *
+     * @return The number of simulation steps taken.
+     */
+    static long runScenario(final InputScript script, final float latitude, final float longtitude,
+                            final long seed, final PrintStream out) throws Exception {
+        final LinkedBlockingQueue<Packet> packets = new LinkedBlockingQueue<Packet>(HEADLESS_QUEUE_CAPACITY);
+        final MessageDecoder messageDec = new MessageDecoder(packets);
+        messageDec.setChart(new SimulatorChart());
+        messageDec.setPacketTime(true);
+        loadRoute(messageDec);
+
+        Thread decoderThread = new Thread(messageDec, "Message-Decoder");
+        decoderThread.setDaemon(true);
+        decoderThread.start();
+
+        final Queue<AlertMessage> alerts = messageDec.getAlertMessageQueue();
+        final AtomicBoolean decoded = new AtomicBoolean(false);
+        Thread alertThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    AlertMessage alert = alerts.poll();
+                    if (alert == null) {
+                        if (decoded.get()) {
+                            return;
+                        }
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        continue;
+                    }
+                    out.println(MessageFormatter.formatAlerts(Collections.singletonList(alert)));
+                }
+            }
+        }, "Alert-Printer");
+        alertThread.setDaemon(true);
+        alertThread.start();
+
+        final QueuePacketSink sink = new QueuePacketSink(packets);
+        final Simulator sim = new Simulator(sink, new SteppedClock(Simulator.HEADLESS_START_TIME), seed,
+                latitude, longtitude);
+        final long start = System.nanoTime();
+        final long steps = sim.runHeadless(script);
+        // the decoder raises a packet's alerts before counting it, so once
+        // every packet is counted the printer only has to empty the queue
+        while (messageDec.getPacketsDecoded() < sink.getSent()) {
+            Thread.sleep(1);
+        }
+        decoded.set(true);
+        alertThread.join();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        out.println(String.format("Simulated %.0f s in %.2f s (%.0fx real time): %d steps, %d packets",
+                script.getDuration(), seconds, script.getDuration() / seconds, steps, sink.getSent()));
+        return steps;
+    }
+
     public static void main(final String[] args) throws Exception {
 
         /** If one thread crashes, the whole JVM will shut down */
@@ -37,11 +193,49 @@ class Boot {
         });
 
         boolean runSimServer = false;
+        ScriptedButtonInput latencyHarness = null;
 
         if (args.length > 0) {
-            if (args[0].equalsIgnoreCase("simulator")) {
+            if (args[0].equalsIgnoreCase("latency")) {
+                /** Measure press to speech latency with scripted presses and exit */
+                final int presses = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+                latencyHarness = new ScriptedButtonInput(presses, 50L, 200L);
+            } else if (args[0].equalsIgnoreCase("simulator")) {
                 if (args.length > 1) {
-                    if (args[1].equalsIgnoreCase("client")) {
+                    if (args[1].equalsIgnoreCase("headless")) {
+                        if (args.length == 3 || args.length == 5) {
+                            final boolean coordinatesSupplied = args.length == 5;
+                            final float latitude = coordinatesSupplied ? Float.parseFloat(args[3]) : 0;
+                            final float longtitude = coordinatesSupplied ? Float.parseFloat(args[4]) : 0;
+                            if (suppliedCoordinatesCorrect(latitude, longtitude)) {
+                                /** Run the scenario against an in-process decoder and exit */
+                                runHeadless(new File(args[2]), latitude, longtitude);
+                                return;
+                            } else {
+                                System.err.println(
+                                        "Coordinates out of range: (-90.0, 90.0) for latitude, (-180.0, 180.0) for longtitude");
+                                System.exit(1);
+                            }
+                        } else {
+                            System.err.println("Usage: sbs simulator headless <script> [latitude] [longitude]");
+                            System.exit(1);
+                        }
+                    } else if (args[1].equalsIgnoreCase("fleet")) {
+                        if (args.length >= 4 && args.length <= 5) {
+                            /** Load-test a server with many boats until killed */
+                            final int boats = Integer.parseInt(args[3]);
+                            final double speedup = args.length == 5 ? Double.parseDouble(args[4]) : 1.0;
+                            final boolean perBoat = System.getProperty("sbs.fleetConnections", "shared")
+                                    .equalsIgnoreCase("per-boat");
+                            FleetSimulator fleet = new FleetSimulator(args[2], boats, perBoat,
+                                    Long.getLong("sbs.seed", Simulator.DEFAULT_SEED), 0, 0);
+                            fleet.run(speedup);
+                            return;
+                        } else {
+                            System.err.println("Usage: sbs simulator fleet <server_address> <boats> [speedup]");
+                            System.exit(1);
+                        }
+                    } else if (args[1].equalsIgnoreCase("client")) {
                         if (args.length == 3 || args.length == 5) {
                             // If latitude and longtitude arguments have been
                             // supplied,
@@ -67,14 +261,19 @@ class Boot {
                             System.exit(1);
                         }
                     } else {
-                        System.err.println("Usage: sbs simulator [client <server_address> [latitude] [longitude]]");
+                        System.err.println("Usage: sbs simulator [client <server_address> [latitude] [longitude]"
+                                + " | headless <script> [latitude] [longitude]"
+                                + " | fleet <server_address> <boats> [speedup]]");
                         System.exit(1);
                     }
                 } else {
                     runSimServer = true;
                 }
             } else {
-                System.err.println("Usage: sbs [simulator [client <server_address> [latitude] [longitude]]]");
+                System.err.println(
+                        "Usage: sbs [simulator [client <server_address> | headless <script>] [latitude] [longitude]"
+                                + " | simulator fleet <server_address> <boats> [speedup]"
+                                + " | latency [presses]]");
                 System.exit(1);
             }
         }
@@ -82,26 +281,51 @@ class Boot {
         LogConfig.setup();
         ScriptCreator.writeScripts();
 
-        /** Listens to buttons */
+        /** Keeps an audio line open so alert earcons play immediately */
+        ToneSynthesizer.start();
+
+        /** Listens to buttons; presses are queued until the dispatcher is started */
+        ButtonDispatcher buttonDispatcher = new ButtonDispatcher();
+        ButtonInput buttonInput = latencyHarness != null ? latencyHarness
+                : createButtonInput(System.getProperty("sbs.buttons", "gpio"));
         try {
-            new ButtonsListener();
+            buttonInput.start(buttonDispatcher);
         } catch (UnsatisfiedLinkError e) {
-            System.err.println("Failed to load Pi4J library.");
-            System.err.println("Most likely you're not on a RaspberryPi.");
-            return;
+            gpioFallback().start(buttonDispatcher);
         }
         MessageDecoder messageDec = null;
 
         /** Initializes a Simulator Server and a MessageDecoder */
-        if (runSimServer) {
+        if (latencyHarness != null) {
+            /** No sensor data is needed to measure the button path */
+            messageDec = new MessageDecoder(new ConcurrentLinkedQueue<Packet>());
+        } else if (runSimServer) {
             SimulatorServer sim = new SimulatorServer();
             messageDec = new MessageDecoder(sim.getMessageQueue());
+            /** The simulated boat sails on a known chart, so look ahead for shallow water */
+            messageDec.setChart(new SimulatorChart());
         } else {
             CanBoatFacade canboat = new CanBoatFacade(CanBoatFacade.MOCKBOAT_OPTION);
             messageDec = new MessageDecoder(canboat.getPacketQueue());
         }
         MessageFormatter.setDecoder(messageDec);
 
+        loadRoute(messageDec);
+
+        /** Continuous sonification, with the channels chosen by -Dsbs.sonify=heading,depth,wind */
+        Sonifier sonifier = new Sonifier(messageDec.getState());
+        sonifier.setChannels(System.getProperty("sbs.sonify", ""));
+        ToneSynthesizer.setContinuousSource(sonifier);
+        MessageFormatter.setSonifier(sonifier);
+
+        /** Starts handling button presses */
+        buttonDispatcher.start();
+
+        if (latencyHarness != null) {
+            System.out.println(latencyHarness.awaitReport());
+            System.exit(0);
+        }
+
         /** Starts running the Message Decoder */
         Thread decoderThread = new Thread(messageDec, "Message-Decoder");
         decoderThread.start();
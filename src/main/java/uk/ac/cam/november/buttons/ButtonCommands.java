@@ -0,0 +1,77 @@
+package uk.ac.cam.november.buttons;
+
+/**
+ * The text commands understood by the stand-in button inputs.
+ * <p>
+ * A button is named either by its key or by its name in {@link ButtonNames}.
+ * A line with just the button taps it; a line with the button followed by
+ * {@code down} or {@code up} presses or releases it, so that long presses and
+ * chords can be made as well, e.g. {@code h down}, then {@code h up} a few
+ * seconds later.
+ */
+final class ButtonCommands {
+
+    /** Keys for the buttons, in the same order as {@link #BUTTONS} */
+    static final String KEYS = "hdswbpx";
+    static final String[] BUTTONS = { ButtonNames.COMPASS_HEADING, ButtonNames.WATER_DEPTH,
+            ButtonNames.WIND_SPEED, ButtonNames.WIND_DIRECTION, ButtonNames.BOAT_SPEED,
+            ButtonNames.NEAREST_PORT, ButtonNames.SHUT_DOWN };
+
+    static final String USAGE = "Buttons: h heading, d depth, s wind speed, w wind direction, "
+            + "b boat speed, p nearest port, x shut down. Add 'down' or 'up' to hold a button.";
+
+    // Prevents instantiation
+    private ButtonCommands() {}
+
+    /**
+     * Returns the button bound to a key, or {@code null} if there is none.
+     */
+    static String buttonForKey(char key) {
+        int i = KEYS.indexOf(Character.toLowerCase(key));
+        return i < 0 ? null : BUTTONS[i];
+    }
+
+    /**
+     * Returns the button named by a key or button name, or {@code null} if
+     * there is none.
+     */
+    static String buttonFor(String token) {
+        if (token.length() == 1) {
+            return buttonForKey(token.charAt(0));
+        }
+        for (String button : BUTTONS) {
+            if (button.equalsIgnoreCase(token)) {
+                return button;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Carries out one command line.
+     *
+     * @return {@code false} if the line was not understood.
+     */
+    static boolean apply(String line, ButtonDispatcher dispatcher) {
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens.length == 0 || tokens.length > 2) {
+            return false;
+        }
+        String button = buttonFor(tokens[0]);
+        if (button == null) {
+            return false;
+        }
+        if (tokens.length == 1) {
+            dispatcher.buttonPressed(button);
+            dispatcher.buttonReleased(button);
+        } else if (tokens[1].equalsIgnoreCase("down")) {
+            dispatcher.buttonPressed(button);
+        } else if (tokens[1].equalsIgnoreCase("up")) {
+            dispatcher.buttonReleased(button);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,106 @@
+package uk.ac.cam.november.buttons;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.cam.november.messages.MessageFormatter;
+
+/**
+ * Receives button presses and releases from input callbacks and handles them
+ * on its own thread.
+ * <p>
+ * {@link #buttonPressed} and {@link #buttonReleased} only timestamp the event
+ * and put it on a queue, so they return within microseconds and never block
+ * the caller. The dispatcher thread feeds the events to a
+ * {@link ButtonGestureDetector} and passes the resulting gestures to the
+ * {@link MessageFormatter}, which may block while speech is stopped or
+ * started without holding up further button events.
+ */
+public class ButtonDispatcher implements GestureListener {
+
+    private final LinkedBlockingQueue<ButtonEdge> edges = new LinkedBlockingQueue<ButtonEdge>();
+    private final ButtonGestureDetector detector = new ButtonGestureDetector(this);
+
+    /**
+     * Starts the dispatcher thread.
+     */
+    public void start() {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "Button-Dispatcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Reports that a button went down. Safe to call from any thread.
+     */
+    public void buttonPressed(String buttonName) {
+        edges.add(new ButtonEdge(buttonName, true, System.nanoTime()));
+    }
+
+    /**
+     * Reports that a button went up. Safe to call from any thread.
+     */
+    public void buttonReleased(String buttonName) {
+        edges.add(new ButtonEdge(buttonName, false, System.nanoTime()));
+    }
+
+    private void dispatch() {
+        while (true) {
+            try {
+                long deadline = detector.nextDeadline();
+                ButtonEdge edge;
+                if (deadline == Long.MAX_VALUE) {
+                    edge = edges.take();
+                } else {
+                    edge = edges.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+
+                if (edge == null) {
+                    detector.poll(System.nanoTime());
+                } else if (edge.pressed) {
+                    detector.pressed(edge.buttonName, edge.time);
+                } else {
+                    detector.released(edge.buttonName, edge.time);
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void onPress(String buttonName) {
+        System.out.println(buttonName + " button has just been pressed.");
+        MessageFormatter.handleButtonPress(buttonName);
+    }
+
+    @Override
+    public void onLongPress(String buttonName) {
+        System.out.println(buttonName + " button has just been held down.");
+        MessageFormatter.handleLongPress(buttonName);
+    }
+
+    @Override
+    public void onChord(String firstButton, String secondButton) {
+        System.out.println(firstButton + " and " + secondButton + " buttons have just been pressed together.");
+        MessageFormatter.handleChord(firstButton, secondButton);
+    }
+
+    private static class ButtonEdge {
+        final String buttonName;
+        final boolean pressed;
+        final long time;
+
+        ButtonEdge(String buttonName, boolean pressed, long time) {
+            this.buttonName = buttonName;
+            this.pressed = pressed;
+            this.time = time;
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package uk.ac.cam.november.buttons;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns debounced button presses and releases into gestures: short presses,
+ * long presses and two-button chords.
+ * <ul>
+ * <li>A short press is reported when the button is released.</li>
+ * <li>A long press is reported as soon as the button has been held for
+ * {@link #LONG_PRESS_TIME}, without waiting for the release.</li>
+ * <li>A chord is reported when a second button goes down while the first is
+ * held. Neither button then reports a press or long press.</li>
+ * </ul>
+ * The detector does no timing of its own; callers pass in timestamps and call
+ * {@link #poll(long)} by the time returned from {@link #nextDeadline()}. This
+ * class is not thread-safe and is meant to be driven from one thread.
+ */
+public class ButtonGestureDetector {
+
+    /** Time a button must be held to count as a long press (nanoseconds) */
+    public static final long LONG_PRESS_TIME = 1000000000L;  // 1 second
+
+    private final GestureListener listener;
+
+    /** Buttons currently held down, in the order they were pressed */
+    private final List<HeldButton> held = new ArrayList<HeldButton>();
+
+    public ButtonGestureDetector(GestureListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Reports that a button went down.
+     *
+     * @param buttonName The name of the button.
+     * @param time {@link System#nanoTime()} at which it went down.
+     */
+    public void pressed(String buttonName, long time) {
+        if (find(buttonName) != null) {
+            return;
+        }
+        HeldButton button = new HeldButton(buttonName, time);
+        for (HeldButton other : held) {
+            if (!other.consumed) {
+                other.consumed = true;
+                button.consumed = true;
+                listener.onChord(other.name, buttonName);
+                break;
+            }
+        }
+        held.add(button);
+    }
+
+    /**
+     * Reports that a button went up.
+     *
+     * @param buttonName The name of the button.
+     * @param time {@link System#nanoTime()} at which it went up.
+     */
+    public void released(String buttonName, long time) {
+        poll(time);
+        HeldButton button = find(buttonName);
+        if (button == null) {
+            return;
+        }
+        held.remove(button);
+        if (!button.consumed) {
+            listener.onPress(buttonName);
+        }
+    }
+
+    /**
+     * Reports any long presses which are due by the given time.
+     *
+     * @param time The current {@link System#nanoTime()}.
+     */
+    public void poll(long time) {
+        for (HeldButton button : held) {
+            if (!button.consumed && time - button.pressTime >= LONG_PRESS_TIME) {
+                button.consumed = true;
+                listener.onLongPress(button.name);
+            }
+        }
+    }
+
+    /**
+     * Returns the time by which {@link #poll(long)} must next be called, or
+     * {@link Long#MAX_VALUE} if no long press is pending.
+     */
+    public long nextDeadline() {
+        long deadline = Long.MAX_VALUE;
+        for (HeldButton button : held) {
+            if (!button.consumed) {
+                deadline = Math.min(deadline, button.pressTime + LONG_PRESS_TIME);
+            }
+        }
+        return deadline;
+    }
+
+    private HeldButton find(String buttonName) {
+        for (HeldButton button : held) {
+            if (button.name.equals(buttonName)) {
+                return button;
+            }
+        }
+        return null;
+    }
+
+    private static class HeldButton {
+        final String name;
+        final long pressTime;
+        /** Set once the button has been reported as part of a gesture */
+        boolean consumed = false;
+
+        HeldButton(String name, long pressTime) {
+            this.name = name;
+            this.pressTime = pressTime;
+        }
+    }
+
+}
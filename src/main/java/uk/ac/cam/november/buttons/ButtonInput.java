@@ -0,0 +1,21 @@
+package uk.ac.cam.november.buttons;
+
+import java.io.IOException;
+
+/**
+ * A source of button presses and releases. On the device this is the GPIO
+ * {@link ButtonsListener}; elsewhere one of the stand-ins can be used, so the
+ * path from a button to speech can be exercised without the hardware.
+ */
+public interface ButtonInput {
+
+    /**
+     * Starts delivering presses and releases to the dispatcher. Returns once
+     * the input is listening; presses are delivered on the input's own thread.
+     *
+     * @param dispatcher The dispatcher to report button presses to.
+     * @throws IOException If the input could not be opened.
+     */
+    public void start(ButtonDispatcher dispatcher) throws IOException;
+
+}
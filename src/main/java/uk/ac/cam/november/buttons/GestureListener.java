@@ -0,0 +1,18 @@
+package uk.ac.cam.november.buttons;
+
+/**
+ * The listener interface for button gestures recognised by a
+ * {@link ButtonGestureDetector}.
+ */
+public interface GestureListener {
+
+    /** A button was pressed and released again before it counted as a long press. */
+    public void onPress(String buttonName);
+
+    /** A button has been held down for the long press time. */
+    public void onLongPress(String buttonName);
+
+    /** A second button was pressed while the first was held down. */
+    public void onChord(String firstButton, String secondButton);
+
+}
@@ -0,0 +1,93 @@
+package uk.ac.cam.november.buttons;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+
+/**
+ * Turns key presses in a small window into button presses. Each button has a
+ * key (see {@link ButtonCommands}), and holding the key holds the button, so
+ * long presses and chords work as on the device.
+ * <p>
+ * Keyboard auto-repeat sends a release and another press many times a second
+ * while a key is held. A release is therefore only passed on if the key is not
+ * pressed again within {@link #REPEAT_GRACE} milliseconds.
+ */
+public class KeyboardButtonInput implements ButtonInput {
+
+    private static final int REPEAT_GRACE = 40;
+
+    /** Releases waiting to see if they were caused by auto-repeat, by button */
+    private final Map<String, Timer> pendingReleases = new HashMap<String, Timer>();
+    /** Buttons currently held, by button, to drop repeated presses */
+    private final Map<String, Boolean> held = new HashMap<String, Boolean>();
+
+    @Override
+    public void start(final ButtonDispatcher dispatcher) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                JFrame frame = new JFrame("SBS Buttons");
+                frame.add(new JLabel("<html>" + ButtonCommands.USAGE.replace(". ", ".<br>") + "</html>"));
+                frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+                frame.addKeyListener(new KeyAdapter() {
+                    @Override
+                    public void keyPressed(KeyEvent e) {
+                        keyDown(e.getKeyChar(), dispatcher);
+                    }
+
+                    @Override
+                    public void keyReleased(KeyEvent e) {
+                        keyUp(e.getKeyChar(), dispatcher);
+                    }
+                });
+                frame.pack();
+                frame.setVisible(true);
+            }
+        });
+    }
+
+    /* Called on the Swing event thread */
+    private void keyDown(char key, ButtonDispatcher dispatcher) {
+        String button = ButtonCommands.buttonForKey(key);
+        if (button == null) {
+            return;
+        }
+        Timer pending = pendingReleases.remove(button);
+        if (pending != null) {
+            pending.stop();
+        }
+        if (held.put(button, Boolean.TRUE) == null) {
+            dispatcher.buttonPressed(button);
+        }
+    }
+
+    /* Called on the Swing event thread */
+    private void keyUp(char key, final ButtonDispatcher dispatcher) {
+        final String button = ButtonCommands.buttonForKey(key);
+        if (button == null || pendingReleases.containsKey(button)) {
+            return;
+        }
+        Timer release = new Timer(REPEAT_GRACE, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                pendingReleases.remove(button);
+                held.remove(button);
+                dispatcher.buttonReleased(button);
+            }
+        });
+        release.setRepeats(false);
+        pendingReleases.put(button, release);
+        release.start();
+    }
+
+}
@@ -1,46 +1,140 @@
 package uk.ac.cam.november.buttons;
 
-import uk.ac.cam.november.messages.MessageFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import com.pi4j.io.gpio.GpioPinDigital;
 import com.pi4j.io.gpio.event.GpioPinDigitalStateChangeEvent;
 import com.pi4j.io.gpio.event.GpioPinListenerDigital;
 
 /**
- * This class is an event listener for ONE button, which handles button clicks.
- * When the state of a button transitions from "not pressed" to "pressed",
- * the class will call the message generator method.
+ * This class is an event listener for ONE button, which debounces its state
+ * changes and hands them to a {@link ButtonDispatcher}.
+ * <p>
+ * Debouncing is done with timestamps rather than by sleeping: the first change
+ * of state is passed on straight away, and further changes within
+ * {@link #DEBOUNCE_TIME} of it are treated as contact bounce. The Pi4J event
+ * thread is therefore never blocked, so presses on other buttons are not
+ * delayed. A change ignored this way may have been real, such as the release
+ * of a very quick tap, so when the window ends the pin is read again and any
+ * difference is passed on then.
  *
  * @author Marius Latinis
  */
 
 public class PinListener implements GpioPinListenerDigital {
 
-    private static final int DEBOUNCE_TIME = 30;  // 30 miliseconds
+    private static final long DEBOUNCE_TIME = 30000000L;  // 30 miliseconds
+
+    /** Reads the pins again at the end of their debounce windows, for every button */
+    private static final ScheduledExecutorService RECHECK_TIMER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Button-Debounce");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
 
     /** Corresponds to the button that this instance of class is listening to */
     final private String buttonName;
 
-    public PinListener(final String buttonNameInput) {
+    final private ButtonDispatcher dispatcher;
+
+    /** Reads the state of the pin; null to read the pin of the last event */
+    final private BooleanSupplier pinState;
+    private volatile GpioPinDigital pin;
+
+    /** Last state passed on to the dispatcher, and when it was passed on.
+     * Events and the trailing re-read come from different threads */
+    private volatile boolean pressed = false;
+    private volatile long lastChangeTime = System.nanoTime() - DEBOUNCE_TIME;
+    private boolean recheckScheduled = false;
+
+    public PinListener(final String buttonNameInput, final ButtonDispatcher dispatcherInput) {
+        this(buttonNameInput, dispatcherInput, null);
+    }
+
+    /**
+     * @param pinStateInput Reads whether the button is pressed now, for the
+     *            check at the end of a debounce window.
+     */
+    PinListener(final String buttonNameInput, final ButtonDispatcher dispatcherInput,
+                final BooleanSupplier pinStateInput) {
         buttonName = buttonNameInput;
+        dispatcher = dispatcherInput;
+        pinState = pinStateInput;
     }
 
     @Override
     public void handleGpioPinDigitalStateChangeEvent(GpioPinDigitalStateChangeEvent event) {
+        if (event.getPin() instanceof GpioPinDigital) {
+            pin = (GpioPinDigital) event.getPin();
+        }
+        stateChanged(event.getState().isHigh());
+    }
 
-        if (event.getState().isHigh()) {
-            
-            /** Will sleep for a short time to debounce the button */
-	    try {
-		Thread.sleep(DEBOUNCE_TIME);
-            } catch (InterruptedException exception) {
-                exception.printStackTrace();
-            }
+    /**
+     * Handles an edge on the pin.
+     *
+     * @param high Whether the pin is now high, i.e. the button is pressed.
+     */
+    synchronized void stateChanged(final boolean high) {
+        final long now = System.nanoTime();
+        if (high == pressed) {
+            return;
+        }
+        if (now - lastChangeTime < DEBOUNCE_TIME) {
+            scheduleRecheck(lastChangeTime + DEBOUNCE_TIME - now);
+            return;
+        }
+        pass(high, now);
+    }
 
-            if (event.getState().isHigh()) {
-                System.out.println(buttonName + " button has just been pressed.");
-                MessageFormatter.handleButtonPress(buttonName);
+    private void scheduleRecheck(final long delay) {
+        if (recheckScheduled) {
+            return;
+        }
+        recheckScheduled = true;
+        RECHECK_TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                recheck();
             }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reads the pin once the debounce window has ended, and passes on the
+     * state if the last change passed on is no longer true.
+     */
+    private synchronized void recheck() {
+        recheckScheduled = false;
+        final boolean high;
+        if (pinState != null) {
+            high = pinState.getAsBoolean();
+        } else if (pin != null) {
+            high = pin.isHigh();
+        } else {
+            return;
+        }
+        if (high != pressed) {
+            pass(high, System.nanoTime());
         }
+    }
 
+    private void pass(final boolean high, final long now) {
+        pressed = high;
+        lastChangeTime = now;
+        if (high) {
+            dispatcher.buttonPressed(buttonName);
+        } else {
+            dispatcher.buttonReleased(buttonName);
+        }
     }
 
 }
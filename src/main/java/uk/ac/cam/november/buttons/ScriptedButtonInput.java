@@ -0,0 +1,159 @@
+package uk.ac.cam.november.buttons;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.cam.november.messages.SpeechEvent;
+import uk.ac.cam.november.messages.SpeechEventBus;
+import uk.ac.cam.november.messages.SpeechListener;
+
+/**
+ * Presses the readout buttons in turn and measures the latency from each
+ * press to the start of its speech, through the whole
+ * {@code MessageFormatter} → {@code MessageHandler} → {@code SpeechSynthesis}
+ * chain.
+ * <p>
+ * Each press is timed from the moment the button goes down until the
+ * {@code STARTED} event for the speech it causes, using the timestamp taken
+ * when the event was raised, so delivery on the {@link SpeechEventBus} is not
+ * counted. {@code STARTED} is raised once the player process has been
+ * launched, so the time the synthesiser takes to produce its first sample is
+ * not included. Presses are made one at a time, waiting for the speech to
+ * start before the next one.
+ */
+public class ScriptedButtonInput implements ButtonInput {
+
+    /** Buttons which are pressed, in turn */
+    private static final String[] READOUT_BUTTONS = { ButtonNames.COMPASS_HEADING, ButtonNames.WATER_DEPTH,
+            ButtonNames.WIND_SPEED, ButtonNames.WIND_DIRECTION, ButtonNames.BOAT_SPEED, ButtonNames.NEAREST_PORT };
+
+    private static final long START_TIMEOUT = 5000L;  // 5 seconds
+
+    private final int presses;
+    private final long holdMillis;
+    private final long gapMillis;
+
+    private final LinkedBlockingQueue<SpeechEvent> started = new LinkedBlockingQueue<SpeechEvent>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile String report;
+
+    /**
+     * @param presses Number of presses to make.
+     * @param holdMillis How long each button is held down.
+     * @param gapMillis Pause after each press's speech has started.
+     */
+    public ScriptedButtonInput(int presses, long holdMillis, long gapMillis) {
+        this.presses = presses;
+        this.holdMillis = holdMillis;
+        this.gapMillis = gapMillis;
+    }
+
+    @Override
+    public void start(final ButtonDispatcher dispatcher) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    report = pressAll(dispatcher);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    report = "Interrupted";
+                }
+                done.countDown();
+            }
+        }, "Scripted-Buttons");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Waits for all presses to be made and returns a summary of the latencies.
+     */
+    public String awaitReport() throws InterruptedException {
+        done.await();
+        return report;
+    }
+
+    private String pressAll(ButtonDispatcher dispatcher) throws InterruptedException {
+        SpeechListener listener = new SpeechListener() {
+            @Override
+            public void onSpeechStarted(String text) {
+            }
+
+            @Override
+            public void onSpeechEvent(SpeechEvent event) {
+                if (event.getType() == SpeechEvent.Type.STARTED) {
+                    started.add(event);
+                }
+            }
+        };
+        SpeechEventBus.subscribe(listener);
+
+        long[] latencies = new long[presses];
+        int measured = 0;
+        int timeouts = 0;
+        try {
+            for (int i = 0; i < presses; i++) {
+                String button = READOUT_BUTTONS[i % READOUT_BUTTONS.length];
+                started.clear();
+
+                long pressTime = System.nanoTime();
+                dispatcher.buttonPressed(button);
+                Thread.sleep(holdMillis);
+                dispatcher.buttonReleased(button);
+
+                SpeechEvent event = awaitStartAfter(pressTime);
+                if (event == null) {
+                    timeouts++;
+                } else {
+                    latencies[measured++] = event.getNanoTime() - pressTime;
+                }
+                Thread.sleep(gapMillis);
+            }
+        } finally {
+            SpeechEventBus.unsubscribe(listener);
+        }
+
+        return summarise(Arrays.copyOf(latencies, measured), timeouts);
+    }
+
+    private SpeechEvent awaitStartAfter(long pressTime) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(START_TIMEOUT);
+        while (true) {
+            SpeechEvent event = started.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (event == null || event.getNanoTime() >= pressTime) {
+                return event;
+            }
+        }
+    }
+
+    static String summarise(long[] latencies, int timeouts) {
+        Arrays.sort(latencies);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Press to speech latency over ").append(latencies.length).append(" presses");
+        if (timeouts > 0) {
+            sb.append(" (").append(timeouts).append(" timed out)");
+        }
+        if (latencies.length > 0) {
+            sb.append(String.format(": min %.1fms, p50 %.1fms, p90 %.1fms, p99 %.1fms, max %.1fms",
+                    millis(latencies[0]), millis(percentile(latencies, 50)), millis(percentile(latencies, 90)),
+                    millis(percentile(latencies, 99)), millis(latencies[latencies.length - 1])));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the nearest-rank percentile of sorted values.
+     */
+    static long percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+}
@@ -0,0 +1,63 @@
+package uk.ac.cam.november.buttons;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Reads button commands from a TCP connection on the loopback interface, one
+ * per line, so that test scripts or another program on the same machine can
+ * press buttons, e.g. {@code echo d | nc localhost 8990}. See
+ * {@link ButtonCommands} for the format. Connections are served one at a time.
+ */
+public class SocketButtonInput implements ButtonInput {
+
+    public static final int DEFAULT_PORT = 8990;
+
+    private final int port;
+
+    public SocketButtonInput() {
+        this(DEFAULT_PORT);
+    }
+
+    public SocketButtonInput(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void start(final ButtonDispatcher dispatcher) throws IOException {
+        final ServerSocket listenSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        System.out.println("Listening for button commands on port " + listenSocket.getLocalPort());
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    try (Socket client = listenSocket.accept()) {
+                        serve(client, dispatcher);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }, "Socket-Buttons");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void serve(Socket client, ButtonDispatcher dispatcher) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+        PrintWriter out = new PrintWriter(client.getOutputStream(), true);
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!line.trim().isEmpty() && !ButtonCommands.apply(line, dispatcher)) {
+                out.println(ButtonCommands.USAGE);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package uk.ac.cam.november.buttons;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Reads button commands from standard input, one per line. See
+ * {@link ButtonCommands} for the format.
+ */
+public class StdinButtonInput implements ButtonInput {
+
+    @Override
+    public void start(final ButtonDispatcher dispatcher) {
+        final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        System.out.println(ButtonCommands.USAGE);
+
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        if (!line.trim().isEmpty() && !ButtonCommands.apply(line, dispatcher)) {
+                            System.out.println(ButtonCommands.USAGE);
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "Stdin-Buttons");
+        t.setDaemon(true);
+        t.start();
+    }
+
+}
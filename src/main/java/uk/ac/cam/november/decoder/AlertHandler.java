@@ -1,12 +1,22 @@
 package uk.ac.cam.november.decoder;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 
+import uk.ac.cam.november.audio.Earcons;
 import uk.ac.cam.november.messages.MessageFormatter;
 
 /**
  * This runnable takes in a MessageDecoder instance and polls from the message queue within it. 
- * It calls MessageFormatter.handleAlert on each alert in that queue. 
+ * Alerts which arrive in quick succession (e.g. heading and wind angle changing together
+ * when the boat turns, which the decoder reports from separate packets a few ms apart)
+ * are collected and passed to MessageFormatter.handleAlerts together, so they are spoken
+ * as a single message. After each alert the handler waits a few tens of milliseconds for
+ * another, for at most a short window in all. Critical alerts are never held back to be
+ * merged: they are always spoken on their own, at once.
+ * The earcon for the first alert of a burst is played as soon as it is polled,
+ * so the sailor hears a tone well before the spoken explanation.
  * 
  * @author
  *
@@ -14,6 +24,11 @@ import uk.ac.cam.november.messages.MessageFormatter;
 
 public class AlertHandler implements Runnable {
 
+    /** A burst of alerts is collected for at most this time */
+    static final long ALERT_BATCH_WINDOW = 150L;  // 150 milliseconds
+    /** A burst ends when no further alert arrives within this time */
+    static final long ALERT_GAP = 30L;  // 30 milliseconds
+
     private MessageDecoder mdecoder;
     
     public AlertHandler(MessageDecoder decoder)
@@ -37,10 +52,47 @@ public class AlertHandler implements Runnable {
                 }
                 continue;
             }
-                
-            MessageFormatter.handleAlert(alert);
+
+            Earcons.play(alert);
+
+            List<AlertMessage> batch = collectBurst(alert, alertQueue);
+            MessageFormatter.handleAlerts(batch);
         }
         
     }
+
+    /**
+     * Collects the burst of alerts starting with the given one. The burst ends when no
+     * alert has arrived for {@link #ALERT_GAP}, the window has passed, or the next alert
+     * is critical. A critical alert always makes a burst of its own, and is not waited for.
+     */
+    static List<AlertMessage> collectBurst(AlertMessage first, Queue<AlertMessage> alertQueue)
+    {
+        List<AlertMessage> batch = new ArrayList<AlertMessage>();
+        batch.add(first);
+        if (first.isCritical()) {
+            return batch;
+        }
+
+        final long deadline = System.currentTimeMillis() + ALERT_BATCH_WINDOW;
+        long gapEnd = System.currentTimeMillis() + ALERT_GAP;
+        while (System.currentTimeMillis() < Math.min(deadline, gapEnd)) {
+            AlertMessage next = alertQueue.peek();
+            if (next == null) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+            if (next.isCritical()) {
+                break;
+            }
+            batch.add(alertQueue.poll());
+            gapEnd = System.currentTimeMillis() + ALERT_GAP;
+        }
+        return batch;
+    }
     
 }
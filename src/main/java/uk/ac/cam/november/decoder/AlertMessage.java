@@ -1,9 +1,11 @@
 package uk.ac.cam.november.decoder;
 
 /**
- * This class defines an AlertMessage. It has two attributes: 
- * -- type of an alert: CriticalChange, CriticalMax, CriticalMin, TimeOut
- * -- type of a sensor: WaterDepth, WindSpeed, WindAngle, BoatHeading, BoatSpeed
+ * This class defines an AlertMessage. It has three attributes: 
+ * -- type of an alert: CriticalChange, CriticalMax, CriticalMin, TimeOut, Arrival, Departure,
+ *    ShallowAhead, WaypointReached, OffTrack, RouteComplete
+ * -- type of a sensor: WaterDepth, WindSpeed, WindAngle, BoatHeading, BoatSpeed, Location
+ * -- an optional detail, e.g. the name of the port arrived at
  * 
  * @author Marie Menshova
  *
@@ -16,6 +18,13 @@ public class AlertMessage {
      * 1 - CriticalMax value alert
      * 2 - CriticalMin value alert
      * 3 - TimeOut alert
+     * 4 - Arrival alert (came within the approach radius of a port)
+     * 5 - Departure alert (moved away from the port arrived at)
+     * 6 - ShallowAhead alert (shallow water forecast on the current course;
+     *     the detail is the number of seconds until it is reached)
+     * 7 - WaypointReached alert (the detail is the waypoint's name)
+     * 8 - OffTrack alert (the detail is the distance and side, e.g. "200 meters left")
+     * 9 - RouteComplete alert (the detail is the last waypoint's name)
      */  
     private int alertType;
     
@@ -26,9 +35,13 @@ public class AlertMessage {
      * 2 - WindAngle
      * 3 - BoatHeading
      * 4 - BoatSpeed
+     * 5 - Location
      */ 
     private int sensor;
 
+    /** Detail of the alert, e.g. a port name, or null */
+    private String detail;
+
     public int getAlertType() {
         return alertType;
     }
@@ -42,6 +55,11 @@ public class AlertMessage {
         sensor = sensorInput;
     }
 
+    public AlertMessage(final int alertTypeInput, final int sensorInput, final String detailInput) {
+        this(alertTypeInput, sensorInput);
+        detail = detailInput;
+    }
+
     public AlertMessage() {}  // TODO(ml693): remove this constructor and any calls to it
 
     public int getSensor() {
@@ -52,4 +70,16 @@ public class AlertMessage {
         this.sensor = sensor;
     }
 
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * Critical alerts (a value out of range, or shallow water ahead) need the sailor's
+     * attention at once, so they are never held back to be merged with other alerts.
+     */
+    public boolean isCritical() {
+        return alertType == 1 || alertType == 2 || alertType == 6;
+    }
+
 }
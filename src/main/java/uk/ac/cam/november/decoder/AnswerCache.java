@@ -0,0 +1,222 @@
+package uk.ac.cam.november.decoder;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import uk.ac.cam.november.buttons.ButtonNames;
+import uk.ac.cam.november.location.LatLng;
+import uk.ac.cam.november.location.LocationUtil;
+import uk.ac.cam.november.location.Port;
+import uk.ac.cam.november.location.RouteNavigator;
+import uk.ac.cam.november.location.Waypoint;
+
+/**
+ * This class keeps a ready-to-speak answer for every button in {@link ButtonNames}.
+ * The MessageDecoder refreshes an answer whenever a packet changes its value, but
+ * only re-formats it when the value has changed by at least the resolution at which
+ * it is spoken (e.g. heading is spoken in whole degrees). A button press is then a
+ * single map lookup, and all the formatting work happens on the decoder thread.
+ *
+ * Answers are read by the button and speech threads, so they are kept in a
+ * concurrent map. The last-spoken keys are only touched by the decoder thread.
+ *
+ * Besides the buttons, the cache keeps a {@link #ROUTE} answer while a route is
+ * being followed.
+ */
+public class AnswerCache {
+
+    /** Key of the route readout, which is not tied to a button of its own */
+    public static final String ROUTE = "ROUTE";
+
+    /** Position changes smaller than this (degrees, roughly 1 meter) do not change the nearest port answer */
+    private static final double POSITION_RESOLUTION = 0.00001;
+
+    private final ConcurrentHashMap<String, String> answers = new ConcurrentHashMap<String, String>();
+
+    /** Spoken-resolution keys of the values the current answers were formatted from */
+    private long depthKey = Long.MIN_VALUE;
+    private long windSpeedKey = Long.MIN_VALUE;
+    private long windAngleKey = Long.MIN_VALUE;
+    private long headingKey = Long.MIN_VALUE;
+    private long boatSpeedKey = Long.MIN_VALUE;
+    private long latitudeKey = Long.MIN_VALUE;
+    private long longtitudeKey = Long.MIN_VALUE;
+    private long routeLegKey = Long.MIN_VALUE;
+    private long routeDistanceKey = Long.MIN_VALUE;
+    private long routeBearingKey = Long.MIN_VALUE;
+    private long routeCrossTrackKey = Long.MIN_VALUE;
+    private long routeMinutesKey = Long.MIN_VALUE;
+
+    AnswerCache() {
+        updateDepth(0f);
+        updateWindSpeed(0f);
+        updateWindAngle(0f);
+        updateHeading(0f);
+        updateBoatSpeed(0f);
+        updatePosition(0f, 0f, null);
+    }
+
+    /**
+     * Returns the ready-to-speak answer for a button.
+     *
+     * @param buttonName The name of the button, as in {@link ButtonNames}.
+     * @return The text to speak.
+     */
+    public String getAnswer(String buttonName) {
+        String answer = answers.get(buttonName);
+        if (answer == null) {
+            throw new IllegalArgumentException("No answer for button: " + buttonName);
+        }
+        return answer;
+    }
+
+    /**
+     * Returns whether this cache holds an answer for the given button.
+     */
+    public boolean hasAnswer(String buttonName) {
+        return answers.containsKey(buttonName);
+    }
+
+    void updateDepth(float depth) {
+        long key = spokenKey(depth);
+        if (key != depthKey) {
+            depthKey = key;
+            answers.put(ButtonNames.WATER_DEPTH, truncateFloat(depth) + " meters deep");
+        }
+    }
+
+    void updateWindSpeed(float speed) {
+        long key = spokenKey(speed);
+        if (key != windSpeedKey) {
+            windSpeedKey = key;
+            answers.put(ButtonNames.WIND_SPEED, truncateFloat(speed) + " meters per second");
+        }
+    }
+
+    void updateWindAngle(float angle) {
+        long key = Math.round(angle);
+        if (key != windAngleKey) {
+            windAngleKey = key;
+            answers.put(ButtonNames.WIND_DIRECTION, String.format("%.0f", angle) + " degrees from head");
+        }
+    }
+
+    void updateHeading(float heading) {
+        long key = Math.round(heading);
+        if (key != headingKey) {
+            headingKey = key;
+            answers.put(ButtonNames.COMPASS_HEADING, String.format("%.0f", heading) + " degrees from north");
+        }
+    }
+
+    void updateBoatSpeed(float speed) {
+        long key = spokenKey(speed);
+        if (key != boatSpeedKey) {
+            boatSpeedKey = key;
+            answers.put(ButtonNames.BOAT_SPEED, truncateFloat(speed) + " meters per second");
+        }
+    }
+
+    /**
+     * @param nearest The nearest port, if already known, or null to look it up.
+     */
+    void updatePosition(float latitude, float longtitude, Port nearest) {
+        long latKey = Math.round(latitude / POSITION_RESOLUTION);
+        long lngKey = Math.round(longtitude / POSITION_RESOLUTION);
+        if (latKey != latitudeKey || lngKey != longtitudeKey) {
+            latitudeKey = latKey;
+            longtitudeKey = lngKey;
+            answers.put(ButtonNames.NEAREST_PORT, formatNearestPort(new LatLng(latitude, longtitude), nearest));
+        }
+    }
+
+    /**
+     * Refreshes the route readout from a navigator which has just been updated.
+     * Distances are spoken to the nearest 10 meters (100 meters over a
+     * kilometer), the cross-track error to 10 meters and the time in minutes.
+     */
+    void updateRoute(RouteNavigator nav) {
+        Waypoint next = nav.getNextWaypoint();
+        if (next == null) {
+            if (routeLegKey != nav.getLeg()) {
+                routeLegKey = nav.getLeg();
+                answers.put(ROUTE, "Route complete");
+            }
+            return;
+        }
+        double distance = nav.getDistanceToNext();
+        if (Double.isNaN(distance)) {
+            return;
+        }
+        double seconds = nav.getSecondsToNext();
+        long legKey = nav.getLeg();
+        long distanceKey = Math.round(distance / (distance > 1000 ? 100 : 10));
+        long bearingKey = Math.round(nav.getBearingToNext());
+        long crossTrackKey = Math.round(nav.getCrossTrack() / 10);
+        long minutesKey = Double.isNaN(seconds) ? -1 : (long) Math.ceil(seconds / 60);
+        if (legKey != routeLegKey || distanceKey != routeDistanceKey || bearingKey != routeBearingKey
+                || crossTrackKey != routeCrossTrackKey || minutesKey != routeMinutesKey) {
+            routeLegKey = legKey;
+            routeDistanceKey = distanceKey;
+            routeBearingKey = bearingKey;
+            routeCrossTrackKey = crossTrackKey;
+            routeMinutesKey = minutesKey;
+            answers.put(ROUTE, formatRoute(next, distance, nav.getBearingToNext(), nav.getCrossTrack(), minutesKey));
+        }
+    }
+
+    private static String formatRoute(Waypoint next, double distance, double bearing, double crossTrack,
+            long minutes) {
+        String text = next.name + ", " + formatDistance(distance) + " at " + String.format("%.0f", bearing)
+                + " degrees";
+        String offTrack = RouteNavigator.formatCrossTrack(crossTrack);
+        if (offTrack != null) {
+            text += ", " + offTrack + " of track";
+        }
+        if (minutes == 1) {
+            text += ", arriving in about a minute";
+        } else if (minutes > 1) {
+            text += ", arriving in " + minutes + " minutes";
+        }
+        return text;
+    }
+
+    private static String formatNearestPort(LatLng myLoc, Port nearest) {
+        Port p = nearest != null ? nearest : LocationUtil.nearestPort(myLoc);
+        double dist = LocationUtil.distance(myLoc, p.location);
+        double bearing = LocationUtil.initialBearing(myLoc, p.location);
+        String distString = formatDistance(dist);
+        String bearingString = truncateFloat((float) bearing);
+        return distString + " at " + bearingString + " degrees to " + p.name;
+    }
+
+    /**
+     * Returns a key which changes exactly when the output of {@link #truncateFloat(float)}
+     * would, without formatting the value.
+     */
+    private static long spokenKey(float v) {
+        if (v > 10 || (Math.abs(v - Math.round(v))) < 0.1) {
+            return ((long) Math.round(v) * 10) << 1;
+        }
+        return ((long) Math.round(v * 10) << 1) | 1;
+    }
+
+    static String formatDistance(double distance) {
+        String unit = "m";
+        if (distance > 1000) {
+            distance /= 1000;
+            unit = "km";
+        }
+        return truncateFloat((float) distance) + unit;
+    }
+
+    static String truncateFloat(float v) {
+        int l = 1;
+
+        if (v > 10 || (Math.abs(v - Math.round(v))) < 0.1) {
+            l = 0;
+        }
+        String data = String.format("%." + l + "f", v);
+        return data;
+    }
+
+}
@@ -4,6 +4,8 @@ package uk.ac.cam.november.decoder;
  * This class defines a Boat State. It's attributes come from sensors: 
  * Water Depth sensor, Wind Data sensor, Boat Heading sensor, and Boat Speed sensor.
  * For every type of data, the class initializes appropriate get/set methods.
+ * Fields are volatile, so that other threads (buttons, audio) always read the
+ * latest values the decoder has set, without taking locks.
  * 
  * @author Marie Menshova
  *
@@ -11,18 +13,18 @@ package uk.ac.cam.november.decoder;
 
 public class BoatState {
     
-    private int SID;
-    private float Depth;
-    private float Offset;
-    private float WindSpeed;
-    private float WindAngle;
-    private float SpeedWaterReferenced;
-    private float Heading;
-    private float Deviation;
-    private float Variation;
-    private float Latitude;
-    private float Longtitude;
-    private float Altitude;
+    private volatile int SID;
+    private volatile float Depth;
+    private volatile float Offset;
+    private volatile float WindSpeed;
+    private volatile float WindAngle;
+    private volatile float SpeedWaterReferenced;
+    private volatile float Heading;
+    private volatile float Deviation;
+    private volatile float Variation;
+    private volatile float Latitude;
+    private volatile float Longtitude;
+    private volatile float Altitude;
     
     public int getSID() {
         return SID;
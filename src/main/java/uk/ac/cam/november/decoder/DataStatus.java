@@ -43,7 +43,8 @@ class DataStatus {
     private final float maxDataValue; 
 
 
-    /** Timestamps for the last time since last alert of a certain type */
+    /** Timestamps for the last time since last alert of a certain type.
+     * They start at the first time the status is checked */
     private Long lastTimeoutAlert;
     private Long lastRapidChangeAlert;
     private Long lastOutOfRangeAlert;
@@ -55,19 +56,29 @@ class DataStatus {
         maxChangeLimit = maxChangeLimitInput;
         minDataValue = minDataValueInput;
         maxDataValue = maxDataValueInput;
-       
-        final Long currentTime = System.currentTimeMillis();
-        lastTimeoutAlert = currentTime;
-        lastRapidChangeAlert = currentTime;
-        lastOutOfRangeAlert = currentTime;
+    }
+
+    // All times are in milliseconds, by whichever clock the decoder
+    // keeps: the wall clock, or the timestamps of the packets.
+    private void startClock(final long currentTime) {
+        if (lastTimeoutAlert == null) {
+            lastTimeoutAlert = currentTime;
+            lastRapidChangeAlert = currentTime;
+            lastOutOfRangeAlert = currentTime;
+        }
+    }
+
+    /** Value below which the data is critically low */
+    float getMinDataValue() {
+        return minDataValue;
     }
 
     // returns null if alert message does not
     // need to be generated
-    AlertMessage generateTimeoutMessage() {
+    AlertMessage generateTimeoutMessage(final long currentTime) {
+        startClock(currentTime);
         // Case when alert message has been recently generated,
         // or when the device is working
-        final Long currentTime = System.currentTimeMillis();
         if (currentTime - lastTimeoutAlert < TIME_OUT_ALERT) {
             return null;
         }
@@ -81,8 +92,8 @@ class DataStatus {
     // returns null if alert message does not
     // need to be generated or if it has
     // just been generated.
-    AlertMessage generateCriticalChangeMessage(final float lastData, final float newData) {
-        final Long currentTime = System.currentTimeMillis();
+    AlertMessage generateCriticalChangeMessage(final float lastData, final float newData, final long currentTime) {
+        startClock(currentTime);
         if (Math.abs(newData - lastData) <= maxChangeLimit || 
             currentTime - lastRapidChangeAlert < RAPID_DATA_CHANGE_TIMESTAMP ) {
             return null;
@@ -108,12 +119,12 @@ class DataStatus {
     // returns null if alert message does not
     // need to be generated or if it has
     // just been generated.
-    AlertMessage generateOutOfRangeAlert(final float currentData) {
+    AlertMessage generateOutOfRangeAlert(final float currentData, final long currentTime) {
+        startClock(currentTime);
         if (currentData >= minDataValue && currentData <= maxDataValue) {
             return null;
         }
 
-        final Long currentTime = System.currentTimeMillis();
         if (currentTime - lastOutOfRangeAlert < DATA_OUT_OF_RANGE_TIMESTAMP) {
             return null;
         }
@@ -127,13 +138,15 @@ class DataStatus {
     // we will not generate alerts,
     // only save the state.
     private boolean synchronizedData = false;
-    void generateAlerts(final Queue<AlertMessage> alertQueue, final float lastData, final float newData) {
-        lastTimeoutAlert = System.currentTimeMillis();
+    void generateAlerts(final Queue<AlertMessage> alertQueue, final float lastData, final float newData,
+                        final long currentTime) {
+        startClock(currentTime);
+        lastTimeoutAlert = currentTime;
 
         final AlertMessage[] alertMessages = new AlertMessage[2];
         if (synchronizedData) {      
-            alertMessages[0] = generateCriticalChangeMessage(lastData, newData);
-            alertMessages[1] = generateOutOfRangeAlert(newData);
+            alertMessages[0] = generateCriticalChangeMessage(lastData, newData, currentTime);
+            alertMessages[1] = generateOutOfRangeAlert(newData, currentTime);
         }
 
         for (final AlertMessage alertMessage : alertMessages) {
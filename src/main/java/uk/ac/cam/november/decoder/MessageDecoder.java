@@ -1,11 +1,21 @@
 package uk.ac.cam.november.decoder;
 
+import java.util.Date;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.EvictingQueue;
 import com.google.common.collect.Queues;
 
 import uk.ac.cam.november.buttons.ButtonNames;
+import uk.ac.cam.november.location.Bathymetry;
+import uk.ac.cam.november.location.GroundingForecaster;
+import uk.ac.cam.november.location.LocationUtil;
+import uk.ac.cam.november.location.Port;
+import uk.ac.cam.november.location.PortTracker;
+import uk.ac.cam.november.location.Route;
+import uk.ac.cam.november.location.RouteNavigator;
+import uk.ac.cam.november.location.Waypoint;
 import uk.ac.cam.november.packet.Fields;
 import uk.ac.cam.november.packet.Packet;
 
@@ -62,6 +72,22 @@ public class MessageDecoder implements Runnable {
 
     BoatState state = new BoatState();
 
+    /** Ready-to-speak answers for every button, refreshed as packets arrive */
+    private final AnswerCache answerCache = new AnswerCache();
+
+    /** Follows the nearest port, and raises Location alerts (sensor 5) on arrival and departure */
+    private final PortTracker portTracker = new PortTracker(LocationUtil.getPoiDatabase(), new PortTracker.Listener() {
+        @Override
+        public void onArrival(Port port) {
+            AlertMessageQueue.add(new AlertMessage(4, 5, port.name));
+        }
+
+        @Override
+        public void onDeparture(Port port) {
+            AlertMessageQueue.add(new AlertMessage(5, 5, port.name));
+        }
+    });
+
     private static final float INFINITY = 1000000.0f;    
 
     /* Type of Sensor that provoked an AlertMessage
@@ -77,9 +103,24 @@ public class MessageDecoder implements Runnable {
     private final DataStatus boatHeadingState = new DataStatus(ButtonNames.COMPASS_HEADING, 3, 40.0f, -INFINITY, INFINITY);                  
     private final DataStatus boatSpeedState = new DataStatus(ButtonNames.BOAT_SPEED, 4, 3.5f, -INFINITY, 22.0f);
 
+    /** Looks ahead for shallow water on the current course, if a chart is known */
+    private volatile GroundingForecaster forecaster = null;
+    private boolean shallowAheadWarned = false;
+
+    /** Follows a route, if one has been set */
+    private volatile RouteNavigator routeNavigator = null;
+
+    /** Whether alerts are timed by the packets' timestamps instead of the wall clock */
+    private volatile boolean packetTime = false;
+    /** The decoder's time, in ms; with packet time, unknown until the first packet */
+    private long currentTime = Long.MIN_VALUE;
+    private final AtomicLong packetsDecoded = new AtomicLong();
+
     public MessageDecoder(Queue<Packet> messageQueue) {
         this.MessageQueue = messageQueue;
         AlertMessageQueue = Queues.synchronizedQueue(EvictingQueue.create(30));
+        portTracker.setApproachRadius(Double.parseDouble(
+                System.getProperty("sbs.approachRadius", String.valueOf(PortTracker.DEFAULT_APPROACH_RADIUS))));
     }
 
     public Queue<AlertMessage> getAlertMessageQueue() {
@@ -90,6 +131,85 @@ public class MessageDecoder implements Runnable {
         return state;
     }
 
+    public AnswerCache getAnswerCache() {
+        return answerCache;
+    }
+
+    /**
+     * Sets the chart on which to look ahead for shallow water. The look-ahead
+     * time is set by the {@code sbs.lookahead} property, in seconds.
+     */
+    public void setChart(final Bathymetry chart) {
+        final float lookahead = Float.parseFloat(
+                System.getProperty("sbs.lookahead", String.valueOf(GroundingForecaster.DEFAULT_LOOKAHEAD)));
+        forecaster = new GroundingForecaster(chart, waterDepthState.getMinDataValue(), lookahead);
+    }
+
+    /**
+     * Sets the route to follow. Waypoint arrivals raise WaypointReached alerts
+     * (type 7), or RouteComplete (type 9) at the last waypoint, and straying
+     * from the track raises OffTrack alerts (type 8), all for the Location
+     * sensor (5).
+     */
+    public void setRoute(final Route route) {
+        routeNavigator = new RouteNavigator(route, new RouteNavigator.Listener() {
+            @Override
+            public void onWaypointReached(Waypoint reached, Waypoint next) {
+                if (next == null) {
+                    AlertMessageQueue.add(new AlertMessage(9, 5, reached.name));
+                } else {
+                    AlertMessageQueue.add(new AlertMessage(7, 5, reached.name));
+                }
+            }
+
+            @Override
+            public void onOffTrack(double crossTrack) {
+                AlertMessageQueue.add(new AlertMessage(8, 5, RouteNavigator.formatCrossTrack(crossTrack)));
+            }
+        });
+    }
+
+    public RouteNavigator getRouteNavigator() {
+        return routeNavigator;
+    }
+
+    /**
+     * Times alerts by the timestamps of the packets rather than the wall
+     * clock, so the alerts raised depend only on the packets. For packets
+     * replayed or simulated faster than real time, such as by a headless
+     * simulation. Set before the decoder is started.
+     */
+    public void setPacketTime(final boolean usePacketTime) {
+        packetTime = usePacketTime;
+    }
+
+    /**
+     * Returns the number of packets taken from the queue and fully decoded,
+     * including any alerts they raised.
+     */
+    public long getPacketsDecoded() {
+        return packetsDecoded.get();
+    }
+
+    /**
+     * Raises a ShallowAhead alert (type 6) once when shallow water comes within
+     * the look-ahead time, and again only after the course has been clear.
+     */
+    private void checkGroundingForecast() {
+        final GroundingForecaster f = forecaster;
+        if (f == null) {
+            return;
+        }
+        final float seconds = f.timeToShallow(state.getLatitude(), state.getLongtitude(), state.getHeading(),
+                state.getSpeedWaterReferenced());
+        if (seconds < 0) {
+            shallowAheadWarned = false;
+        } else if (!shallowAheadWarned) {
+            shallowAheadWarned = true;
+            AlertMessageQueue.add(new AlertMessage(6, 0, String.valueOf(Math.round(seconds))));
+        }
+    }
+
 
     public void addAlertsToQueue(final AlertMessage[] alertMessages) {
         for (int i = 0; i < alertMessages.length; i++) {
@@ -102,7 +222,7 @@ public class MessageDecoder implements Runnable {
     private void checkForTimeouts() {
         DataStatus[] dataStatusArray = {waterDepthState, windSpeedState, windAngleState, boatHeadingState, boatSpeedState};
         for (final DataStatus dataStatus : dataStatusArray) {
-            final AlertMessage timeoutAlert = dataStatus.generateTimeoutMessage();
+            final AlertMessage timeoutAlert = dataStatus.generateTimeoutMessage(currentTime);
             if (timeoutAlert != null) {
                 AlertMessageQueue.add(timeoutAlert);
             }
@@ -113,11 +233,21 @@ public class MessageDecoder implements Runnable {
     public void run() {
 
         while (true) {
-            checkForTimeouts();
- 
             /** Receive a packet from NMEA input */
             Packet packet = MessageQueue.poll();
 
+            if (!packetTime) {
+                currentTime = System.currentTimeMillis();
+            } else if (packet != null) {
+                final Date timestamp = packet.getTimestamp();
+                if (timestamp != null) {
+                    currentTime = Math.max(currentTime, timestamp.getTime());
+                }
+            }
+            if (currentTime != Long.MIN_VALUE) {
+                checkForTimeouts();
+            }
+
             if (packet != null) {
 
                 int packetID = packet.getPgn();
@@ -127,40 +257,54 @@ public class MessageDecoder implements Runnable {
                 switch (packetID) {
 
                     case 128267: // Water depth
-                        waterDepthState.generateAlerts(AlertMessageQueue, state.getDepth(), fields.getDepth());
+                        waterDepthState.generateAlerts(AlertMessageQueue, state.getDepth(), fields.getDepth(), currentTime);
                         state.setDepth(fields.getDepth());
                         state.setOffset(fields.getOffset());
+                        answerCache.updateDepth(fields.getDepth());
                         
                         break;
 
                     case 130306: // Wind data
-                        windSpeedState.generateAlerts(AlertMessageQueue, state.getWindSpeed(), fields.getWindSpeed());
+                        windSpeedState.generateAlerts(AlertMessageQueue, state.getWindSpeed(), fields.getWindSpeed(), currentTime);
                         state.setWindSpeed(fields.getWindSpeed());
+                        answerCache.updateWindSpeed(fields.getWindSpeed());
                         
-                        windAngleState.generateAlerts(AlertMessageQueue, state.getWindAngle(), fields.getWindAngle());
+                        windAngleState.generateAlerts(AlertMessageQueue, state.getWindAngle(), fields.getWindAngle(), currentTime);
                         state.setWindAngle(fields.getWindAngle());
+                        answerCache.updateWindAngle(fields.getWindAngle());
 
                         break;
 
                     case 127250: // Boad heading
-                        boatHeadingState.generateAlerts(AlertMessageQueue, state.getHeading(), fields.getHeading());
+                        boatHeadingState.generateAlerts(AlertMessageQueue, state.getHeading(), fields.getHeading(), currentTime);
                         state.setHeading(fields.getHeading());
                         state.setDeviation(fields.getDeviation());
                         state.setVariation(fields.getVariation());
+                        answerCache.updateHeading(fields.getHeading());
 
                         break;
 
                     case 128259: // Boad speed
-                        boatSpeedState.generateAlerts(AlertMessageQueue, state.getSpeedWaterReferenced(), fields.getSpeedWaterReferenced());
+                        boatSpeedState.generateAlerts(AlertMessageQueue, state.getSpeedWaterReferenced(), fields.getSpeedWaterReferenced(), currentTime);
                         state.setSpeedWaterReferenced(fields.getSpeedWaterReferenced());
+                        answerCache.updateBoatSpeed(fields.getSpeedWaterReferenced());
 
                         break;
 
                     case 129029: // GPS coordinates
-                        // GPS coordinates will not generate alerts
+                        // GPS coordinates only generate location and shallow-ahead alerts
                         state.setLatitude(fields.getLatitude());
                         state.setLongtitude(fields.getLongtitude());
                         state.setAltitude(fields.getAltitude());
+                        portTracker.update(fields.getLatitude(), fields.getLongtitude());
+                        checkGroundingForecast();
+                        final RouteNavigator nav = routeNavigator;
+                        if (nav != null) {
+                            nav.update(fields.getLatitude(), fields.getLongtitude(), state.getSpeedWaterReferenced());
+                            answerCache.updateRoute(nav);
+                        }
+                        answerCache.updatePosition(fields.getLatitude(), fields.getLongtitude(),
+                                portTracker.getNearestPort());
                     
                         break;
 
@@ -168,6 +312,7 @@ public class MessageDecoder implements Runnable {
                         // "CANNOT DECODE A MESSAGE!"
                         break;
                 }
+                packetsDecoded.incrementAndGet();
 
             }else{
                 try {
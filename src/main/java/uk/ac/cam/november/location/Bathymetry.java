@@ -0,0 +1,40 @@
+package uk.ac.cam.november.location;
+
+/**
+ * A chart of water depths, sampled in a flat coordinate frame.
+ * <p>
+ * Positions are converted into the chart's own planar x (east) and y (north)
+ * coordinates once, after which depths can be looked up along a line with
+ * nothing but additions. Implementations should not allocate in
+ * {@link #depthAt(double, double)}, as it is called many times per position
+ * fix.
+ */
+public interface Bathymetry {
+
+    /**
+     * Returns the x (east) chart coordinate of a position.
+     */
+    public double toX(double lat, double lng);
+
+    /**
+     * Returns the y (north) chart coordinate of a position.
+     */
+    public double toY(double lat, double lng);
+
+    /**
+     * Returns the distance a boat travels for one chart unit (meters).
+     */
+    public double unitLength();
+
+    /**
+     * Returns the spacing at which depths should be sampled along a line, in
+     * chart units; usually half a cell of the underlying raster.
+     */
+    public double sampleSpacing();
+
+    /**
+     * Returns the interpolated water depth at chart coordinates (meters).
+     */
+    public float depthAt(double x, double y);
+
+}
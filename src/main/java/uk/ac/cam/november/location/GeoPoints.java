@@ -0,0 +1,63 @@
+package uk.ac.cam.november.location;
+
+/**
+ * A fixed set of points on the Earth's surface, with the trigonometry of
+ * their coordinates worked out once, for use by the {@link Geodesy} kernels.
+ * <p>
+ * Each value is kept in its own primitive array, so that loops over many
+ * points read memory sequentially and can be vectorised by the JIT compiler.
+ * The arrays are not copied and must not be modified.
+ */
+public class GeoPoints {
+
+    /** Latitude and longitude (radians) */
+    final double[] lat;
+    final double[] lng;
+    final double[] sinLat;
+    final double[] cosLat;
+    final double[] sinLng;
+    final double[] cosLng;
+    /** Coordinates on the unit sphere */
+    final double[] x;
+    final double[] y;
+    final double[] z;
+
+    public GeoPoints(LatLng[] points) {
+        int n = points.length;
+        lat = new double[n];
+        lng = new double[n];
+        sinLat = new double[n];
+        cosLat = new double[n];
+        sinLng = new double[n];
+        cosLng = new double[n];
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        for (int i = 0; i < n; i++) {
+            lat[i] = Math.toRadians(points[i].getLat());
+            lng[i] = Math.toRadians(points[i].getLng());
+            sinLat[i] = Math.sin(lat[i]);
+            cosLat[i] = Math.cos(lat[i]);
+            sinLng[i] = Math.sin(lng[i]);
+            cosLng[i] = Math.cos(lng[i]);
+            x[i] = cosLat[i] * cosLng[i];
+            y[i] = cosLat[i] * sinLng[i];
+            z[i] = sinLat[i];
+        }
+    }
+
+    /**
+     * Returns the number of points.
+     */
+    public int size() {
+        return lat.length;
+    }
+
+    /**
+     * Returns a point, in degrees.
+     */
+    public LatLng get(int i) {
+        return new LatLng(Math.toDegrees(lat[i]), Math.toDegrees(lng[i]));
+    }
+
+}
@@ -0,0 +1,200 @@
+package uk.ac.cam.november.location;
+
+/**
+ * Distance and bearing kernels for measuring from one position to many fixed
+ * points, such as ports, whose trigonometry is precomputed in
+ * {@link GeoPoints}.
+ * <p>
+ * Great-circle distances are worked out from the straight-line (chord)
+ * distance between the points on the unit sphere, which needs no
+ * trigonometry per point until the final conversion to an angle. This is the same
+ * distance as the haversine formula in {@link LocationUtil#distance}, and more
+ * accurate for points close together. The equirectangular approximation is
+ * cheaper still, and is meant for discarding points which are clearly too
+ * far away before measuring the rest exactly. For the highest accuracy,
+ * {@link #vincenty(LatLng, LatLng)} gives the distance on the WGS-84
+ * ellipsoid.
+ * <p>
+ * The batch methods write one result per point into an output array. Their
+ * inner loops only do arithmetic on primitive arrays, so that the JIT
+ * compiler can vectorise them.
+ */
+public class Geodesy {
+
+    /** Mean radius of the Earth, as used by {@link LocationUtil} (meters) */
+    public static final double EARTH_RADIUS = 6371000;
+
+    /* WGS-84 ellipsoid */
+    private static final double WGS84_A = 6378137.0;
+    private static final double WGS84_F = 1 / 298.257223563;
+    private static final double WGS84_B = (1 - WGS84_F) * WGS84_A;
+
+    private static final int VINCENTY_ITERATIONS = 200;
+
+    // Prevents instantiation
+    private Geodesy() {}
+
+    /**
+     * Computes the great-circle distance from a position to every point.
+     *
+     * @param from The position to measure from.
+     * @param to The points to measure to.
+     * @param out Receives the distance to each point (meters).
+     */
+    public static void distances(LatLng from, GeoPoints to, double[] out) {
+        chordsSquared(from, to, out);
+        int n = to.size();
+        for (int i = 0; i < n; i++) {
+            out[i] = chordToDistance(out[i]);
+        }
+    }
+
+    /**
+     * Computes the squared chord distance on the unit sphere from a position
+     * to every point. This is cheaper than {@link #distances}, and orders the
+     * points the same way, so it is enough for comparing distances.
+     *
+     * @param from The position to measure from.
+     * @param to The points to measure to.
+     * @param out Receives the squared chord distance to each point.
+     */
+    public static void chordsSquared(LatLng from, GeoPoints to, double[] out) {
+        double lat = Math.toRadians(from.getLat());
+        double lng = Math.toRadians(from.getLng());
+        double fx = Math.cos(lat) * Math.cos(lng);
+        double fy = Math.cos(lat) * Math.sin(lng);
+        double fz = Math.sin(lat);
+
+        double[] x = to.x;
+        double[] y = to.y;
+        double[] z = to.z;
+        int n = to.size();
+        for (int i = 0; i < n; i++) {
+            double dx = x[i] - fx;
+            double dy = y[i] - fy;
+            double dz = z[i] - fz;
+            out[i] = dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    /**
+     * Converts a squared chord distance on the unit sphere to a great-circle
+     * distance (meters).
+     */
+    public static double chordToDistance(double chordSquared) {
+        // asin(h) written as atan(h / sqrt(1 - h^2)), which is several times
+        // faster as Math.asin is not a JIT intrinsic
+        double hSquared = Math.min(chordSquared * 0.25, 1.0);
+        return 2 * EARTH_RADIUS * Math.atan(Math.sqrt(hSquared / (1 - hSquared)));
+    }
+
+    /**
+     * Computes the equirectangular approximation of the distance from a
+     * position to every point. Accurate to well under one percent over tens
+     * of kilometers away from the poles, and never uses trigonometry per
+     * point; for pre-filtering only.
+     *
+     * @param from The position to measure from.
+     * @param to The points to measure to.
+     * @param out Receives the approximate distance to each point (meters).
+     */
+    public static void approxDistances(LatLng from, GeoPoints to, double[] out) {
+        double lat = Math.toRadians(from.getLat());
+        double lng = Math.toRadians(from.getLng());
+        double cosLat = Math.cos(lat);
+
+        double[] lats = to.lat;
+        double[] lngs = to.lng;
+        int n = to.size();
+        for (int i = 0; i < n; i++) {
+            double dLng = lngs[i] - lng;
+            // take the short way round the date line
+            dLng = dLng > Math.PI ? dLng - 2 * Math.PI : (dLng < -Math.PI ? dLng + 2 * Math.PI : dLng);
+            double dx = dLng * cosLat;
+            double dy = lats[i] - lat;
+            out[i] = EARTH_RADIUS * Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+
+    /**
+     * Computes the initial bearing of the great-circle route from a position
+     * to every point, as {@link LocationUtil#initialBearing} does.
+     *
+     * @param from The position to start from.
+     * @param to The points to go to.
+     * @param out Receives the bearing to each point (degrees, 0 to 360).
+     */
+    public static void bearings(LatLng from, GeoPoints to, double[] out) {
+        double lat = Math.toRadians(from.getLat());
+        double lng = Math.toRadians(from.getLng());
+        double sinLat = Math.sin(lat);
+        double cosLat = Math.cos(lat);
+        double sinLng = Math.sin(lng);
+        double cosLng = Math.cos(lng);
+
+        int n = to.size();
+        for (int i = 0; i < n; i++) {
+            // sin and cos of the difference in longitude, from the precomputed values
+            double sinDLng = to.sinLng[i] * cosLng - to.cosLng[i] * sinLng;
+            double cosDLng = to.cosLng[i] * cosLng + to.sinLng[i] * sinLng;
+            double y = sinDLng * to.cosLat[i];
+            double x = cosLat * to.sinLat[i] - sinLat * to.cosLat[i] * cosDLng;
+            double brng = Math.toDegrees(Math.atan2(y, x));
+            out[i] = brng < 0 ? brng + 360 : brng;
+        }
+    }
+
+    /**
+     * Computes the distance between two points on the WGS-84 ellipsoid, using
+     * Vincenty's inverse formula. Accurate to within a millimeter, but
+     * iterative; use it for final answers only. Falls back to the great-circle
+     * distance for nearly antipodal points, where the iteration does not
+     * converge.
+     *
+     * @return Distance between the points (meters)
+     */
+    public static double vincenty(LatLng from, LatLng to) {
+        double lng = Math.toRadians(to.getLng() - from.getLng());
+        double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(from.getLat())));
+        double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(to.getLat())));
+        double sinU1 = Math.sin(u1);
+        double cosU1 = Math.cos(u1);
+        double sinU2 = Math.sin(u2);
+        double cosU2 = Math.cos(u2);
+
+        double lambda = lng;
+        for (int i = 0; i < VINCENTY_ITERATIONS; i++) {
+            double sinLambda = Math.sin(lambda);
+            double cosLambda = Math.cos(lambda);
+            double a = cosU2 * sinLambda;
+            double b = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+            double sinSigma = Math.sqrt(a * a + b * b);
+            if (sinSigma == 0) {
+                return 0; // same point
+            }
+            double cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+            double sigma = Math.atan2(sinSigma, cosSigma);
+            double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+            double cosSqAlpha = 1 - sinAlpha * sinAlpha;
+            // on the equator cosSqAlpha is 0
+            double cos2SigmaM = cosSqAlpha != 0 ? cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha : 0;
+            double c = WGS84_F / 16 * cosSqAlpha * (4 + WGS84_F * (4 - 3 * cosSqAlpha));
+
+            double previous = lambda;
+            lambda = lng + (1 - c) * WGS84_F * sinAlpha
+                    * (sigma + c * sinSigma * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+
+            if (Math.abs(lambda - previous) < 1e-12) {
+                double uSq = cosSqAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+                double bigA = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+                double bigB = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+                double deltaSigma = bigB * sinSigma * (cos2SigmaM + bigB / 4
+                        * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM) - bigB / 6 * cos2SigmaM
+                                * (-3 + 4 * sinSigma * sinSigma) * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+                return WGS84_B * bigA * (sigma - deltaSigma);
+            }
+        }
+        return LocationUtil.distance(from, to);
+    }
+
+}
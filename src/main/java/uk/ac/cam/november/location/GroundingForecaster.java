@@ -0,0 +1,73 @@
+package uk.ac.cam.november.location;
+
+/**
+ * Looks ahead along the boat's course for shallow water.
+ * <p>
+ * The boat's track over the next {@link #getLookahead()} seconds is projected
+ * as a straight line from its heading and speed, and depths are sampled
+ * along it on a {@link Bathymetry} chart. Only the chart cells under the
+ * line are touched, and the march itself allocates nothing, so a forecast can
+ * be made for every position fix.
+ */
+public class GroundingForecaster {
+
+    public static final float DEFAULT_LOOKAHEAD = 30f; // seconds
+
+    /** Upper bound on samples per forecast; the spacing grows for long looks ahead */
+    private static final int MAX_SAMPLES = 1024;
+
+    private final Bathymetry chart;
+    private final float shallowDepth;
+    private final float lookahead;
+
+    /**
+     * @param chart The chart to sample.
+     * @param shallowDepth Depth below which water counts as shallow (meters).
+     * @param lookahead How far ahead to look (seconds).
+     */
+    public GroundingForecaster(Bathymetry chart, float shallowDepth, float lookahead) {
+        this.chart = chart;
+        this.shallowDepth = shallowDepth;
+        this.lookahead = lookahead;
+    }
+
+    public float getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * Forecasts when the boat will reach shallow water if it holds its course
+     * and speed.
+     *
+     * @param lat Latitude of the boat (degrees).
+     * @param lng Longitude of the boat (degrees).
+     * @param heading Compass heading (degrees).
+     * @param speed Speed through the water (meters per second).
+     * @return Seconds until the boat reaches shallow water, or -1 if it does
+     *         not within the look-ahead time.
+     */
+    public float timeToShallow(double lat, double lng, float heading, float speed) {
+        if (speed <= 0) {
+            return -1;
+        }
+        double x = chart.toX(lat, lng);
+        double y = chart.toY(lat, lng);
+        double unitsPerSecond = speed / chart.unitLength();
+        double reach = unitsPerSecond * lookahead;
+        double step = Math.max(chart.sampleSpacing(), reach / MAX_SAMPLES);
+
+        double rad = Math.toRadians(heading);
+        double dx = Math.sin(rad) * step;
+        double dy = Math.cos(rad) * step;
+        int samples = (int) (reach / step);
+
+        // start one step out: the water under the boat is the depth sounder's job
+        for (int i = 1; i <= samples; i++) {
+            if (chart.depthAt(x + dx * i, y + dy * i) < shallowDepth) {
+                return (float) (i * step / unitsPerSecond);
+            }
+        }
+        return -1;
+    }
+
+}
@@ -1,17 +1,107 @@
 package uk.ac.cam.november.location;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-
-import com.google.gson.Gson;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
 
 public class LocationUtil {
 
-    private static Port[] ports;
+    /** Database converted from the bundled ports.json, used unless -Dsbs.poi names another */
+    private static final String BUNDLED_DATABASE_FILE = "temp/ports.poi";
+
+    private static PoiDatabase pois;
+    private static final IntPredicate IS_PORT = record -> pois.getKind(record) == PoiDatabase.PORT;
 
     static {
-        PortList pl = new Gson().fromJson(new InputStreamReader(LocationUtil.class.getResourceAsStream("/ports.json")),
-                PortList.class);
-        ports = pl.ports;
+        String configured = System.getProperty("sbs.poi");
+        if (configured != null) {
+            pois = openDatabase(new File(configured));
+        } else {
+            pois = openBundledDatabase(new File(BUNDLED_DATABASE_FILE));
+        }
+    }
+
+    /**
+     * Memory-maps a database named with {@code -Dsbs.poi}, e.g. one built by
+     * {@link PoiConverter} from several sources. It is used as it is and never
+     * converted again; only if it does not exist yet are the bundled ports
+     * converted into it.
+     */
+    static PoiDatabase openDatabase(File file) {
+        if (!file.exists()) {
+            return convertPorts(file, 0L, 0L);
+        }
+        try {
+            return PoiDatabase.open(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open " + file + ", convert it again with PoiConverter", e);
+        }
+    }
+
+    /**
+     * Memory-maps the database of the bundled ports.json, converting ports.json
+     * into it if it does not exist yet, or if it was converted from a
+     * ports.json of a different size or modification time, or by a different
+     * version. When the database is up to date only its header is read, and
+     * ports.json is not read at all.
+     */
+    private static PoiDatabase openBundledDatabase(File file) {
+        long size;
+        long lastModified;
+        try {
+            URLConnection source = LocationUtil.class.getResource("/ports.json").openConnection();
+            size = source.getContentLengthLong();
+            lastModified = source.getLastModified();
+            source.getInputStream().close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not find ports.json", e);
+        }
+
+        if (file.exists()) {
+            try {
+                PoiDatabase db = PoiDatabase.open(file);
+                if (db.isFrom(size, lastModified)) {
+                    return db;
+                }
+                System.err.println(file + " is out of date, converting ports.json again");
+            } catch (IOException e) {
+                System.err.println("Could not open " + file + ", converting ports.json again: " + e.getMessage());
+            }
+        }
+        return convertPorts(file, size, lastModified);
+    }
+
+    /**
+     * Converts the bundled ports.json into a database file and maps it. If the
+     * file cannot be written, the converted database is kept on the heap instead.
+     */
+    private static PoiDatabase convertPorts(File file, long size, long lastModified) {
+        PoiConverter converter = new PoiConverter();
+        try (InputStream in = LocationUtil.class.getResourceAsStream("/ports.json")) {
+            converter.add(new InputStreamReader(in, StandardCharsets.UTF_8), PoiDatabase.PORT);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read ports.json", e);
+        }
+        ByteBuffer encoded = converter.encode();
+        PoiDatabase.setSource(encoded, size, lastModified);
+        try {
+            PoiDatabase.write(encoded, file);
+            return PoiDatabase.open(file);
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + ", keeping ports in memory: " + e.getMessage());
+            try {
+                return PoiDatabase.wrap(encoded);
+            } catch (IOException e2) {
+                // Should not reach here: the buffer was just encoded
+                throw new IllegalStateException(e2);
+            }
+        }
     }
 
     /**
@@ -53,7 +143,7 @@ public class LocationUtil {
     }
 
     /**
-     * Calculates the straight-line distance from {@code from} to {@code to}.
+     * Calculates the great-circle distance from {@code from} to {@code to}.
      * Uses the haversine formula from
      * http://www.movable-type.co.uk/scripts/latlong.html
      * 
@@ -61,7 +151,7 @@ public class LocationUtil {
      *            Starting location
      * @param to
      *            Final location
-     * @return Straight-line distance between points (meters)
+     * @return Great-circle distance between points (meters)
      */
     public static double distance(LatLng from, LatLng to) {
 
@@ -85,17 +175,70 @@ public class LocationUtil {
         return d;
     }
 
+    /**
+     * Finds the port closest to a location.
+     * 
+     * @param loc
+     *            Location to search from
+     * @return The closest port
+     */
     public static Port nearestPort(LatLng loc) {
-        double mindist = Double.MAX_VALUE;
-        Port minport = ports[0];
-        for (Port p : ports) {
-            double d = distance(p.location, loc);
-            if (d < mindist) {
-                mindist = d;
-                minport = p;
+        return toPort(pois.getIndex().nearest(loc, IS_PORT));
+    }
+
+    /**
+     * Finds the {@code k} ports closest to a location.
+     * 
+     * @param loc
+     *            Location to search from
+     * @param k
+     *            Number of ports to find
+     * @return The closest ports, closest first
+     */
+    public static Port[] nearestPorts(LatLng loc, int k) {
+        return toPorts(pois.getIndex().kNearest(loc, k, IS_PORT));
+    }
+
+    /**
+     * Finds all ports within a distance of a location.
+     * 
+     * @param loc
+     *            Location to search from
+     * @param radius
+     *            Great-circle distance (meters)
+     * @return The ports within the distance, closest first
+     */
+    public static Port[] portsWithin(LatLng loc, double radius) {
+        int[] records = pois.getIndex().withinRadius(loc, radius);
+        int n = 0;
+        for (int r : records) {
+            if (IS_PORT.test(r)) {
+                records[n++] = r;
             }
         }
-        return minport;
+        return toPorts(Arrays.copyOf(records, n));
+    }
+
+    /**
+     * Returns the database of all points of interest, including the ports.
+     */
+    public static PoiDatabase getPoiDatabase() {
+        return pois;
+    }
+
+    private static Port toPort(int record) {
+        Port p = new Port();
+        p.name = pois.getName(record);
+        p.location = pois.getLocation(record);
+        return p;
+    }
+
+    private static Port[] toPorts(int[] records) {
+        Port[] result = new Port[records.length];
+        for (int i = 0; i < records.length; i++) {
+            result[i] = toPort(records[i]);
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,93 @@
+package uk.ac.cam.november.location;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+
+/**
+ * Converts lists of points of interest in the JSON format of
+ * {@code ports.json} into a {@link PoiDatabase} file.
+ * <p>
+ * Usage: {@code PoiConverter <output.poi> [kind:]<input.json> ...}, where
+ * kind is one of {@code port} (the default), {@code marina}, {@code buoy},
+ * {@code anchorage} or {@code hazard}, e.g.
+ * {@code PoiConverter pois.poi ports.json marina:marinas.json}.
+ * <p>
+ * The system uses the database when started with {@code -Dsbs.poi=pois.poi};
+ * it is then used as it is, and never replaced by the bundled ports.
+ */
+public class PoiConverter {
+
+    private static final String[] KIND_NAMES = { "port", "marina", "buoy", "anchorage", "hazard" };
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<LatLng> locations = new ArrayList<LatLng>();
+    private final List<Byte> kinds = new ArrayList<Byte>();
+
+    /**
+     * Adds every entry of a JSON list of points.
+     *
+     * @param json Reader for a JSON object with a {@code ports} array.
+     * @param kind Kind of the points, one of the {@link PoiDatabase} constants.
+     */
+    public void add(Reader json, byte kind) {
+        PortList pl = new Gson().fromJson(json, PortList.class);
+        for (Port p : pl.ports) {
+            names.add(p.name);
+            locations.add(p.location);
+            kinds.add(kind);
+        }
+    }
+
+    /**
+     * Encodes everything added so far as a database.
+     */
+    public ByteBuffer encode() {
+        byte[] kindArray = new byte[kinds.size()];
+        for (int i = 0; i < kindArray.length; i++) {
+            kindArray[i] = kinds.get(i);
+        }
+        return PoiDatabase.encode(names.toArray(new String[names.size()]), kindArray,
+                locations.toArray(new LatLng[locations.size()]));
+    }
+
+    static byte parseKind(String name) {
+        for (int i = 0; i < KIND_NAMES.length; i++) {
+            if (KIND_NAMES[i].equalsIgnoreCase(name)) {
+                return (byte) i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown kind of point: " + name);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PoiConverter <output.poi> [kind:]<input.json> ...");
+            System.exit(1);
+        }
+        PoiConverter converter = new PoiConverter();
+        for (int i = 1; i < args.length; i++) {
+            String path = args[i];
+            byte kind = PoiDatabase.PORT;
+            int colon = path.indexOf(':');
+            if (colon > 0) {
+                kind = parseKind(path.substring(0, colon));
+                path = path.substring(colon + 1);
+            }
+            try (Reader in = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+                converter.add(in, kind);
+            }
+        }
+        PoiDatabase.write(converter.encode(), new File(args[0]));
+        System.out.println("Wrote " + converter.names.size() + " points to " + args[0]);
+    }
+
+}
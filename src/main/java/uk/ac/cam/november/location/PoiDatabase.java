@@ -0,0 +1,260 @@
+package uk.ac.cam.november.location;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A read-only database of points of interest (ports, marinas, buoys,
+ * anchorages and hazards), stored in a compact binary file which is
+ * memory-mapped rather than parsed.
+ * <p>
+ * Opening a database only maps the file and checks its header, so it takes
+ * the same time whatever the size of the dataset, and records are paged in by
+ * the operating system as they are used. The heap holds only the buffer
+ * views; names are decoded when asked for.
+ * <p>
+ * The file is laid out as struct-of-arrays in little-endian order, with the
+ * records sorted into the tree order of a {@link SpatialIndex} so that the
+ * index can be searched in place:
+ *
+ * <pre>
+ * header     magic, version, count, string table size (4 ints),
+ *            source size, source modification time (2 longs)
+ * x, y, z    count doubles each: coordinates on the unit sphere
+ * lat, lng   count doubles each: degrees
+ * axes       count bytes: k-d tree splitting axis of each record
+ * kinds      count bytes: one of the kind constants below
+ * offsets    count + 1 ints: start of each name in the string table (4-byte aligned)
+ * strings    UTF-8 names, back to back
+ * </pre>
+ */
+public class PoiDatabase {
+
+    public static final byte PORT = 0;
+    public static final byte MARINA = 1;
+    public static final byte BUOY = 2;
+    public static final byte ANCHORAGE = 3;
+    public static final byte HAZARD = 4;
+
+    private static final int MAGIC = 0x31494f50; // "POI1"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 32;
+
+    private final int count;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final DoubleBuffer lats;
+    private final DoubleBuffer lngs;
+    private final ByteBuffer kinds;
+    private final ByteBuffer offsets;
+    private final ByteBuffer strings;
+    private final SpatialIndex index;
+
+    private PoiDatabase(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a POI database");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported POI database version: " + buffer.getInt(4));
+        }
+        count = buffer.getInt(8);
+        int stringBytes = buffer.getInt(12);
+        sourceSize = buffer.getLong(16);
+        sourceModified = buffer.getLong(24);
+        if (count < 0 || stringBytes < 0 || buffer.capacity() != fileSize(count, stringBytes)) {
+            throw new IOException("Truncated POI database");
+        }
+
+        int xsAt = HEADER_SIZE;
+        int ysAt = xsAt + 8 * count;
+        int zsAt = ysAt + 8 * count;
+        int latsAt = zsAt + 8 * count;
+        int lngsAt = latsAt + 8 * count;
+        int axesAt = lngsAt + 8 * count;
+        int kindsAt = axesAt + count;
+        int offsetsAt = align4(kindsAt + count);
+        int stringsAt = offsetsAt + 4 * (count + 1);
+
+        DoubleBuffer xs = slice(buffer, xsAt, 8 * count).asDoubleBuffer();
+        DoubleBuffer ys = slice(buffer, ysAt, 8 * count).asDoubleBuffer();
+        DoubleBuffer zs = slice(buffer, zsAt, 8 * count).asDoubleBuffer();
+        lats = slice(buffer, latsAt, 8 * count).asDoubleBuffer();
+        lngs = slice(buffer, lngsAt, 8 * count).asDoubleBuffer();
+        ByteBuffer axes = slice(buffer, axesAt, count);
+        kinds = slice(buffer, kindsAt, count);
+        offsets = slice(buffer, offsetsAt, 4 * (count + 1));
+        strings = slice(buffer, stringsAt, stringBytes);
+        index = new SpatialIndex(xs, ys, zs, lats, lngs, axes);
+    }
+
+    /**
+     * Memory-maps a database file.
+     *
+     * @throws IOException If the file cannot be read or is not a database.
+     */
+    public static PoiDatabase open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            return new PoiDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Reads a database from a buffer holding a whole database file.
+     */
+    public static PoiDatabase wrap(ByteBuffer buffer) throws IOException {
+        return new PoiDatabase(buffer);
+    }
+
+    /**
+     * Encodes points of interest as a database file, ready for
+     * {@link #wrap(ByteBuffer)} or to be written out.
+     *
+     * @param names Name of each point.
+     * @param kinds Kind of each point, one of the constants of this class.
+     * @param locations Location of each point.
+     */
+    public static ByteBuffer encode(String[] names, byte[] kinds, LatLng[] locations) {
+        int n = locations.length;
+        int[] order = SpatialIndex.treeOrder(locations);
+
+        double[][] coords = new double[3][n];
+        byte[][] nameBytes = new byte[n][];
+        int stringBytes = 0;
+        for (int i = 0; i < n; i++) {
+            LatLng p = locations[order[i]];
+            SpatialIndex.toUnitSphere(p.getLat(), p.getLng(), coords, i);
+            nameBytes[i] = names[order[i]].getBytes(StandardCharsets.UTF_8);
+            stringBytes += nameBytes[i].length;
+        }
+        byte[] axes = SpatialIndex.splitAxes(coords, n);
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize(n, stringBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(stringBytes);
+        buffer.position(HEADER_SIZE);
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < n; i++) {
+                buffer.putDouble(coords[c][i]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.putDouble(locations[order[i]].getLat());
+        }
+        for (int i = 0; i < n; i++) {
+            buffer.putDouble(locations[order[i]].getLng());
+        }
+        buffer.put(axes);
+        for (int i = 0; i < n; i++) {
+            buffer.put(kinds[order[i]]);
+        }
+        buffer.position(align4(buffer.position()));
+        int offset = 0;
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(offset);
+            offset += nameBytes[i].length;
+        }
+        buffer.putInt(offset);
+        for (int i = 0; i < n; i++) {
+            buffer.put(nameBytes[i]);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Records in an encoded database the size and modification time of the
+     * source it was converted from, for {@link #isFrom(long, long)} to check.
+     */
+    public static void setSource(ByteBuffer encoded, long size, long lastModified) {
+        encoded.order(ByteOrder.LITTLE_ENDIAN);
+        encoded.putLong(16, size);
+        encoded.putLong(24, lastModified);
+    }
+
+    /**
+     * Returns whether the database was converted from a source of the given
+     * size and modification time. Only the header is read, so this is cheap
+     * enough to check on every start.
+     */
+    public boolean isFrom(long size, long lastModified) {
+        return sourceSize == size && sourceModified == lastModified;
+    }
+
+    /**
+     * Writes an encoded database to a file. The file is replaced in one step,
+     * so a database being read is never seen half written.
+     */
+    public static void write(ByteBuffer encoded, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer b = encoded.duplicate();
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Returns the number of points in the database.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the spatial index over the points. Its results are record
+     * numbers in this database.
+     */
+    public SpatialIndex getIndex() {
+        return index;
+    }
+
+    public String getName(int record) {
+        int start = offsets.getInt(4 * record);
+        int end = offsets.getInt(4 * (record + 1));
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = strings.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public byte getKind(int record) {
+        return kinds.get(record);
+    }
+
+    public LatLng getLocation(int record) {
+        return new LatLng(lats.get(record), lngs.get(record));
+    }
+
+    private static int fileSize(int count, int stringBytes) {
+        return align4(HEADER_SIZE + 5 * 8 * count + 2 * count) + 4 * (count + 1) + stringBytes;
+    }
+
+    private static int align4(int pos) {
+        return (pos + 3) & ~3;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int pos, int length) {
+        ByteBuffer b = buffer.duplicate();
+        b.position(pos);
+        b.limit(pos + length);
+        return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
@@ -0,0 +1,211 @@
+package uk.ac.cam.november.location;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the port nearest to the boat as it moves, and reports when
+ * the boat arrives at or departs from a port.
+ * <p>
+ * Rather than searching all ports on every position fix, the tracker keeps
+ * the {@link #CANDIDATES} ports nearest to an anchor position, with their
+ * distances from it. By the triangle inequality, after the boat has moved
+ * {@code m} meters from the anchor, every port's distance has changed by at
+ * most {@code m}. So:
+ * <ul>
+ * <li>while {@code m} is at most half the gap between the nearest and second
+ * nearest candidate, the nearest port cannot have changed, and a fix costs a
+ * single distance calculation;</li>
+ * <li>otherwise the candidates are re-ranked; their new distances are exact,
+ * and no port outside them can be closer than the furthest candidate's
+ * anchor distance minus {@code m};</li>
+ * <li>only when that bound no longer holds is the spatial index searched
+ * again, from a new anchor.</li>
+ * </ul>
+ * An arrival is reported when the boat comes within the approach radius of
+ * the nearest port, and a departure when it moves further than the departure
+ * radius from a port it arrived at. The departure radius is larger, so that
+ * GPS noise at the edge does not report arrivals and departures repeatedly.
+ * <p>
+ * A tracker is meant to be updated from a single thread.
+ */
+public class PortTracker {
+
+    /** Number of ports kept around the anchor */
+    public static final int CANDIDATES = 8;
+
+    public static final double DEFAULT_APPROACH_RADIUS = 2000; // meters
+    /** Departure radius as a multiple of the approach radius */
+    private static final double DEPARTURE_FACTOR = 1.25;
+
+    /**
+     * The listener interface for arrivals and departures.
+     */
+    public interface Listener {
+        public void onArrival(Port port);
+
+        public void onDeparture(Port port);
+    }
+
+    private final PoiDatabase pois;
+    private final Listener listener;
+    private double approachRadius = DEFAULT_APPROACH_RADIUS;
+
+    /** Position the candidates were found from */
+    private LatLng anchor = null;
+    /** Candidate records, nearest to the anchor first, with their precomputed trigonometry */
+    private int[] candidates = new int[0];
+    private GeoPoints candidatePoints;
+    private final double[] candidateDists = new double[CANDIDATES];
+    /** Distance from the anchor beyond which ports other than the candidates may be closer */
+    private double outsideDist;
+
+    /** Current nearest record, and its distance from the position it was checked at */
+    private int nearest = -1;
+    private Port nearestPort = null;
+    private LatLng nearestCheckedAt = null;
+    private double nearestDist;
+    /** How far the boat may move from there before another port could be nearer */
+    private double nearestSlack;
+
+    /** Port the boat has arrived at, or null */
+    private Port arrivedAt = null;
+
+    /** Number of searches of the spatial index, for testing */
+    int searches = 0;
+
+    public PortTracker(PoiDatabase pois, Listener listener) {
+        this.pois = pois;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the distance at which arrival at a port is reported.
+     *
+     * @param meters The approach radius.
+     */
+    public void setApproachRadius(double meters) {
+        approachRadius = meters;
+    }
+
+    /**
+     * Returns the port nearest to the last position, or {@code null} before
+     * the first update or if there are no ports.
+     */
+    public Port getNearestPort() {
+        return nearestPort;
+    }
+
+    /**
+     * Updates the tracker with a new position of the boat.
+     */
+    public void update(double lat, double lng) {
+        LatLng here = new LatLng(lat, lng);
+        double moved = 0;
+        if (nearestCheckedAt == null) {
+            search(here);
+        } else {
+            moved = LocationUtil.distance(nearestCheckedAt, here);
+            if (moved > nearestSlack) {
+                rank(here);
+                moved = 0;
+            }
+        }
+        if (nearest >= 0) {
+            checkGeofences(here, moved);
+        }
+    }
+
+    /**
+     * Re-ranks the candidates by their distance from here, falling back to
+     * a search if a port outside them might be closer.
+     */
+    private void rank(LatLng here) {
+        double moved = LocationUtil.distance(anchor, here);
+        double best = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        int bestRecord = -1;
+        Geodesy.distances(here, candidatePoints, candidateDists);
+        for (int i = 0; i < candidates.length; i++) {
+            double d = candidateDists[i];
+            if (d < best) {
+                second = best;
+                best = d;
+                bestRecord = candidates[i];
+            } else if (d < second) {
+                second = d;
+            }
+        }
+        double outside = outsideDist - moved;
+        if (bestRecord < 0 || best > outside) {
+            search(here);
+            return;
+        }
+        setNearest(bestRecord, here, best, Math.min(second, outside));
+    }
+
+    private void search(LatLng here) {
+        searches++;
+        anchor = here;
+        candidates = pois.getIndex().kNearest(here, CANDIDATES + 1, r -> pois.getKind(r) == PoiDatabase.PORT);
+        if (candidates.length == 0) {
+            return;
+        }
+        LatLng[] locations = new LatLng[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            locations[i] = pois.getLocation(candidates[i]);
+        }
+        double[] dists = new double[candidates.length];
+        Geodesy.distances(here, new GeoPoints(locations), dists);
+        if (candidates.length > CANDIDATES) {
+            // the extra port only bounds the distance of all the others
+            outsideDist = dists[CANDIDATES];
+            candidates = Arrays.copyOf(candidates, CANDIDATES);
+            locations = Arrays.copyOf(locations, CANDIDATES);
+        } else {
+            outsideDist = Double.MAX_VALUE;
+        }
+        candidatePoints = new GeoPoints(locations);
+        double second = dists.length > 1 ? dists[1] : outsideDist;
+        setNearest(candidates[0], here, dists[0], second);
+    }
+
+    /**
+     * Records the nearest port at a position, given the distance of the next
+     * closest port which could overtake it.
+     */
+    private void setNearest(int record, LatLng here, double dist, double secondDist) {
+        if (record != nearest) {
+            nearest = record;
+            Port p = new Port();
+            p.name = pois.getName(record);
+            p.location = pois.getLocation(record);
+            nearestPort = p;
+        }
+        nearestCheckedAt = here;
+        nearestDist = dist;
+        nearestSlack = (secondDist - dist) / 2;
+    }
+
+    /**
+     * Reports arrivals and departures, given how far the boat has moved since
+     * the distance to the nearest port was last computed.
+     */
+    private void checkGeofences(LatLng here, double moved) {
+        if (arrivedAt != null) {
+            if (LocationUtil.distance(here, arrivedAt.location) > approachRadius * DEPARTURE_FACTOR) {
+                Port left = arrivedAt;
+                arrivedAt = null;
+                listener.onDeparture(left);
+            }
+            return;
+        }
+        // in open water the nearest port is known to be too far away, and no
+        // further distance is computed
+        if (nearestDist - moved <= approachRadius
+                && LocationUtil.distance(here, nearestPort.location) <= approachRadius) {
+            arrivedAt = nearestPort;
+            listener.onArrival(nearestPort);
+        }
+    }
+
+}
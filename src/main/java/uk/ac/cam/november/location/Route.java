@@ -0,0 +1,40 @@
+package uk.ac.cam.november.location;
+
+import java.io.Reader;
+
+import com.google.gson.Gson;
+
+/**
+ * A list of waypoints to sail through in order. Routes are read from JSON in
+ * the same form as {@code ports.json}:
+ * {@code {"waypoints":[{"name":"...","location":{"lat":..,"lng":..}}, ...]}}.
+ * The first waypoint is where the route starts.
+ */
+public class Route {
+
+    public Waypoint[] waypoints;
+
+    /**
+     * Reads a route from JSON.
+     *
+     * @throws IllegalArgumentException If the route has fewer than two
+     *             waypoints, or a waypoint has no location.
+     */
+    public static Route load(Reader json) {
+        Route route = new Gson().fromJson(json, Route.class);
+        if (route == null || route.waypoints == null || route.waypoints.length < 2) {
+            throw new IllegalArgumentException("A route needs at least two waypoints");
+        }
+        for (int i = 0; i < route.waypoints.length; i++) {
+            Waypoint wp = route.waypoints[i];
+            if (wp.location == null) {
+                throw new IllegalArgumentException("Waypoint " + (i + 1) + " has no location");
+            }
+            if (wp.name == null) {
+                wp.name = "waypoint " + (i + 1);
+            }
+        }
+        return route;
+    }
+
+}
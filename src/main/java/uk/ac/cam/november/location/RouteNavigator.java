@@ -0,0 +1,237 @@
+package uk.ac.cam.november.location;
+
+/**
+ * Follows a {@link Route} from position fixes: keeps track of the active leg,
+ * and works out the cross-track error, the distance and bearing to the next
+ * waypoint, and the time to reach it.
+ * <p>
+ * The geometry of every leg is worked out once, when the navigator is
+ * created: the pole of the leg's great circle, and the direction of travel
+ * at its end, as vectors on the unit sphere. The cross-track error is then
+ * the angle between the boat and the great circle, from one dot product, and
+ * the boat has passed the end of the leg once it is ahead of the line through
+ * the waypoint at right angles to the leg. Each fix therefore costs the same,
+ * whatever the length of the route.
+ * <p>
+ * A leg ends when the boat comes within the arrival radius of its waypoint,
+ * or passes abeam of it. The navigator is updated from a single thread; the
+ * values it reports may be read from any thread.
+ */
+public class RouteNavigator {
+
+    public static final double DEFAULT_ARRIVAL_RADIUS = 100; // meters
+    public static final double DEFAULT_OFF_TRACK_LIMIT = 200; // meters
+
+    /** Speed below which no arrival time is given (meters per second) */
+    private static final float MIN_ETA_SPEED = 0.1f;
+
+    /**
+     * The listener interface for route events.
+     */
+    public interface Listener {
+        /**
+         * @param reached The waypoint which was reached.
+         * @param next The next waypoint, or {@code null} if the route is complete.
+         */
+        public void onWaypointReached(Waypoint reached, Waypoint next);
+
+        /**
+         * @param crossTrack Cross-track error (meters, positive to the right).
+         */
+        public void onOffTrack(double crossTrack);
+    }
+
+    private final Waypoint[] waypoints;
+    private final Listener listener;
+    private double arrivalRadius = DEFAULT_ARRIVAL_RADIUS;
+    private double offTrackLimit = DEFAULT_OFF_TRACK_LIMIT;
+
+    /** Pole of each leg's great circle, 3 values per leg */
+    private final double[] normals;
+    /** Direction of travel at the end of each leg, 3 values per leg */
+    private final double[] tangents;
+
+    /** Index of the active leg; equal to the number of legs once the route is complete */
+    private volatile int leg = 0;
+    private boolean offTrack = false;
+
+    private volatile double crossTrack = Double.NaN;
+    private volatile double distanceToNext = Double.NaN;
+    private volatile double bearingToNext = Double.NaN;
+    private volatile double secondsToNext = Double.NaN;
+
+    public RouteNavigator(Route route, Listener listener) {
+        this.waypoints = route.waypoints;
+        this.listener = listener;
+
+        int legs = waypoints.length - 1;
+        normals = new double[3 * legs];
+        tangents = new double[3 * legs];
+        double[] a = new double[3];
+        double[] b = new double[3];
+        for (int i = 0; i < legs; i++) {
+            toUnitSphere(waypoints[i].location, a);
+            toUnitSphere(waypoints[i + 1].location, b);
+            // n = a x b, normalised
+            double nx = a[1] * b[2] - a[2] * b[1];
+            double ny = a[2] * b[0] - a[0] * b[2];
+            double nz = a[0] * b[1] - a[1] * b[0];
+            double len = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (len > 0) {
+                nx /= len;
+                ny /= len;
+                nz /= len;
+            }
+            normals[3 * i] = nx;
+            normals[3 * i + 1] = ny;
+            normals[3 * i + 2] = nz;
+            // t = n x b
+            tangents[3 * i] = ny * b[2] - nz * b[1];
+            tangents[3 * i + 1] = nz * b[0] - nx * b[2];
+            tangents[3 * i + 2] = nx * b[1] - ny * b[0];
+        }
+    }
+
+    public void setArrivalRadius(double meters) {
+        arrivalRadius = meters;
+    }
+
+    public void setOffTrackLimit(double meters) {
+        offTrackLimit = meters;
+    }
+
+    /**
+     * Updates the navigator with a new position and speed of the boat.
+     *
+     * @param lat Latitude (degrees).
+     * @param lng Longitude (degrees).
+     * @param speed Speed (meters per second).
+     */
+    public void update(double lat, double lng, float speed) {
+        if (isComplete()) {
+            return;
+        }
+        LatLng here = new LatLng(lat, lng);
+        double latRad = Math.toRadians(lat);
+        double lngRad = Math.toRadians(lng);
+        double px = Math.cos(latRad) * Math.cos(lngRad);
+        double py = Math.cos(latRad) * Math.sin(lngRad);
+        double pz = Math.sin(latRad);
+
+        int l = leg;
+        double distance = LocationUtil.distance(here, waypoints[l + 1].location);
+        // end legs which have been reached or passed
+        while (distance <= arrivalRadius
+                || px * tangents[3 * l] + py * tangents[3 * l + 1] + pz * tangents[3 * l + 2] > 0) {
+            Waypoint reached = waypoints[l + 1];
+            l++;
+            leg = l;
+            offTrack = false;
+            if (isComplete()) {
+                crossTrack = Double.NaN;
+                distanceToNext = Double.NaN;
+                bearingToNext = Double.NaN;
+                secondsToNext = Double.NaN;
+                listener.onWaypointReached(reached, null);
+                return;
+            }
+            listener.onWaypointReached(reached, waypoints[l + 1]);
+            distance = LocationUtil.distance(here, waypoints[l + 1].location);
+        }
+
+        // the pole is to the left of the direction of travel
+        double s = px * normals[3 * l] + py * normals[3 * l + 1] + pz * normals[3 * l + 2];
+        double xte = -Geodesy.EARTH_RADIUS * Math.asin(Math.max(-1, Math.min(1, s)));
+
+        crossTrack = xte;
+        distanceToNext = distance;
+        bearingToNext = LocationUtil.initialBearing(here, waypoints[l + 1].location);
+        secondsToNext = speed > MIN_ETA_SPEED ? distance / speed : Double.NaN;
+
+        if (!offTrack && Math.abs(xte) > offTrackLimit) {
+            offTrack = true;
+            listener.onOffTrack(xte);
+        } else if (offTrack && Math.abs(xte) < offTrackLimit / 2) {
+            offTrack = false;
+        }
+    }
+
+    /**
+     * Returns whether the last waypoint has been reached.
+     */
+    public boolean isComplete() {
+        return leg >= waypoints.length - 1;
+    }
+
+    /**
+     * Returns the waypoint being sailed to, or {@code null} once the route is
+     * complete.
+     */
+    public Waypoint getNextWaypoint() {
+        int l = leg;
+        return l < waypoints.length - 1 ? waypoints[l + 1] : null;
+    }
+
+    /**
+     * Returns the index of the active leg, starting at 0.
+     */
+    public int getLeg() {
+        return leg;
+    }
+
+    /**
+     * Returns the distance from the active leg's great circle (meters,
+     * positive to the right of track), or NaN before the first fix.
+     */
+    public double getCrossTrack() {
+        return crossTrack;
+    }
+
+    /**
+     * Returns the distance to the next waypoint (meters), or NaN before the
+     * first fix.
+     */
+    public double getDistanceToNext() {
+        return distanceToNext;
+    }
+
+    /**
+     * Returns the initial bearing to the next waypoint (degrees), or NaN
+     * before the first fix.
+     */
+    public double getBearingToNext() {
+        return bearingToNext;
+    }
+
+    /**
+     * Returns the time to reach the next waypoint at the current speed
+     * (seconds), or NaN when the boat is stopped.
+     */
+    public double getSecondsToNext() {
+        return secondsToNext;
+    }
+
+    /**
+     * Formats a cross-track error as it is read out, to the nearest 10 meters,
+     * e.g. "40 meters right".
+     *
+     * @param crossTrack Cross-track error (meters, positive to the right).
+     * @return The formatted error, or {@code null} if it rounds to nothing.
+     */
+    public static String formatCrossTrack(double crossTrack) {
+        long meters = Math.round(Math.abs(crossTrack) / 10) * 10;
+        if (meters == 0) {
+            return null;
+        }
+        return meters + " meters " + (crossTrack > 0 ? "right" : "left");
+    }
+
+    private static void toUnitSphere(LatLng p, double[] out) {
+        double lat = Math.toRadians(p.getLat());
+        double lng = Math.toRadians(p.getLng());
+        out[0] = Math.cos(lat) * Math.cos(lng);
+        out[1] = Math.cos(lat) * Math.sin(lng);
+        out[2] = Math.sin(lat);
+    }
+
+}
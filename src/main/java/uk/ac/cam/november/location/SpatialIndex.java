@@ -0,0 +1,462 @@
+package uk.ac.cam.november.location;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A static spatial index over points on the Earth's surface, answering
+ * nearest, k-nearest and within-radius queries in logarithmic time.
+ * <p>
+ * Points are stored as xyz coordinates on the unit sphere in an implicit,
+ * balanced k-d tree: the node for a range of the arrays is at its middle, and
+ * its two subtrees are the halves either side of it. The straight-line
+ * (chord) distance between two points on the sphere increases with their
+ * great-circle distance, so the tree is searched with cheap squared chord
+ * distances and no trigonometry. The exact haversine distance is only
+ * computed for the points finally returned, by {@link LocationUtil#distance}.
+ * <p>
+ * The coordinates are held in buffers, so an index can either be built on
+ * the heap from a list of points, or read in place from a memory-mapped
+ * {@link PoiDatabase} which stores its records in tree order.
+ * <p>
+ * The index is immutable once built and can be queried from several threads
+ * at once.
+ */
+public class SpatialIndex {
+
+    private static final double EARTH_RADIUS = 6371000; // metres
+
+    private final int size;
+    /** Coordinates on the unit sphere, in tree order */
+    private final DoubleBuffer xs;
+    private final DoubleBuffer ys;
+    private final DoubleBuffer zs;
+    /** Latitude and longitude in degrees, in tree order, for exact distances */
+    private final DoubleBuffer lats;
+    private final DoubleBuffer lngs;
+    /** Splitting axis of each node (0 = x, 1 = y, 2 = z) */
+    private final ByteBuffer axes;
+    /** Index into the original array of each point, in tree order; null if the same */
+    private final int[] ids;
+
+    /**
+     * Builds the index.
+     *
+     * @param points The points to index. Query results are indices into this
+     *            array.
+     */
+    public SpatialIndex(LatLng[] points) {
+        size = points.length;
+        ids = treeOrder(points);
+        double[][] coords = new double[5][size];
+        for (int i = 0; i < size; i++) {
+            LatLng p = points[ids[i]];
+            toUnitSphere(p.getLat(), p.getLng(), coords, i);
+            coords[3][i] = p.getLat();
+            coords[4][i] = p.getLng();
+        }
+        xs = DoubleBuffer.wrap(coords[0]);
+        ys = DoubleBuffer.wrap(coords[1]);
+        zs = DoubleBuffer.wrap(coords[2]);
+        lats = DoubleBuffer.wrap(coords[3]);
+        lngs = DoubleBuffer.wrap(coords[4]);
+        axes = ByteBuffer.wrap(splitAxes(coords, size));
+    }
+
+    /**
+     * Wraps buffers which already hold points in tree order, as laid out by
+     * {@link #treeOrder(LatLng[])} and {@link #splitAxes(double[][], int)}.
+     * Query results are positions in the buffers.
+     */
+    SpatialIndex(DoubleBuffer xs, DoubleBuffer ys, DoubleBuffer zs, DoubleBuffer lats, DoubleBuffer lngs,
+            ByteBuffer axes) {
+        this.size = xs.limit();
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+        this.lats = lats;
+        this.lngs = lngs;
+        this.axes = axes;
+        this.ids = null;
+    }
+
+    /**
+     * Returns the number of points in the index.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the order in which points are stored in the tree, as indices
+     * into the given array.
+     */
+    static int[] treeOrder(LatLng[] points) {
+        int n = points.length;
+        double[][] coords = new double[3][n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            toUnitSphere(points[i].getLat(), points[i].getLng(), coords, i);
+            order[i] = i;
+        }
+        build(coords, order, 0, n);
+        return order;
+    }
+
+    /**
+     * Returns the splitting axis of each node, for unit sphere coordinates
+     * already in tree order.
+     */
+    static byte[] splitAxes(double[][] coords, int n) {
+        byte[] result = new byte[n];
+        int[] identity = new int[n];
+        for (int i = 0; i < n; i++) {
+            identity[i] = i;
+        }
+        fillAxes(coords, identity, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Stores the unit sphere coordinates of a point at position {@code i} of
+     * {@code coords[0..2]}.
+     */
+    static void toUnitSphere(double latDegrees, double lngDegrees, double[][] coords, int i) {
+        double lat = Math.toRadians(latDegrees);
+        double lng = Math.toRadians(lngDegrees);
+        coords[0][i] = Math.cos(lat) * Math.cos(lng);
+        coords[1][i] = Math.cos(lat) * Math.sin(lng);
+        coords[2][i] = Math.sin(lat);
+    }
+
+    /**
+     * Finds the point closest to a location.
+     *
+     * @return The index of the closest point, or -1 if the index is empty.
+     */
+    public int nearest(LatLng loc) {
+        return nearest(loc, null);
+    }
+
+    /**
+     * Finds the closest point to a location which satisfies a condition.
+     *
+     * @param accept Tests the index of a point; {@code null} accepts all.
+     * @return The index of the closest point, or -1 if there is none.
+     */
+    public int nearest(LatLng loc, IntPredicate accept) {
+        int[] result = kNearest(loc, 1, accept);
+        return result.length == 0 ? -1 : result[0];
+    }
+
+    /**
+     * Finds the {@code k} points closest to a location.
+     *
+     * @return The indices of the points, closest first. Fewer than {@code k}
+     *         if the index holds fewer points.
+     */
+    public int[] kNearest(LatLng loc, int k) {
+        return kNearest(loc, k, null);
+    }
+
+    /**
+     * Finds the {@code k} points closest to a location which satisfy a
+     * condition.
+     *
+     * @param accept Tests the index of a point; {@code null} accepts all.
+     * @return The indices of the points, closest first. Fewer than {@code k}
+     *         if fewer points are accepted.
+     */
+    public int[] kNearest(LatLng loc, int k, IntPredicate accept) {
+        Query q = new Query(loc);
+        q.accept = accept;
+        k = Math.min(k, size);
+        if (k <= 0) {
+            return new int[0];
+        }
+        q.found = new int[k];
+        q.foundDists = new double[k];
+        q.bound = Double.MAX_VALUE;
+        searchNearest(q, 0, size);
+
+        // heap sort the max-heap into ascending order of distance
+        for (int end = q.count - 1; end > 0; end--) {
+            swap(q, 0, end);
+            siftDown(q, 0, end);
+        }
+        int[] result = new int[q.count];
+        for (int i = 0; i < q.count; i++) {
+            result[i] = id(q.found[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Finds all points within a great-circle distance of a location.
+     *
+     * @param radius Distance in metres.
+     * @return The indices of the points, closest first.
+     */
+    public int[] withinRadius(LatLng loc, double radius) {
+        Query q = new Query(loc);
+        double angle = radius / EARTH_RADIUS;
+        if (angle >= Math.PI) {
+            q.bound = Double.MAX_VALUE;
+        } else {
+            double chord = 2 * Math.sin(angle / 2);
+            // a little slack, so no point is missed to rounding; the exact
+            // distance is checked below
+            q.bound = chord * chord * (1 + 1e-9) + 1e-15;
+        }
+        q.found = new int[Math.max(Math.min(16, size), 1)];
+        searchRadius(q, 0, size);
+
+        // exact distances for the few final candidates only
+        int count = 0;
+        final int[] nodes = new int[q.count];
+        final double[] dists = new double[q.count];
+        for (int i = 0; i < q.count; i++) {
+            int node = q.found[i];
+            double d = LocationUtil.distance(loc, new LatLng(lats.get(node), lngs.get(node)));
+            if (d <= radius) {
+                nodes[count] = node;
+                dists[count] = d;
+                count++;
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(dists[a], dists[b]));
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = id(nodes[order[i]]);
+        }
+        return result;
+    }
+
+    private void searchNearest(Query q, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double d = q.chordSquared(xs.get(mid), ys.get(mid), zs.get(mid));
+        if (d < q.bound && (q.accept == null || q.accept.test(id(mid)))) {
+            if (q.count < q.found.length) {
+                q.found[q.count] = mid;
+                q.foundDists[q.count] = d;
+                siftUp(q, q.count++);
+                if (q.count == q.found.length) {
+                    q.bound = q.foundDists[0];
+                }
+            } else {
+                // closer than the furthest found so far, which is the bound
+                q.found[0] = mid;
+                q.foundDists[0] = d;
+                siftDown(q, 0, q.count);
+                q.bound = q.foundDists[0];
+            }
+        }
+
+        double diff = q.coord(axes.get(mid)) - coordAt(axes.get(mid), mid);
+        if (diff < 0) {
+            searchNearest(q, lo, mid);
+            if (diff * diff < q.bound) {
+                searchNearest(q, mid + 1, hi);
+            }
+        } else {
+            searchNearest(q, mid + 1, hi);
+            if (diff * diff < q.bound) {
+                searchNearest(q, lo, mid);
+            }
+        }
+    }
+
+    private void searchRadius(Query q, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (q.chordSquared(xs.get(mid), ys.get(mid), zs.get(mid)) <= q.bound) {
+            if (q.count == q.found.length) {
+                q.found = Arrays.copyOf(q.found, q.count * 2);
+            }
+            q.found[q.count++] = mid;
+        }
+        double diff = q.coord(axes.get(mid)) - coordAt(axes.get(mid), mid);
+        if (diff < 0 || diff * diff <= q.bound) {
+            searchRadius(q, lo, mid);
+        }
+        if (diff >= 0 || diff * diff <= q.bound) {
+            searchRadius(q, mid + 1, hi);
+        }
+    }
+
+    private double coordAt(int axis, int node) {
+        return axis == 0 ? xs.get(node) : (axis == 1 ? ys.get(node) : zs.get(node));
+    }
+
+    private int id(int node) {
+        return ids == null ? node : ids[node];
+    }
+
+    /* Max-heap on distance over the first count entries */
+
+    private static void siftUp(Query q, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (q.foundDists[parent] >= q.foundDists[i]) {
+                return;
+            }
+            swap(q, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(Query q, int i, int size) {
+        while (true) {
+            int largest = i;
+            int l = 2 * i + 1;
+            int r = l + 1;
+            if (l < size && q.foundDists[l] > q.foundDists[largest]) {
+                largest = l;
+            }
+            if (r < size && q.foundDists[r] > q.foundDists[largest]) {
+                largest = r;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(q, i, largest);
+            i = largest;
+        }
+    }
+
+    private static void swap(Query q, int i, int j) {
+        int id = q.found[i];
+        q.found[i] = q.found[j];
+        q.found[j] = id;
+        double d = q.foundDists[i];
+        q.foundDists[i] = q.foundDists[j];
+        q.foundDists[j] = d;
+    }
+
+    /**
+     * Arranges order[lo, hi) into tree order, splitting each range on the
+     * axis along which its points are most spread out.
+     */
+    private static void build(double[][] coords, int[] order, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(coords[widestAxis(coords, order, lo, hi)], order, lo, hi - 1, mid);
+        build(coords, order, lo, mid);
+        build(coords, order, mid + 1, hi);
+    }
+
+    /**
+     * Recomputes the splitting axes chosen by {@link #build}.
+     */
+    private static void fillAxes(double[][] coords, int[] order, byte[] result, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        result[mid] = (byte) widestAxis(coords, order, lo, hi);
+        fillAxes(coords, order, result, lo, mid);
+        fillAxes(coords, order, result, mid + 1, hi);
+    }
+
+    private static int widestAxis(double[][] coords, int[] order, int lo, int hi) {
+        int best = 0;
+        double bestSpread = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            for (int i = lo; i < hi; i++) {
+                double v = coords[axis][order[i]];
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Quickselect: partially orders order[lo, hi] by coordinate so that
+     * order[k] holds the k-th smallest, with smaller values before it and
+     * larger after.
+     */
+    private static void select(double[] coord, int[] order, int lo, int hi, int k) {
+        while (lo < hi) {
+            double pivot = coord[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coord[order[i]] < pivot) {
+                    i++;
+                }
+                while (coord[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The state of one query, so that queries from different threads do not
+     * share anything.
+     */
+    private static class Query {
+        final double x, y, z;
+        /** Nodes found so far; a max-heap on distance for nearest queries */
+        int[] found;
+        double[] foundDists;
+        int count;
+        /** Squared chord distance beyond which points are not wanted */
+        double bound;
+        IntPredicate accept;
+
+        Query(LatLng loc) {
+            double lat = Math.toRadians(loc.getLat());
+            double lng = Math.toRadians(loc.getLng());
+            x = Math.cos(lat) * Math.cos(lng);
+            y = Math.cos(lat) * Math.sin(lng);
+            z = Math.sin(lat);
+        }
+
+        double coord(int axis) {
+            return axis == 0 ? x : (axis == 1 ? y : z);
+        }
+
+        double chordSquared(double px, double py, double pz) {
+            double dx = px - x;
+            double dy = py - y;
+            double dz = pz - z;
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package uk.ac.cam.november.location;
+
+public class Waypoint {
+
+    public String name;
+    public LatLng location;
+
+    @Override
+    public String toString() {
+        return "Waypoint: [\"" + name + "\", " + location + "]";
+    }
+}
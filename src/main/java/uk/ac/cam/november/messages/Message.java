@@ -1,19 +1,32 @@
 package uk.ac.cam.november.messages;
 
+import java.util.function.Supplier;
+
 /**
  * This class represents messages from the central system,
  * formatted in a way that can be used by {@link MessageHandler} facilities.
- * Its objects are immutable and very simple.
- * 
+ * Its fields never change once it is constructed.
+ * <p>
+ * A message may either carry fixed text, or a template together with a
+ * supplier of the value to insert into it. In the latter case the text is
+ * lazy: it is formatted anew, from the supplier's current value, every time
+ * {@link #getText()} is called, so two calls may return different text.
+ * {@link MessageHandler} calls it once for each message it plays, after it
+ * has accepted the message and stopped the speech it preempts, just before
+ * playback; messages are not queued, so this is at most a few tens of
+ * milliseconds after they are received. A message that is dropped for
+ * having too low a priority is never formatted.
+ *
  * @author Alan Tang
- * 
+ *
 */
 public class Message {
 
     // ATTRIBUTES
 
-    private String mText;
-    private int mPriority;
+    private final String mTemplate;
+    private final Supplier<String> mValue;
+    private final int mPriority;
 
     // METHODS
 
@@ -26,15 +39,38 @@ public class Message {
      *                      should be a positive integer not greater than 100
      */
     public Message(String text, int priority) {
-        mText = text;
+        this(text, null, priority);
+    }
+
+    /**
+     * Constructs a {@link Message} object whose text is formatted when it is
+     * read, rather than when it is created.
+     *
+     * @param   template    a format string with a single {@code %s}, which
+     *                      is replaced by the value
+     * @param   value       supplies the formatted value; called every time
+     *                      {@link #getText()} is called
+     * @param   priority    a numeric value of the priority; by convention,
+     *                      should be a positive integer not greater than 100
+     */
+    public Message(String template, Supplier<String> value, int priority) {
+        mTemplate = template;
+        mValue = value;
         mPriority = priority;
     }
 
     /**
-     * Returns the contents of the {@link Message} object.
+     * Returns the contents of the {@link Message} object. For messages
+     * constructed with a value supplier, the value is read and the text
+     * formatted again on every call.
      * @return  contents of the {@link Message} object.
      */
-    public String getText() { return mText; }
+    public String getText() {
+        if (mValue == null) {
+            return mTemplate;
+        }
+        return String.format(mTemplate, mValue.get());
+    }
 
     /**
      * Returns the priority of the {@link Message} object.
@@ -1,21 +1,20 @@
 package uk.ac.cam.november.messages;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 
+import uk.ac.cam.november.audio.Sonifier;
 import uk.ac.cam.november.boot.ShutDown;
 import uk.ac.cam.november.buttons.ButtonNames;
 import uk.ac.cam.november.decoder.AlertMessage;
-import uk.ac.cam.november.decoder.BoatState;
+import uk.ac.cam.november.decoder.AnswerCache;
 import uk.ac.cam.november.decoder.MessageDecoder;
-import uk.ac.cam.november.location.LatLng;
-import uk.ac.cam.november.location.LocationUtil;
-import uk.ac.cam.november.location.Port;
 import uk.ac.cam.november.packet.Packet;
 
 /**
  * The purpose of this class is to respond to determine which button was pressed,
- * poll the StateDecoder for data information
- * format a message corresponding to the button pressed,
+ * look up the answer the MessageDecoder keeps ready for that button,
  * and assign a priority to the message before sending it to the MessageHandler class.
  * 
  *
@@ -29,6 +28,7 @@ public class MessageFormatter {
 	private static final int SHUT_DOWN_PRIORITY = 3;
 
 	private static MessageDecoder mDecoder = null;
+	private static Sonifier mSonifier = null;
 
 	/**
 	 * Sets the MessageDecoder from which this class will receive its values. 
@@ -38,11 +38,20 @@ public class MessageFormatter {
 		mDecoder = decoder;
 	}
 
+	/**
+	 * Sets the Sonifier whose heading channel is used to hold a course.
+	 */
+	public static void setSonifier(Sonifier sonifier)
+	{
+		mSonifier = sonifier;
+	}
+
 	// Prevents instantiation
 	private MessageFormatter() {}
 
 	/**
-	 * Gets data which corresponds with input button, formats it, and sends it to the Messagehandler
+	 * Creates a message for the input button and sends it to the Messagehandler. The button's
+	 * value is only formatted if the MessageHandler accepts the message, just before it is played.
 	 * 
 	 * @param buttonName The name of the button that was pressed.
 	 */
@@ -59,152 +68,225 @@ public class MessageFormatter {
 			return;
 		}
 
-		String formattedString = formatButtonPress(buttonName); 
-
-		/* Assign priority and wrap in Message Object */
-		Message m = new Message(formattedString, MESSAGE_PRIORITY);
+		/* Wrap the button's template and value in a Message Object; the value is
+		 * only read from the decoder if the message is going to be played */
+		Message m = createButtonMessage(buttonName);
 		
 		/* Calls MessageHandler */
-		System.out.println("Sending Message: '" + formattedString +"'");
+		System.out.println("Sending Message for button " + buttonName);
 		MessageHandler.receiveMessage(m);
 	}
 
-	private static String formatButtonPress(String buttonName)
+	/**
+	 * Handles a button being held down. Holding the compass heading button switches
+	 * course hold on or off: the current heading becomes the target of the heading
+	 * sonification. While a route is followed, holding the nearest port button reads
+	 * out the route. Holding any other readout button repeats the last message.
+	 * 
+	 * @param buttonName The name of the button that was held down.
+	 */
+	public static void handleLongPress(String buttonName)
 	{
-		String formattedString;
+		if (buttonName.compareTo(ButtonNames.SHUT_DOWN) == 0) {
+			handleButtonPress(buttonName);
+			return;
+		}
 
-		switch (buttonName)
-		{
-		
-		/* BoatSpeed */
-		case ButtonNames.BOAT_SPEED:
-			formattedString = formatBoatSpeedButton();
-			break;
-			
-		/* Heading */
-		case ButtonNames.COMPASS_HEADING:
-			formattedString = formatCompassHeadingButton();
-			break;
-			
-		/* NearestPort */
-		case ButtonNames.NEAREST_PORT:
-			formattedString = formatNearestPortButton();
-			break;
-			
-		/* WaterDepth */
-		case ButtonNames.WATER_DEPTH:
-			formattedString = formatWaterDepthButton();
-			break;
-			
-		/* WindDirection */
-		case ButtonNames.WIND_DIRECTION:
-			formattedString = formatWindDirButton();
-			break;
-			
-		/* WindSpeed */
-		case ButtonNames.WIND_SPEED:
-			formattedString = formatWindSpeedButton();
-			break;
+		if (buttonName.compareTo(ButtonNames.COMPASS_HEADING) == 0 && mSonifier != null) {
+			toggleCourseHold();
+			return;
+		}
 
-		default: 
-			// Should not reach here
-			System.err.println("Invalid button name: " + buttonName);
-			throw new IllegalArgumentException("Invalid button name: " + buttonName);
+		/* While following a route, holding the nearest port button reads out the route */
+		if (buttonName.compareTo(ButtonNames.NEAREST_PORT) == 0
+				&& mDecoder.getAnswerCache().hasAnswer(AnswerCache.ROUTE)) {
+			final AnswerCache answers = mDecoder.getAnswerCache();
+			MessageHandler.receiveMessage(new Message("%s", () -> answers.getAnswer(AnswerCache.ROUTE), MESSAGE_PRIORITY));
+			return;
+		}
 
+		if (!MessageHandler.repeatLastMessage(MESSAGE_PRIORITY)) {
+			MessageHandler.receiveMessage(new Message("Nothing to repeat", MESSAGE_PRIORITY));
 		}
+	}
 
-		return formattedString;
+	/**
+	 * Handles two buttons being pressed together. Pressing the shut down button
+	 * together with any other button turns the system off; other combinations
+	 * are ignored.
+	 * 
+	 * @param firstButton The button that was held down.
+	 * @param secondButton The button that was pressed while the first was held.
+	 */
+	public static void handleChord(String firstButton, String secondButton)
+	{
+		if (firstButton.compareTo(ButtonNames.SHUT_DOWN) == 0
+				|| secondButton.compareTo(ButtonNames.SHUT_DOWN) == 0) {
+			handleButtonPress(ButtonNames.SHUT_DOWN);
+		}
 	}
 
-	private static String formatNearestPortButton() {
-		BoatState state = mDecoder.getState();
-		LatLng myLoc = new LatLng(state.getLatitude(), state.getLongtitude());
-		Port p = LocationUtil.nearestPort(myLoc);
-		double dist = LocationUtil.distance(myLoc, p.location);
-		double bearing = LocationUtil.initialBearing(myLoc, p.location);
-		String distString = formatDistance(dist);
-		String bearingString = truncateFloat((float)bearing);
-		return distString + " at " + bearingString + " degrees to " + p.name;
+	private static void toggleCourseHold()
+	{
+		String text;
+		if (mSonifier.isHeadingEnabled()) {
+			mSonifier.setHeadingEnabled(false);
+			text = "Course hold off";
+		} else {
+			float heading = mDecoder.getState().getHeading();
+			mSonifier.setTargetHeading(heading);
+			mSonifier.setHeadingEnabled(true);
+			text = "Holding course " + String.format("%.0f", heading) + " degrees";
+		}
+		System.out.println("Sending Message: '" + text + "'");
+		MessageHandler.receiveMessage(new Message(text, MESSAGE_PRIORITY));
 	}
 
-	private static String formatWindSpeedButton() {
-		float speed = mDecoder.getState().getWindSpeed();
-		String strSpd = truncateFloat(speed);
+	private static Message createButtonMessage(String buttonName)
+	{
+		final AnswerCache answers = mDecoder.getAnswerCache();
 
-		return strSpd + " meters per second";
+		if (!answers.hasAnswer(buttonName)) {
+			// Should not reach here
+			System.err.println("Invalid button name: " + buttonName);
+			throw new IllegalArgumentException("Invalid button name: " + buttonName);
+		}
+
+		/* The decoder keeps a ready-to-speak answer for every button */
+		return new Message("%s", () -> answers.getAnswer(buttonName), MESSAGE_PRIORITY);
 	}
 
-	private static String formatWindDirButton() {
-		float dir = mDecoder.getState().getWindAngle();
-		String strDir = String.format("%.0f", dir);
+	public static void handleAlert(AlertMessage alert)
+	{
+		int type = alert.getAlertType();
+		int sensor = alert.getSensor();
 
-		return strDir + " degrees from head";
-	}
+		String formattedString = formatAlert(alert);
 
-	private static String formatWaterDepthButton() {
-		float depth = mDecoder.getState().getDepth();
-		String strDpth = truncateFloat(depth);
+		// assign priority and wrap in Message Object
+		Message m = new Message(formattedString, ALERT_PRIORITY);
 
-		return strDpth + " meters deep";
+		// call MessageHandler
+		System.out.println("Sending Alert Message: '" + formattedString +"'");
+		MessageHandler.receiveMessage(m);
 	}
 
-	private static String formatBoatSpeedButton() {
+	/**
+	 * Formats a burst of alerts as one combined message and sends it to the MessageHandler,
+	 * so that alerts raised together are spoken once instead of preempting each other.
+	 * 
+	 * @param alerts The alerts to report, in the order they were raised.
+	 */
+	public static void handleAlerts(List<AlertMessage> alerts)
+	{
+		if (alerts.isEmpty()) {
+			return;
+		}
 
-		float speed = mDecoder.getState().getSpeedWaterReferenced();
-		String strSpd = truncateFloat(speed);
+		String formattedString = formatAlerts(alerts);
 
-		return strSpd + " meters per second";
+		// assign priority and wrap in Message Object
+		Message m = new Message(formattedString, ALERT_PRIORITY);
+
+		// call MessageHandler
+		System.out.println("Sending Alert Message: '" + formattedString +"'");
+		MessageHandler.receiveMessage(m);
 	}
 
-	private static String formatCompassHeadingButton() {
-		float heading = mDecoder.getState().getHeading();
-		String strHdg = String.format("%.0f", heading);
+	/**
+	 * Summarises several alerts in one message. Rapid change alerts are merged into
+	 * one "rapid change in ..." sentence, and repeated alerts are only mentioned once.
+	 * Every other kind of alert is read out as a sentence of its own, before the
+	 * rapid changes.
+	 */
+	public static String formatAlerts(List<AlertMessage> alerts)
+	{
+		if (alerts.size() == 1) {
+			return formatAlert(alerts.get(0));
+		}
+
+		List<String> changedSensors = new ArrayList<String>();
+		List<String> sentences = new ArrayList<String>();
+
+		for (AlertMessage alert : alerts) {
+			/* CriticalChange */
+			if (alert.getAlertType() == 0) {
+				String sensorName = formatSensorName(alert.getSensor());
+				if (!changedSensors.contains(sensorName)) {
+					changedSensors.add(sensorName);
+				}
+			} else {
+				String phrase = formatAlertPhrase(alert);
+				if (!sentences.contains(phrase)) {
+					sentences.add(phrase);
+				}
+			}
+		}
 
-		return strHdg + " degrees from north";
-	}
+		if (!changedSensors.isEmpty()) {
+			sentences.add("rapid change in " + joinPhrases(changedSensors));
+		}
 
-	private static String formatDistance(double distance){
-		String unit = "m";
-		if(distance > 1000){
-			distance /= 1000;
-			unit = "km";
+		StringBuilder sb = new StringBuilder("Warning: ");
+		for (int i = 0; i < sentences.size(); i++) {
+			String sentence = sentences.get(i);
+			if (i > 0) {
+				sb.append(". ");
+				sentence = Character.toUpperCase(sentence.charAt(0)) + sentence.substring(1);
+			}
+			sb.append(sentence);
 		}
-		return truncateFloat((float)distance) + unit;
+		return sb.toString();
 	}
 
-	private static String truncateFloat(float v)
+	/**
+	 * Joins the names in a list as they would be read out: "a", "a and b", "a, b and c".
+	 */
+	private static String joinPhrases(List<String> phrases)
 	{
-		int l = 1; 
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < phrases.size(); i++) {
+			if (i > 0) {
+				sb.append(i == phrases.size() - 1 ? " and " : ", ");
+			}
+			sb.append(phrases.get(i));
+		}
+		return sb.toString();
+	}
 
-		if( v > 10 || (Math.abs (v - Math.round(v) )) < 0.1 )
+	private static String formatSensorName(int sensor)
+	{
+		switch (sensor)
 		{
-			l = 0; 
+		case 0:
+			return "water depth";
+		case 1:
+			return "wind speed";
+		case 2:
+			return "wind direction";
+		case 3:
+			return "boat heading";
+		case 4:
+			return "boat speed";
+		case 5:
+			return "position";
+		default:
+			// Should not reach here:
+			System.err.println("Invalid alert sensor type: " + sensor);
+			throw new IllegalArgumentException("Invalid alert sensor type: " + sensor);
 		}
-		String data = String.format("%."+ l  +"f", v);
-		return data;
 	}
 
-	public static void handleAlert(AlertMessage alert)
+	private static String formatAlert(AlertMessage alert)
 	{
-		int type = alert.getAlertType();
-		int sensor = alert.getSensor();
-
-		String formattedString = formatAlert(alert);
-
-		// assign priority and wrap in Message Object
-		Message m = new Message(formattedString, ALERT_PRIORITY);
-
-		// call MessageHandler
-		System.out.println("Sending Alert Message: '" + formattedString +"'");
-		MessageHandler.receiveMessage(m);
+		return "Warning: " + formatAlertPhrase(alert);
 	}
 
-	private static String formatAlert(AlertMessage alert)
+	private static String formatAlertPhrase(AlertMessage alert)
 	{
-		int type = alert.getAlertType();
 		int sensor = alert.getSensor();
 
-		String formattedString = "Warning: ";
+		String formattedString = "";
 
 		switch (sensor)
 		{
@@ -234,6 +316,11 @@ public class MessageFormatter {
 			formattedString += formatBoatSpeedAlert(alert);
 			break;
 
+		/* Location */
+		case 5:
+			formattedString += formatLocationAlert(alert);
+			break;
+
 		default:
 			// Should not reach here:
 				System.err.println("Invalid alert sensor type: " + sensor);
@@ -270,6 +357,11 @@ public class MessageFormatter {
 			formattedString += "wate depth sensor is unresponsive";
 			break;
 
+		/* ShallowAhead */
+		case 6:
+			formattedString += "shallow water ahead in " + alert.getDetail() + " seconds";
+			break;
+
 		default:
 			// Should not reach here:
 			System.err.println("Invalid alert type: " + alert.getAlertType());
@@ -410,4 +502,42 @@ public class MessageFormatter {
 		return formattedString;
 	}
 
+	private static String formatLocationAlert(AlertMessage alert) {
+		String formattedString = "";
+		switch (alert.getAlertType())
+		{
+
+		/* Arrival */
+		case 4:
+			formattedString += "approaching " + alert.getDetail();
+			break;
+
+		/* Departure */
+		case 5:
+			formattedString += "leaving " + alert.getDetail();
+			break;
+
+		/* WaypointReached */
+		case 7:
+			formattedString += "reached " + alert.getDetail();
+			break;
+
+		/* OffTrack */
+		case 8:
+			formattedString += alert.getDetail() + " of track";
+			break;
+
+		/* RouteComplete */
+		case 9:
+			formattedString += "route complete at " + alert.getDetail();
+			break;
+
+		default:
+			// Should not reach here:
+			System.err.println("Invalid alert type: " + alert.getAlertType());
+			throw new IllegalArgumentException("Invalid alert type: " + alert.getAlertType());
+		}
+		return formattedString;
+	}
+
 }
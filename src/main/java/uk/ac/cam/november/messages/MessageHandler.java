@@ -11,6 +11,8 @@ public class MessageHandler {
     // ATTRIBUTES
 
     private static Message currMessage;
+    /** Text of the last message that was spoken, for repeating it */
+    private static String lastText;
 
     // METHODS
 
@@ -35,17 +37,39 @@ public class MessageHandler {
         }
         if (currMessage == null
          || message.getPriority() >= currMessage.getPriority()) {
+            long queuedNanos = System.nanoTime();
             currMessage = message;
+            SpeechEventBus.publish(new SpeechEvent(SpeechEvent.Type.QUEUED, null, 0L));
             SpeechSynthesis.stop();
 	    try {
 		Thread.sleep(50);
 	    } catch (InterruptedException exception) {
 		exception.printStackTrace();
 	    }
-	    SpeechSynthesis.play(currMessage.getText());
+	    // the text is only formatted once the message has been accepted
+	    // and the previous speech stopped, right before playback, so
+	    // the value it reports is as late as it can be; a message that
+	    // is dropped above is never formatted at all
+	    String text = currMessage.getText();
+	    lastText = text;
+	    System.out.println("Speaking: '" + text + "'");
+	    SpeechSynthesis.play(text, queuedNanos);
         }
     }
 
-}
-
+    /**
+     * Speaks the text of the last message again, exactly as it was spoken,
+     * with the given priority.
+     *
+     * @param   priority    priority of the repeated message
+     * @return  {@code false} if nothing has been spoken yet
+     */
+    public static synchronized boolean repeatLastMessage(int priority) {
+        if (lastText == null) {
+            return false;
+        }
+        receiveMessage(new Message(lastText, priority));
+        return true;
+    }
 
+}
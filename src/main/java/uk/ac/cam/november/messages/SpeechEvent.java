@@ -0,0 +1,81 @@
+package uk.ac.cam.november.messages;
+
+/**
+ * A speech lifecycle event, delivered to {@link SpeechListener}s through the
+ * {@link SpeechEventBus}. Objects are immutable.
+ * <p>
+ * The latency carried by an event depends on its type:
+ * <ul>
+ * <li>{@code QUEUED}: always zero</li>
+ * <li>{@code STARTED}: time from the message being queued to playback starting</li>
+ * <li>{@code PREEMPTED}, {@code FINISHED}: time from playback starting to it ending</li>
+ * </ul>
+ */
+public class SpeechEvent {
+
+    public enum Type {
+        /** A message has been accepted by the {@link MessageHandler} */
+        QUEUED,
+        /** Playback of a message has started */
+        STARTED,
+        /** Playback was stopped early to make room for another message */
+        PREEMPTED,
+        /** Playback ran to completion */
+        FINISHED
+    }
+
+    private final Type type;
+    private final String text;
+    private final long time;
+    private final long nanoTime;
+    private final long latencyNanos;
+
+    public SpeechEvent(Type type, String text, long latencyNanos) {
+        this.type = type;
+        this.text = text;
+        this.time = System.currentTimeMillis();
+        this.nanoTime = System.nanoTime();
+        this.latencyNanos = latencyNanos;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the text being spoken, or {@code null} for {@code QUEUED} events
+     * of messages whose text is only formatted when playback starts.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns the wall-clock time at which the event happened, in milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns {@link System#nanoTime()} at which the event happened, for
+     * measuring latencies from events outside the speech chain.
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public double getLatencyMillis() {
+        return latencyNanos / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "SpeechEvent: [" + type + ", \"" + text + "\", " + getLatencyMillis() + "ms]";
+    }
+
+}
@@ -0,0 +1,99 @@
+package uk.ac.cam.november.messages;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Delivers {@link SpeechEvent}s to {@link SpeechListener}s.
+ * <p>
+ * All listeners are called from one executor thread, so each listener sees
+ * events in the order they were published and never from two threads at once.
+ * Each listener has its own bounded queue; if a listener falls behind, its
+ * oldest pending events are dropped rather than holding up the speech path or
+ * the other listeners.
+ */
+public class SpeechEventBus {
+
+    /** Number of undelivered events kept for each listener */
+    private static final int SUBSCRIBER_QUEUE_SIZE = 32;
+
+    private static final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Speech-Events").setDaemon(true).build());
+
+    // Prevents instantiation
+    private SpeechEventBus() {}
+
+    /**
+     * Registers a listener. Registering the same listener twice has no effect.
+     */
+    public static synchronized void subscribe(SpeechListener listener) {
+        for (Subscription s : subscriptions) {
+            if (s.listener == listener) {
+                return;
+            }
+        }
+        subscriptions.add(new Subscription(listener));
+    }
+
+    public static synchronized void unsubscribe(SpeechListener listener) {
+        for (Subscription s : subscriptions) {
+            if (s.listener == listener) {
+                subscriptions.remove(s);
+            }
+        }
+    }
+
+    /**
+     * Publishes an event to all listeners. Returns immediately; the listeners
+     * are called later on the event thread.
+     */
+    public static void publish(SpeechEvent event) {
+        for (Subscription s : subscriptions) {
+            s.offer(event);
+        }
+    }
+
+    private static class Subscription implements Runnable {
+
+        private final SpeechListener listener;
+        private final ArrayBlockingQueue<SpeechEvent> pending = new ArrayBlockingQueue<SpeechEvent>(SUBSCRIBER_QUEUE_SIZE);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        Subscription(SpeechListener listener) {
+            this.listener = listener;
+        }
+
+        void offer(SpeechEvent event) {
+            while (!pending.offer(event)) {
+                // listener has fallen behind, drop its oldest event
+                pending.poll();
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            SpeechEvent event;
+            while ((event = pending.poll()) != null) {
+                try {
+                    listener.onSpeechEvent(event);
+                } catch (RuntimeException e) {
+                    // one failing listener must not stop delivery to the others
+                    System.err.println("[Error in SpeechEventBus]");
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+}
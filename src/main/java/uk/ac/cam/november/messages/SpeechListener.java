@@ -1,7 +1,23 @@
 package uk.ac.cam.november.messages;
 
+/**
+ * The listener interface for speech lifecycle events. Listeners are called on the
+ * single {@link SpeechEventBus} thread, in the order the events happened.
+ */
 public interface SpeechListener {
 
     public void onSpeechStarted(String message);
-    
+
+    /**
+     * Called for every speech lifecycle event. The default implementation passes
+     * {@code STARTED} events on to {@link #onSpeechStarted(String)}.
+     *
+     * @param event The event which happened.
+     */
+    public default void onSpeechEvent(SpeechEvent event) {
+        if (event.getType() == SpeechEvent.Type.STARTED) {
+            onSpeechStarted(event.getText());
+        }
+    }
+
 }
@@ -1,7 +1,7 @@
 package uk.ac.cam.november.messages;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * The module that handles audio output.
@@ -11,12 +11,16 @@ import java.util.ArrayList;
  * The user of this module is agnostic of the exact tool being used to
  * generate the sound. The default implementation uses pico2wave and
  * produces an auxiliary {@code speech.wav} file.
+ * <p>
+ * Lifecycle events for every utterance are published on the
+ * {@link SpeechEventBus}. A single monitor thread waits for each utterance
+ * to end, so no threads are created per utterance.
  */
 public class SpeechSynthesis {
 
     // ATTRIBUTES
 
-    private static Process curr_speech = null;
+    private static volatile Utterance curr_speech = null;
     private static String wavdir =
         "temp/speech.wav";
     private static String playdir =
@@ -24,7 +28,18 @@ public class SpeechSynthesis {
     private static String stopdir =
         "temp/stop_sound.sh";
 
-    private static ArrayList<SpeechListener> listeners = new ArrayList<SpeechListener>();
+    private static final LinkedBlockingQueue<Utterance> started = new LinkedBlockingQueue<Utterance>();
+
+    static {
+        Thread monitor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                monitorUtterances();
+            }
+        }, "Speech-Monitor");
+        monitor.setDaemon(true);
+        monitor.start();
+    }
 
     // METHODS
 
@@ -33,36 +48,48 @@ public class SpeechSynthesis {
      * <p>
      * If there happen to be errors in speech synthesis, a message is
      * written to {@code System.err}.
-     * 
+     *
      * @param   text    {@code String} to be played
      */
     public static void play(String text) {
-        // Notify all listeners
-        for(SpeechListener sl : listeners){
-            new Thread(){
-                @Override public void run(){
-                    sl.onSpeechStarted(text);
-                }
-            }.start();
-        }
-        try {
-            curr_speech =
-                (new ProcessBuilder(playdir, wavdir, text)).start();
+        play(text, System.nanoTime());
+    }
 
+    /**
+     * Outputs audio for a given {@code String}, reporting the time since it
+     * was queued as the latency of its {@code STARTED} event.
+     *
+     * @param   text        {@code String} to be played
+     * @param   queuedNanos {@link System#nanoTime()} at which the text was
+     *                      queued for playback
+     */
+    public static void play(String text, long queuedNanos) {
+        try {
+            Process p = (new ProcessBuilder(playdir, wavdir, text)).start();
+            Utterance u = new Utterance(p, text, System.nanoTime());
+            curr_speech = u;
+            SpeechEventBus.publish(new SpeechEvent(SpeechEvent.Type.STARTED, text, u.startNanos - queuedNanos));
+            started.add(u);
         } catch (IOException e) {
             System.err.println("[Error in SpeechSynthesis]");
             System.err.println(" -- I/O exception raised from play()");
             System.err.println(" -- bad permissions, directory?");
         }
     }
-    
+
     /**
      * Stops the current sound being played.
      * <p>
      * Result predictable only if a single JVM is being run.
      */
     public static void stop() {
-        if (curr_speech != null) {
+        Utterance u = curr_speech;
+        if (u != null) {
+            if (u.process.isAlive()) {
+                u.preempted = true;
+                SpeechEventBus.publish(new SpeechEvent(SpeechEvent.Type.PREEMPTED, u.text,
+                        System.nanoTime() - u.startNanos));
+            }
             try {
                 Process p = (new ProcessBuilder(stopdir, "pico2wave")).start();
                 while (p.isAlive()) {
@@ -84,18 +111,47 @@ public class SpeechSynthesis {
      * Needed for correctly implementing MessageHandler.
      */
      public static boolean anythingPlaying() {
-        return curr_speech != null && curr_speech.isAlive();
+        Utterance u = curr_speech;
+        return u != null && u.process.isAlive();
      }
- 
+
     public static void addSpeechListener(SpeechListener sl){
-        if(!listeners.contains(sl)){
-            listeners.add(sl);
-        }
+        SpeechEventBus.subscribe(sl);
     }
 
     public static void removeSpeechListener(SpeechListener sl){
-    listeners.remove(sl);
+        SpeechEventBus.unsubscribe(sl);
     }
-}
 
+    /**
+     * Waits for each started utterance to end in turn, and publishes a
+     * {@code FINISHED} event for those which were not preempted.
+     */
+    private static void monitorUtterances() {
+        while (true) {
+            try {
+                Utterance u = started.take();
+                u.process.waitFor();
+                if (!u.preempted) {
+                    SpeechEventBus.publish(new SpeechEvent(SpeechEvent.Type.FINISHED, u.text,
+                            System.nanoTime() - u.startNanos));
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class Utterance {
+        final Process process;
+        final String text;
+        final long startNanos;
+        volatile boolean preempted = false;
 
+        Utterance(Process process, String text, long startNanos) {
+            this.process = process;
+            this.text = text;
+            this.startNanos = startNanos;
+        }
+    }
+}
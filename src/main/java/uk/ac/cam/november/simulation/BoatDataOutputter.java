@@ -6,112 +6,186 @@ import uk.ac.cam.november.packet.Packet;
 
 /**
  * This class controls the rate at which messages are output from the simulator.
- * 
+ * <p>
+ * Each sensor sends at its own rate, set with
+ * -Dsbs.sensorRates=&lt;sensor&gt;:&lt;Hz&gt;,... for the sensors heading,
+ * wind, depth, speed and gps, e.g. {@code heading:10,wind:4} as real
+ * instruments do. Sensors not listed send once a second. A
+ * {@link SensorScheduler} keeps the readings on time, independent of the
+ * simulation step: each reading is stamped with the time it was due, and
+ * heading and position are interpolated to that time.
+ *
  * @author Jamie Wood
  *
  */
 public class BoatDataOutputter {
 
+    /** Default interval of each sensor, in ms */
     public static final int COMPASS_INTERVAL = 1000;
     public static final int WIND_INTERVAL = 1000;
     public static final int DEPTH_INTERVAL = 1000;
     public static final int SPEED_INTERVAL = 1000;
     public static final int GPS_INTERVAL = 1000;
 
-    private long lastCompassTime = System.currentTimeMillis();
-    private long lastWindTime = System.currentTimeMillis();
-    private long lastDepthTime = System.currentTimeMillis();
-    private long lastSpeedTime = System.currentTimeMillis();
-    private long lastGPSTime = System.currentTimeMillis();
+    /** Sensor names, in the order of {@link #defaultRates()} */
+    public static final String[] SENSORS = ImpairedPacketSink.SENSORS;
+    private static final int COMPASS = 0;
+    private static final int WIND = 1;
+    private static final int DEPTH = 2;
+    private static final int SPEED = 3;
+    private static final int GPS = 4;
+
+    private final SensorScheduler scheduler;
 
     private Simulator simulator;
+    private SimClock clock;
 
-    public BoatDataOutputter(Simulator sim) {
-        this.simulator = sim;
+    public BoatDataOutputter(Simulator sim, SimClock clock) {
+        this(sim, clock, parseRates(System.getProperty("sbs.sensorRates", "")));
     }
 
     /**
-     * Checks internal time-stamps, and outputs any packets which are due.
+     * @param rates Readings per second of each sensor, in the order of
+     *            {@link #SENSORS}.
      */
-    public void update() throws IOException {
-        long nowTime = System.currentTimeMillis();
-        if (lastCompassTime + COMPASS_INTERVAL < nowTime) {
-            outputCompassPacket();
-            lastCompassTime = nowTime;
-        }
-        if (lastWindTime + WIND_INTERVAL < nowTime) {
-            outputWindPacket();
-            lastWindTime = nowTime;
+    public BoatDataOutputter(Simulator sim, SimClock clock, double[] rates) {
+        this.simulator = sim;
+        this.clock = clock;
+        scheduler = new SensorScheduler(clock.currentTimeMillis());
+        for (int s = 0; s < rates.length; s++) {
+            scheduler.add(s, rates[s]);
         }
-        if (lastDepthTime + DEPTH_INTERVAL < nowTime) {
-            outputDepthPacket();
-            lastDepthTime = nowTime;
+    }
+
+    /**
+     * Returns the rates of the sensors, in Hz, if none are configured.
+     */
+    public static double[] defaultRates() {
+        return new double[] { 1000.0 / COMPASS_INTERVAL, 1000.0 / WIND_INTERVAL, 1000.0 / DEPTH_INTERVAL,
+                1000.0 / SPEED_INTERVAL, 1000.0 / GPS_INTERVAL };
+    }
+
+    /**
+     * Parses a list of sensor rates, such as {@code heading:10,wind:4}, over
+     * the default rates.
+     *
+     * @throws IllegalArgumentException If the list is malformed.
+     */
+    public static double[] parseRates(String spec) {
+        double[] rates = defaultRates();
+        if (spec.trim().isEmpty()) {
+            return rates;
         }
-        if (lastSpeedTime + SPEED_INTERVAL < nowTime) {
-            outputSpeedPacket();
-            lastSpeedTime = nowTime;
+        for (String item : spec.split(",")) {
+            String[] parts = item.trim().split(":");
+            int sensor = -1;
+            for (int s = 0; s < SENSORS.length; s++) {
+                if (SENSORS[s].equalsIgnoreCase(parts[0])) {
+                    sensor = s;
+                }
+            }
+            if (sensor < 0 || parts.length != 2) {
+                throw new IllegalArgumentException("Bad sensor rate: " + item);
+            }
+            try {
+                rates[sensor] = Double.parseDouble(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad sensor rate: " + item, e);
+            }
         }
-        if (lastGPSTime + GPS_INTERVAL < nowTime) {
-            outputGPSPacket();
-            lastGPSTime = nowTime;
+        return rates;
+    }
+
+    /**
+     * Outputs the packets of every reading which has fallen due by the
+     * simulator's clock since the last update.
+     */
+    public void update() throws IOException {
+        long nowTime = clock.currentTimeMillis();
+        int sensor;
+        while ((sensor = scheduler.next(nowTime)) >= 0) {
+            long due = scheduler.getDueMicros();
+            // how far through the last step the reading was due
+            float alpha = 1f - (nowTime * 1000 - due) / (Simulator.STEP * 1000f);
+            alpha = Math.max(0f, Math.min(1f, alpha));
+            Packet m;
+            switch (sensor) {
+            case COMPASS:
+                m = createCompassPacket(alpha);
+                break;
+            case WIND:
+                m = createWindPacket();
+                break;
+            case DEPTH:
+                m = createDepthPacket();
+                break;
+            case SPEED:
+                m = createSpeedPacket();
+                break;
+            case GPS:
+            default:
+                m = createGPSPacket(alpha);
+                break;
+            }
+            simulator.queueMessage(m, Math.floorDiv(due, 1000));
         }
     }
 
     /**
-     * Create and output a vessel-heading packet, containing the current boat
-     * heading from the world model.
+     * Create a vessel-heading packet, containing the boat heading from the
+     * world model.
      */
-    private void outputCompassPacket() throws IOException {
+    private Packet createCompassPacket(float alpha) {
         WorldModel worldModel = simulator.getWorldModel();
-        Packet m = DataGenerator.generateVesselHeadingPacket(worldModel.getHeading());
-        simulator.queueMessage(m);
+        float heading = worldModel.getHeading(alpha);
+        if (heading < 0f)
+            heading += 360.0f;
+        if (heading >= 360f)
+            heading -= 360.0f;
+        return DataGenerator.generateVesselHeadingPacket(heading);
     }
 
     /**
-     * Create and output a wind-data packet, containing the wind speed and angle
-     * from the world model.
+     * Create a wind-data packet, containing the wind speed and angle from the
+     * world model.
      */
-    private void outputWindPacket() throws IOException {
+    private Packet createWindPacket() {
         WorldModel worldModel = simulator.getWorldModel();
         float angle = worldModel.getWindAngle() - worldModel.getHeading();
         if (angle < 0f)
             angle += 360.0f;
         if (angle > 360f)
             angle -= 360.0f;
-        Packet m = DataGenerator.generateWindDataPacket(worldModel.getWindSpeed(), angle);
-        simulator.queueMessage(m);
+        return DataGenerator.generateWindDataPacket(worldModel.getWindSpeed(), angle);
     }
 
     /**
-     * Create and output a water-depth packet, containing the current water
-     * depth from the world model.
+     * Create a water-depth packet, containing the current water depth from
+     * the world model.
      */
-    private void outputDepthPacket() throws IOException {
+    private Packet createDepthPacket() {
         WorldModel worldModel = simulator.getWorldModel();
-        Packet m = DataGenerator.generateWaterDepthPacket(worldModel.getWaterDepth(), 0f);
-        simulator.queueMessage(m);
+        return DataGenerator.generateWaterDepthPacket(worldModel.getWaterDepth(), 0f);
     }
 
     /**
-     * Create and output a vessel-speed packet, containing the current boat
-     * speed from the world model.
+     * Create a vessel-speed packet, containing the current boat speed from
+     * the world model.
      */
-    private void outputSpeedPacket() throws IOException {
+    private Packet createSpeedPacket() {
         WorldModel worldModel = simulator.getWorldModel();
-        Packet m = DataGenerator.generateSpeedPacket(worldModel.getBoatSpeed());
-        simulator.queueMessage(m);
+        return DataGenerator.generateSpeedPacket(worldModel.getBoatSpeed());
     }
 
     /**
-     * Create and output a gnss-position-data packet, containing a
-     * representation of the current boat location from the world model.
+     * Create a gnss-position-data packet, containing a representation of the
+     * boat location from the world model.
      */
-    private void outputGPSPacket() throws IOException {
+    private Packet createGPSPacket(float alpha) {
         WorldModel worldModel = simulator.getWorldModel();
-        float lat = -worldModel.getBoatY()/10f;
-        float lon = worldModel.getBoatX()/10f;
-        Packet m = DataGenerator.generateGPSPacket(lat, lon, 0);
-        simulator.queueMessage(m);
+        float lat = -worldModel.getBoatY(alpha)/10f;
+        float lon = worldModel.getBoatX(alpha)/10f;
+        return DataGenerator.generateGPSPacket(lat, lon, 0);
     }
 
 }
@@ -1,10 +1,21 @@
 package uk.ac.cam.november.simulation;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
 
 import javax.imageio.ImageIO;
 
+/**
+ * Depth of the water over the simulated world, interpolated from a
+ * {@link DepthTiles} chart. Each depth map keeps its own small cache of
+ * decoded tiles, so its memory use is set by the area around the boat rather
+ * than by the size of the chart; a depth map should only be used from one
+ * thread.
+ */
 public class DepthMap {
 
     public static final float MIN_DEPTH_BOUNDARY = 0.0f;
@@ -22,7 +33,7 @@ public class DepthMap {
     // waterDepth = MIN_DEPTH_BOUNDARY
     static final float MIN_PIXEL_BOUNDARY = 255.0f;
 
-    public float calculateDepth(final float pixelIntensity) {
+    public static float calculateDepth(final float pixelIntensity) {
         if (pixelIntensity < DEEP_PIXEL_BOUNDARY) {
                 return DEEP_DEPTH_BOUNDARY;
         }
@@ -35,47 +46,179 @@ public class DepthMap {
                (SHALLOW_DEPTH_BOUNDARY - MIN_DEPTH_BOUNDARY) + MIN_DEPTH_BOUNDARY;
     }
 
+    /**
+     * The inverse of {@link #calculateDepth(float)}: the pixel intensity of a
+     * depth map image at the given depth. Depths of DEEP_DEPTH_BOUNDARY or more
+     * give DEEP_PIXEL_BOUNDARY.
+     */
+    public static float calculatePixelIntensity(final float depth) {
+        if (depth >= DEEP_DEPTH_BOUNDARY) {
+            return DEEP_PIXEL_BOUNDARY;
+        }
+        if (depth >= SHALLOW_DEPTH_BOUNDARY) {
+            return SHALLOW_PIXEL_BOUNDARY - ((depth - SHALLOW_DEPTH_BOUNDARY) / (DEEP_DEPTH_BOUNDARY - SHALLOW_DEPTH_BOUNDARY)) *
+                   (SHALLOW_PIXEL_BOUNDARY - DEEP_PIXEL_BOUNDARY);
+        }
+
+        return MIN_PIXEL_BOUNDARY - ((Math.max(depth, MIN_DEPTH_BOUNDARY) - MIN_DEPTH_BOUNDARY) / (SHALLOW_DEPTH_BOUNDARY - MIN_DEPTH_BOUNDARY)) *
+               (MIN_PIXEL_BOUNDARY - SHALLOW_PIXEL_BOUNDARY);
+    }
+
+
 
 
+    /** The bundled depth map image */
+    //private static final String WORLD_IMAGE = "/ui/bonylake_depth.png";
+    private static final String WORLD_IMAGE = "/ui/world_depth.png";
+    /** Tiles converted from the bundled depth map image, used unless -Dsbs.depthTiles names others */
+    private static final String BUNDLED_TILES_FILE = "temp/world_depth.tiles";
 
-    public static final BufferedImage depthMapImage;
+    private static DepthTiles worldTiles;
+
+    private final TileCache cache;
+    /** The tile the last sample fell in, which the next one most likely does too */
+    private int lastTileX = -1;
+    private int lastTileY = -1;
+    private float[] lastTile;
+    private final int tileSize;
+    private final int width;
+    private final int height;
     private double scalex;
     private double scaley;
     private double offsetx;
     private double offsety;
 
-    // Statically initialize the depth map image
-    static {
-        BufferedImage tmp = null;
-        try {
-            //tmp = ImageIO.read(DepthMap.class.getResource("/ui/bonylake_depth.png"));
-            tmp = ImageIO.read(DepthMap.class.getResource("/ui/world_depth.png"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        depthMapImage = tmp;
+    /**
+     * Creates a depth map over the world chart.
+     *
+     * @throws IOException If the chart can neither be opened nor converted.
+     */
+    public DepthMap(double scalex, double scaley) throws IOException {
+        this(getWorldTiles(), scalex, scaley);
     }
 
-    public DepthMap(double scalex, double scaley) throws IOException {
+    /**
+     * Creates a depth map over a grid of depths, given row by row.
+     */
+    DepthMap(float[] depths, int width, int height, double scalex, double scaley) {
+        this(wrap(DepthTiles.encode(depths, width, height, DepthTiles.DEFAULT_TILE_SIZE)), scalex, scaley);
+    }
+
+    /**
+     * Creates a depth map over a tiled chart, with its own cache of tiles.
+     */
+    DepthMap(DepthTiles tiles, double scalex, double scaley) {
+        this.cache = new TileCache(tiles);
+        this.tileSize = tiles.getTileSize();
+        this.width = tiles.getWidth();
+        this.height = tiles.getHeight();
         this.scalex = scalex;
         this.scaley = scaley;
-        double w = scalex * depthMapImage.getWidth();
-        double h = scaley * depthMapImage.getHeight();
+        double w = scalex * width;
+        double h = scaley * height;
         offsetx = w / 2;
         offsety = h / 2;
     }
 
+    /**
+     * Returns the world chart, shared by every depth map over it. A tile file
+     * named with {@code -Dsbs.depthTiles}, such as a regional chart, is used
+     * as it is. Otherwise the tiles converted from the bundled depth map image
+     * are used, and converted again when the image changes.
+     */
+    public static synchronized DepthTiles getWorldTiles() throws IOException {
+        if (worldTiles == null) {
+            String configured = System.getProperty("sbs.depthTiles");
+            if (configured != null) {
+                worldTiles = openTiles(new File(configured));
+            } else {
+                worldTiles = openBundledTiles(new File(BUNDLED_TILES_FILE), DepthMap.class.getResource(WORLD_IMAGE));
+            }
+        }
+        return worldTiles;
+    }
+
+    /**
+     * Memory-maps a tile file named with {@code -Dsbs.depthTiles}. It is never
+     * converted again; only if it does not exist yet is the bundled depth map
+     * image converted into it.
+     */
+    static DepthTiles openTiles(File file) throws IOException {
+        if (!file.exists()) {
+            return convert(file, DepthMap.class.getResource(WORLD_IMAGE), 0L, 0L);
+        }
+        return DepthTiles.open(file);
+    }
+
+    /**
+     * Memory-maps the tile file of a bundled depth map image, converting the
+     * image into it if it does not exist yet, or if it was converted from an
+     * image of a different size or modification time, or by a different
+     * version. When the tiles are up to date the image is not read at all.
+     */
+    static DepthTiles openBundledTiles(File file, URL image) throws IOException {
+        URLConnection source = image.openConnection();
+        long size = source.getContentLengthLong();
+        long lastModified = source.getLastModified();
+        source.getInputStream().close();
+
+        if (file.exists()) {
+            try {
+                DepthTiles tiles = DepthTiles.open(file);
+                if (tiles.isFrom(size, lastModified)) {
+                    return tiles;
+                }
+                System.err.println(file + " is out of date, converting the depth map again");
+            } catch (IOException e) {
+                System.err.println("Could not open " + file + ", converting the depth map again: " + e.getMessage());
+            }
+        }
+        return convert(file, image, size, lastModified);
+    }
+
+    /**
+     * Converts a depth map image into a tile file and maps it. If the file
+     * cannot be written, the converted chart is kept on the heap instead.
+     */
+    private static DepthTiles convert(File file, URL image, long size, long lastModified) throws IOException {
+        BufferedImage depths = ImageIO.read(image);
+        if (depths == null) {
+            throw new IOException("Depth map is not an image");
+        }
+        ByteBuffer encoded = DepthTiles.encode(depths, DepthTiles.DEFAULT_TILE_SIZE);
+        DepthTiles.setSource(encoded, size, lastModified);
+        try {
+            DepthTiles.write(encoded, file);
+            return DepthTiles.open(file);
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + ", keeping the depth map in memory: " + e.getMessage());
+            return DepthTiles.wrap(encoded);
+        }
+    }
+
+    private static DepthTiles wrap(ByteBuffer encoded) {
+        try {
+            return DepthTiles.wrap(encoded);
+        } catch (IOException e) {
+            // Should not reach here: the buffer was just encoded
+            throw new IllegalStateException(e);
+        }
+    }
+
     int getMapWidth() {
-        return depthMapImage.getWidth();
+        return width;
     }
     
     int getMapHeight() {
-        return depthMapImage.getHeight();
+        return height;
     }
 
     /**
      * Interpolate the depth map to produce a float depth at the given
-     * coordinates.
+     * coordinates. The depth of each pixel is taken to be at its centre, and
+     * points between the outermost pixel centres and the edge of the map, or
+     * beyond it, see the depth at the edge. Only the tiles around the point
+     * are read.
      *
      * @param x
      *            The x-coordinate at which to perform the calculation. 0 is the
@@ -87,48 +230,84 @@ public class DepthMap {
      *         MIN_DEPTH and MAX_DEPTH;
      */
     public float getDepth(float x, float y) {
-        // 0) Extracting pixel from png image
-
-        // Pixel coordinates of the point in the depth map
-        double pixelx = (x * scalex) + offsetx;
-        double pixely = (y * scaley) + offsety;
-        // Fractional pixel values, used for interpolation
-        double ix = pixelx - (int) pixelx;
-        double iy = pixely - (int) pixely;
-        // pixel shifts to get next values
-        int shiftx = pixelx < (depthMapImage.getHeight() - 1) ? 1 : 0;
-        int shifty = pixely < (depthMapImage.getHeight() - 1) ? 1 : 0;
-        // If we should be looking at the next pixel over, move over 1
-        if (ix > 0.5) {
-            pixelx += pixelx > 1 ? -1 : 0;
+        // Pixel coordinates of the point, relative to the pixel centres
+        double pixelx = (x * scalex) + offsetx - 0.5;
+        double pixely = (y * scaley) + offsety - 0.5;
+        if (pixelx < 0) {
+            pixelx = 0;
+        } else if (pixelx > width - 1) {
+            pixelx = width - 1;
+        }
+        if (pixely < 0) {
+            pixely = 0;
+        } else if (pixely > height - 1) {
+            pixely = height - 1;
         }
-        if (iy > 0.5) {
-            pixely += pixely > 1 ? -1 : 0;
+        int x0 = (int) pixelx;
+        int y0 = (int) pixely;
+        // Fractional pixel values, used for interpolation
+        float ix = (float) (pixelx - x0);
+        float iy = (float) (pixely - y0);
+        // next pixel over, none on the last row or column
+        int x1 = x0 < width - 1 ? x0 + 1 : x0;
+        int y1 = y0 < height - 1 ? y0 + 1 : y0;
+
+        float d00;
+        float d10;
+        float d01;
+        float d11;
+        int tx = x0 / tileSize;
+        int ty = y0 / tileSize;
+        if (x1 / tileSize == tx && y1 / tileSize == ty) {
+            // all four pixels in one tile
+            if (tx != lastTileX || ty != lastTileY) {
+                lastTile = cache.getTile(0, tx, ty);
+                lastTileX = tx;
+                lastTileY = ty;
+            }
+            float[] tile = lastTile;
+            int i = (y0 - ty * tileSize) * tileSize + (x0 - tx * tileSize);
+            int dx = x1 - x0;
+            int dy = (y1 - y0) * tileSize;
+            d00 = tile[i];
+            d10 = tile[i + dx];
+            d01 = tile[i + dy];
+            d11 = tile[i + dy + dx];
+        } else {
+            // other tiles may evict the last one
+            lastTileX = -1;
+            d00 = pixel(x0, y0);
+            d10 = pixel(x1, y0);
+            d01 = pixel(x0, y1);
+            d11 = pixel(x1, y1);
         }
-        // Sum of pixel values
-        double v1 = getGrayscale(depthMapImage.getRGB((int) pixelx, (int) pixely)) * (1 - ix) * (1 - iy);
-        double v2 = getGrayscale(depthMapImage.getRGB((int) pixelx, (int) (pixely + shifty))) * (1 - ix) * iy;
-        double v3 = getGrayscale(depthMapImage.getRGB((int) (pixelx + shiftx), (int) pixely)) * ix * (1 - iy);
-        double v4 = getGrayscale(depthMapImage.getRGB((int) (pixelx + shiftx), (int) (pixely + shifty))) * ix * iy;
-
-        // 1) We will now calculate water depth based on this pixel value
-        double pixelIntensity = (v1 + v2 + v3 + v4);
-        return calculateDepth((float) pixelIntensity);
+        float top = d00 + (d10 - d00) * ix;
+        float bottom = d01 + (d11 - d01) * ix;
+        return top + (bottom - top) * iy;
     }
 
     /**
-     * Calculate the average of the R, G and B channels of the pixel, given in
-     * ARGB format.
+     * Interpolates the depth at many points at once, as {@link #getDepth(float, float)}.
      *
-     * @param pixelColor
-     *            integer color in ARGB format.
-     * @return a double grayscale value.
+     * @param xs
+     *            The x-coordinates of the points.
+     * @param ys
+     *            The y-coordinates of the points.
+     * @param out
+     *            Receives the depths, in meters.
+     * @param n
+     *            The number of points.
      */
-    private double getGrayscale(int pixelColor) {
-        int r = (pixelColor >> 16) & 0xff;
-        int g = (pixelColor >> 8) & 0xff;
-        int b = pixelColor & 0xff;
-        return (double) (r + g + b) / 3.0;
+    public void getDepths(float[] xs, float[] ys, float[] out, int n) {
+        for (int k = 0; k < n; k++) {
+            out[k] = getDepth(xs[k], ys[k]);
+        }
+    }
+
+    private float pixel(int x, int y) {
+        int tx = x / tileSize;
+        int ty = y / tileSize;
+        return cache.getTile(0, tx, ty)[(y - ty * tileSize) * tileSize + (x - tx * tileSize)];
     }
 
 }
@@ -0,0 +1,376 @@
+package uk.ac.cam.november.simulation;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.imageio.ImageIO;
+
+/**
+ * A read-only depth chart, cut into square tiles and stored in a binary file
+ * which is memory-mapped rather than loaded. Besides the full resolution
+ * chart, the file holds a mipmap pyramid: each level halves the resolution of
+ * the one before, down to a level which fits in a single tile, so a zoomed out
+ * view reads as few tiles as a zoomed in one.
+ * <p>
+ * Depths are stored as unsigned 16-bit centimeters, so charts of any size only
+ * take address space; the operating system pages in the tiles which are read.
+ * Use a {@link TileCache} to decode tiles into floats.
+ * <p>
+ * The file is laid out in little-endian order:
+ *
+ * <pre>
+ * header     magic, version, width, height, tile size, levels (6 ints),
+ *            source size, source modification time (2 longs)
+ * level 0    tiles in row order, each tile size * tile size shorts in row order
+ * level 1..  the same, at half the resolution of the level before
+ * </pre>
+ *
+ * Tiles on the right and bottom edges are padded by repeating the last column
+ * and row of the chart.
+ */
+public class DepthTiles {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private static final int MAGIC = 0x31545044; // "DPT1"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 40;
+
+    /** Depths are stored in units of this many meters */
+    private static final float DEPTH_UNIT = 0.01f;
+    private static final float MAX_DEPTH = 0xffff * DEPTH_UNIT;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final long sourceSize;
+    private final long sourceModified;
+    private final ShortBuffer[] levels;
+
+    private DepthTiles(ByteBuffer header, ShortBuffer[] levels) {
+        this.width = header.getInt(8);
+        this.height = header.getInt(12);
+        this.tileSize = header.getInt(16);
+        this.sourceSize = header.getLong(24);
+        this.sourceModified = header.getLong(32);
+        this.levels = levels;
+    }
+
+    /**
+     * Memory-maps a tile file. Each level is mapped separately, so the file
+     * may be larger than a single mapping allows.
+     *
+     * @throws IOException If the file cannot be read or is not a tile file.
+     */
+    public static DepthTiles open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a depth tile file");
+            }
+            channel.read(header, 0);
+            int levelCount = checkHeader(header, channel.size());
+            ShortBuffer[] levels = new ShortBuffer[levelCount];
+            long pos = HEADER_SIZE;
+            for (int l = 0; l < levelCount; l++) {
+                long size = levelBytes(header, l);
+                // the mapping stays valid after the channel is closed
+                levels[l] = channel.map(FileChannel.MapMode.READ_ONLY, pos, size).order(ByteOrder.LITTLE_ENDIAN)
+                        .asShortBuffer();
+                pos += size;
+            }
+            return new DepthTiles(header, levels);
+        }
+    }
+
+    /**
+     * Reads a tile file from a buffer holding the whole file.
+     */
+    public static DepthTiles wrap(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Not a depth tile file");
+        }
+        int levelCount = checkHeader(buffer, buffer.capacity());
+        ShortBuffer[] levels = new ShortBuffer[levelCount];
+        int pos = HEADER_SIZE;
+        for (int l = 0; l < levelCount; l++) {
+            int size = (int) levelBytes(buffer, l);
+            ByteBuffer b = buffer.duplicate();
+            b.position(pos);
+            b.limit(pos + size);
+            levels[l] = b.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            pos += size;
+        }
+        return new DepthTiles(buffer, levels);
+    }
+
+    /**
+     * Encodes a chart as a tile file, ready for {@link #wrap(ByteBuffer)} or
+     * to be written out. The whole file is built in memory, so very large
+     * charts should be converted on a machine with room for them.
+     *
+     * @param depths Depth of every point of the chart in meters, row by row.
+     * @param width Width of the chart.
+     * @param height Height of the chart.
+     * @param tileSize Width and height of a tile.
+     */
+    public static ByteBuffer encode(float[] depths, int width, int height, int tileSize) {
+        if (depths.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " depths, got " + depths.length);
+        }
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Chart and tile sizes must be positive");
+        }
+        int levelCount = levelCount(width, height, tileSize);
+        long size = HEADER_SIZE;
+        for (int l = 0; l < levelCount; l++) {
+            size += levelBytes(width, height, tileSize, l);
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Chart too large to encode in memory");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(tileSize).putInt(levelCount);
+        buffer.position(HEADER_SIZE);
+
+        // centimeters of the current level, which is halved for the next
+        int[] level = new int[width * height];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = Math.round(Math.max(0f, Math.min(MAX_DEPTH, depths[i])) / DEPTH_UNIT);
+        }
+        int w = width;
+        int h = height;
+        for (int l = 0; l < levelCount; l++) {
+            putTiles(buffer, level, w, h, tileSize);
+            if (l + 1 < levelCount) {
+                int nw = (w + 1) / 2;
+                int nh = (h + 1) / 2;
+                int[] next = new int[nw * nh];
+                for (int y = 0; y < nh; y++) {
+                    int y0 = 2 * y;
+                    int y1 = Math.min(y0 + 1, h - 1);
+                    for (int x = 0; x < nw; x++) {
+                        int x0 = 2 * x;
+                        int x1 = Math.min(x0 + 1, w - 1);
+                        next[y * nw + x] = (level[y0 * w + x0] + level[y0 * w + x1] + level[y1 * w + x0]
+                                + level[y1 * w + x1] + 2) / 4;
+                    }
+                }
+                level = next;
+                w = nw;
+                h = nh;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encodes a depth map image as a tile file, converting the grey level of
+     * each pixel as {@link DepthMap#calculateDepth(float)} does.
+     */
+    public static ByteBuffer encode(BufferedImage image, int tileSize) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        float[] depths = new float[w * h];
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int c = row[x];
+                float grey = (((c >> 16) & 0xff) + ((c >> 8) & 0xff) + (c & 0xff)) / 3f;
+                depths[y * w + x] = DepthMap.calculateDepth(grey);
+            }
+        }
+        return encode(depths, w, h, tileSize);
+    }
+
+    /**
+     * Records in an encoded tile file the size and modification time of the
+     * depth map image it was converted from, for {@link #isFrom(long, long)}
+     * to check.
+     */
+    public static void setSource(ByteBuffer encoded, long size, long lastModified) {
+        encoded.order(ByteOrder.LITTLE_ENDIAN);
+        encoded.putLong(24, size);
+        encoded.putLong(32, lastModified);
+    }
+
+    /**
+     * Returns whether the chart was converted from an image of the given size
+     * and modification time.
+     */
+    public boolean isFrom(long size, long lastModified) {
+        return sourceSize == size && sourceModified == lastModified;
+    }
+
+    /**
+     * Writes an encoded tile file. The file is replaced in one step, so a
+     * chart being read is never seen half written.
+     */
+    public static void write(ByteBuffer encoded, File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer b = encoded.duplicate();
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Width of the chart at full resolution.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Height of the chart at full resolution.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Returns the number of levels, including the full resolution level 0.
+     */
+    public int getLevels() {
+        return levels.length;
+    }
+
+    public int getLevelWidth(int level) {
+        return levelSize(width, level);
+    }
+
+    public int getLevelHeight(int level) {
+        return levelSize(height, level);
+    }
+
+    public int getTilesAcross(int level) {
+        return (getLevelWidth(level) + tileSize - 1) / tileSize;
+    }
+
+    public int getTilesDown(int level) {
+        return (getLevelHeight(level) + tileSize - 1) / tileSize;
+    }
+
+    /**
+     * Decodes a tile into depths in meters.
+     *
+     * @param out Receives tile size * tile size depths, row by row.
+     */
+    public void readTile(int level, int tileX, int tileY, float[] out) {
+        ShortBuffer data = levels[level];
+        int n = tileSize * tileSize;
+        int start = (tileY * getTilesAcross(level) + tileX) * n;
+        for (int i = 0; i < n; i++) {
+            out[i] = (data.get(start + i) & 0xffff) * DEPTH_UNIT;
+        }
+    }
+
+    private static int checkHeader(ByteBuffer header, long fileSize) throws IOException {
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a depth tile file");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported depth tile file version: " + header.getInt(4));
+        }
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        int tileSize = header.getInt(16);
+        int levelCount = header.getInt(20);
+        if (width <= 0 || height <= 0 || tileSize <= 0 || levelCount != levelCount(width, height, tileSize)) {
+            throw new IOException("Corrupt depth tile file header");
+        }
+        long size = HEADER_SIZE;
+        for (int l = 0; l < levelCount; l++) {
+            size += levelBytes(header, l);
+        }
+        if (fileSize != size) {
+            throw new IOException("Truncated depth tile file");
+        }
+        return levelCount;
+    }
+
+    private static long levelBytes(ByteBuffer header, int level) {
+        return levelBytes(header.getInt(8), header.getInt(12), header.getInt(16), level);
+    }
+
+    private static long levelBytes(int width, int height, int tileSize, int level) {
+        long across = (levelSize(width, level) + tileSize - 1) / tileSize;
+        long down = (levelSize(height, level) + tileSize - 1) / tileSize;
+        return across * down * tileSize * tileSize * 2;
+    }
+
+    private static int levelCount(int width, int height, int tileSize) {
+        int levels = 1;
+        while (levelSize(width, levels - 1) > tileSize || levelSize(height, levels - 1) > tileSize) {
+            levels++;
+        }
+        return levels;
+    }
+
+    private static int levelSize(int size, int level) {
+        return (int) (((long) size + (1L << level) - 1) >> level);
+    }
+
+    private static void putTiles(ByteBuffer buffer, int[] level, int w, int h, int tileSize) {
+        int across = (w + tileSize - 1) / tileSize;
+        int down = (h + tileSize - 1) / tileSize;
+        for (int ty = 0; ty < down; ty++) {
+            for (int tx = 0; tx < across; tx++) {
+                for (int y = 0; y < tileSize; y++) {
+                    int row = Math.min(ty * tileSize + y, h - 1) * w;
+                    for (int x = 0; x < tileSize; x++) {
+                        buffer.putShort((short) level[row + Math.min(tx * tileSize + x, w - 1)]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a depth map image to a tile file.
+     * <p>
+     * Usage: {@code DepthTiles <out.tiles> <image.png> [tile size]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DepthTiles <out.tiles> <image.png> [tile size]");
+            System.exit(1);
+        }
+        File source = new File(args[1]);
+        BufferedImage image = ImageIO.read(source);
+        if (image == null) {
+            System.err.println("Could not read image " + args[1]);
+            System.exit(1);
+        }
+        int tileSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TILE_SIZE;
+        ByteBuffer encoded = encode(image, tileSize);
+        setSource(encoded, source.length(), source.lastModified());
+        write(encoded, new File(args[0]));
+        System.out.println("Wrote " + image.getWidth() + "x" + image.getHeight() + " chart to " + args[0]);
+    }
+
+}
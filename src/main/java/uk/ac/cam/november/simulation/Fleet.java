@@ -0,0 +1,289 @@
+package uk.ac.cam.november.simulation;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.network.PacketSink;
+
+/**
+ * Many independent simulated boats, for load-testing the decoder and the
+ * {@link uk.ac.cam.november.simulation.network.SimulatorServer
+ * SimulatorServer}. Each boat steers itself, wandering at random and turning
+ * back from shallow water, and has its own sensor schedule, started at a
+ * random phase so the fleet's packets are spread out in time.
+ * <p>
+ * The state of the boats is kept in parallel arrays, one entry per boat, and
+ * all boats are stepped together. With {@link #setParallel(boolean)} the
+ * boats are split between the threads of a fork/join pool. Every boat draws
+ * from its own stream of random numbers and only reads the shared wind, so
+ * the fleet moves the same whether it is stepped in parallel or not.
+ * <p>
+ * Packets are sent from one thread, after the step, in boat order. Boat
+ * {@code i} sends with NMEA source address {@code i % 252}, to sink
+ * {@code i % sinks}, so boats can share one stream or have a connection each.
+ */
+public class Fleet {
+
+    /** Highest NMEA 2000 source address a device may claim, plus one */
+    public static final int SOURCE_ADDRESSES = 252;
+
+    private static final int COMPASS = 0;
+    private static final int WIND = 1;
+    private static final int DEPTH = 2;
+    private static final int SPEED = 3;
+    private static final int GPS = 4;
+    private static final int SENSORS = 5;
+    private static final int[] INTERVALS = { BoatDataOutputter.COMPASS_INTERVAL, BoatDataOutputter.WIND_INTERVAL,
+            BoatDataOutputter.DEPTH_INTERVAL, BoatDataOutputter.SPEED_INTERVAL, BoatDataOutputter.GPS_INTERVAL };
+
+    /** Boats per fork/join task */
+    private static final int GRAIN = 256;
+    /** Depth (meters) at which a boat turns back */
+    private static final float SHALLOW_DEPTH = 2f;
+    /** Chance per second that a boat changes its rate of turn */
+    private static final float TURN_CHANCE = 0.05f;
+    /** Largest rate of turn, in degrees per second */
+    private static final float MAX_TURN_RATE = 6f;
+    /** Greatest distance of a boat from the start, in map pixels */
+    private static final float START_SPREAD = 50f;
+
+    private final int size;
+    private final float[] x;
+    private final float[] y;
+    private final float[] heading;
+    private final float[] speed;
+    private final float[] turnRate;
+    private final float[] depth;
+    private final Random[] random;
+    /** Time each sensor of each boat is next due, SENSORS entries per boat */
+    private final long[] due;
+
+    private final WindModel wind;
+    private final SimClock clock;
+    private final PacketSink[] sinks;
+
+    /** Depth maps are not thread-safe, so each stepping thread has its own */
+    private final ThreadLocal<DepthMap> depthMaps = new ThreadLocal<DepthMap>() {
+        @Override
+        protected DepthMap initialValue() {
+            try {
+                return new DepthMap(1.0, 1.0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private volatile boolean parallel = false;
+    private long sent = 0;
+
+    /**
+     * Creates a fleet around a starting position.
+     *
+     * @param size Number of boats.
+     * @param sinks Where the boats send their packets.
+     * @param clock The simulation clock, which stamps the packets.
+     * @param seed Seed of all random numbers in the fleet.
+     */
+    public Fleet(int size, PacketSink[] sinks, SimClock clock, long seed, final float initialLatitude,
+            final float initialLongtitude) {
+        if (sinks.length == 0) {
+            throw new IllegalArgumentException("A fleet needs somewhere to send packets");
+        }
+        this.size = size;
+        this.sinks = sinks;
+        this.clock = clock;
+        x = new float[size];
+        y = new float[size];
+        heading = new float[size];
+        speed = new float[size];
+        turnRate = new float[size];
+        depth = new float[size];
+        random = new Random[size];
+        due = new long[size * SENSORS];
+
+        RandomStreams streams = new RandomStreams(seed);
+        wind = new WindModel(streams.stream("wind"));
+        WorldModel start = new WorldModel(initialLatitude, initialLongtitude);
+        DepthMap map = depthMaps.get();
+        long now = clock.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            Random r = streams.stream("boat-" + i);
+            random[i] = r;
+            // somewhere near the start in deep enough water, or the start itself
+            x[i] = start.getBoatX();
+            y[i] = start.getBoatY();
+            for (int attempt = 0; attempt < 100; attempt++) {
+                float px = start.getBoatX() + START_SPREAD * (2 * r.nextFloat() - 1);
+                float py = start.getBoatY() + START_SPREAD * (2 * r.nextFloat() - 1);
+                if (map.getDepth(px, py) >= SHALLOW_DEPTH) {
+                    x[i] = px;
+                    y[i] = py;
+                    break;
+                }
+            }
+            heading[i] = 360 * r.nextFloat();
+            speed[i] = WorldModel.MAX_BOAT_SPEED * (0.2f + 0.6f * r.nextFloat());
+            depth[i] = map.getDepth(x[i], y[i]);
+            for (int s = 0; s < SENSORS; s++) {
+                due[i * SENSORS + s] = now + r.nextInt(INTERVALS[s]) + 1;
+            }
+        }
+    }
+
+    /**
+     * Sets whether the boats are stepped in parallel, on the common fork/join
+     * pool.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of packets sent so far.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+    public float getBoatX(int boat) {
+        return x[boat];
+    }
+
+    public float getBoatY(int boat) {
+        return y[boat];
+    }
+
+    public float getHeading(int boat) {
+        return heading[boat];
+    }
+
+    public float getWaterDepth(int boat) {
+        return depth[boat];
+    }
+
+    /**
+     * Steps every boat by {@code dt} seconds, then sends the packets which are
+     * due by the clock.
+     */
+    public void step(float dt) throws IOException {
+        wind.step(dt);
+        if (parallel && size > GRAIN) {
+            ForkJoinPool.commonPool().invoke(new StepTask(0, size, dt));
+        } else {
+            stepBoats(0, size, dt);
+        }
+        sendDuePackets(clock.currentTimeMillis());
+        for (PacketSink sink : sinks) {
+            sink.flush();
+        }
+    }
+
+    private void stepBoats(int from, int to, float dt) {
+        DepthMap map = depthMaps.get();
+        for (int i = from; i < to; i++) {
+            Random r = random[i];
+            if (r.nextFloat() < TURN_CHANCE * dt) {
+                turnRate[i] = MAX_TURN_RATE * (2 * r.nextFloat() - 1);
+            }
+            float h = heading[i] + turnRate[i] * dt;
+            h = h < 0 ? h + 360 : (h >= 360 ? h - 360 : h);
+
+            // as WorldModel: 'north' is 'east', one pixel per meter
+            double ang = Math.toRadians(h - 90);
+            float nx = x[i] + (float) (StrictMath.cos(ang) * speed[i] * dt);
+            float ny = y[i] + (float) (StrictMath.sin(ang) * speed[i] * dt);
+            float d = map.getDepth(nx, ny);
+            if (d < SHALLOW_DEPTH) {
+                // stay put and turn back
+                h = h >= 180 ? h - 180 : h + 180;
+                d = map.getDepth(x[i], y[i]);
+            } else {
+                x[i] = nx;
+                y[i] = ny;
+            }
+            heading[i] = h;
+            depth[i] = d;
+        }
+    }
+
+    private void sendDuePackets(long now) throws IOException {
+        Date timestamp = null;
+        for (int i = 0; i < size; i++) {
+            for (int s = 0; s < SENSORS; s++) {
+                int k = i * SENSORS + s;
+                if (due[k] > now) {
+                    continue;
+                }
+                // keep to the schedule, however late this step is
+                do {
+                    due[k] += INTERVALS[s];
+                } while (due[k] <= now);
+
+                if (timestamp == null) {
+                    timestamp = new Date(now);
+                }
+                Packet p = createPacket(i, s);
+                p.setTimestamp(timestamp);
+                p.setSrc(i % SOURCE_ADDRESSES);
+                sinks[i % sinks.length].sendPacket(p);
+                sent++;
+            }
+        }
+    }
+
+    private Packet createPacket(int boat, int sensor) {
+        switch (sensor) {
+        case COMPASS:
+            return DataGenerator.generateVesselHeadingPacket(heading[boat]);
+        case WIND:
+            float angle = wind.getDirection() - heading[boat];
+            if (angle < 0f) {
+                angle += 360.0f;
+            }
+            return DataGenerator.generateWindDataPacket(wind.getSpeed(), angle);
+        case DEPTH:
+            return DataGenerator.generateWaterDepthPacket(Math.min(depth[boat], WorldModel.MAX_WATER_DEPTH), 0f);
+        case SPEED:
+            return DataGenerator.generateSpeedPacket(speed[boat]);
+        case GPS:
+        default:
+            float lat = Math.max(-90f, Math.min(90f, -y[boat] / 10f));
+            float lon = Math.max(-180f, Math.min(180f, x[boat] / 10f));
+            return DataGenerator.generateGPSPacket(lat, lon, 0);
+        }
+    }
+
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final float dt;
+
+        StepTask(int from, int to, float dt) {
+            this.from = from;
+            this.to = to;
+            this.dt = dt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GRAIN) {
+                stepBoats(from, to, dt);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new StepTask(from, mid, dt), new StepTask(mid, to, dt));
+            }
+        }
+    }
+
+}
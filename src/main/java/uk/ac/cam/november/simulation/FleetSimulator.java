@@ -0,0 +1,96 @@
+package uk.ac.cam.november.simulation;
+
+import java.io.IOException;
+
+import uk.ac.cam.november.simulation.network.PacketSink;
+import uk.ac.cam.november.simulation.network.SimulatorClient;
+
+/**
+ * Runs a {@link Fleet} against a {@link uk.ac.cam.november.simulation.network.SimulatorServer
+ * SimulatorServer}, in fixed steps of {@link Simulator#STEP} ms of simulated
+ * time, and prints the rate at which packets are sent once a second.
+ * <p>
+ * The boats either share one connection, sending with distinct NMEA source
+ * addresses, or each have a connection of their own.
+ */
+public class FleetSimulator {
+
+    private static final long STEP_NANOS = Simulator.STEP * 1000000L;
+    /** Longest real time the simulation tries to catch up on at once */
+    private static final long MAX_LAG_NANOS = 250 * 1000000L;
+    private static final long REPORT_INTERVAL_NANOS = 1000000000L;
+
+    private final Fleet fleet;
+    private final SteppedClock clock;
+    private final PacketSink[] sinks;
+
+    /**
+     * Connects a fleet to a server.
+     *
+     * @param server Address of the server.
+     * @param boats Number of boats.
+     * @param perBoat Whether each boat has its own connection.
+     */
+    public FleetSimulator(String server, int boats, boolean perBoat, long seed, final float initialLatitude,
+            final float initialLongtitude) throws IOException {
+        sinks = new PacketSink[perBoat ? boats : 1];
+        for (int i = 0; i < sinks.length; i++) {
+            sinks[i] = new SimulatorClient(null, server);
+        }
+        clock = new SteppedClock(System.currentTimeMillis());
+        fleet = new Fleet(boats, sinks, clock, seed, initialLatitude, initialLongtitude);
+        fleet.setParallel(true);
+    }
+
+    public Fleet getFleet() {
+        return fleet;
+    }
+
+    /**
+     * Runs the fleet until the thread is interrupted.
+     *
+     * @param speedup Simulated seconds per real second.
+     */
+    public void run(double speedup) throws IOException {
+        long previous = System.nanoTime();
+        long lastReport = previous;
+        long reportedSent = 0;
+        long reportedSteps = 0;
+        long steps = 0;
+        long lag = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long now = System.nanoTime();
+                lag = Math.min(lag + (long) ((now - previous) * speedup), (long) (MAX_LAG_NANOS * speedup));
+                previous = now;
+                while (lag >= STEP_NANOS) {
+                    clock.advance(Simulator.STEP);
+                    fleet.step(Simulator.STEP / 1000f);
+                    lag -= STEP_NANOS;
+                    steps++;
+                }
+
+                if (now - lastReport >= REPORT_INTERVAL_NANOS) {
+                    double seconds = (now - lastReport) / 1e9;
+                    System.out.println(String.format("%d boats: %.0f packets/s, %.1fx real time", fleet.size(),
+                            (fleet.getSent() - reportedSent) / seconds,
+                            (steps - reportedSteps) * Simulator.STEP / 1000.0 / seconds));
+                    lastReport = now;
+                    reportedSent = fleet.getSent();
+                    reportedSteps = steps;
+                }
+
+                if (lag < STEP_NANOS) {
+                    Thread.sleep(1);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stop
+        } finally {
+            for (PacketSink sink : sinks) {
+                sink.close();
+            }
+        }
+    }
+
+}
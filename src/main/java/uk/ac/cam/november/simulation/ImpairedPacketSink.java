@@ -0,0 +1,168 @@
+package uk.ac.cam.november.simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.network.PacketSink;
+
+/**
+ * A stage between the simulator and where its packets go, which makes each
+ * sensor behave like a real one: noisy, drifting, sometimes stuck, and
+ * behind a lossy network which delays and reorders packets. Each sensor has
+ * its own chain of {@link Impairment}s, configured by
+ * -Dsbs.impair.&lt;sensor&gt;=&lt;spec&gt; for the sensors heading, wind,
+ * depth, speed and gps (see {@link Impairments} for the spec).
+ * <p>
+ * Delayed packets wait on a timing wheel of {@value #SLOT} ms slots, and are
+ * passed on at the first flush once they are due, so every packet costs the
+ * same however many are waiting. Delays are capped at {@value #MAX_DELAY} ms.
+ */
+public class ImpairedPacketSink implements PacketSink {
+
+    public static final String[] SENSORS = { "heading", "wind", "depth", "speed", "gps" };
+
+    /** Longest a packet can be delayed, in ms */
+    public static final int MAX_DELAY = 10000;
+    /** Time covered by one slot of the timing wheel, in ms */
+    private static final int SLOT = 10;
+
+    private final PacketSink next;
+    private final SimClock clock;
+    /** The impairments of each sensor, in the order of {@link #SENSORS} */
+    private final Impairment[][] impairments = new Impairment[SENSORS.length][];
+
+    private final List<List<Packet>> wheel;
+    /** The first slot of the wheel not yet passed on */
+    private long nextSlot;
+
+    private long dropped = 0;
+    private long delayed = 0;
+
+    public ImpairedPacketSink(PacketSink next, SimClock clock) {
+        this.next = next;
+        this.clock = clock;
+        for (int i = 0; i < SENSORS.length; i++) {
+            impairments[i] = new Impairment[0];
+        }
+        int slots = MAX_DELAY / SLOT + 2;
+        wheel = new ArrayList<List<Packet>>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ArrayList<Packet>());
+        }
+        nextSlot = clock.currentTimeMillis() / SLOT;
+    }
+
+    /**
+     * Wraps a sink in the impairments configured by the sbs.impair.* system
+     * properties, or returns it as it is if there are none.
+     */
+    public static PacketSink fromProperties(PacketSink sink, SimClock clock, RandomStreams random,
+            Properties properties) {
+        ImpairedPacketSink impaired = new ImpairedPacketSink(sink, clock);
+        boolean any = false;
+        for (String sensor : SENSORS) {
+            String spec = properties.getProperty("sbs.impair." + sensor);
+            if (spec != null) {
+                List<Impairment> list = Impairments.parse(sensor, spec, random);
+                impaired.setImpairments(sensor, list.toArray(new Impairment[list.size()]));
+                any |= !list.isEmpty();
+            }
+        }
+        return any ? impaired : sink;
+    }
+
+    /**
+     * Sets the impairments of a sensor, applied in order.
+     */
+    public void setImpairments(String sensor, Impairment... chain) {
+        for (int i = 0; i < SENSORS.length; i++) {
+            if (SENSORS[i].equals(sensor)) {
+                impairments[i] = chain.clone();
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Unknown sensor: " + sensor);
+    }
+
+    /**
+     * Returns the number of packets dropped so far.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Returns the number of packets delayed so far.
+     */
+    public long getDelayed() {
+        return delayed;
+    }
+
+    private static int sensorOf(int pgn) {
+        switch (pgn) {
+        case SensorChannels.PGN_HEADING:
+            return 0;
+        case SensorChannels.PGN_WIND:
+            return 1;
+        case SensorChannels.PGN_DEPTH:
+            return 2;
+        case SensorChannels.PGN_SPEED:
+            return 3;
+        case SensorChannels.PGN_POSITION:
+            return 4;
+        default:
+            return -1;
+        }
+    }
+
+    @Override
+    public void sendPacket(Packet p) throws IOException {
+        int sensor = sensorOf(p.getPgn());
+        if (sensor < 0) {
+            next.sendPacket(p);
+            return;
+        }
+        long now = clock.currentTimeMillis();
+        long due = now;
+        for (Impairment impairment : impairments[sensor]) {
+            due = impairment.apply(p, now, due);
+            if (due == Impairment.DROP) {
+                dropped++;
+                return;
+            }
+        }
+        if (due <= now) {
+            next.sendPacket(p);
+            return;
+        }
+        delayed++;
+        long slot = (Math.min(due, now + MAX_DELAY) + SLOT - 1) / SLOT;
+        wheel.get((int) (slot % wheel.size())).add(p);
+    }
+
+    /**
+     * Passes on the delayed packets which are now due, then flushes the next
+     * sink.
+     */
+    @Override
+    public void flush() throws IOException {
+        long current = clock.currentTimeMillis() / SLOT;
+        for (; nextSlot <= current; nextSlot++) {
+            List<Packet> slot = wheel.get((int) (nextSlot % wheel.size()));
+            for (int i = 0; i < slot.size(); i++) {
+                next.sendPacket(slot.get(i));
+            }
+            slot.clear();
+        }
+        next.flush();
+    }
+
+    @Override
+    public void close() {
+        next.close();
+    }
+
+}
@@ -0,0 +1,31 @@
+package uk.ac.cam.november.simulation;
+
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * One way in which a real sensor, or the network behind it, falls short of
+ * the simulator's perfect values. Impairments are chained per sensor by an
+ * {@link ImpairedPacketSink}: each may change the values of a packet, delay
+ * it, or drop it, and sees the packet as the impairments before it left it.
+ * <p>
+ * An impairment keeps the state of one sensor, such as its bias, and draws
+ * from its own stream of random numbers, so runs with the same seed are
+ * impaired the same way.
+ */
+public interface Impairment {
+
+    /** Returned by {@link #apply(Packet, long, long)} to drop the packet */
+    public static final long DROP = Long.MIN_VALUE;
+
+    /**
+     * Impairs a packet.
+     *
+     * @param p The packet, which may be changed.
+     * @param now The simulation time, in ms.
+     * @param due When the packet is to be delivered so far, in ms.
+     * @return When to deliver the packet, no earlier than {@code due}, or
+     *         {@link #DROP}.
+     */
+    public long apply(Packet p, long now, long due);
+
+}
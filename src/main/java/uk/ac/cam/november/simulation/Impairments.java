@@ -0,0 +1,267 @@
+package uk.ac.cam.november.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * The {@link Impairment}s the simulator knows, and the parser of the spec
+ * which configures them. A spec is a comma-separated list of impairments,
+ * applied in order, each a name followed by its parameters after colons:
+ * <ul>
+ * <li>{@code noise:<sd>} - Gaussian noise of the given standard deviation.</li>
+ * <li>{@code drift:<rate>} - a bias which wanders as a random walk, by
+ * {@code rate} per square root of a second.</li>
+ * <li>{@code quantize:<step>} - values rounded to a multiple of the step.</li>
+ * <li>{@code stuck:<chance>:<seconds>} - with the given chance per packet,
+ * the sensor repeats its last values for a while.</li>
+ * <li>{@code drop:<chance>} - packets lost independently.</li>
+ * <li>{@code burst:<enter>:<leave>} - packets lost in bursts: the chance per
+ * packet of a burst starting, and of it ending.</li>
+ * <li>{@code jitter:<ms>} - packets delayed by up to the given time.</li>
+ * <li>{@code reorder:<chance>:<ms>} - with the given chance, a packet is
+ * held back so those after it overtake it.</li>
+ * </ul>
+ * Values are in the units of the sensor's channels (see
+ * {@link SensorChannels}), e.g. {@code noise:2,quantize:1} on heading, or
+ * {@code noise:5,jitter:300} on gps.
+ */
+public final class Impairments {
+
+    private Impairments() {
+    }
+
+    /**
+     * Parses the impairments of one sensor.
+     *
+     * @param sensor The name of the sensor, used to name its random streams.
+     * @param spec The impairments, as described above.
+     * @param random Where the impairments get their random numbers.
+     * @throws IllegalArgumentException If the spec is malformed.
+     */
+    public static List<Impairment> parse(String sensor, String spec, RandomStreams random) {
+        List<Impairment> impairments = new ArrayList<Impairment>();
+        if (spec.trim().isEmpty()) {
+            return impairments;
+        }
+        String[] items = spec.split(",");
+        for (int i = 0; i < items.length; i++) {
+            String[] parts = items[i].trim().split(":");
+            String name = parts[0].toLowerCase();
+            Random r = random.stream("impair-" + sensor + "-" + i + "-" + name);
+            try {
+                switch (name) {
+                case "noise":
+                    expect(parts, 1);
+                    impairments.add(new GaussianNoise(Float.parseFloat(parts[1]), r));
+                    break;
+                case "drift":
+                    expect(parts, 1);
+                    impairments.add(new BiasDrift(Float.parseFloat(parts[1]), r));
+                    break;
+                case "quantize":
+                    expect(parts, 1);
+                    impairments.add(new Quantization(Float.parseFloat(parts[1])));
+                    break;
+                case "stuck":
+                    expect(parts, 2);
+                    impairments.add(new StuckValue(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), r));
+                    break;
+                case "drop":
+                    expect(parts, 1);
+                    impairments.add(new Dropout(Double.parseDouble(parts[1]), r));
+                    break;
+                case "burst":
+                    expect(parts, 2);
+                    impairments.add(new BurstLoss(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), r));
+                    break;
+                case "jitter":
+                    expect(parts, 1);
+                    impairments.add(new Jitter(Integer.parseInt(parts[1]), r));
+                    break;
+                case "reorder":
+                    expect(parts, 2);
+                    impairments.add(new Reordering(Double.parseDouble(parts[1]), Integer.parseInt(parts[2]), r));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown impairment: " + parts[0]);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad impairment for " + sensor + ": " + items[i], e);
+            }
+        }
+        return impairments;
+    }
+
+    private static void expect(String[] parts, int parameters) {
+        if (parts.length != parameters + 1) {
+            throw new IllegalArgumentException(
+                    "Impairment " + parts[0] + " takes " + parameters + " parameter(s), separated by ':'");
+        }
+    }
+
+    static final class GaussianNoise implements Impairment {
+        private final float sd;
+        private final Random random;
+
+        GaussianNoise(float sd, Random random) {
+            this.sd = sd;
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            for (int c = 0; c < SensorChannels.count(p.getPgn()); c++) {
+                SensorChannels.set(p, c, SensorChannels.get(p, c) + sd * (float) random.nextGaussian());
+            }
+            return due;
+        }
+    }
+
+    static final class BiasDrift implements Impairment {
+        private final float rate;
+        private final Random random;
+        private final float[] bias = new float[2];
+        private long last = Long.MIN_VALUE;
+
+        BiasDrift(float rate, Random random) {
+            this.rate = rate;
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            float scale = last == Long.MIN_VALUE ? 0f : rate * (float) Math.sqrt((now - last) / 1000.0);
+            last = now;
+            for (int c = 0; c < SensorChannels.count(p.getPgn()); c++) {
+                bias[c] += scale * (float) random.nextGaussian();
+                SensorChannels.set(p, c, SensorChannels.get(p, c) + bias[c]);
+            }
+            return due;
+        }
+    }
+
+    static final class Quantization implements Impairment {
+        private final float step;
+
+        Quantization(float step) {
+            if (step <= 0) {
+                throw new IllegalArgumentException("Quantization step must be positive");
+            }
+            this.step = step;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            for (int c = 0; c < SensorChannels.count(p.getPgn()); c++) {
+                SensorChannels.set(p, c, Math.round(SensorChannels.get(p, c) / step) * step);
+            }
+            return due;
+        }
+    }
+
+    static final class StuckValue implements Impairment {
+        private final double chance;
+        private final long duration;
+        private final Random random;
+        private final float[] held = new float[2];
+        private long stuckUntil = Long.MIN_VALUE;
+
+        StuckValue(double chance, double seconds, Random random) {
+            this.chance = chance;
+            this.duration = Math.round(seconds * 1000);
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            int n = SensorChannels.count(p.getPgn());
+            if (now < stuckUntil) {
+                for (int c = 0; c < n; c++) {
+                    SensorChannels.set(p, c, held[c]);
+                }
+            } else {
+                for (int c = 0; c < n; c++) {
+                    held[c] = SensorChannels.get(p, c);
+                }
+                if (random.nextDouble() < chance) {
+                    stuckUntil = now + duration;
+                }
+            }
+            return due;
+        }
+    }
+
+    static final class Dropout implements Impairment {
+        private final double chance;
+        private final Random random;
+
+        Dropout(double chance, Random random) {
+            this.chance = chance;
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            return random.nextDouble() < chance ? DROP : due;
+        }
+    }
+
+    /**
+     * The Gilbert model of burst loss: a good state in which nothing is lost,
+     * and a bad one in which everything is.
+     */
+    static final class BurstLoss implements Impairment {
+        private final double enter;
+        private final double leave;
+        private final Random random;
+        private boolean bad = false;
+
+        BurstLoss(double enter, double leave, Random random) {
+            this.enter = enter;
+            this.leave = leave;
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            bad = bad ? random.nextDouble() >= leave : random.nextDouble() < enter;
+            return bad ? DROP : due;
+        }
+    }
+
+    static final class Jitter implements Impairment {
+        private final int max;
+        private final Random random;
+
+        Jitter(int max, Random random) {
+            this.max = max;
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            return due + random.nextInt(max + 1);
+        }
+    }
+
+    static final class Reordering implements Impairment {
+        private final double chance;
+        private final int delay;
+        private final Random random;
+
+        Reordering(double chance, int delay, Random random) {
+            this.chance = chance;
+            this.delay = delay;
+            this.random = random;
+        }
+
+        @Override
+        public long apply(Packet p, long now, long due) {
+            return random.nextDouble() < chance ? due + delay : due;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package uk.ac.cam.november.simulation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A timed sequence of key presses for a headless simulation. Each line of a
+ * script gives a simulation time in seconds, a control ({@code up},
+ * {@code down}, {@code left} or {@code right}, or the keys {@code w},
+ * {@code s}, {@code a} and {@code d} of the simulator window) and whether it
+ * goes {@code down} or {@code up}. A line {@code <seconds> end} sets how long
+ * the scenario runs; otherwise it ends at the last key event. Blank lines and
+ * lines starting with {@code #} are ignored.
+ *
+ * <pre>
+ * # full speed ahead for ten minutes, then turn to starboard
+ * 0     up     down
+ * 600   up     up
+ * 600   right  down
+ * 610   right  up
+ * 3600  end
+ * </pre>
+ */
+public class InputScript {
+
+    private static final int UP = 0;
+    private static final int DOWN = 1;
+    private static final int LEFT = 2;
+    private static final int RIGHT = 3;
+
+    private final List<Event> events;
+    private final double duration;
+    /** Index of the next event to apply */
+    private int next = 0;
+
+    private InputScript(List<Event> events, double duration) {
+        this.events = events;
+        this.duration = duration;
+    }
+
+    /**
+     * Reads a script.
+     *
+     * @throws IOException If the script cannot be read.
+     * @throws IllegalArgumentException If a line is not understood.
+     */
+    public static InputScript parse(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        List<Event> events = new ArrayList<Event>();
+        double end = -1;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            try {
+                double time = Double.parseDouble(parts[0]);
+                if (time < 0) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": negative time");
+                }
+                if (parts.length == 2 && parts[1].equalsIgnoreCase("end")) {
+                    end = Math.max(end, time);
+                } else if (parts.length == 3) {
+                    events.add(new Event(time, parseControl(parts[1], lineNumber), parseState(parts[2], lineNumber)));
+                } else {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": expected <seconds> <control> <down|up>");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": bad time " + parts[0]);
+            }
+        }
+        // stable, so events at the same time keep their order
+        Collections.sort(events);
+        double last = events.isEmpty() ? 0 : events.get(events.size() - 1).time;
+        return new InputScript(events, Math.max(end, last));
+    }
+
+    /**
+     * Returns the simulation time at which the scenario ends, in seconds.
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * Applies every event up to and including the given time which has not
+     * been applied yet.
+     *
+     * @param time Simulation time, in seconds from the start of the script.
+     */
+    public void apply(double time, SimulatorControls controls) {
+        while (next < events.size() && events.get(next).time <= time) {
+            Event e = events.get(next++);
+            switch (e.control) {
+            case UP:
+                controls.KEY_UP = e.down;
+                break;
+            case DOWN:
+                controls.KEY_DOWN = e.down;
+                break;
+            case LEFT:
+                controls.KEY_LEFT = e.down;
+                break;
+            case RIGHT:
+                controls.KEY_RIGHT = e.down;
+                break;
+            }
+        }
+    }
+
+    private static int parseControl(String s, int lineNumber) {
+        if (s.equalsIgnoreCase("up") || s.equalsIgnoreCase("w")) {
+            return UP;
+        } else if (s.equalsIgnoreCase("down") || s.equalsIgnoreCase("s")) {
+            return DOWN;
+        } else if (s.equalsIgnoreCase("left") || s.equalsIgnoreCase("a")) {
+            return LEFT;
+        } else if (s.equalsIgnoreCase("right") || s.equalsIgnoreCase("d")) {
+            return RIGHT;
+        }
+        throw new IllegalArgumentException("Line " + lineNumber + ": unknown control " + s);
+    }
+
+    private static boolean parseState(String s, int lineNumber) {
+        if (s.equalsIgnoreCase("down")) {
+            return true;
+        } else if (s.equalsIgnoreCase("up")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Line " + lineNumber + ": expected down or up, got " + s);
+    }
+
+    private static class Event implements Comparable<Event> {
+        final double time;
+        final int control;
+        final boolean down;
+
+        Event(double time, int control, boolean down) {
+            this.time = time;
+            this.control = control;
+            this.down = down;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return Double.compare(time, o.time);
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package uk.ac.cam.november.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Independent streams of random numbers, all derived from a single seed. Each
+ * part of the simulation which needs randomness takes its own named stream,
+ * so adding a consumer, or drawing more numbers in one, does not change what
+ * the others see. A scenario run twice with the same seed therefore behaves
+ * the same both times.
+ * <p>
+ * Streams are not thread-safe; each should be used from the simulation thread
+ * only.
+ */
+public class RandomStreams {
+
+    private final long seed;
+    private final Map<String, Random> streams = new HashMap<String, Random>();
+
+    public RandomStreams(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the stream with the given name, creating it on first use.
+     */
+    public Random stream(String name) {
+        Random r = streams.get(name);
+        if (r == null) {
+            r = new Random(mix(seed ^ mix(name.hashCode())));
+            streams.put(name, r);
+        }
+        return r;
+    }
+
+    /**
+     * The SplitMix64 finaliser, so that nearby seeds give unrelated streams.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+}
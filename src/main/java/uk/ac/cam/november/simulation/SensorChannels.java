@@ -0,0 +1,134 @@
+package uk.ac.cam.november.simulation;
+
+import uk.ac.cam.november.packet.Fields;
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * The measured values of the packets the simulator sends, seen as numbered
+ * channels, so an {@link Impairment} can change them without knowing the
+ * PGN. Each channel is in units natural to its sensor: degrees, meters,
+ * meters per second, and for position, meters north and east, so that noise
+ * on a GPS fix is given in meters.
+ */
+final class SensorChannels {
+
+    static final int PGN_HEADING = 127250;
+    static final int PGN_SPEED = 128259;
+    static final int PGN_DEPTH = 128267;
+    static final int PGN_POSITION = 129029;
+    static final int PGN_WIND = 130306;
+
+    private static final double METERS_PER_DEGREE = 111320.0;
+    /** Least a degree of longitude is taken to shrink to, near the poles */
+    private static final double MIN_LONGITUDE_SCALE = Math.cos(Math.toRadians(89.0));
+
+    private SensorChannels() {
+    }
+
+    /**
+     * Returns the PGN of the sensor with the given name, or -1.
+     */
+    static int pgnOf(String sensor) {
+        switch (sensor) {
+        case "heading":
+            return PGN_HEADING;
+        case "speed":
+            return PGN_SPEED;
+        case "depth":
+            return PGN_DEPTH;
+        case "gps":
+            return PGN_POSITION;
+        case "wind":
+            return PGN_WIND;
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of channels of a PGN, 0 if it has none.
+     */
+    static int count(int pgn) {
+        switch (pgn) {
+        case PGN_HEADING:
+        case PGN_SPEED:
+        case PGN_DEPTH:
+            return 1;
+        case PGN_POSITION:
+        case PGN_WIND:
+            return 2;
+        default:
+            return 0;
+        }
+    }
+
+    static float get(Packet p, int channel) {
+        Fields f = p.getFields();
+        switch (p.getPgn()) {
+        case PGN_HEADING:
+            return f.getHeading();
+        case PGN_SPEED:
+            return f.getSpeedWaterReferenced();
+        case PGN_DEPTH:
+            return f.getDepth();
+        case PGN_POSITION:
+            if (channel == 0) {
+                return (float) (f.getLatitude() * METERS_PER_DEGREE);
+            }
+            return (float) (f.getLongtitude() * metersPerDegreeEast(f.getLatitude()));
+        case PGN_WIND:
+            return channel == 0 ? f.getWindSpeed() : f.getWindAngle();
+        default:
+            throw new IllegalArgumentException("No channels in PGN " + p.getPgn());
+        }
+    }
+
+    /**
+     * Sets a channel, keeping it in the range the packet allows: angles are
+     * wrapped, and depths and speeds kept positive.
+     */
+    static void set(Packet p, int channel, float v) {
+        Fields f = p.getFields();
+        switch (p.getPgn()) {
+        case PGN_HEADING:
+            f.setHeading(wrap(v));
+            break;
+        case PGN_SPEED:
+            f.setSpeedWaterReferenced(Math.max(v, 0f));
+            break;
+        case PGN_DEPTH:
+            f.setDepth(Math.max(v, 0f));
+            break;
+        case PGN_POSITION:
+            if (channel == 0) {
+                f.setLatitude((float) Math.max(-90.0, Math.min(90.0, v / METERS_PER_DEGREE)));
+            } else {
+                f.setLongtitude((float) Math.max(-180.0, Math.min(180.0, v / metersPerDegreeEast(f.getLatitude()))));
+            }
+            break;
+        case PGN_WIND:
+            if (channel == 0) {
+                f.setWindSpeed(Math.max(v, 0f));
+            } else {
+                f.setWindAngle(wrap(v));
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("No channels in PGN " + p.getPgn());
+        }
+    }
+
+    /**
+     * Returns the length of a degree of longitude at the given latitude,
+     * which shrinks towards the poles.
+     */
+    private static double metersPerDegreeEast(double latitude) {
+        return METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(latitude)), MIN_LONGITUDE_SCALE);
+    }
+
+    private static float wrap(float degrees) {
+        degrees %= 360f;
+        return degrees < 0f ? degrees + 360f : degrees;
+    }
+
+}
@@ -0,0 +1,101 @@
+package uk.ac.cam.november.simulation;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Decides when each simulated sensor sends, at a rate of its own. The time
+ * each sensor is next due is kept in a priority queue, so the simulator asks
+ * only for the sensors which are due, however many there are and however
+ * fast the simulation steps.
+ * <p>
+ * The n-th reading of a sensor is due exactly n periods after the start,
+ * worked out in microseconds from n rather than by adding up periods, so
+ * rates which do not divide a second, or are faster than the simulation
+ * step, keep to time without drifting. A step which covers several periods
+ * returns a reading for each.
+ */
+public class SensorScheduler {
+
+    /** Fastest a sensor may send, in Hz */
+    public static final double MAX_RATE = 100;
+
+    private static class Entry {
+        final int sensor;
+        final long startMicros;
+        final double periodMicros;
+        long count = 1;
+        long dueMicros;
+
+        Entry(int sensor, long startMicros, double periodMicros) {
+            this.sensor = sensor;
+            this.startMicros = startMicros;
+            this.periodMicros = periodMicros;
+            this.dueMicros = startMicros + Math.round(periodMicros);
+        }
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<Entry>(8, new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.dueMicros != b.dueMicros) {
+                return a.dueMicros < b.dueMicros ? -1 : 1;
+            }
+            return Integer.compare(a.sensor, b.sensor);
+        }
+    });
+
+    private final long startMillis;
+    private long lastDueMicros;
+
+    /**
+     * @param startMillis The time from which the sensors count their periods.
+     */
+    public SensorScheduler(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Adds a sensor, first due one period after the start.
+     *
+     * @param sensor A number for the sensor, returned by {@link #next(long)}.
+     *            Sensors due at the same time are returned lowest first.
+     * @param rate Readings per second, up to {@value #MAX_RATE}.
+     */
+    public void add(int sensor, double rate) {
+        if (!(rate > 0 && rate <= MAX_RATE)) {
+            throw new IllegalArgumentException("Sensor rate must be above 0 and at most " + MAX_RATE + " Hz: " + rate);
+        }
+        queue.add(new Entry(sensor, startMillis * 1000, 1e6 / rate));
+    }
+
+    /**
+     * Returns the next sensor due by the given time, and moves it on to its
+     * next reading. Call repeatedly until it returns -1 to get every reading
+     * due, in time order.
+     *
+     * @param nowMillis The current time.
+     * @return The sensor, or -1 if none is due.
+     */
+    public int next(long nowMillis) {
+        Entry e = queue.peek();
+        if (e == null || e.dueMicros > nowMillis * 1000) {
+            return -1;
+        }
+        queue.poll();
+        lastDueMicros = e.dueMicros;
+        e.count++;
+        e.dueMicros = e.startMicros + Math.round(e.count * e.periodMicros);
+        queue.add(e);
+        return e.sensor;
+    }
+
+    /**
+     * Returns when the reading last returned by {@link #next(long)} was due,
+     * in microseconds since the epoch.
+     */
+    public long getDueMicros() {
+        return lastDueMicros;
+    }
+
+}
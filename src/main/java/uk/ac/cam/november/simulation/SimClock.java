@@ -0,0 +1,16 @@
+package uk.ac.cam.november.simulation;
+
+/**
+ * The source of time for the simulator. The simulator advances its clock by
+ * a fixed step, keeping up with the wall clock when it runs behind its window
+ * and as fast as it can when headless, so everything it sends is stamped with
+ * simulation time.
+ */
+public interface SimClock {
+
+    /**
+     * Returns the current time, in milliseconds since the epoch.
+     */
+    public long currentTimeMillis();
+
+}
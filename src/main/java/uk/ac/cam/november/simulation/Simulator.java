@@ -1,25 +1,50 @@
 package uk.ac.cam.november.simulation;
 
 import java.io.IOException;
+import java.util.Date;
 
 import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.network.PacketSink;
 import uk.ac.cam.november.simulation.network.SimulatorClient;
 import uk.ac.cam.november.simulation.ui.SimulatorUI;
 
 /**
  * This class represents the entry point to the boat simulator which can be used
  * for testing and demonstration of the system.
+ * <p>
+ * The simulator either runs in real time behind its window, sending packets
+ * to a {@link uk.ac.cam.november.simulation.network.SimulatorServer
+ * SimulatorServer}, or headless on a {@link SteppedClock}, playing an
+ * {@link InputScript} as fast as the packets can be taken. Its sensors are
+ * perfect unless impaired through an {@link ImpairedPacketSink}.
  * 
  * @author Jamie Wood
  *
  */
 public class Simulator {
 
+    /** Time step of the simulation, in milliseconds */
+    public static final int STEP = 20;
+    /** Seed of the random numbers, unless set by -Dsbs.seed */
+    public static final long DEFAULT_SEED = 0L;
+    /** Time a headless scenario starts at, so its packets do not depend on when it is run (2016-06-12 UTC) */
+    public static final long HEADLESS_START_TIME = 1465689600000L;
+
+    private static final long STEP_NANOS = STEP * 1000000L;
+    /** Most time the real-time loop catches up on at once, after a stall */
+    private static final long MAX_LAG_NANOS = 250 * 1000000L;
+
     private SimulatorUI ui;
+    private SimulatorControls controls;
     private WorldModel worldModel;
+    private WindModel wind;
     private BoatDataOutputter dataOutput;
+    private SteppedClock clock;
+    private RandomStreams random;
 
-    private SimulatorClient netClient;
+    private PacketSink packetSink;
+    /** The state after each step, for the window to draw */
+    private final WorldSnapshot.Buffer snapshots = new WorldSnapshot.Buffer();
 
     private Thread runThread;
 
@@ -29,12 +54,14 @@ public class Simulator {
      * interface but does not show it.
      */
     public Simulator(String serverAddress, final float initialLatitude, final float initialLongtitude) {
-        worldModel = new WorldModel(initialLatitude, initialLongtitude);
-        dataOutput = new BoatDataOutputter(this);
+        this(new SteppedClock(System.currentTimeMillis()), Long.getLong("sbs.seed", DEFAULT_SEED),
+                initialLatitude, initialLongtitude);
         ui = new SimulatorUI(this);
+        controls = ui.getControls();
 
         try {
-            netClient = new SimulatorClient(ui, serverAddress);
+            packetSink = ImpairedPacketSink.fromProperties(new SimulatorClient(ui, serverAddress), clock, random,
+                    System.getProperties());
         } catch (IOException e) {
             System.err.println("Failed to open connection to simulator server");
             System.err.println("ERROR: " + e.getMessage());
@@ -44,20 +71,53 @@ public class Simulator {
         runThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                long oTime = System.currentTimeMillis();
+                // steps are always STEP long, and the window draws between
+                // them on its own thread, from the published snapshots
+                long previous = System.nanoTime();
+                long lag = 0;
                 while (true) {
-                    long nTime = System.currentTimeMillis();
-                    step((nTime - oTime) / 1000f);
-
-                    oTime = nTime;
+                    long now = System.nanoTime();
+                    lag = Math.min(lag + now - previous, MAX_LAG_NANOS);
+                    previous = now;
+                    while (lag >= STEP_NANOS) {
+                        tick();
+                        lag -= STEP_NANOS;
+                    }
                     try {
-                        Thread.sleep(20);
+                        // until the next step is due
+                        long wait = STEP_NANOS - lag;
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
                     } catch (InterruptedException e) {
                         e.printStackTrace();
                     }
                 }
             }
-        }, "Simulator-UI");
+        }, "Simulator");
+    }
+
+    /**
+     * Constructs a headless simulator, with no user interface. Use
+     * {@link #runHeadless(InputScript)} to run a scenario as fast as the
+     * packets can be taken. The same scenario, start time and seed always
+     * send the same packets.
+     *
+     * @param sink Where to send the generated packets.
+     * @param clock The simulation clock, which the simulator advances.
+     * @param seed Seed of all random numbers in the simulation.
+     */
+    public Simulator(PacketSink sink, SteppedClock clock, long seed, final float initialLatitude,
+            final float initialLongtitude) {
+        this(clock, seed, initialLatitude, initialLongtitude);
+        controls = new SimulatorControls();
+        packetSink = ImpairedPacketSink.fromProperties(sink, clock, random, System.getProperties());
+    }
+
+    private Simulator(SteppedClock clock, long seed, final float initialLatitude, final float initialLongtitude) {
+        random = new RandomStreams(seed);
+        worldModel = new WorldModel(initialLatitude, initialLongtitude);
+        wind = new WindModel(random.stream("wind"));
+        this.clock = clock;
+        dataOutput = new BoatDataOutputter(this, clock);
     }
 
     /**
@@ -65,11 +125,42 @@ public class Simulator {
      */
     public void showUI() {
         ui.setVisible(true);
+        ui.startRendering();
     }
 
     /**
-     * Step the world model by {@code dt} seconds. Also causes the display to be
-     * redrawn.
+     * Runs a scenario on a headless simulator, without waiting between steps.
+     *
+     * @param script The key presses to make, which also sets how long to run.
+     * @return The number of steps taken.
+     */
+    public long runHeadless(InputScript script) {
+        long duration = Math.round(script.getDuration() * 1000);
+        long steps = 0;
+        for (long time = 0; time < duration; time += STEP) {
+            script.apply(time / 1000.0, controls);
+            tick();
+            steps++;
+        }
+        return steps;
+    }
+
+    /**
+     * Advances the simulation by one fixed step.
+     */
+    private void tick() {
+        clock.advance(STEP);
+        wind.step(STEP / 1000f);
+        worldModel.setWindSpeed(wind.getSpeed());
+        worldModel.setWindAngle(wind.getDirection());
+        step(STEP / 1000f);
+        if (ui != null) {
+            snapshots.publish(worldModel);
+        }
+    }
+
+    /**
+     * Step the world model by {@code dt} seconds.
      * 
      * @param dt
      *            Number of seconds to advance time by
@@ -95,13 +186,13 @@ public class Simulator {
     public void step(float dt) {        
         // Dealing with how quickly the boat 
         // should move forwards
-        if (ui.KEY_UP) {
+        if (controls.KEY_UP) {
             worldModel.setBoatSpeed(worldModel.getBoatSpeed() + speedChangeForwards);
             speedChangeForwards += SPEED_ACCELERATION;
         } else {
             speedChangeForwards = NO_CHANGE;
         }
-        if (ui.KEY_DOWN) {
+        if (controls.KEY_DOWN) {
             worldModel.setBoatSpeed(worldModel.getBoatSpeed() - SPEED_DECELARATION);
             speedChangeForwards = NO_CHANGE;
         }
@@ -111,13 +202,13 @@ public class Simulator {
 
         // Dealing with how quickly the boat
         // should rotate left / right
-        if (ui.KEY_LEFT && !ui.KEY_RIGHT) {
+        if (controls.KEY_LEFT && !controls.KEY_RIGHT) {
             headingChange -= HEADING_ACCELERATION;
         }
-        if (!ui.KEY_LEFT && ui.KEY_RIGHT) {
+        if (!controls.KEY_LEFT && controls.KEY_RIGHT) {
             headingChange += HEADING_ACCELERATION;
         }
-        if (!ui.KEY_LEFT && !ui.KEY_RIGHT) {
+        if (!controls.KEY_LEFT && !controls.KEY_RIGHT) {
             final float slowDown = HEADING_ACCELERATION * SLOW_DOWN_RATE;
             if (headingChange > slowDown) {
                 headingChange -= slowDown;
@@ -140,14 +231,13 @@ public class Simulator {
         worldModel.step(dt);
         try{
             dataOutput.update();
+            packetSink.flush();
         }catch(IOException e){
             System.err.println("Failed to write data packet to socket");
             System.err.println("ERROR: " + e.getMessage());
-            netClient.close();
+            packetSink.close();
             throw new RuntimeException("Failed to write data to port");
         }
-        ui.revalidate();
-        ui.repaint();
     }
 
     /**
@@ -160,14 +250,46 @@ public class Simulator {
     }
 
     /**
-     * Adds a message to the output queue.
+     * Returns the snapshots of the world which the simulator publishes after
+     * each step while it has a window.
+     */
+    public WorldSnapshot.Buffer getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Returns the helm controls of the simulated boat.
+     */
+    public SimulatorControls getControls() {
+        return controls;
+    }
+
+    /**
+     * Adds a message to the output queue, time-stamped by the simulator's
+     * clock.
      * 
      * @param p
      *            The message to add.
      */
     public void queueMessage(Packet p) throws IOException {
-        System.out.println("Sending a " + p.getDescription() + " packet at " + p.getTimestamp());
-        netClient.sendPacket(p);
+        queueMessage(p, clock.currentTimeMillis());
+    }
+
+    /**
+     * Adds a message to the output queue, time-stamped with the time it was
+     * measured.
+     *
+     * @param p
+     *            The message to add.
+     * @param time
+     *            The simulation time of the measurement, in ms.
+     */
+    public void queueMessage(Packet p, long time) throws IOException {
+        p.setTimestamp(new Date(time));
+        if (ui != null) {
+            System.out.println("Sending a " + p.getDescription() + " packet at " + p.getTimestamp());
+        }
+        packetSink.sendPacket(p);
     }
 
     /**
@@ -0,0 +1,52 @@
+package uk.ac.cam.november.simulation;
+
+import java.io.IOException;
+
+import uk.ac.cam.november.location.Bathymetry;
+
+/**
+ * The simulator's depth map, seen as a {@link Bathymetry} chart, so that the
+ * decoder can look ahead on the same chart the simulated boat sails on.
+ * <p>
+ * The simulator reports positions of 10 map pixels per degree (see
+ * {@link BoatDataOutputter}) and moves the boat one pixel for every meter it
+ * travels, so chart units are pixels with y pointing north.
+ */
+public class SimulatorChart implements Bathymetry {
+
+    private static final double PIXELS_PER_DEGREE = 10.0;
+
+    private final DepthMap depthMap;
+
+    public SimulatorChart() throws IOException {
+        depthMap = new DepthMap(1.0, 1.0);
+    }
+
+    @Override
+    public double toX(double lat, double lng) {
+        return lng * PIXELS_PER_DEGREE;
+    }
+
+    @Override
+    public double toY(double lat, double lng) {
+        return lat * PIXELS_PER_DEGREE;
+    }
+
+    @Override
+    public double unitLength() {
+        return 1.0;
+    }
+
+    @Override
+    public double sampleSpacing() {
+        return 0.5;
+    }
+
+    @Override
+    public float depthAt(double x, double y) {
+        // the depth map's y axis points south; lines running off the map
+        // see the depth at its edge
+        return depthMap.getDepth((float) x, (float) -y);
+    }
+
+}
@@ -0,0 +1,16 @@
+package uk.ac.cam.november.simulation;
+
+/**
+ * The helm controls of the simulated boat: which of the speed and steering
+ * keys are held down. They are set by the keyboard of the
+ * {@link uk.ac.cam.november.simulation.ui.SimulatorUI SimulatorUI}, or by an
+ * {@link InputScript} when running headless, and read on every step.
+ */
+public class SimulatorControls {
+
+    public volatile boolean KEY_UP;
+    public volatile boolean KEY_DOWN;
+    public volatile boolean KEY_LEFT;
+    public volatile boolean KEY_RIGHT;
+
+}
@@ -0,0 +1,31 @@
+package uk.ac.cam.november.simulation;
+
+/**
+ * A {@link SimClock} which only moves when it is advanced.
+ */
+public class SteppedClock implements SimClock {
+
+    private volatile long millis;
+
+    /**
+     * @param startMillis The time to start at, in milliseconds since the epoch.
+     */
+    public SteppedClock(long startMillis) {
+        this.millis = startMillis;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return millis;
+    }
+
+    /**
+     * Moves the clock forwards.
+     *
+     * @param dtMillis Milliseconds to advance by.
+     */
+    public void advance(long dtMillis) {
+        millis += dtMillis;
+    }
+
+}
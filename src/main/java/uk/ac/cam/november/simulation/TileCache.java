@@ -0,0 +1,73 @@
+package uk.ac.cam.november.simulation;
+
+import java.util.Arrays;
+
+/**
+ * A small least-recently-used cache of decoded {@link DepthTiles} tiles. The
+ * cache holds a fixed number of tile arrays, allocated up front and reused as
+ * tiles are evicted, so its memory use is set by its capacity rather than by
+ * the size of the chart.
+ * <p>
+ * A cache is not thread-safe: each thread sampling a chart should use its own.
+ */
+public class TileCache {
+
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private final DepthTiles tiles;
+    private final long[] keys;
+    private final float[][] data;
+    private final long[] lastUse;
+    private long clock = 0;
+
+    private int misses = 0;
+
+    public TileCache(DepthTiles tiles) {
+        this(tiles, DEFAULT_CAPACITY);
+    }
+
+    public TileCache(DepthTiles tiles, int capacity) {
+        this.tiles = tiles;
+        int n = tiles.getTileSize() * tiles.getTileSize();
+        keys = new long[capacity];
+        data = new float[capacity][n];
+        lastUse = new long[capacity];
+        Arrays.fill(keys, -1);
+    }
+
+    public DepthTiles getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Returns the depths of a tile, in meters, row by row. The array belongs to
+     * the cache and is overwritten once the tile is evicted.
+     */
+    public float[] getTile(int level, int tileX, int tileY) {
+        long key = ((long) level << 56) | ((long) tileY << 28) | tileX;
+        clock++;
+        int oldest = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                lastUse[i] = clock;
+                return data[i];
+            }
+            if (lastUse[i] < lastUse[oldest]) {
+                oldest = i;
+            }
+        }
+        misses++;
+        tiles.readTile(level, tileX, tileY, data[oldest]);
+        keys[oldest] = key;
+        lastUse[oldest] = clock;
+        return data[oldest];
+    }
+
+    /**
+     * Returns the number of tiles decoded so far.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+}
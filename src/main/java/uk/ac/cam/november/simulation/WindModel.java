@@ -0,0 +1,69 @@
+package uk.ac.cam.november.simulation;
+
+import java.util.Random;
+
+/**
+ * A gusty wind for the simulated world. The wind speed and direction each
+ * wander around their mean, drawn back towards it over about a minute (an
+ * Ornstein-Uhlenbeck process), driven by a seeded stream of random numbers.
+ */
+public class WindModel {
+
+    public static final float DEFAULT_MEAN_SPEED = 5f; // meters per second
+    public static final float DEFAULT_MEAN_DIRECTION = 225f; // degrees, from the south-west
+
+    /** Time over which the wind returns to its mean, in seconds */
+    private static final float RELAXATION_TIME = 60f;
+    /** Typical departure of the speed from its mean, in meters per second */
+    private static final float SPEED_SPREAD = 1.5f;
+    /** Typical departure of the direction from its mean, in degrees */
+    private static final float DIRECTION_SPREAD = 10f;
+
+    private final Random random;
+    private final float meanSpeed;
+    private final float meanDirection;
+
+    private float speed;
+    /** Departure of the direction from its mean, in degrees */
+    private float veer = 0f;
+
+    public WindModel(Random random) {
+        this(random, DEFAULT_MEAN_SPEED, DEFAULT_MEAN_DIRECTION);
+    }
+
+    public WindModel(Random random, float meanSpeed, float meanDirection) {
+        this.random = random;
+        this.meanSpeed = meanSpeed;
+        this.meanDirection = meanDirection;
+        this.speed = meanSpeed;
+    }
+
+    /**
+     * Advances the wind by {@code dt} seconds.
+     */
+    public void step(float dt) {
+        float decay = dt / RELAXATION_TIME;
+        float kick = (float) Math.sqrt(2 * decay);
+        speed += (meanSpeed - speed) * decay + SPEED_SPREAD * kick * (float) random.nextGaussian();
+        veer += -veer * decay + DIRECTION_SPREAD * kick * (float) random.nextGaussian();
+        if (speed < 0) {
+            speed = 0;
+        }
+    }
+
+    /**
+     * Returns the true wind speed, in meters per second.
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the true wind direction, in compass degrees.
+     */
+    public float getDirection() {
+        float d = (meanDirection + veer) % 360f;
+        return d < 0 ? d + 360f : d;
+    }
+
+}
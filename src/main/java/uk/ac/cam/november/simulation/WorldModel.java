@@ -25,6 +25,13 @@ public class WorldModel {
     private float boatX;
     private float boatY;
 
+    /** Position and heading before the last step, for drawing between steps */
+    private float previousBoatX;
+    private float previousBoatY;
+    private float previousHeading;
+    /** Heading at the end of the last step; it may be changed between steps */
+    private float steppedHeading;
+
     private DepthMap depthMap;
 
     private ArrayList<StepListener> listeners;
@@ -37,8 +44,10 @@ public class WorldModel {
             e.printStackTrace();
             System.exit(1);
         }
-        boatX = (float) (Math.sin(Math.toRadians(longtitude / 2)) * (depthMap.getMapWidth() / 2));
-        boatY = (float) (Math.sin(Math.toRadians(-latitude)) * (depthMap.getMapHeight() / 2));
+        boatX = (float) (StrictMath.sin(Math.toRadians(longtitude / 2)) * (depthMap.getMapWidth() / 2));
+        boatY = (float) (StrictMath.sin(Math.toRadians(-latitude)) * (depthMap.getMapHeight() / 2));
+        previousBoatX = boatX;
+        previousBoatY = boatY;
     }
 
     /**
@@ -210,21 +219,59 @@ public class WorldModel {
     }
 
     /**
-     * Step the simulation by {@code dt} seconds.
+     * Return the x-coordinate of the boat part of the way through the last
+     * step, for drawing between steps.
+     * 
+     * @param alpha
+     *            How far through the step, from 0 (its start) to 1 (its end).
+     */
+    public float getBoatX(float alpha) {
+        return previousBoatX + (boatX - previousBoatX) * alpha;
+    }
+
+    /**
+     * Return the y-coordinate of the boat part of the way through the last
+     * step, as {@link #getBoatX(float)}.
+     */
+    public float getBoatY(float alpha) {
+        return previousBoatY + (boatY - previousBoatY) * alpha;
+    }
+
+    /**
+     * Return the heading of the boat part of the way through the last step,
+     * turning the short way round, as {@link #getBoatX(float)}.
+     */
+    public float getHeading(float alpha) {
+        float turn = heading - previousHeading;
+        if (turn > 180) {
+            turn -= 360;
+        } else if (turn < -180) {
+            turn += 360;
+        }
+        return previousHeading + turn * alpha;
+    }
+
+    /**
+     * Step the simulation by {@code dt} seconds. The same steps from the same
+     * state always give the same result, on any machine.
      * 
      * @param dt
      *            The number of seconds to advance time by.
      */
     public void step(float dt) {
+        previousBoatX = boatX;
+        previousBoatY = boatY;
+        previousHeading = steppedHeading;
+        steppedHeading = heading;
         // correct for 'north' being 'east'
         double ang = Math.toRadians(heading - 90);
-        boatX += Math.cos(ang) * boatSpeed * (1 * dt);
-        boatY += Math.sin(ang) * boatSpeed * (1 * dt);
+        boatX += StrictMath.cos(ang) * boatSpeed * (1 * dt);
+        boatY += StrictMath.sin(ang) * boatSpeed * (1 * dt);
         waterDepth = depthMap.getDepth(boatX, boatY);
 
         if (waterDepth < 2) {
-            boatX -= Math.cos(ang) * boatSpeed * (1 * dt);
-            boatY -= Math.sin(ang) * boatSpeed * (1 * dt);
+            boatX -= StrictMath.cos(ang) * boatSpeed * (1 * dt);
+            boatY -= StrictMath.sin(ang) * boatSpeed * (1 * dt);
             boatSpeed = 0;
             System.out.println("YOU CRASHED!");
         }
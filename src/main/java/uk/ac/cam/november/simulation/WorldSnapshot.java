@@ -0,0 +1,145 @@
+package uk.ac.cam.november.simulation;
+
+/**
+ * A copy of the state of the {@link WorldModel} after one step, for drawing.
+ * The simulation thread publishes snapshots through a {@link Buffer}, and the
+ * render thread draws from its own copy, so neither waits for the other and
+ * the window never sees a step half done.
+ */
+public final class WorldSnapshot {
+
+    private float boatX;
+    private float boatY;
+    private float heading;
+    private float previousBoatX;
+    private float previousBoatY;
+    private float previousHeading;
+    private float boatSpeed;
+    private float waterDepth;
+    private float windSpeed;
+    private float windAngle;
+    /** {@link System#nanoTime()} when the step was published */
+    private long publishedNanos;
+    private long step = -1;
+
+    void copyFrom(WorldModel wm) {
+        boatX = wm.getBoatX();
+        boatY = wm.getBoatY();
+        heading = wm.getHeading();
+        previousBoatX = wm.getBoatX(0f);
+        previousBoatY = wm.getBoatY(0f);
+        previousHeading = wm.getHeading(0f);
+        boatSpeed = wm.getBoatSpeed();
+        waterDepth = wm.getWaterDepth();
+        windSpeed = wm.getWindSpeed();
+        windAngle = wm.getWindAngle();
+    }
+
+    public void copyFrom(WorldSnapshot s) {
+        boatX = s.boatX;
+        boatY = s.boatY;
+        heading = s.heading;
+        previousBoatX = s.previousBoatX;
+        previousBoatY = s.previousBoatY;
+        previousHeading = s.previousHeading;
+        boatSpeed = s.boatSpeed;
+        waterDepth = s.waterDepth;
+        windSpeed = s.windSpeed;
+        windAngle = s.windAngle;
+        publishedNanos = s.publishedNanos;
+        step = s.step;
+    }
+
+    /**
+     * Returns the number of the step, or -1 if nothing has been published.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    public float getBoatSpeed() {
+        return boatSpeed;
+    }
+
+    public float getWaterDepth() {
+        return waterDepth;
+    }
+
+    public float getWindSpeed() {
+        return windSpeed;
+    }
+
+    public float getWindAngle() {
+        return windAngle;
+    }
+
+    public float getHeading() {
+        return heading;
+    }
+
+    /**
+     * As {@link WorldModel#getBoatX(float)}.
+     */
+    public float getBoatX(float alpha) {
+        return previousBoatX + (boatX - previousBoatX) * alpha;
+    }
+
+    /**
+     * As {@link WorldModel#getBoatY(float)}.
+     */
+    public float getBoatY(float alpha) {
+        return previousBoatY + (boatY - previousBoatY) * alpha;
+    }
+
+    /**
+     * As {@link WorldModel#getHeading(float)}.
+     */
+    public float getHeading(float alpha) {
+        float turn = heading - previousHeading;
+        if (turn > 180) {
+            turn -= 360;
+        } else if (turn < -180) {
+            turn += 360;
+        }
+        return previousHeading + turn * alpha;
+    }
+
+    /**
+     * Two snapshots: the simulation thread fills the back one and swaps it to
+     * the front, and readers copy the front one. Only the swap and the copy
+     * hold the lock, which is a few dozen bytes either way.
+     */
+    public static final class Buffer {
+
+        private WorldSnapshot front = new WorldSnapshot();
+        private WorldSnapshot back = new WorldSnapshot();
+        private long steps = 0;
+
+        /**
+         * Publishes the state of the world after a step. Called by the
+         * simulation thread only.
+         */
+        public void publish(WorldModel wm) {
+            back.copyFrom(wm);
+            back.step = steps++;
+            back.publishedNanos = System.nanoTime();
+            synchronized (this) {
+                WorldSnapshot s = front;
+                front = back;
+                back = s;
+            }
+        }
+
+        /**
+         * Copies the latest snapshot.
+         */
+        public synchronized void read(WorldSnapshot into) {
+            into.copyFrom(front);
+        }
+    }
+
+}
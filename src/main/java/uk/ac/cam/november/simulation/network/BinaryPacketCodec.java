@@ -0,0 +1,249 @@
+package uk.ac.cam.november.simulation.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import uk.ac.cam.november.packet.Fields;
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * The binary form of the packets the simulator sends, version
+ * {@value #VERSION}. Every packet starts with the same header, big-endian:
+ *
+ * <pre>
+ * u8  message type ({@link PacketTranslator#MSG_BINARY_PACKET})
+ * i32 PGN
+ * i64 timestamp, microseconds since the epoch, or Long.MIN_VALUE for none
+ * u8  priority
+ * u8  source address
+ * u8  destination address
+ * u8  SID
+ * </pre>
+ *
+ * followed by the fields of the PGN, in a fixed layout:
+ *
+ * <pre>
+ * 127250 Vessel Heading      f32 heading, f32 deviation, f32 variation, u8 reference
+ * 128259 Speed               f32 speed, u8 speed type
+ * 128267 Water Depth         f32 depth, f32 offset
+ * 129029 GNSS Position Data  f32 latitude, f32 longitude, f32 altitude
+ * 130306 Wind Data           f32 speed, f32 angle, u8 reference
+ * </pre>
+ *
+ * Text fields are sent as an index into a table of the values they can take.
+ * A packet of any other PGN, or with text outside the tables, cannot be
+ * encoded and is sent as JSON instead.
+ * <p>
+ * Encoding writes straight into the caller's buffer, and decoding reads
+ * straight from it; the only objects made are the decoded packet itself.
+ */
+public final class BinaryPacketCodec {
+
+    public static final int VERSION = 1;
+
+    /** Bytes before the fields, including the message type */
+    static final int HEADER_SIZE = 1 + 4 + 8 + 4;
+    /** Bytes in the largest binary packet */
+    public static final int MAX_SIZE = HEADER_SIZE + 13;
+
+    static final int PGN_HEADING = 127250;
+    static final int PGN_SPEED = 128259;
+    static final int PGN_DEPTH = 128267;
+    static final int PGN_POSITION = 129029;
+    static final int PGN_WIND = 130306;
+
+    private static final String[] REFERENCES = { "True", "Magnetic", "Apparent", "True (ground referenced to North)",
+            "True (boat referenced)", "Error" };
+    private static final String[] SPEED_TYPES = { "Paddle wheel", "Pitot tube", "Doppler",
+            "Correlation (ultra sound)", "Electro Magnetic" };
+    /** Index of a null text field */
+    private static final int NONE = 0xFF;
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private BinaryPacketCodec() {
+    }
+
+    /**
+     * Returns the description the decoder gives packets of a PGN, or null if
+     * the PGN has no binary form.
+     */
+    static String description(int pgn) {
+        switch (pgn) {
+        case PGN_HEADING:
+            return "Vessel Heading";
+        case PGN_SPEED:
+            return "Speed";
+        case PGN_DEPTH:
+            return "Water Depth";
+        case PGN_POSITION:
+            return "GNSS Position Data";
+        case PGN_WIND:
+            return "Wind Data";
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Writes a packet at the buffer's position.
+     *
+     * @return false, with the buffer untouched, if the packet has no binary
+     *         form or does not fit.
+     */
+    public static boolean encode(Packet p, ByteBuffer buf) {
+        Fields f = p.getFields();
+        String description = description(p.getPgn());
+        if (f == null || description == null || !description.equals(p.getDescription())
+                || buf.remaining() < MAX_SIZE) {
+            return false;
+        }
+        int start = buf.position();
+        Date timestamp = p.getTimestamp();
+        buf.put(PacketTranslator.MSG_BINARY_PACKET);
+        buf.putInt(p.getPgn());
+        buf.putLong(timestamp == null ? NO_TIMESTAMP : timestamp.getTime() * 1000);
+        buf.put((byte) p.getPrio());
+        buf.put((byte) p.getSrc());
+        buf.put((byte) p.getDst());
+        buf.put((byte) f.getSID());
+
+        boolean ok = true;
+        switch (p.getPgn()) {
+        case PGN_HEADING:
+            buf.putFloat(f.getHeading());
+            buf.putFloat(f.getDeviation());
+            buf.putFloat(f.getVariation());
+            ok = putText(buf, f.getReference(), REFERENCES);
+            break;
+        case PGN_SPEED:
+            buf.putFloat(f.getSpeedWaterReferenced());
+            ok = putText(buf, f.getSpeedWaterReferencedType(), SPEED_TYPES);
+            break;
+        case PGN_DEPTH:
+            buf.putFloat(f.getDepth());
+            buf.putFloat(f.getOffset());
+            break;
+        case PGN_POSITION:
+            buf.putFloat(f.getLatitude());
+            buf.putFloat(f.getLongtitude());
+            buf.putFloat(f.getAltitude());
+            break;
+        case PGN_WIND:
+            buf.putFloat(f.getWindSpeed());
+            buf.putFloat(f.getWindAngle());
+            ok = putText(buf, f.getReference(), REFERENCES);
+            break;
+        }
+        if (!ok || p.getPrio() < 0 || p.getPrio() > 0xFF || p.getSrc() < 0 || p.getSrc() > 0xFF || p.getDst() < 0
+                || p.getDst() > 0xFF || f.getSID() < 0 || f.getSID() > 0xFF) {
+            buf.position(start);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a packet of {@code len} bytes, including the message type, from
+     * the buffer's position.
+     *
+     * @throws IOException If the bytes are not a binary packet.
+     */
+    public static Packet decode(ByteBuffer buf, int len) throws IOException {
+        int end = buf.position() + len;
+        if (len < HEADER_SIZE || buf.get() != PacketTranslator.MSG_BINARY_PACKET) {
+            throw new IOException("Not a binary packet");
+        }
+        Packet p = new Packet();
+        Fields f = new Fields();
+        p.setPgn(buf.getInt());
+        long micros = buf.getLong();
+        p.setTimestamp(micros == NO_TIMESTAMP ? null : new Date(Math.floorDiv(micros, 1000)));
+        p.setPrio(buf.get() & 0xFF);
+        p.setSrc(buf.get() & 0xFF);
+        p.setDst(buf.get() & 0xFF);
+        f.setSID(buf.get() & 0xFF);
+        p.setDescription(description(p.getPgn()));
+        p.setFields(f);
+
+        int fieldBytes;
+        switch (p.getPgn()) {
+        case PGN_HEADING:
+            fieldBytes = 13;
+            break;
+        case PGN_SPEED:
+            fieldBytes = 5;
+            break;
+        case PGN_DEPTH:
+            fieldBytes = 8;
+            break;
+        case PGN_POSITION:
+            fieldBytes = 12;
+            break;
+        case PGN_WIND:
+            fieldBytes = 9;
+            break;
+        default:
+            throw new IOException("No binary form for PGN " + p.getPgn());
+        }
+        if (len != HEADER_SIZE + fieldBytes) {
+            throw new IOException("Bad length " + len + " for PGN " + p.getPgn());
+        }
+
+        switch (p.getPgn()) {
+        case PGN_HEADING:
+            f.setHeading(buf.getFloat());
+            f.setDeviation(buf.getFloat());
+            f.setVariation(buf.getFloat());
+            f.setReference(getText(buf, REFERENCES));
+            break;
+        case PGN_SPEED:
+            f.setSpeedWaterReferenced(buf.getFloat());
+            f.setSpeedWaterReferencedType(getText(buf, SPEED_TYPES));
+            break;
+        case PGN_DEPTH:
+            f.setDepth(buf.getFloat());
+            f.setOffset(buf.getFloat());
+            break;
+        case PGN_POSITION:
+            f.setLatitude(buf.getFloat());
+            f.setLongtitude(buf.getFloat());
+            f.setAltitude(buf.getFloat());
+            break;
+        case PGN_WIND:
+            f.setWindSpeed(buf.getFloat());
+            f.setWindAngle(buf.getFloat());
+            f.setReference(getText(buf, REFERENCES));
+            break;
+        }
+        buf.position(end);
+        return p;
+    }
+
+    private static boolean putText(ByteBuffer buf, String text, String[] table) {
+        if (text == null) {
+            buf.put((byte) NONE);
+            return true;
+        }
+        for (int i = 0; i < table.length; i++) {
+            if (table[i].equals(text)) {
+                buf.put((byte) i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getText(ByteBuffer buf, String[] table) throws IOException {
+        int i = buf.get() & 0xFF;
+        if (i == NONE) {
+            return null;
+        }
+        if (i >= table.length) {
+            throw new IOException("Unknown text field value " + i);
+        }
+        return table[i];
+    }
+
+}
@@ -0,0 +1,194 @@
+package uk.ac.cam.november.simulation.network;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * One simulator connected to a {@link SimulatorServer}, with the buffers and
+ * throughput counters of its connection.
+ * <p>
+ * Packets arrive length-prefixed, as JSON or binary (see
+ * {@link PacketTranslator}), and are read without blocking: partial
+ * packets wait in the inbound buffer until the rest arrives. Subtitles to the
+ * client wait in a bounded outbound buffer. A client which does not keep up
+ * with its subtitles misses some of them, rather than holding up the server
+ * or the other clients.
+ * <p>
+ * Reading and flushing happen on the server's event loop. Subtitles may be
+ * queued from any thread, and the counters read from any thread.
+ */
+public final class ClientConnection {
+
+    /** Largest packet a client may send, in bytes */
+    static final int MAX_FRAME = 64 * 1024;
+    /** Bytes of subtitles which may wait to be sent to one client */
+    static final int OUTBOUND_CAPACITY = 16 * 1024;
+    private static final int INITIAL_INBOUND = 4 * 1024;
+
+    private final SocketChannel channel;
+    private final SocketAddress remoteAddress;
+    private final long connectedAt = System.nanoTime();
+
+    /** Only touched by the event loop; kept in write mode between reads */
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_INBOUND);
+    /** Guarded by this; kept in write mode between flushes */
+    private final ByteBuffer out = ByteBuffer.allocate(OUTBOUND_CAPACITY);
+
+    private volatile int wireFormat = PacketTranslator.FORMAT_JSON;
+    private volatile long packetsReceived = 0;
+    private volatile long bytesReceived = 0;
+    private volatile long bytesSent = 0;
+    private volatile long subtitlesDropped = 0;
+
+    ClientConnection(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        this.remoteAddress = channel.getRemoteAddress();
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Returns the wire format agreed with the client.
+     */
+    public int getWireFormat() {
+        return wireFormat;
+    }
+
+    void setWireFormat(int format) {
+        wireFormat = format;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the number of subtitles which did not fit in the outbound buffer.
+     */
+    public long getSubtitlesDropped() {
+        return subtitlesDropped;
+    }
+
+    /**
+     * Returns the number of packets received per second since the client
+     * connected.
+     */
+    public double getPacketRate() {
+        double seconds = (System.nanoTime() - connectedAt) / 1e9;
+        return seconds > 0 ? packetsReceived / seconds : 0;
+    }
+
+    /**
+     * Reads once from the client, at most a buffer's worth, and passes each
+     * complete packet to the server. Anything more the client has sent is
+     * left for the next time the event loop finds the channel readable, so a
+     * client sending faster than its packets are decoded still takes turns
+     * with the others.
+     *
+     * @return false once the client has closed the connection.
+     * @throws IOException If the connection failed, or the client broke the
+     *             framing.
+     */
+    boolean read(SimulatorServer server) throws IOException {
+        int n = channel.read(in);
+        if (n > 0) {
+            bytesReceived += n;
+            decodeFrames(server);
+            if (!in.hasRemaining()) {
+                // a frame bigger than the buffer, which decodeFrames has allowed
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(in.capacity() * 2, MAX_FRAME + 4));
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+        }
+        return n >= 0;
+    }
+
+    private void decodeFrames(SimulatorServer server) throws IOException {
+        in.flip();
+        while (in.remaining() >= 4) {
+            int len = in.getInt(in.position());
+            if (len < 0 || len > MAX_FRAME) {
+                throw new IOException("Bad packet length from " + remoteAddress + ": " + len);
+            }
+            if (in.remaining() < 4 + len) {
+                break;
+            }
+            in.position(in.position() + 4);
+            Packet p = PacketTranslator.decode(in, len);
+            if (PacketTranslator.isHello(p)) {
+                server.onHello(this, p.getFields().getSID());
+                continue;
+            }
+            packetsReceived++;
+            server.queueMessage(p);
+        }
+        in.compact();
+    }
+
+    /**
+     * Adds a message to the outbound buffer, or drops it if there is no room.
+     *
+     * @return Whether the message was queued.
+     */
+    synchronized boolean queue(byte[] message) {
+        if (out.remaining() < message.length) {
+            subtitlesDropped++;
+            return false;
+        }
+        out.put(message);
+        return true;
+    }
+
+    /**
+     * Sends as much of the outbound buffer as the socket takes without
+     * blocking.
+     *
+     * @return Whether anything is still waiting to be sent.
+     */
+    synchronized boolean flush() throws IOException {
+        out.flip();
+        try {
+            bytesSent += channel.write(out);
+        } finally {
+            out.compact();
+        }
+        return out.position() > 0;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public String toString() {
+        double seconds = (System.nanoTime() - connectedAt) / 1e9;
+        return String.format("%s (format %d): %d packets (%.0f/s), %d bytes in, %d bytes out, %d subtitles dropped",
+                remoteAddress, wireFormat, packetsReceived, packetsReceived / Math.max(seconds, 1e-9), bytesReceived, bytesSent,
+                subtitlesDropped);
+    }
+
+}
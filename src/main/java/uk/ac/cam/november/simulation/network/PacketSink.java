@@ -0,0 +1,24 @@
+package uk.ac.cam.november.simulation.network;
+
+import java.io.IOException;
+
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * Where the simulator sends the packets it generates: over the network to a
+ * {@link SimulatorServer}, or straight into a decoder's queue.
+ */
+public interface PacketSink {
+
+    public void sendPacket(Packet p) throws IOException;
+
+    /**
+     * Sends on any packets held back since the last flush. The simulator
+     * flushes once per step, so a sink may batch the packets of a step.
+     */
+    public default void flush() throws IOException {
+    }
+
+    public void close();
+
+}
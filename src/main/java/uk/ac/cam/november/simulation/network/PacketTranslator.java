@@ -3,15 +3,99 @@ package uk.ac.cam.november.simulation.network;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
+import uk.ac.cam.november.packet.Fields;
 import uk.ac.cam.november.packet.Packet;
 
+/**
+ * Frames packets for the simulator's connection to the server. Every message
+ * from a simulator is length-prefixed, and its first byte says what it is:
+ * <ul>
+ * <li>'{' - a packet as JSON, which any server understands.</li>
+ * <li>{@link #MSG_BINARY_PACKET} - a packet in the compact form of
+ * {@link BinaryPacketCodec}.</li>
+ * </ul>
+ * On connecting, a simulator sends a hello: a JSON packet of PGN
+ * {@link #HELLO_PGN}, with the highest wire format it speaks as the SID. The
+ * server answers with {@link #HELLO_ACK_ID} and the format to use, and a
+ * simulator which has no answer sends JSON. Servers from before the binary
+ * format read the hello as an ordinary packet, which no decoder handles, so
+ * a new simulator can connect to an old server.
+ */
 public class PacketTranslator {
 
-    private static Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd-HH:mm:ss.SSSSS").create();
+    /** Wire format of packets as JSON */
+    public static final int FORMAT_JSON = 0;
+    /** Wire format of packets in binary */
+    public static final int FORMAT_BINARY = BinaryPacketCodec.VERSION;
+
+    public static final byte MSG_BINARY_PACKET = 0x01;
+    /** Not a real PGN, so that decoders ignore the hello */
+    public static final int HELLO_PGN = -1;
+    /** Server to simulator, alongside {@link SubtitlePacket#PACKET_ID} */
+    public static final byte HELLO_ACK_ID = 0x02;
+
+    private static Gson gson = new GsonBuilder().registerTypeAdapter(Date.class, new UtcDateAdapter()).create();
+
+    /**
+     * Writes a packet, length-prefixed, at the buffer's position. Packets
+     * with no binary form are written as JSON whatever the format.
+     *
+     * @param format {@link #FORMAT_JSON} or {@link #FORMAT_BINARY}.
+     * @return false, with the buffer untouched, if the packet does not fit.
+     */
+    public static boolean encode(Packet p, ByteBuffer buf, int format) throws IOException {
+        int start = buf.position();
+        if (buf.remaining() < 4) {
+            return false;
+        }
+        buf.position(start + 4);
+        if (format < FORMAT_BINARY || !BinaryPacketCodec.encode(p, buf)) {
+            byte[] dataBytes = gson.toJson(p).getBytes("ASCII");
+            if (buf.remaining() < dataBytes.length) {
+                buf.position(start);
+                return false;
+            }
+            buf.put(dataBytes);
+        }
+        buf.putInt(start, buf.position() - start - 4);
+        return true;
+    }
+
+    /**
+     * Writes the hello which offers the server a wire format.
+     */
+    public static void writeHello(DataOutputStream dos, int format) throws IOException {
+        Packet hello = new Packet();
+        hello.setPgn(HELLO_PGN);
+        hello.setDescription("Simulator Hello");
+        Fields fields = new Fields();
+        fields.setSID(format);
+        hello.setFields(fields);
+        write(dos, hello);
+    }
+
+    /**
+     * Returns whether a packet is a hello, and not sensor data.
+     */
+    public static boolean isHello(Packet p) {
+        return p.getPgn() == HELLO_PGN && p.getFields() != null;
+    }
 
     public static void write(DataOutputStream dos, Packet p) throws IOException {
         String data = gson.toJson(p);
@@ -34,4 +118,71 @@ public class PacketTranslator {
         return packet;
     }
 
+    /**
+     * Decodes a packet of {@code len} bytes from a buffer, in either format,
+     * leaving the buffer positioned after it.
+     *
+     * @throws IOException If the bytes are not a packet.
+     */
+    public static Packet decode(ByteBuffer buf, int len) throws IOException {
+        if (len > 0 && buf.get(buf.position()) == MSG_BINARY_PACKET) {
+            return BinaryPacketCodec.decode(buf, len);
+        }
+        String json;
+        if (buf.hasArray()) {
+            json = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.US_ASCII);
+            buf.position(buf.position() + len);
+        } else {
+            byte[] bytes = new byte[len];
+            buf.get(bytes);
+            json = new String(bytes, StandardCharsets.US_ASCII);
+        }
+        Packet p;
+        try {
+            p = gson.fromJson(json, Packet.class);
+        } catch (JsonSyntaxException e) {
+            throw new IOException("Malformed packet", e);
+        }
+        if (p == null) {
+            throw new IOException("Empty packet");
+        }
+        return p;
+    }
+
+    /**
+     * Writes timestamps in UTC, so the same packet is always sent as the same
+     * bytes, whatever the time zone of the machine.
+     */
+    private static class UtcDateAdapter extends TypeAdapter<Date> {
+
+        private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd-HH:mm:ss.SSSSS", Locale.US);
+
+        UtcDateAdapter() {
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+
+        @Override
+        public synchronized void write(JsonWriter out, Date value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                out.value(format.format(value));
+            }
+        }
+
+        @Override
+        public synchronized Date read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String s = in.nextString();
+            try {
+                return format.parse(s);
+            } catch (ParseException e) {
+                throw new JsonSyntaxException("Bad timestamp: " + s, e);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,47 @@
+package uk.ac.cam.november.simulation.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+
+import uk.ac.cam.november.packet.Packet;
+
+/**
+ * Sends packets straight into a queue in the same process, such as the one a
+ * {@link uk.ac.cam.november.decoder.MessageDecoder MessageDecoder} reads. If
+ * the queue is bounded, sending waits for room, so a simulation running
+ * faster than real time is held back to the speed of the decoder rather
+ * than dropping packets.
+ */
+public class QueuePacketSink implements PacketSink {
+
+    private final BlockingQueue<Packet> queue;
+    private long sent = 0;
+
+    public QueuePacketSink(BlockingQueue<Packet> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void sendPacket(Packet p) throws IOException {
+        try {
+            queue.put(p);
+            sent++;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a packet");
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns the number of packets sent so far.
+     */
+    public long getSent() {
+        return sent;
+    }
+
+}
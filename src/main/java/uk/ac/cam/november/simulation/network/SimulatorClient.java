@@ -2,61 +2,464 @@ package uk.ac.cam.november.simulation.network;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import uk.ac.cam.november.packet.Packet;
 import uk.ac.cam.november.simulation.ui.SimulatorUI;
 
-public class SimulatorClient {
+/**
+ * Sends the simulator's packets to a {@link SimulatorServer}, and shows the
+ * subtitles it sends back on the simulator window, or prints them if there is
+ * none.
+ * <p>
+ * On connecting, the client offers the server the binary wire format (see
+ * {@link PacketTranslator}), and sends JSON if the server does not accept it
+ * in time, or if -Dsbs.wireFormat=json.
+ * <p>
+ * Packets are collected in a buffer and, when the simulator flushes once per
+ * step, handed as one batch to the connection's writer thread, which writes
+ * it to the socket with Nagle's algorithm off so the batch leaves at once.
+ * The simulation thread never writes to the socket itself. A server which
+ * stops reading is treated as a lost connection once a write has taken
+ * longer than {@value #WRITE_TIMEOUT} ms or {@value #MAX_PENDING_BATCHES}
+ * batches are waiting. If the connection fails, the client reconnects in the
+ * background, waiting longer after each failed attempt, and the simulation
+ * itself never stops for the network.
+ * <p>
+ * Replay after a reconnection is best effort, with bounded loss. Packets sent
+ * in the meantime, and those of the batch which failed, are kept in a replay
+ * buffer of {@value #REPLAY_CAPACITY} packets, oldest dropped first, and sent
+ * once the connection is back. Those more than {@value #REPLAY_MAX_AGE} ms
+ * older than the newest packet are dropped rather than replayed, so the
+ * decoder does not see a burst of stale readings. Batches the socket accepted
+ * before the failure was noticed are lost, and part of a batch which was
+ * being written when it failed may reach the server twice.
+ */
+public class SimulatorClient implements PacketSink {
 
-    private Socket socket;
-    private DataOutputStream dos;
+    /** Longest wait for the server to answer the hello, in ms */
+    private static final long HELLO_TIMEOUT = 2000;
+    private static final int CONNECT_TIMEOUT = 2000;
+    /** Room for a packet as JSON, which is far bigger than in binary */
+    private static final int MAX_PACKET_SIZE = 4096;
+    private static final int BATCH_SIZE = 64 * 1024;
+    /** Packets kept for sending once a lost connection is back */
+    public static final int REPLAY_CAPACITY = 1000;
+    /** Oldest a packet may be, behind the newest, to be replayed, in ms */
+    public static final long REPLAY_MAX_AGE = 5000;
+    /** Longest a batch may take to be written before the connection is given up, in ms */
+    public static final long WRITE_TIMEOUT = 2000;
+    /** Most batches which may wait for the writer thread before the connection is given up */
+    public static final int MAX_PENDING_BATCHES = 16;
+    private static final long MIN_BACKOFF = 100;
+    private static final long MAX_BACKOFF = 5000;
 
-    public SimulatorClient(SimulatorUI ui, String addr) throws IOException {
-        InetAddress serverAddress = InetAddress.getByName(addr);
+    private final SimulatorUI ui;
+    private final InetSocketAddress serverAddress;
 
-        socket = new Socket(serverAddress, 8989);
+    /** The connection in use, or null while reconnecting */
+    private Connection connection;
+    /** A connection the reconnect thread has made, waiting to be taken up */
+    private volatile Connection reconnected;
+    private Thread reconnectThread;
+    private volatile boolean closed = false;
 
-        Thread t = new Thread(new Runnable() {
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE);
+    /** Packets in the batch, which are replayed if writing it fails */
+    private final List<Packet> batchPackets = new ArrayList<Packet>();
+    private final ArrayDeque<Packet> replay = new ArrayDeque<Packet>();
+
+    /** Timestamp of the newest packet sent, in ms */
+    private long newestTimestamp = Long.MIN_VALUE;
+    private long packetsDropped = 0;
+    private int reconnects = 0;
+
+    public SimulatorClient(final SimulatorUI ui, String addr) throws IOException {
+        this(ui, addr, SimulatorServer.DEFAULT_PORT);
+    }
+
+    public SimulatorClient(final SimulatorUI ui, String addr, int port) throws IOException {
+        this.ui = ui;
+        // like Socket, take no address to mean this machine
+        this.serverAddress = addr != null ? new InetSocketAddress(addr, port)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        connection = new Connection();
+    }
+
+    /**
+     * Returns the wire format agreed with the server, or JSON while
+     * disconnected.
+     */
+    public synchronized int getWireFormat() {
+        return connection != null ? connection.wireFormat : PacketTranslator.FORMAT_JSON;
+    }
+
+    /**
+     * Returns whether the client is connected, as far as it knows.
+     */
+    public synchronized boolean isConnected() {
+        return connection != null;
+    }
+
+    /**
+     * Returns the number of packets dropped from a full replay buffer, or
+     * because they were too old to replay.
+     */
+    public synchronized long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    /**
+     * Returns the number of times the connection has been re-established.
+     */
+    public synchronized int getReconnects() {
+        return reconnects;
+    }
+
+    @Override
+    public synchronized void sendPacket(Packet p) throws IOException {
+        if (p.getTimestamp() != null) {
+            newestTimestamp = Math.max(newestTimestamp, p.getTimestamp().getTime());
+        }
+        takeUpReconnection();
+        if (connection == null) {
+            keepForReplay(p);
+            return;
+        }
+        if (batch.remaining() < MAX_PACKET_SIZE) {
+            flush();
+            if (connection == null) {
+                keepForReplay(p);
+                return;
+            }
+        }
+        if (!PacketTranslator.encode(p, batch, connection.wireFormat)) {
+            throw new IOException("Packet too big to send: " + p.getDescription());
+        }
+        batchPackets.add(p);
+    }
+
+    @Override
+    public synchronized void flush() {
+        takeUpReconnection();
+        if (connection == null || batch.position() == 0) {
+            return;
+        }
+        Batch b = new Batch(Arrays.copyOf(batch.array(), batch.position()), new ArrayList<Packet>(batchPackets));
+        batch.clear();
+        batchPackets.clear();
+        String failure = connection.offer(b);
+        if (failure != null) {
+            System.err.println("Lost connection to simulator server: " + failure);
+            // the batches not written are older than anything waiting to be replayed
+            List<Packet> unsent = connection.fail();
+            unsent.addAll(b.packets);
+            for (int i = unsent.size() - 1; i >= 0; i--) {
+                if (replay.size() >= REPLAY_CAPACITY) {
+                    packetsDropped++;
+                } else {
+                    replay.addFirst(unsent.get(i));
+                }
+            }
+            connection = null;
+            startReconnecting();
+        }
+    }
+
+    private void keepForReplay(Packet p) {
+        if (replay.size() >= REPLAY_CAPACITY) {
+            replay.poll();
+            packetsDropped++;
+        }
+        replay.add(p);
+    }
+
+    /**
+     * Switches to a connection made by the reconnect thread, and sends the
+     * packets kept while there was none.
+     */
+    private void takeUpReconnection() {
+        Connection c = reconnected;
+        if (c == null || connection != null) {
+            return;
+        }
+        reconnected = null;
+        connection = c;
+        reconnects++;
+        System.err.println("Reconnected to simulator server, replaying up to " + replay.size() + " packets");
+        while (connection != null && !replay.isEmpty()) {
+            if (batch.remaining() < MAX_PACKET_SIZE) {
+                flush();
+                continue;
+            }
+            Packet p = replay.poll();
+            if (p.getTimestamp() != null && p.getTimestamp().getTime() < newestTimestamp - REPLAY_MAX_AGE) {
+                packetsDropped++;
+                continue;
+            }
+            try {
+                if (PacketTranslator.encode(p, batch, connection.wireFormat)) {
+                    batchPackets.add(p);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void startReconnecting() {
+        if (closed || (reconnectThread != null && reconnectThread.isAlive())) {
+            return;
+        }
+        reconnectThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                try {
-                    DataInputStream dis = new DataInputStream(socket.getInputStream());
-                    while (true) {
-                        int packetid = dis.readByte();
-
-                        if (packetid == SubtitlePacket.PACKET_ID) {
-                            SubtitlePacket sp = new SubtitlePacket(dis);
-                            ui.showSubtitle(sp.getSubtitle());
-                        } else {
-                            throw new IOException("Unknown packet type received: (" + packetid + ")");
-                        }
+                long backoff = MIN_BACKOFF;
+                while (!closed) {
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException e) {
+                        return;
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
                     try {
-                        socket.close();
-                    } catch (IOException e1) {
+                        reconnected = new Connection();
+                        return;
+                    } catch (IOException e) {
+                        backoff = Math.min(backoff * 2, MAX_BACKOFF);
                     }
                 }
             }
-        });
-        t.start();
+        }, "Simulator-Reconnect");
+        reconnectThread.setDaemon(true);
+        reconnectThread.start();
+    }
 
-        dos = new DataOutputStream(socket.getOutputStream());
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            flush();
+            if (connection != null) {
+                connection.awaitWritten(WRITE_TIMEOUT);
+                connection.close();
+                connection = null;
+            }
+        }
+        Connection c = reconnected;
+        if (c != null) {
+            c.close();
+        }
     }
 
-    public void sendPacket(Packet p) throws IOException {
-        PacketTranslator.write(dos, p);
+    /**
+     * A batch handed to a writer thread, with its packets for replaying should
+     * it not be written.
+     */
+    private static class Batch {
+        final byte[] bytes;
+        final List<Packet> packets;
+
+        Batch(byte[] bytes, List<Packet> packets) {
+            this.bytes = bytes;
+            this.packets = packets;
+        }
     }
 
-    public void close() {
-        try {
-            dos.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * One socket to the server, with the thread reading subtitles from it and
+     * the thread writing batches to it.
+     */
+    private class Connection {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private volatile int wireFormat = PacketTranslator.FORMAT_JSON;
+        private final CountDownLatch helloAnswered = new CountDownLatch(1);
+
+        /** Batches not written yet, the first one being written; guarded by this */
+        private final ArrayDeque<Batch> pending = new ArrayDeque<Batch>();
+        /** System.nanoTime() when the write in progress started, or 0 when idle */
+        private long writeStarted = 0;
+        /** Why writing failed, or null */
+        private String failure = null;
+
+        Connection() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(serverAddress, CONNECT_TIMEOUT);
+            out = socket.getOutputStream();
+
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        DataInputStream dis = new DataInputStream(socket.getInputStream());
+                        while (true) {
+                            int packetid = dis.readByte();
+
+                            if (packetid == SubtitlePacket.PACKET_ID) {
+                                SubtitlePacket sp = new SubtitlePacket(dis);
+                                if (ui != null) {
+                                    ui.showSubtitle(sp.getSubtitle());
+                                } else {
+                                    System.out.println("Subtitle: " + sp.getSubtitle());
+                                }
+                            } else if (packetid == PacketTranslator.HELLO_ACK_ID) {
+                                wireFormat = dis.readByte();
+                                helloAnswered.countDown();
+                            } else {
+                                throw new IOException("Unknown packet type received: (" + packetid + ")");
+                            }
+                        }
+                    } catch (EOFException e) {
+                        System.err.println("Simulator server closed the connection");
+                        close();
+                    } catch (IOException e) {
+                        if (!socket.isClosed()) {
+                            e.printStackTrace();
+                        }
+                        close();
+                    }
+                }
+            }, "Simulator-Client");
+            t.setDaemon(true);
+            t.start();
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeBatches();
+                }
+            }, "Simulator-Client-Writer");
+            writer.setDaemon(true);
+            writer.start();
+
+            if (!System.getProperty("sbs.wireFormat", "binary").equalsIgnoreCase("json")) {
+                PacketTranslator.writeHello(new DataOutputStream(out), PacketTranslator.FORMAT_BINARY);
+                try {
+                    if (!helloAnswered.await(HELLO_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        System.err.println("No answer from server to hello, sending JSON");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Hands a batch to the writer thread, unless the connection has failed
+         * or the writer is stuck.
+         *
+         * @return Why the connection should be given up, or null if the batch
+         *         was taken.
+         */
+        synchronized String offer(Batch b) {
+            if (failure == null && writeStarted != 0
+                    && System.nanoTime() - writeStarted > TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT)) {
+                failure = "write timed out";
+            } else if (failure == null && pending.size() >= MAX_PENDING_BATCHES) {
+                failure = pending.size() + " batches waiting to be written";
+            }
+            if (failure != null) {
+                return failure;
+            }
+            pending.add(b);
+            notifyAll();
+            return null;
+        }
+
+        /**
+         * Closes the connection, and returns the packets of the batches which
+         * were not written, oldest first.
+         */
+        synchronized List<Packet> fail() {
+            if (failure == null) {
+                failure = "closed";
+            }
+            close();
+            List<Packet> unsent = new ArrayList<Packet>();
+            for (Batch b : pending) {
+                unsent.addAll(b.packets);
+            }
+            pending.clear();
+            notifyAll();
+            return unsent;
+        }
+
+        /**
+         * Waits up to the given time for every batch handed over to be written.
+         */
+        synchronized void awaitWritten(long timeout) {
+            long deadline = System.currentTimeMillis() + timeout;
+            long left = timeout;
+            while (!pending.isEmpty() && failure == null && left > 0) {
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                left = deadline - System.currentTimeMillis();
+            }
+        }
+
+        private void writeBatches() {
+            while (true) {
+                Batch b;
+                synchronized (this) {
+                    while (pending.isEmpty() && failure == null) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (failure != null) {
+                        return;
+                    }
+                    b = pending.peek();
+                    writeStarted = System.nanoTime();
+                }
+                try {
+                    out.write(b.bytes);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        if (failure == null) {
+                            failure = e.getMessage();
+                        }
+                        writeStarted = 0;
+                        notifyAll();
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    // the batch is gone if the connection failed meanwhile
+                    if (pending.peek() == b) {
+                        pending.poll();
+                    }
+                    writeStarted = 0;
+                    notifyAll();
+                }
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+            }
         }
     }
 
@@ -1,11 +1,21 @@
 package uk.ac.cam.november.simulation.network;
 
-import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.google.common.collect.EvictingQueue;
 import com.google.common.collect.Queues;
@@ -16,71 +26,213 @@ import uk.ac.cam.november.messages.SpeechListener;
 import uk.ac.cam.november.messages.SpeechSynthesis;
 import uk.ac.cam.november.packet.Packet;
 
+/**
+ * Receives packets from any number of simulators, and sends them the
+ * subtitles of what is spoken.
+ * <p>
+ * All the sockets are served by one thread, on a {@link Selector}. Each
+ * client is a {@link ClientConnection}, with its own buffers, so a client
+ * which is slow to read its subtitles only loses some of them, and does not
+ * hold up the others. Subtitles are queued from the speech thread and sent by
+ * the event loop.
+ */
 public class SimulatorServer implements SpeechListener {
 
+    public static final int DEFAULT_PORT = 8989;
+
+    /** Longest the event loop waits before checking whether it was closed */
+    private static final long SELECT_TIMEOUT = 1000;
+
+    /** Highest wire format offered to clients, set by -Dsbs.wireFormat=json|binary */
+    private final int wireFormat = System.getProperty("sbs.wireFormat", "binary").equalsIgnoreCase("json")
+            ? PacketTranslator.FORMAT_JSON : PacketTranslator.FORMAT_BINARY;
+
     private ServerSocket listenSocket;
-    private Socket client;
-    private DataOutputStream dos;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+
+    private final List<ClientConnection> clients = new CopyOnWriteArrayList<ClientConnection>();
+    /** Clients with subtitles queued since the event loop last flushed */
+    private final Queue<ClientConnection> pendingWrites = new ConcurrentLinkedQueue<ClientConnection>();
 
     private Queue<Packet> messageQueue;
 
     public SimulatorServer() {
+        this(DEFAULT_PORT);
+    }
+
+    /**
+     * @param port The port to listen on, or 0 for any free port.
+     */
+    public SimulatorServer(int port) {
 
         EvictingQueue<Packet> pq = EvictingQueue.create(300);
         messageQueue = Queues.synchronizedQueue(pq);
 
-        SpeechSynthesis.addSpeechListener(this);
-
         try {
-            listenSocket = new ServerSocket(8989);
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            listenSocket = serverChannel.socket();
+            listenSocket.setReuseAddress(true);
+            listenSocket.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
         } catch (IOException e) {
             System.err.println("Failed to bind port!");
             System.err.println("ERROR: " + e.getMessage());
             throw new RuntimeException("Failed to start server.");
         }
 
+        SpeechSynthesis.addSpeechListener(this);
+
         Thread socketThread = new Thread(new Runnable() {
             @Override
             public void run() {
-                while (true) {
-                    try {
-                        client = listenSocket.accept();
-                        dos = new DataOutputStream(client.getOutputStream());
-
-                        System.out.println("New client connected from " + client.getInetAddress().getHostName());
-                        MessageHandler.receiveMessage(new Message("Client connected", 2));
-
-                        DataInputStream dis = new DataInputStream(client.getInputStream());
-                        while (true) {
-                            Packet p = PacketTranslator.read(dis);
-                            if (p != null) {
-                                queueMessage(p);
-                            } else {
-                                break;
-                            }
-                        }
-                        client.close();
-                        client = null;
-                        System.out.println("Client disconnected.");
-                        MessageHandler.receiveMessage(new Message("Client disconnected", 2));
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+                try {
+                    eventLoop();
+                } catch (ClosedSelectorException e) {
+                    // closed
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    shutdown();
                 }
             }
-        });
+        }, "Simulator-Server");
 
         socketThread.start();
 
-        System.out.println("Server started on port 8989");
-        MessageHandler.receiveMessage(new Message("Server started on port 8989", 2));
+        System.out.println("Server started on port " + getPort());
+        MessageHandler.receiveMessage(new Message("Server started on port " + getPort(), 2));
+    }
+
+    private void eventLoop() throws IOException {
+        while (serverChannel.isOpen()) {
+            selector.select(SELECT_TIMEOUT);
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                ClientConnection c = (ClientConnection) key.attachment();
+                try {
+                    if (key.isReadable() && !c.read(this)) {
+                        disconnect(c);
+                        continue;
+                    }
+                    if (key.isWritable() && !c.flush()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Dropping client " + c.getRemoteAddress() + ": " + e.getMessage());
+                    disconnect(c);
+                }
+            }
+
+            ClientConnection c;
+            while ((c = pendingWrites.poll()) != null) {
+                SelectionKey key = c.getChannel().keyFor(selector);
+                if (key == null || !key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (c.flush()) {
+                        // the rest goes when the socket has room
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                } catch (IOException e) {
+                    disconnect(c);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        ClientConnection c = new ClientConnection(channel);
+        channel.register(selector, SelectionKey.OP_READ, c);
+        clients.add(c);
+
+        System.out.println("New client connected from " + c.getRemoteAddress());
+        MessageHandler.receiveMessage(new Message("Client connected", 2));
+    }
+
+    private void disconnect(ClientConnection c) {
+        c.close();
+        if (clients.remove(c)) {
+            System.out.println("Client disconnected. " + c);
+            MessageHandler.receiveMessage(new Message("Client disconnected", 2));
+        }
+    }
+
+    /**
+     * Answers a client's hello with the highest wire format both speak.
+     */
+    void onHello(ClientConnection c, int offered) {
+        int format = Math.max(PacketTranslator.FORMAT_JSON, Math.min(offered, wireFormat));
+        c.setWireFormat(format);
+        if (c.queue(new byte[] { PacketTranslator.HELLO_ACK_ID, (byte) format })) {
+            pendingWrites.add(c);
+        }
+    }
+
+    private void shutdown() {
+        SpeechSynthesis.removeSpeechListener(this);
+        for (ClientConnection c : clients) {
+            c.close();
+        }
+        clients.clear();
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops listening and disconnects every client.
+     */
+    public void close() {
+        try {
+            listenSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return listenSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the clients connected now, with their throughput counters.
+     */
+    public List<ClientConnection> getClients() {
+        return new ArrayList<ClientConnection>(clients);
     }
 
     /**
      * Returns the message queue used to retrieve messages.
-     * 
+     *
      * The returned queue is a thread-safe circular buffer of size 300.
-     * 
+     *
      * @return Queue<Packet> the message queue.
      */
     public Queue<Packet> getMessageQueue() {
@@ -89,30 +241,34 @@ public class SimulatorServer implements SpeechListener {
 
     /**
      * Adds a message to the output queue.
-     * 
+     *
      * @param p
      *            The message to add.
      */
     public void queueMessage(Packet p) {
-        System.out.println("Queueing a " + p.getDescription() + " packet at " + p.getTimestamp());
         messageQueue.add(p);
     }
 
     @Override
     public void onSpeechStarted(String message) {
-        if (client != null) {
-            SubtitlePacket sp = new SubtitlePacket(message);
-            try {
-                sp.write(dos);
-            } catch (IOException e) {
-                e.printStackTrace();
-                try {
-                    client.close();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                }
+        if (clients.isEmpty()) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            new SubtitlePacket(message).write(new DataOutputStream(buf));
+            bytes = buf.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (ClientConnection c : clients) {
+            if (c.queue(bytes)) {
+                pendingWrites.add(c);
             }
         }
+        selector.wakeup();
     }
 
 }
@@ -9,18 +9,28 @@ import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
-import uk.ac.cam.november.simulation.WorldModel;
-
 public class CompassPanel extends JPanel {
     private static final long serialVersionUID = 260790666737480725L;
 
-    private WorldModel worldModel;
+    /** Smallest turn of the card worth redrawing, in degrees */
+    private static final float RESOLUTION = 0.2f;
+
+    private volatile float heading;
 
-    public CompassPanel(WorldModel worldModel) {
-        this.worldModel = worldModel;
+    public CompassPanel() {
         setPreferredSize(new Dimension(250, 250));
     }
 
+    /**
+     * Sets the heading shown, and redraws the card if it has turned.
+     */
+    public void update(float newHeading) {
+        if (Math.round(newHeading / RESOLUTION) != Math.round(heading / RESOLUTION)) {
+            heading = newHeading;
+            repaint();
+        }
+    }
+
     @Override
     public void paint(Graphics g) {
         Graphics2D gr = (Graphics2D) g;
@@ -36,7 +46,7 @@ public class CompassPanel extends JPanel {
         matrix.translate(w / 2, h / 2);
         matrix.scale(0.75, 0.75);
         matrix.translate(-img.getWidth() / 2, -img.getHeight() / 2);
-        matrix.rotate(Math.toRadians(-worldModel.getHeading()), img.getWidth() / 2, img.getHeight() / 2);
+        matrix.rotate(Math.toRadians(-heading), img.getWidth() / 2, img.getHeight() / 2);
         gr.drawImage(img, matrix, null);
     }
 
@@ -7,29 +7,45 @@ import java.awt.Graphics2D;
 
 import javax.swing.JPanel;
 
-import uk.ac.cam.november.simulation.StepListener;
-import uk.ac.cam.november.simulation.WorldModel;
-
-public class DepthPanel extends JPanel implements StepListener {
+public class DepthPanel extends JPanel {
     private static final long serialVersionUID = 2494838642150810963L;
 
-    private WorldModel worldModel;
     private GraphPanel graphPanel;
+    private volatile String depthMessage = "";
+    /** The last simulation step added to the graph */
+    private long lastStep = -1;
 
-    public DepthPanel(WorldModel worldModel) {
-        this.worldModel = worldModel;
+    public DepthPanel() {
         setPreferredSize(new Dimension(250, 100));
 
         graphPanel = new GraphPanel(250, GraphPanel.FILLED);
 
         add(graphPanel);
-
-        worldModel.registerStepListener(this);
     }
 
-    @Override
-    public void onStep() {
-        graphPanel.addValue(worldModel.getWaterDepth());
+    /**
+     * Sets the depth shown after a simulation step. The graph gets a value
+     * for every step since the last update, so it scrolls at the speed of
+     * the simulation however often the window is drawn; each part redraws
+     * only if it has changed.
+     */
+    public void update(float waterDepth, long step) {
+        boolean graphChanged = false;
+        if (lastStep < 0) {
+            lastStep = step - 1;
+        }
+        for (; lastStep < step; lastStep++) {
+            graphChanged |= graphPanel.addValue(waterDepth);
+        }
+        if (graphChanged) {
+            graphPanel.repaint();
+        }
+
+        String message = "Water Depth: " + String.format("%.2f", waterDepth) + "m";
+        if (!message.equals(depthMessage)) {
+            depthMessage = message;
+            repaint(0, 0, getWidth(), 20);
+        }
     }
 
     @Override
@@ -38,7 +54,6 @@ public class DepthPanel extends JPanel implements StepListener {
         Graphics2D gr = (Graphics2D) g;
 
         gr.setColor(Color.BLACK);
-        String angleMessage = "Water Depth: " + String.format("%.2f", worldModel.getWaterDepth()) + "m";
-        gr.drawString(angleMessage, 8, 16);
+        gr.drawString(depthMessage, 8, 16);
     }
 }
@@ -23,6 +23,8 @@ public class GraphPanel extends JPanel {
 
     private double[] vals;
     private int wx;
+    /** Values added in a row which draw at the same height */
+    private int sameRun;
 
     private Color seabedColor;
     private Color seaColor;
@@ -39,12 +41,25 @@ public class GraphPanel extends JPanel {
         seaColor = new Color(0x008FE1);
     }
 
-    public void addValue(double v) {
+    /**
+     * Adds a value to the end of the graph.
+     *
+     * @return Whether the graph looks different, which it does not once every
+     *         value in it draws at the same height.
+     */
+    public boolean addValue(double v) {
+        int last = wx == 0 ? vals.length - 1 : wx - 1;
+        if ((int) (2*v) == (int) (2*vals[last])) {
+            sameRun++;
+        } else {
+            sameRun = 1;
+        }
         vals[wx] = v;
         wx += 1;
         if (wx >= vals.length) {
             wx = 0;
         }
+        return sameRun <= vals.length;
     }
 
     @Override
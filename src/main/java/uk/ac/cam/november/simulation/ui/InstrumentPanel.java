@@ -3,18 +3,23 @@ package uk.ac.cam.november.simulation.ui;
 import javax.swing.Box;
 import javax.swing.JPanel;
 
-import uk.ac.cam.november.simulation.WorldModel;
+import uk.ac.cam.november.simulation.WorldSnapshot;
 
 public class InstrumentPanel extends JPanel {
     private static final long serialVersionUID = -8873363538918460588L;
 
-    public InstrumentPanel(WorldModel worldModel) {
+    private final CompassPanel compassPanel;
+    private final WindPanel windPanel;
+    private final DepthPanel depthPanel;
+    private final SpeedPanel speedPanel;
+
+    public InstrumentPanel() {
         Box box = Box.createVerticalBox();
 
-        CompassPanel compassPanel = new CompassPanel(worldModel);
-        WindPanel windPanel = new WindPanel(worldModel);
-        DepthPanel depthPanel = new DepthPanel(worldModel);
-        SpeedPanel speedPanel = new SpeedPanel(worldModel);
+        compassPanel = new CompassPanel();
+        windPanel = new WindPanel();
+        depthPanel = new DepthPanel();
+        speedPanel = new SpeedPanel();
 
         box.add(compassPanel);
         box.add(windPanel);
@@ -24,4 +29,15 @@ public class InstrumentPanel extends JPanel {
         add(box);
     }
 
+    /**
+     * Shows the state of the world after a step. Each instrument redraws
+     * only if what it shows has changed.
+     */
+    public void update(WorldSnapshot snapshot) {
+        compassPanel.update(snapshot.getHeading());
+        windPanel.update(snapshot.getWindAngle(), snapshot.getWindSpeed(), snapshot.getHeading());
+        depthPanel.update(snapshot.getWaterDepth(), snapshot.getStep());
+        speedPanel.update(snapshot.getBoatSpeed());
+    }
+
 }
@@ -3,56 +3,96 @@ package uk.ac.cam.november.simulation.ui;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.util.Random;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.swing.JPanel;
 
 import uk.ac.cam.november.simulation.DepthMap;
-import uk.ac.cam.november.simulation.WorldModel;
-
+import uk.ac.cam.november.simulation.DepthTiles;
+import uk.ac.cam.november.simulation.TileCache;
+
+/**
+ * Draws the chart around the boat. Only the tiles in view are coloured, at
+ * the mipmap level which best matches the zoom, and the coloured tiles are
+ * kept in a small least-recently-used cache.
+ * <p>
+ * The tiles are scaled once into a viewport image a little larger than the
+ * panel, which is reused until the boat moves beyond its margin or the zoom
+ * or size changes, so most frames only copy it and draw the boat.
+ */
 public class RenderPanel extends JPanel {
     private static final long serialVersionUID = -6318987568691279660L;
 
-    private WorldModel worldModel;
-    private BufferedImage lakeImage;
+    /** Coloured tiles to keep; enough to cover the window at any zoom */
+    private static final int MAX_TILE_IMAGES = 48;
+    /** Extra pixels of the chart drawn beyond each side of the panel */
+    private static final int VIEWPORT_MARGIN = 128;
+
+    private DepthTiles tiles;
+    private TileCache tileCache;
     private Color backgroundColor;
-    
-    private double zoom = 2.0;
 
-    public RenderPanel(WorldModel wm) {
-        this.worldModel = wm;
+    private final Map<Long, BufferedImage> tileImages = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
 
-        backgroundColor = new Color(0x00001E);
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_TILE_IMAGES;
+        }
+    };
 
-        // Process depth map to produce a coloured lake image
-        int height = DepthMap.depthMapImage.getHeight();
-        int width = DepthMap.depthMapImage.getWidth();
-        lakeImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    private volatile double zoom = 2.0;
+    private volatile float boatX;
+    private volatile float boatY;
+    private volatile float heading;
 
-        int[] mask = DepthMap.depthMapImage.getRGB(0, 0, width, height, null, 0, width);
-        int[] pixels = lakeImage.getRGB(0, 0, width, height, null, 0, width);
+    /** The chart scaled to the screen, around the map pixel at its centre */
+    private BufferedImage viewport;
+    private double viewportX;
+    private double viewportY;
+    private double viewportZoom;
 
-        Random rand = new Random();
+    public RenderPanel() {
+        backgroundColor = new Color(0x00001E);
 
-        for (int i = 0; i < pixels.length; i++) {
-            int alpha = mask[i] & 0xff; // use the green channel as 'grayscale'
-            if (alpha == 255) { // dark green
-                pixels[i] = (alpha << 24) | (0x425d00 + (rand.nextInt(30) << 8));
-            } else if (alpha > 244) { // sand
-                pixels[i] = ((10 * alpha - 2285) << 24) | 0x2D9FCC;
-            } else { // dark blue
-                pixels[i] = (alpha << 24) | 0x00009F;
-            }
+        try {
+            tiles = DepthMap.getWorldTiles();
+            // each tile is only decoded to be coloured, so two will do
+            tileCache = new TileCache(tiles, 2);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        lakeImage.setRGB(0, 0, width, height, pixels, 0, width);
     }
 
     public void setZoom(double z){
         zoom = z;
+        repaint();
     }
-    
+
+    /**
+     * Sets where the boat is drawn, and redraws what has changed: the whole
+     * panel if the boat has moved, or just the boat if it has only turned.
+     */
+    public void setFrame(float x, float y, float newHeading) {
+        if (x != boatX || y != boatY) {
+            boatX = x;
+            boatY = y;
+            heading = newHeading;
+            repaint();
+        } else if (newHeading != heading) {
+            heading = newHeading;
+            BufferedImage boatImg = SimulatorUI.boatImage;
+            // the boat turns about the centre of the panel
+            int r = (int) Math.ceil(Math.hypot(boatImg.getWidth(), boatImg.getHeight()) * 0.25 / 2) + 2;
+            repaint(getWidth() / 2 - r, getHeight() / 2 - r, 2 * r, 2 * r);
+        }
+    }
+
     @Override
     public void paint(Graphics g) {
         Graphics2D gr = (Graphics2D) g;
@@ -60,16 +100,13 @@ public class RenderPanel extends JPanel {
         int w = this.getWidth();
         int h = this.getHeight();
 
-        gr.setColor(backgroundColor);
-        gr.fillRect(0, 0, w, h);
-
         // Draw the lake
-        AffineTransform lakeMatrix = new AffineTransform();
-        lakeMatrix.translate(w / 2, h / 2);
-        lakeMatrix.scale(zoom, zoom);
-        lakeMatrix.translate(-lakeImage.getWidth() / 2, -lakeImage.getHeight() / 2);
-        lakeMatrix.translate(-worldModel.getBoatX(), -worldModel.getBoatY());
-        gr.drawImage(lakeImage, lakeMatrix, null);
+        if (tiles != null) {
+            paintViewport(gr, w, h, boatX, boatY);
+        } else {
+            gr.setColor(backgroundColor);
+            gr.fillRect(0, 0, w, h);
+        }
 
         // Draw the boat
         BufferedImage boatImg = SimulatorUI.boatImage;
@@ -77,8 +114,120 @@ public class RenderPanel extends JPanel {
         boatMatrix.translate(w / 2, h / 2);
         boatMatrix.scale(0.25, 0.25);
         boatMatrix.translate(-boatImg.getWidth() / 2, -boatImg.getHeight() / 2);
-        boatMatrix.rotate(Math.toRadians(worldModel.getHeading()), boatImg.getWidth() / 2, boatImg.getHeight() / 2);
+        boatMatrix.rotate(Math.toRadians(heading), boatImg.getWidth() / 2, boatImg.getHeight() / 2);
         gr.drawImage(SimulatorUI.boatImage, boatMatrix, null);
     }
 
+    /**
+     * Copies the part of the viewport image in view, redrawing the image
+     * first if it no longer covers the panel.
+     */
+    private void paintViewport(Graphics2D gr, int w, int h, float boatX, float boatY) {
+        double z = zoom;
+        // map pixel at the centre of the screen
+        double cx = tiles.getWidth() / 2 + boatX;
+        double cy = tiles.getHeight() / 2 + boatY;
+        int vw = w + 2 * VIEWPORT_MARGIN;
+        int vh = h + 2 * VIEWPORT_MARGIN;
+        if (viewport == null || viewport.getWidth() != vw || viewport.getHeight() != vh || viewportZoom != z
+                || Math.abs(cx - viewportX) * z >= VIEWPORT_MARGIN || Math.abs(cy - viewportY) * z >= VIEWPORT_MARGIN) {
+            if (viewport == null || viewport.getWidth() != vw || viewport.getHeight() != vh) {
+                GraphicsConfiguration gc = getGraphicsConfiguration();
+                viewport = gc != null ? gc.createCompatibleImage(vw, vh)
+                        : new BufferedImage(vw, vh, BufferedImage.TYPE_INT_RGB);
+            }
+            Graphics2D vg = viewport.createGraphics();
+            vg.setColor(backgroundColor);
+            vg.fillRect(0, 0, vw, vh);
+            paintTiles(vg, vw, vh, cx, cy, z);
+            vg.dispose();
+            viewportX = cx;
+            viewportY = cy;
+            viewportZoom = z;
+        }
+        int dx = (int) Math.round((viewportX - cx) * z) - VIEWPORT_MARGIN;
+        int dy = (int) Math.round((viewportY - cy) * z) - VIEWPORT_MARGIN;
+        gr.drawImage(viewport, dx, dy, null);
+    }
+
+    /**
+     * Draws the tiles in view around the given map pixel.
+     */
+    private void paintTiles(Graphics2D gr, int w, int h, double cx, double cy, double zoom) {
+        // one level pixel covers at least one screen pixel
+        int level = 0;
+        while (level < tiles.getLevels() - 1 && zoom * (1 << (level + 1)) <= 1.0) {
+            level++;
+        }
+        int scale = 1 << level;
+        int tileSize = tiles.getTileSize();
+        double span = (double) tileSize * scale;
+
+        int firstX = Math.max(0, (int) Math.floor((cx - w / 2 / zoom) / span));
+        int lastX = Math.min(tiles.getTilesAcross(level) - 1, (int) Math.floor((cx + w / 2 / zoom) / span));
+        int firstY = Math.max(0, (int) Math.floor((cy - h / 2 / zoom) / span));
+        int lastY = Math.min(tiles.getTilesDown(level) - 1, (int) Math.floor((cy + h / 2 / zoom) / span));
+
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                AffineTransform tileMatrix = new AffineTransform();
+                tileMatrix.translate(w / 2, h / 2);
+                tileMatrix.scale(zoom, zoom);
+                tileMatrix.translate(tx * span - cx, ty * span - cy);
+                tileMatrix.scale(scale, scale);
+                gr.drawImage(getTileImage(level, tx, ty), tileMatrix, null);
+            }
+        }
+    }
+
+    private BufferedImage getTileImage(int level, int tx, int ty) {
+        Long key = ((long) level << 56) | ((long) ty << 28) | tx;
+        BufferedImage image = tileImages.get(key);
+        if (image == null) {
+            image = colourTile(level, tx, ty);
+            tileImages.put(key, image);
+        }
+        return image;
+    }
+
+    /**
+     * Colours a tile of the chart, leaving out the padding beyond its edge.
+     */
+    private BufferedImage colourTile(int level, int tx, int ty) {
+        int tileSize = tiles.getTileSize();
+        int width = Math.min(tileSize, tiles.getLevelWidth(level) - tx * tileSize);
+        int height = Math.min(tileSize, tiles.getLevelHeight(level) - ty * tileSize);
+        float[] depths = tileCache.getTile(level, tx, ty);
+
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = Math.round(DepthMap.calculatePixelIntensity(depths[y * tileSize + x]));
+                int i = y * width + x;
+                if (alpha == 255) { // dark green
+                    pixels[i] = (alpha << 24) | (0x425d00 + (noise(tx * tileSize + x, ty * tileSize + y) << 8));
+                } else if (alpha > 244) { // sand
+                    pixels[i] = ((10 * alpha - 2285) << 24) | 0x2D9FCC;
+                } else { // dark blue
+                    pixels[i] = (alpha << 24) | 0x00009F;
+                }
+            }
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    /**
+     * Texture for the land, from 0 to 29, the same every time a pixel is
+     * coloured.
+     */
+    private static int noise(int x, int y) {
+        int n = x * 73856093 ^ y * 19349663;
+        n ^= n >>> 13;
+        n *= 0x5bd1e995;
+        n ^= n >>> 15;
+        return (n >>> 1) % 30;
+    }
+
 }
@@ -3,12 +3,16 @@ package uk.ac.cam.november.simulation.ui;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 
+import uk.ac.cam.november.simulation.SimulatorControls;
+
 public class SimulatorKeyListener implements KeyListener {
 
     private SimulatorUI ui;
+    private SimulatorControls controls;
 
     public SimulatorKeyListener(SimulatorUI ui) {
         this.ui = ui;
+        this.controls = ui.getControls();
     }
 
     @Override
@@ -19,16 +23,16 @@ public class SimulatorKeyListener implements KeyListener {
     public void keyPressed(KeyEvent e) {
         switch (e.getKeyCode()) {
         case KeyEvent.VK_W:
-            ui.KEY_UP = true;
+            controls.KEY_UP = true;
             break;
         case KeyEvent.VK_S:
-            ui.KEY_DOWN = true;
+            controls.KEY_DOWN = true;
             break;
         case KeyEvent.VK_A:
-            ui.KEY_LEFT = true;
+            controls.KEY_LEFT = true;
             break;
         case KeyEvent.VK_D:
-            ui.KEY_RIGHT = true;
+            controls.KEY_RIGHT = true;
             break;
         case KeyEvent.VK_EQUALS:
             ui.zoomIn();
@@ -43,16 +47,16 @@ public class SimulatorKeyListener implements KeyListener {
     public void keyReleased(KeyEvent e) {
         switch (e.getKeyCode()) {
         case KeyEvent.VK_W:
-            ui.KEY_UP = false;
+            controls.KEY_UP = false;
             break;
         case KeyEvent.VK_S:
-            ui.KEY_DOWN = false;
+            controls.KEY_DOWN = false;
             break;
         case KeyEvent.VK_A:
-            ui.KEY_LEFT = false;
+            controls.KEY_LEFT = false;
             break;
         case KeyEvent.VK_D:
-            ui.KEY_RIGHT = false;
+            controls.KEY_RIGHT = false;
             break;
         }
     }
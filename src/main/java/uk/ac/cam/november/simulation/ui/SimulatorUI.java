@@ -10,10 +10,24 @@ import javax.swing.JPanel;
 import javax.swing.OverlayLayout;
 
 import uk.ac.cam.november.simulation.Simulator;
-
+import uk.ac.cam.november.simulation.SimulatorControls;
+import uk.ac.cam.november.simulation.WorldSnapshot;
+
+/**
+ * The simulator's window. It is drawn on a thread of its own, at up to
+ * {@value #FRAME_RATE} frames a second, from the snapshots the simulator
+ * publishes after each step, so drawing never holds up the simulation. Each
+ * frame, the parts of the window whose contents have changed are redrawn,
+ * and nothing else.
+ */
 public class SimulatorUI extends JFrame {
     private static final long serialVersionUID = -3171613750699870243L;
 
+    /** Most frames drawn a second */
+    private static final int FRAME_RATE = 60;
+    private static final long FRAME_NANOS = 1000000000L / FRAME_RATE;
+    private static final long STEP_NANOS = Simulator.STEP * 1000000L;
+
     private SimulatorKeyListener keyListener;
 
     public static BufferedImage boatImage;
@@ -21,14 +35,16 @@ public class SimulatorUI extends JFrame {
 
     private Simulator simulator;
 
-    public boolean KEY_UP;
-    public boolean KEY_DOWN;
-    public boolean KEY_LEFT;
-    public boolean KEY_RIGHT;
+    private final SimulatorControls controls = new SimulatorControls();
 
     private double zoom = 2.0;
     private RenderPanel renderPanel;
     private SubtitlePanel subtitlePanel;
+    private InstrumentPanel instrumentPanel;
+
+    /** The snapshot being drawn; used by the render thread only */
+    private final WorldSnapshot frame = new WorldSnapshot();
+    private Thread renderThread;
 
     public SimulatorUI(Simulator sim) {
         super("Sailing by Sound Simulator");
@@ -40,7 +56,15 @@ public class SimulatorUI extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout());
 
-        JPanel renderOverlay = new JPanel();
+        JPanel renderOverlay = new JPanel() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isOptimizedDrawingEnabled() {
+                // the subtitles overlap the chart, so redraw both together
+                return false;
+            }
+        };
         renderOverlay.setLayout(new OverlayLayout(renderOverlay));
         renderPanel = createRenderPanel();
         renderPanel.setZoom(zoom);
@@ -48,7 +72,7 @@ public class SimulatorUI extends JFrame {
         renderOverlay.add(subtitlePanel, BorderLayout.CENTER);
         renderOverlay.add(renderPanel, BorderLayout.CENTER);
 
-        InstrumentPanel instrumentPanel = createInstrumentPanel();
+        instrumentPanel = createInstrumentPanel();
 
         add(renderOverlay, BorderLayout.CENTER);
         add(instrumentPanel, BorderLayout.EAST);
@@ -57,7 +81,7 @@ public class SimulatorUI extends JFrame {
     }
 
     private RenderPanel createRenderPanel() {
-        RenderPanel renderPanel = new RenderPanel(simulator.getWorldModel());
+        RenderPanel renderPanel = new RenderPanel();
 
         renderPanel.setFocusable(true);
         keyListener = new SimulatorKeyListener(this);
@@ -66,10 +90,65 @@ public class SimulatorUI extends JFrame {
     }
 
     private InstrumentPanel createInstrumentPanel() {
-        InstrumentPanel instrumentPanel = new InstrumentPanel(simulator.getWorldModel());
+        InstrumentPanel instrumentPanel = new InstrumentPanel();
         return instrumentPanel;
     }
 
+    /**
+     * Returns the helm controls, which are set from the keyboard.
+     */
+    public SimulatorControls getControls() {
+        return controls;
+    }
+
+    /**
+     * Starts the thread which draws the window, if it is not already running.
+     */
+    public synchronized void startRendering() {
+        if (renderThread != null) {
+            return;
+        }
+        renderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long next = System.nanoTime();
+                while (true) {
+                    renderFrame();
+                    next += FRAME_NANOS;
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    } else {
+                        // behind; skip the frames missed rather than rush them
+                        next = System.nanoTime();
+                    }
+                }
+            }
+        }, "Simulator-Render");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /**
+     * Brings each panel up to date with the latest snapshot, interpolating
+     * the boat between the last two steps by the time since the last one.
+     */
+    private void renderFrame() {
+        simulator.getSnapshots().read(frame);
+        subtitlePanel.update();
+        if (frame.getStep() < 0) {
+            return;
+        }
+        float alpha = (System.nanoTime() - frame.getPublishedNanos()) / (float) STEP_NANOS;
+        alpha = Math.max(0f, Math.min(1f, alpha));
+        renderPanel.setFrame(frame.getBoatX(alpha), frame.getBoatY(alpha), frame.getHeading(alpha));
+        instrumentPanel.update(frame);
+    }
+
     public void zoomIn() {
         if (zoom < 10) {
             zoom *= 1.1;
@@ -78,7 +157,7 @@ public class SimulatorUI extends JFrame {
     }
 
     public void zoomOut() {
-        if (zoom > 0.5) {
+        if (zoom > 0.1) {
             zoom /= 1.1;
             renderPanel.setZoom(zoom);
         }
@@ -7,19 +7,29 @@ import java.awt.Graphics2D;
 
 import javax.swing.JPanel;
 
-import uk.ac.cam.november.simulation.WorldModel;
-
 public class SpeedPanel extends JPanel {
     private static final long serialVersionUID = -2385072895131913349L;
-    private WorldModel worldModel;
 
     public static final double MS_TO_KTS = 1.9438444924406;
 
-    public SpeedPanel(WorldModel worldModel) {
-        this.worldModel = worldModel;
+    private volatile String speedMessage = "";
+
+    public SpeedPanel() {
         setPreferredSize(new Dimension(250, 100));
     }
 
+    /**
+     * Sets the boat speed shown, in m/s, and redraws the panel if the text
+     * has changed.
+     */
+    public void update(float boatSpeed) {
+        String message = "Boat Speed: " + String.format("%.2f", boatSpeed * MS_TO_KTS) + " kts";
+        if (!message.equals(speedMessage)) {
+            speedMessage = message;
+            repaint();
+        }
+    }
+
     @Override
     public void paint(Graphics g) {
         Graphics2D gr = (Graphics2D) g;
@@ -32,8 +42,7 @@ public class SpeedPanel extends JPanel {
         gr.fillRect(0, 0, w, h);
 
         gr.setColor(Color.WHITE);
-        String angleMessage = "Boat Speed: " + String.format("%.2f", worldModel.getBoatSpeed() * MS_TO_KTS) + " kts";
-        gr.drawString(angleMessage, 8, 16);
+        gr.drawString(speedMessage, 8, 16);
 
     }
 
@@ -14,12 +14,23 @@ public class SubtitlePanel extends JPanel {
     private final Font SUBTITLE_FONT = new Font("Arial", Font.BOLD, 24);
     private final long TIMEOUT = 4000L;
 
-    private String subtitle = "";
-    private long subtitletimeout;
+    private volatile String subtitle = "";
+    private volatile long subtitletimeout;
 
     public void showSubtitle(String s) {
         subtitletimeout = System.currentTimeMillis() + TIMEOUT;
         subtitle = s;
+        repaint();
+    }
+
+    /**
+     * Removes the subtitle if its time has expired.
+     */
+    public void update() {
+        if (subtitle.length() > 0 && System.currentTimeMillis() > subtitletimeout) {
+            subtitle = "";
+            repaint();
+        }
     }
 
     @Override
@@ -30,11 +41,7 @@ public class SubtitlePanel extends JPanel {
         g.setColor(TRANSPARENT);
         g.fillRect(0, 0, w, h);
 
-        // remove the subtitle if its time has expired
-        if (System.currentTimeMillis() > subtitletimeout) {
-            subtitle = "";
-        }
-
+        String subtitle = this.subtitle;
         if (subtitle.length() > 0) {
             g.setFont(SUBTITLE_FONT);
 
@@ -7,18 +7,35 @@ import java.awt.Graphics2D;
 
 import javax.swing.JPanel;
 
-import uk.ac.cam.november.simulation.WorldModel;
-
 public class WindPanel extends JPanel {
     private static final long serialVersionUID = 4654100502287839615L;
 
-    private WorldModel worldModel;
+    private volatile String angleMessage = "";
+    private volatile String speedMessage = "";
 
-    public WindPanel(WorldModel worldModel) {
-        this.worldModel = worldModel;
+    public WindPanel() {
         setPreferredSize(new Dimension(250, 100));
     }
 
+    /**
+     * Sets the wind shown, and redraws the panel if the text has changed.
+     */
+    public void update(float windAngle, float windSpeed, float heading) {
+        float angle = windAngle - heading;
+        if (angle < 0f)
+            angle += 360.0f;
+        if (angle > 360f)
+            angle -= 360.0f;
+
+        String newAngle = "Wind Angle: " + String.format("%.1f", angle);
+        String newSpeed = "Wind Speed: " + String.format("%.1f", windSpeed);
+        if (!newAngle.equals(angleMessage) || !newSpeed.equals(speedMessage)) {
+            angleMessage = newAngle;
+            speedMessage = newSpeed;
+            repaint();
+        }
+    }
+
     @Override
     public void paint(Graphics g) {
         Graphics2D gr = (Graphics2D) g;
@@ -31,16 +48,7 @@ public class WindPanel extends JPanel {
         gr.fillRect(0, 0, w, h);
 
         gr.setColor(Color.WHITE);
-
-        float angle = worldModel.getWindAngle() - worldModel.getHeading();
-        if (angle < 0f)
-            angle += 360.0f;
-        if (angle > 360f)
-            angle -= 360.0f;
-
-        String angleMessage = "Wind Angle: " + angle;
         gr.drawString(angleMessage, 8, 16);
-        String speedMessage = "Wind Speed: " + worldModel.getWindSpeed();
         gr.drawString(speedMessage, 8, 32);
 
     }
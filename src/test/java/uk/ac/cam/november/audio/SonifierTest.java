@@ -0,0 +1,53 @@
+package uk.ac.cam.november.audio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.decoder.BoatState;
+
+public class SonifierTest {
+
+    private static final int FRAMES = 256;
+
+    @Test
+    public void disabledSonifierShouldBeSilent() {
+        Sonifier sonifier = new Sonifier(new BoatState());
+        float[] left = new float[FRAMES];
+        float[] right = new float[FRAMES];
+        sonifier.render(left, right, FRAMES);
+        assertEquals(0.0, energy(left) + energy(right), 0.0);
+    }
+
+    @Test
+    public void headingToneShouldPanTowardsTheSideToSteerTo() {
+        BoatState state = new BoatState();
+        state.setHeading(30f);
+        Sonifier sonifier = new Sonifier(state);
+        sonifier.setChannels("heading");
+        sonifier.setTargetHeading(0f);
+
+        float[] left = new float[FRAMES];
+        float[] right = new float[FRAMES];
+        // let the smoothed parameters settle
+        for (int i = 0; i < 50; i++) {
+            Arrays.fill(left, 0f);
+            Arrays.fill(right, 0f);
+            sonifier.render(left, right, FRAMES);
+        }
+        // boat is right of the target, so the tone should come from the left
+        assertTrue(energy(left) > 2 * energy(right));
+    }
+
+    private static double energy(float[] samples) {
+        double e = 0;
+        for (float s : samples) {
+            e += s * s;
+        }
+        return e;
+    }
+
+}
@@ -0,0 +1,17 @@
+package uk.ac.cam.november.audio;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeFalse;
+
+import org.junit.Test;
+
+public class ToneSynthesizerTest {
+
+    @Test
+    public void soundPlayedBeforeStartShouldBeDropped() {
+        assumeFalse(ToneSynthesizer.isRunning());
+        ToneSynthesizer.play(new float[] { 0.5f, -0.5f });
+        assertNull(ToneSynthesizer.pendingSound.get());
+    }
+
+}
@@ -0,0 +1,41 @@
+package uk.ac.cam.november.boot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.simulation.InputScript;
+
+public class HeadlessScenarioTest {
+
+    /** Full speed north from deep water, which runs onto a shoal after about a minute */
+    private static final String SHOAL_SCRIPT = "0 up down\n120 end\n";
+    private static final float SHOAL_LATITUDE = -50;
+    private static final float SHOAL_LONGTITUDE = -120;
+
+    private static String alertsOf(String script) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true, "UTF-8");
+        Boot.runScenario(InputScript.parse(new StringReader(script)), SHOAL_LATITUDE, SHOAL_LONGTITUDE, 0, out);
+        String printed = bytes.toString("UTF-8");
+        // leave out the summary, which includes how long the run took
+        return printed.substring(0, printed.lastIndexOf("Simulated "));
+    }
+
+    @Test
+    public void scriptedShoalRaisesDepthAlert() throws Exception {
+        String alerts = alertsOf(SHOAL_SCRIPT);
+        assertTrue(alerts, alerts.contains("Warning: entering shallow water"));
+    }
+
+    @Test
+    public void alertsAreTheSameEveryRun() throws Exception {
+        assertEquals(alertsOf(SHOAL_SCRIPT), alertsOf(SHOAL_SCRIPT));
+    }
+
+}
@@ -0,0 +1,72 @@
+package uk.ac.cam.november.buttons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ButtonGestureDetectorTest implements GestureListener {
+
+    private static final long MS = 1000000L;
+
+    private final List<String> gestures = new ArrayList<String>();
+    private ButtonGestureDetector detector;
+
+    @Before
+    public void setUp() {
+        gestures.clear();
+        detector = new ButtonGestureDetector(this);
+    }
+
+    @Test
+    public void shortPressShouldBeReportedOnRelease() {
+        detector.pressed(ButtonNames.WATER_DEPTH, 0);
+        detector.poll(500 * MS);
+        assertEquals(0, gestures.size());
+        detector.released(ButtonNames.WATER_DEPTH, 600 * MS);
+        assertEquals("press " + ButtonNames.WATER_DEPTH, gestures.get(0));
+        assertEquals(1, gestures.size());
+    }
+
+    @Test
+    public void longPressShouldBeReportedWhileHeld() {
+        detector.pressed(ButtonNames.COMPASS_HEADING, 0);
+        assertEquals(ButtonGestureDetector.LONG_PRESS_TIME, detector.nextDeadline());
+        detector.poll(ButtonGestureDetector.LONG_PRESS_TIME);
+        assertEquals("long " + ButtonNames.COMPASS_HEADING, gestures.get(0));
+        assertEquals(Long.MAX_VALUE, detector.nextDeadline());
+
+        detector.released(ButtonNames.COMPASS_HEADING, 3000 * MS);
+        assertEquals(1, gestures.size());
+    }
+
+    @Test
+    public void secondButtonWhileHeldShouldBeAChord() {
+        detector.pressed(ButtonNames.SHUT_DOWN, 0);
+        detector.pressed(ButtonNames.WIND_SPEED, 200 * MS);
+        detector.poll(5000 * MS);
+        detector.released(ButtonNames.WIND_SPEED, 5100 * MS);
+        detector.released(ButtonNames.SHUT_DOWN, 5200 * MS);
+        assertEquals(1, gestures.size());
+        assertEquals("chord " + ButtonNames.SHUT_DOWN + " " + ButtonNames.WIND_SPEED, gestures.get(0));
+    }
+
+    @Override
+    public void onPress(String buttonName) {
+        gestures.add("press " + buttonName);
+    }
+
+    @Override
+    public void onLongPress(String buttonName) {
+        gestures.add("long " + buttonName);
+    }
+
+    @Override
+    public void onChord(String firstButton, String secondButton) {
+        gestures.add("chord " + firstButton + " " + secondButton);
+    }
+
+}
@@ -0,0 +1,73 @@
+package uk.ac.cam.november.buttons;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+public class PinListenerTest {
+
+    /** Records the edges passed on, instead of detecting gestures */
+    private static class RecordingDispatcher extends ButtonDispatcher {
+        final List<String> edges = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void buttonPressed(String buttonName) {
+            edges.add("down");
+        }
+
+        @Override
+        public void buttonReleased(String buttonName) {
+            edges.add("up");
+        }
+    }
+
+    private static volatile boolean pinHigh;
+
+    private static final BooleanSupplier PIN = new BooleanSupplier() {
+        @Override
+        public boolean getAsBoolean() {
+            return pinHigh;
+        }
+    };
+
+    private static void awaitEdges(RecordingDispatcher dispatcher, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && dispatcher.edges.size() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void bounceShouldBeIgnored() throws Exception {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        PinListener listener = new PinListener(ButtonNames.WATER_DEPTH, dispatcher, PIN);
+        pinHigh = true;
+        listener.stateChanged(true);
+        listener.stateChanged(false);
+        listener.stateChanged(true);
+        Thread.sleep(100);
+        assertEquals(Collections.singletonList("down"), dispatcher.edges);
+    }
+
+    @Test
+    public void releaseOfAFastTapShouldBePassedOnLate() throws Exception {
+        RecordingDispatcher dispatcher = new RecordingDispatcher();
+        PinListener listener = new PinListener(ButtonNames.WATER_DEPTH, dispatcher, PIN);
+        pinHigh = true;
+        listener.stateChanged(true);
+        // released well within the debounce window, with no edge after it
+        pinHigh = false;
+        listener.stateChanged(false);
+        assertEquals(Collections.singletonList("down"), dispatcher.edges);
+        awaitEdges(dispatcher, 2);
+        synchronized (dispatcher.edges) {
+            assertEquals(2, dispatcher.edges.size());
+            assertEquals("up", dispatcher.edges.get(1));
+        }
+    }
+
+}
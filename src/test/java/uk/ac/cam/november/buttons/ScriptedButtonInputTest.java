@@ -0,0 +1,27 @@
+package uk.ac.cam.november.buttons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ScriptedButtonInputTest {
+
+    @Test
+    public void percentileShouldUseNearestRank() {
+        long[] sorted = { 10, 20, 30, 40, 50, 60, 70, 80, 90, 100 };
+        assertEquals(50, ScriptedButtonInput.percentile(sorted, 50));
+        assertEquals(90, ScriptedButtonInput.percentile(sorted, 90));
+        assertEquals(100, ScriptedButtonInput.percentile(sorted, 99));
+        assertEquals(10, ScriptedButtonInput.percentile(sorted, 0));
+    }
+
+    @Test
+    public void summaryShouldReportTimeouts() {
+        String summary = ScriptedButtonInput.summarise(new long[] { 3000000L, 1000000L, 2000000L }, 1);
+        assertTrue(summary, summary.contains("3 presses (1 timed out)"));
+        assertTrue(summary, summary.contains("min 1.0ms"));
+        assertTrue(summary, summary.contains("max 3.0ms"));
+    }
+
+}
@@ -0,0 +1,78 @@
+package uk.ac.cam.november.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Test;
+
+public class AlertHandlerTest {
+
+    @Test
+    public void loneAlertShouldOnlyWaitBriefly() {
+        Queue<AlertMessage> queue = new ConcurrentLinkedQueue<AlertMessage>();
+        long start = System.currentTimeMillis();
+        List<AlertMessage> batch = AlertHandler.collectBurst(new AlertMessage(0, 3), queue);
+        assertEquals(1, batch.size());
+        assertTrue(System.currentTimeMillis() - start < AlertHandler.ALERT_BATCH_WINDOW);
+    }
+
+    @Test
+    public void alertArrivingShortlyAfterShouldBeMerged() throws Exception {
+        final Queue<AlertMessage> queue = new ConcurrentLinkedQueue<AlertMessage>();
+        Thread decoder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.add(new AlertMessage(0, 2));
+            }
+        });
+        decoder.start();
+        List<AlertMessage> batch = AlertHandler.collectBurst(new AlertMessage(0, 3), queue);
+        decoder.join();
+        assertEquals(2, batch.size());
+        assertEquals(2, batch.get(1).getSensor());
+    }
+
+    @Test
+    public void criticalAlertShouldNotWait() {
+        Queue<AlertMessage> queue = new ConcurrentLinkedQueue<AlertMessage>();
+        long start = System.currentTimeMillis();
+        AlertHandler.collectBurst(new AlertMessage(6, 0, "20"), queue);
+        assertTrue(System.currentTimeMillis() - start < AlertHandler.ALERT_GAP);
+    }
+
+    @Test
+    public void queuedAlertsShouldBeMerged() {
+        Queue<AlertMessage> queue = new ConcurrentLinkedQueue<AlertMessage>();
+        queue.add(new AlertMessage(0, 2));
+        queue.add(new AlertMessage(0, 4));
+        List<AlertMessage> batch = AlertHandler.collectBurst(new AlertMessage(0, 3), queue);
+        assertEquals(3, batch.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void criticalAlertShouldBeSpokenAlone() {
+        Queue<AlertMessage> queue = new ConcurrentLinkedQueue<AlertMessage>();
+        queue.add(new AlertMessage(0, 3));
+        AlertMessage shallow = new AlertMessage(2, 0);
+        List<AlertMessage> batch = AlertHandler.collectBurst(shallow, queue);
+        assertEquals(1, batch.size());
+        assertEquals(1, queue.size());
+
+        queue.add(shallow);
+        batch = AlertHandler.collectBurst(new AlertMessage(0, 2), queue);
+        assertEquals(2, batch.size());
+        assertSame(shallow, queue.peek());
+    }
+
+}
@@ -0,0 +1,74 @@
+package uk.ac.cam.november.decoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.buttons.ButtonNames;
+import uk.ac.cam.november.location.Route;
+import uk.ac.cam.november.location.RouteNavigator;
+import uk.ac.cam.november.location.Waypoint;
+
+public class AnswerCacheTest {
+
+    @Test
+    public void cacheShouldHaveAnAnswerForEveryReadoutButton() {
+        AnswerCache cache = new AnswerCache();
+        assertTrue(cache.hasAnswer(ButtonNames.BOAT_SPEED));
+        assertTrue(cache.hasAnswer(ButtonNames.COMPASS_HEADING));
+        assertTrue(cache.hasAnswer(ButtonNames.NEAREST_PORT));
+        assertTrue(cache.hasAnswer(ButtonNames.WATER_DEPTH));
+        assertTrue(cache.hasAnswer(ButtonNames.WIND_DIRECTION));
+        assertTrue(cache.hasAnswer(ButtonNames.WIND_SPEED));
+        assertFalse(cache.hasAnswer(ButtonNames.SHUT_DOWN));
+    }
+
+    @Test
+    public void answersShouldFollowSpokenResolution() {
+        AnswerCache cache = new AnswerCache();
+        cache.updateHeading(12.4f);
+        assertEquals("12 degrees from north", cache.getAnswer(ButtonNames.COMPASS_HEADING));
+        cache.updateHeading(12.6f);
+        assertEquals("13 degrees from north", cache.getAnswer(ButtonNames.COMPASS_HEADING));
+
+        cache.updateDepth(2.86f);
+        assertEquals("2.9 meters deep", cache.getAnswer(ButtonNames.WATER_DEPTH));
+        cache.updateDepth(2.94f);
+        assertEquals("3 meters deep", cache.getAnswer(ButtonNames.WATER_DEPTH));
+        cache.updateDepth(25.2f);
+        assertEquals("25 meters deep", cache.getAnswer(ButtonNames.WATER_DEPTH));
+    }
+
+    @Test
+    public void routeAnswerShouldDescribeTheNextWaypoint() {
+        Route route = Route.load(new StringReader("{\"waypoints\":["
+                + "{\"name\":\"Start\",\"location\":{\"lat\":50.0,\"lng\":0.0}},"
+                + "{\"name\":\"Buoy\",\"location\":{\"lat\":50.01,\"lng\":0.0}}]}"));
+        RouteNavigator nav = new RouteNavigator(route, new RouteNavigator.Listener() {
+            @Override
+            public void onWaypointReached(Waypoint reached, Waypoint next) {
+            }
+
+            @Override
+            public void onOffTrack(double crossTrack) {
+            }
+        });
+        AnswerCache cache = new AnswerCache();
+        assertFalse(cache.hasAnswer(AnswerCache.ROUTE));
+
+        // about 557 m short of the buoy and 36 m right of track, at 2 m/s
+        nav.update(50.005, 0.0005, 2f);
+        cache.updateRoute(nav);
+        assertEquals("Buoy, 557m at 356 degrees, 40 meters right of track, arriving in 5 minutes",
+                cache.getAnswer(AnswerCache.ROUTE));
+
+        nav.update(50.01, 0.0, 2f);
+        cache.updateRoute(nav);
+        assertEquals("Route complete", cache.getAnswer(AnswerCache.ROUTE));
+    }
+
+}
@@ -0,0 +1,90 @@
+package uk.ac.cam.november.location;
+
+import java.util.Random;
+
+/**
+ * Compares the {@link Geodesy} batch kernels with calling
+ * {@link LocationUtil#distance} and {@link LocationUtil#initialBearing} for
+ * every point. Run with the test classpath:
+ * {@code java uk.ac.cam.november.location.GeodesyBenchmark [points]}.
+ */
+class GeodesyBenchmark {
+
+    private static final int ROUNDS = 200;
+
+    public static void main(final String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(1);
+        LatLng[] points = new LatLng[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = new LatLng(170 * random.nextDouble() - 85, 360 * random.nextDouble() - 180);
+        }
+        GeoPoints geo = new GeoPoints(points);
+        double[] out = new double[n];
+        LatLng from = new LatLng(52.2, 0.12);
+
+        // run everything twice, and report the second, warmed-up pass
+        for (int pass = 0; pass < 2; pass++) {
+            boolean report = pass == 1;
+            double sink = 0;
+
+            long start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (int i = 0; i < n; i++) {
+                    out[i] = LocationUtil.distance(from, points[i]);
+                }
+                sink += out[r % n];
+            }
+            print(report, "LocationUtil.distance", start, n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                Geodesy.distances(from, geo, out);
+                sink += out[r % n];
+            }
+            print(report, "Geodesy.distances", start, n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                Geodesy.chordsSquared(from, geo, out);
+                sink += out[r % n];
+            }
+            print(report, "Geodesy.chordsSquared", start, n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                Geodesy.approxDistances(from, geo, out);
+                sink += out[r % n];
+            }
+            print(report, "Geodesy.approxDistances", start, n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                for (int i = 0; i < n; i++) {
+                    out[i] = LocationUtil.initialBearing(from, points[i]);
+                }
+                sink += out[r % n];
+            }
+            print(report, "LocationUtil.initialBearing", start, n);
+
+            start = System.nanoTime();
+            for (int r = 0; r < ROUNDS; r++) {
+                Geodesy.bearings(from, geo, out);
+                sink += out[r % n];
+            }
+            print(report, "Geodesy.bearings", start, n);
+
+            if (report) {
+                System.out.println("(checksum " + sink + ")");
+            }
+        }
+    }
+
+    private static void print(boolean report, String name, long start, int n) {
+        if (report) {
+            double nanosPerPoint = (System.nanoTime() - start) / (double) ROUNDS / n;
+            System.out.println(String.format("%-28s %8.2f ns per point", name, nanosPerPoint));
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package uk.ac.cam.november.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GeodesyTest {
+
+    private final Random random = new Random(37);
+
+    private LatLng[] randomLocations(int n) {
+        LatLng[] points = new LatLng[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = new LatLng(170 * random.nextDouble() - 85, 360 * random.nextDouble() - 180);
+        }
+        return points;
+    }
+
+    @Test
+    public void batchKernelsShouldMatchLocationUtil() {
+        LatLng[] points = randomLocations(1000);
+        GeoPoints geo = new GeoPoints(points);
+        double[] dists = new double[points.length];
+        double[] bearings = new double[points.length];
+        for (int q = 0; q < 20; q++) {
+            LatLng from = randomLocations(1)[0];
+            Geodesy.distances(from, geo, dists);
+            Geodesy.bearings(from, geo, bearings);
+            for (int i = 0; i < points.length; i++) {
+                assertEquals(LocationUtil.distance(from, points[i]), dists[i], 1e-3);
+                assertEquals(LocationUtil.initialBearing(from, points[i]), bearings[i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void approximateDistanceShouldBeCloseNearby() {
+        LatLng from = new LatLng(50.8, -1.1);
+        GeoPoints geo = new GeoPoints(new LatLng[] { new LatLng(50.9, -1.4), new LatLng(50.7, -0.9) });
+        double[] approx = new double[2];
+        Geodesy.approxDistances(from, geo, approx);
+        for (int i = 0; i < 2; i++) {
+            double exact = LocationUtil.distance(from, geo.get(i));
+            assertTrue(Math.abs(approx[i] - exact) < exact * 0.005);
+        }
+    }
+
+    @Test
+    public void vincentyShouldMatchTheReferenceExample() {
+        // Flinders Peak to Buninyong, from Vincenty's 1975 paper
+        LatLng flindersPeak = new LatLng(-(37 + 57 / 60.0 + 3.72030 / 3600), 144 + 25 / 60.0 + 29.52440 / 3600);
+        LatLng buninyong = new LatLng(-(37 + 39 / 60.0 + 10.15610 / 3600), 143 + 55 / 60.0 + 35.38390 / 3600);
+        assertEquals(54972.271, Geodesy.vincenty(flindersPeak, buninyong), 0.001);
+        assertEquals(0.0, Geodesy.vincenty(buninyong, buninyong), 0.0);
+    }
+
+}
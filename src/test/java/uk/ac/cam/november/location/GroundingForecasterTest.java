@@ -0,0 +1,68 @@
+package uk.ac.cam.november.location;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GroundingForecasterTest {
+
+    /**
+     * A chart in meters on a local flat frame, with a shelf of 5 meter deep
+     * water north of y = 300 and 100 meters elsewhere.
+     */
+    private static class ShelfChart implements Bathymetry {
+        int samples = 0;
+
+        @Override
+        public double toX(double lat, double lng) {
+            return lng * 111000;
+        }
+
+        @Override
+        public double toY(double lat, double lng) {
+            return lat * 111000;
+        }
+
+        @Override
+        public double unitLength() {
+            return 1.0;
+        }
+
+        @Override
+        public double sampleSpacing() {
+            return 1.0;
+        }
+
+        @Override
+        public float depthAt(double x, double y) {
+            samples++;
+            return y > 300 ? 5f : 100f;
+        }
+    }
+
+    @Test
+    public void shelfAheadShouldBeForecast() {
+        ShelfChart chart = new ShelfChart();
+        GroundingForecaster forecaster = new GroundingForecaster(chart, 40f, 30f);
+        // heading north at 20 m/s from y = 0 reaches the shelf after 15 seconds
+        assertEquals(15f, forecaster.timeToShallow(0, 0, 0f, 20f), 0.1f);
+    }
+
+    @Test
+    public void shelfBehindOrOutOfRangeShouldNotBeForecast() {
+        ShelfChart chart = new ShelfChart();
+        GroundingForecaster forecaster = new GroundingForecaster(chart, 40f, 30f);
+        assertEquals(-1f, forecaster.timeToShallow(0, 0, 180f, 20f), 0f);
+        assertEquals(-1f, forecaster.timeToShallow(0, 0, 0f, 5f), 0f);
+        assertEquals(-1f, forecaster.timeToShallow(0, 0, 0f, 0f), 0f);
+    }
+
+    @Test
+    public void samplesShouldBeBoundedForLongLooksAhead() {
+        ShelfChart chart = new ShelfChart();
+        GroundingForecaster forecaster = new GroundingForecaster(chart, 40f, 3600f);
+        forecaster.timeToShallow(0, 0, 90f, 10f);
+        assertEquals(1024, chart.samples);
+    }
+
+}
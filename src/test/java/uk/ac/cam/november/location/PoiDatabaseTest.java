@@ -0,0 +1,93 @@
+package uk.ac.cam.november.location;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PoiDatabaseTest {
+
+    private static final int POINTS = 1000;
+
+    private final Random random = new Random(35);
+    private final String[] names = new String[POINTS];
+    private final byte[] kinds = new byte[POINTS];
+    private final LatLng[] locations = new LatLng[POINTS];
+
+    public PoiDatabaseTest() {
+        for (int i = 0; i < POINTS; i++) {
+            names[i] = "Port " + i + " å";
+            kinds[i] = (byte) (i % 5);
+            locations[i] = new LatLng(180 * random.nextDouble() - 90, 360 * random.nextDouble() - 180);
+        }
+    }
+
+    private void assertSameAsSource(PoiDatabase db) {
+        SpatialIndex reference = new SpatialIndex(locations);
+        for (int q = 0; q < 100; q++) {
+            LatLng loc = new LatLng(180 * random.nextDouble() - 90, 360 * random.nextDouble() - 180);
+            int expected = reference.nearest(loc);
+            int record = db.getIndex().nearest(loc);
+            assertEquals(names[expected], db.getName(record));
+            assertEquals(kinds[expected], db.getKind(record));
+            assertEquals(locations[expected].getLat(), db.getLocation(record).getLat(), 0.0);
+            assertEquals(locations[expected].getLng(), db.getLocation(record).getLng(), 0.0);
+        }
+    }
+
+    @Test
+    public void encodedDatabaseShouldAnswerLikeTheSource() throws IOException {
+        PoiDatabase db = PoiDatabase.wrap(PoiDatabase.encode(names, kinds, locations));
+        assertEquals(POINTS, db.size());
+        assertSameAsSource(db);
+    }
+
+    @Test
+    public void mappedDatabaseShouldAnswerLikeTheSource() throws IOException {
+        File file = File.createTempFile("pois", ".poi");
+        file.deleteOnExit();
+        PoiDatabase.write(PoiDatabase.encode(names, kinds, locations), file);
+        assertSameAsSource(PoiDatabase.open(file));
+    }
+
+    @Test
+    public void databaseShouldKnowItsSource() throws IOException {
+        ByteBuffer encoded = PoiDatabase.encode(names, kinds, locations);
+        PoiDatabase.setSource(encoded, 212345L, 1476748800000L);
+        File file = File.createTempFile("pois", ".poi");
+        file.deleteOnExit();
+        PoiDatabase.write(encoded, file);
+        PoiDatabase db = PoiDatabase.open(file);
+        assertTrue(db.isFrom(212345L, 1476748800000L));
+        assertFalse(db.isFrom(212346L, 1476748800000L));
+        assertFalse(db.isFrom(212345L, 1476748801000L));
+    }
+
+    @Test
+    public void configuredDatabaseShouldNeverBeConvertedAgain() throws IOException {
+        File file = File.createTempFile("pois", ".poi");
+        file.deleteOnExit();
+        PoiDatabase.write(PoiDatabase.encode(names, kinds, locations), file);
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        PoiDatabase db = LocationUtil.openDatabase(file);
+        assertEquals(POINTS, db.size());
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedDatabaseShouldBeRejected() throws IOException {
+        ByteBuffer encoded = PoiDatabase.encode(names, kinds, locations);
+        encoded.limit(encoded.limit() - 1);
+        PoiDatabase.wrap(encoded.slice());
+    }
+
+}
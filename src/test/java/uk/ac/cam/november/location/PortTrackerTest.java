@@ -0,0 +1,87 @@
+package uk.ac.cam.november.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PortTrackerTest implements PortTracker.Listener {
+
+    private final List<String> events = new ArrayList<String>();
+
+    private static PoiDatabase randomPorts(int n, Random random) throws IOException {
+        String[] names = new String[n];
+        byte[] kinds = new byte[n];
+        LatLng[] locations = new LatLng[n];
+        for (int i = 0; i < n; i++) {
+            names[i] = "Port " + i;
+            kinds[i] = PoiDatabase.PORT;
+            // a 2 by 2 degree area, so the boat passes many ports
+            locations[i] = new LatLng(50 + 2 * random.nextDouble(), 2 * random.nextDouble());
+        }
+        return PoiDatabase.wrap(PoiDatabase.encode(names, kinds, locations));
+    }
+
+    @Test
+    public void nearestPortShouldMatchBruteForceAlongATrack() throws IOException {
+        Random random = new Random(36);
+        PoiDatabase db = randomPorts(500, random);
+        PortTracker tracker = new PortTracker(db, this);
+
+        int steps = 20000;
+        double lat = 50.2;
+        double lng = 0.2;
+        for (int step = 0; step < steps; step++) {
+            // about 10 meters per fix
+            lat += 0.00006;
+            lng += 0.00008;
+            tracker.update(lat, lng);
+
+            LatLng here = new LatLng(lat, lng);
+            double best = Double.MAX_VALUE;
+            String expected = null;
+            for (int r = 0; r < db.size(); r++) {
+                double d = LocationUtil.distance(here, db.getLocation(r));
+                if (d < best) {
+                    best = d;
+                    expected = db.getName(r);
+                }
+            }
+            assertEquals(expected, tracker.getNearestPort().name);
+        }
+        assertTrue("searched " + tracker.searches + " times", tracker.searches < steps / 20);
+    }
+
+    @Test
+    public void passingAPortShouldReportOneArrivalAndOneDeparture() throws IOException {
+        PoiDatabase db = PoiDatabase.wrap(PoiDatabase.encode(new String[] { "Harwich" },
+                new byte[] { PoiDatabase.PORT }, new LatLng[] { new LatLng(51.95, 1.3) }));
+        PortTracker tracker = new PortTracker(db, this);
+        tracker.setApproachRadius(1000);
+
+        // sail due north past the port, with the position jittering by a few meters
+        Random random = new Random(7);
+        for (double lat = 51.9; lat < 52.0; lat += 0.0001) {
+            tracker.update(lat + 0.00003 * random.nextGaussian(), 1.3 + 0.00003 * random.nextGaussian());
+        }
+        assertEquals(2, events.size());
+        assertEquals("arrival Harwich", events.get(0));
+        assertEquals("departure Harwich", events.get(1));
+    }
+
+    @Override
+    public void onArrival(Port port) {
+        events.add("arrival " + port.name);
+    }
+
+    @Override
+    public void onDeparture(Port port) {
+        events.add("departure " + port.name);
+    }
+
+}
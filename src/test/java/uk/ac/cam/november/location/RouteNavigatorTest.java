@@ -0,0 +1,125 @@
+package uk.ac.cam.november.location;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RouteNavigatorTest implements RouteNavigator.Listener {
+
+    private final List<String> events = new ArrayList<String>();
+
+    /** North along the meridian for about 11 km, then east */
+    private static Route route() {
+        return Route.load(new StringReader("{\"waypoints\":["
+                + "{\"name\":\"Start\",\"location\":{\"lat\":50.0,\"lng\":0.0}},"
+                + "{\"name\":\"Turn\",\"location\":{\"lat\":50.1,\"lng\":0.0}},"
+                + "{\"location\":{\"lat\":50.1,\"lng\":0.1}}]}"));
+    }
+
+    @Override
+    public void onWaypointReached(Waypoint reached, Waypoint next) {
+        events.add("reached " + reached.name + (next == null ? "" : " next " + next.name));
+    }
+
+    @Override
+    public void onOffTrack(double crossTrack) {
+        events.add("off " + Math.round(crossTrack));
+    }
+
+    @Test
+    public void crossTrackShouldBePositiveToTheRight() {
+        RouteNavigator nav = new RouteNavigator(route(), this);
+        double expected = LocationUtil.distance(new LatLng(50.05, 0.0), new LatLng(50.05, 0.001));
+
+        nav.update(50.05, 0.001, 5f);
+        assertEquals(expected, nav.getCrossTrack(), 1);
+
+        nav.update(50.05, -0.001, 5f);
+        assertEquals(-expected, nav.getCrossTrack(), 1);
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void distanceBearingAndEtaShouldBeToTheNextWaypoint() {
+        RouteNavigator nav = new RouteNavigator(route(), this);
+        nav.update(50.05, 0.0, 5f);
+
+        double distance = LocationUtil.distance(new LatLng(50.05, 0.0), new LatLng(50.1, 0.0));
+        assertEquals(0, nav.getLeg());
+        assertEquals("Turn", nav.getNextWaypoint().name);
+        assertEquals(distance, nav.getDistanceToNext(), 1e-6);
+        assertEquals(0, nav.getBearingToNext(), 1e-6);
+        assertEquals(distance / 5, nav.getSecondsToNext(), 1e-6);
+
+        nav.update(50.05, 0.0, 0f);
+        assertTrue(Double.isNaN(nav.getSecondsToNext()));
+    }
+
+    @Test
+    public void legShouldAdvanceWithinTheArrivalRadius() {
+        RouteNavigator nav = new RouteNavigator(route(), this);
+        nav.update(50.0995, 0.0, 5f);
+
+        assertEquals(1, nav.getLeg());
+        assertEquals("waypoint 3", nav.getNextWaypoint().name);
+        assertEquals(90, nav.getBearingToNext(), 1);
+        assertEquals("[reached Turn next waypoint 3]", events.toString());
+    }
+
+    @Test
+    public void legShouldAdvanceWhenPassingAbeamOfTheWaypoint() {
+        RouteNavigator nav = new RouteNavigator(route(), this);
+        // 150 m wide of the turn, outside the arrival radius but past it
+        nav.update(50.1002, -0.002, 5f);
+
+        assertEquals(1, nav.getLeg());
+        assertEquals("reached Turn next waypoint 3", events.get(0));
+    }
+
+    @Test
+    public void routeShouldCompleteAtTheLastWaypoint() {
+        RouteNavigator nav = new RouteNavigator(route(), this);
+        nav.update(50.1, 0.0, 5f);
+        nav.update(50.1, 0.1, 5f);
+
+        assertTrue(nav.isComplete());
+        assertNull(nav.getNextWaypoint());
+        assertEquals("reached waypoint 3", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void offTrackShouldBeRaisedOnceUntilBackOnTrack() {
+        RouteNavigator nav = new RouteNavigator(route(), this);
+        nav.update(50.02, 0.004, 5f); // about 290 m right
+        nav.update(50.03, 0.004, 5f);
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).startsWith("off "));
+        assertTrue(nav.getCrossTrack() > 200);
+
+        nav.update(50.04, 0.0, 5f);
+        nav.update(50.05, -0.004, 5f);
+        assertEquals(2, events.size());
+        assertTrue(nav.getCrossTrack() < -200);
+        assertFalse(nav.isComplete());
+    }
+
+    @Test
+    public void crossTrackShouldBeReadToTheNearestTenMeters() {
+        assertEquals("40 meters right", RouteNavigator.formatCrossTrack(36.2));
+        assertEquals("290 meters left", RouteNavigator.formatCrossTrack(-287.0));
+        assertNull(RouteNavigator.formatCrossTrack(-4.9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void routeShouldNeedTwoWaypoints() {
+        Route.load(new StringReader("{\"waypoints\":[{\"location\":{\"lat\":50.0,\"lng\":0.0}}]}"));
+    }
+
+}
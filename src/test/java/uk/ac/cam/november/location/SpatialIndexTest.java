@@ -0,0 +1,99 @@
+package uk.ac.cam.november.location;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpatialIndexTest {
+
+    private static final int POINTS = 2000;
+    private static final int QUERIES = 200;
+
+    private final Random random = new Random(34);
+
+    private LatLng randomLocation() {
+        double lat = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+        double lng = 360 * random.nextDouble() - 180;
+        return new LatLng(lat, lng);
+    }
+
+    private LatLng[] randomLocations(int n) {
+        LatLng[] points = new LatLng[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = randomLocation();
+        }
+        return points;
+    }
+
+    private Integer[] byDistance(final LatLng[] points, final LatLng loc) {
+        final double[] dists = new double[points.length];
+        Integer[] order = new Integer[points.length];
+        for (int i = 0; i < order.length; i++) {
+            dists[i] = LocationUtil.distance(loc, points[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> dists[i]));
+        return order;
+    }
+
+    @Test
+    public void nearestShouldMatchBruteForce() {
+        LatLng[] points = randomLocations(POINTS);
+        SpatialIndex index = new SpatialIndex(points);
+        for (int q = 0; q < QUERIES; q++) {
+            LatLng loc = randomLocation();
+            assertEquals((int) byDistance(points, loc)[0], index.nearest(loc));
+        }
+    }
+
+    @Test
+    public void kNearestShouldMatchBruteForce() {
+        LatLng[] points = randomLocations(POINTS);
+        SpatialIndex index = new SpatialIndex(points);
+        for (int q = 0; q < QUERIES; q++) {
+            LatLng loc = randomLocation();
+            Integer[] expected = byDistance(points, loc);
+            int[] actual = index.kNearest(loc, 5);
+            for (int i = 0; i < 5; i++) {
+                assertEquals((int) expected[i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void withinRadiusShouldMatchBruteForce() {
+        LatLng[] points = randomLocations(POINTS);
+        SpatialIndex index = new SpatialIndex(points);
+        double radius = 800000;
+        for (int q = 0; q < QUERIES; q++) {
+            LatLng loc = randomLocation();
+            Integer[] order = byDistance(points, loc);
+            int n = 0;
+            while (n < order.length && LocationUtil.distance(loc, points[order[n]]) <= radius) {
+                n++;
+            }
+            int[] expected = new int[n];
+            for (int i = 0; i < n; i++) {
+                expected[i] = order[i];
+            }
+            assertArrayEquals(expected, index.withinRadius(loc, radius));
+        }
+    }
+
+    @Test
+    public void smallAndEmptyIndexesShouldWork() {
+        SpatialIndex empty = new SpatialIndex(new LatLng[0]);
+        assertEquals(-1, empty.nearest(new LatLng(0, 0)));
+        assertEquals(0, empty.withinRadius(new LatLng(0, 0), 1000).length);
+
+        SpatialIndex one = new SpatialIndex(new LatLng[] { new LatLng(52.2, 0.12) });
+        assertEquals(0, one.nearest(new LatLng(-30, 150)));
+        assertEquals(1, one.kNearest(new LatLng(-30, 150), 3).length);
+    }
+
+}
@@ -0,0 +1,48 @@
+package uk.ac.cam.november.messages;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.decoder.AlertMessage;
+
+public class MessageFormatterTest {
+
+    @Test
+    public void singleAlertShouldBeFormattedAlone() {
+        String text = MessageFormatter.formatAlerts(Arrays.asList(new AlertMessage(2, 0)));
+        assertEquals("Warning: entering shallow water", text);
+    }
+
+    @Test
+    public void rapidChangeAlertsShouldBeMerged() {
+        String text = MessageFormatter.formatAlerts(Arrays.asList(
+                new AlertMessage(0, 3), new AlertMessage(0, 2)));
+        assertEquals("Warning: rapid change in boat heading and wind direction", text);
+    }
+
+    @Test
+    public void mixedAlertsShouldBeListedOnce() {
+        String text = MessageFormatter.formatAlerts(Arrays.asList(
+                new AlertMessage(0, 3), new AlertMessage(0, 2), new AlertMessage(0, 4),
+                new AlertMessage(1, 1), new AlertMessage(0, 3)));
+        assertEquals("Warning: high winds. Rapid change in boat heading, wind direction and boat speed", text);
+    }
+
+    @Test
+    public void differentKindsOfAlertShouldBeSeparateSentences() {
+        String text = MessageFormatter.formatAlerts(Arrays.asList(
+                new AlertMessage(2, 0), new AlertMessage(4, 5, "Harwich"), new AlertMessage(3, 1)));
+        assertEquals("Warning: entering shallow water. Approaching Harwich. Wind speed sensor is unresponsive", text);
+    }
+
+    @Test
+    public void arrivalAlertShouldNameThePort() {
+        String text = MessageFormatter.formatAlerts(Arrays.asList(
+                new AlertMessage(4, 5, "Harwich, England, United Kingdom")));
+        assertEquals("Warning: approaching Harwich, England, United Kingdom", text);
+    }
+
+}
@@ -1,6 +1,21 @@
 package uk.ac.cam.november.messages;
 
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
 public class MessageTest {
+
+    @Test
+    public void messageTextShouldBeFormattedWhenRead() {
+        final float[] depth = { 12.0f };
+        Message m = new Message("%s meters deep", () -> String.format("%.0f", depth[0]), 1);
+        depth[0] = 3.0f;
+        assertEquals("3 meters deep", m.getText());
+        depth[0] = 5.0f;
+        assertEquals("5 meters deep", m.getText());
+    }
+
     public void messagesShouldInterrupt() {
         try {
             Message m = new Message("Warning. Collision imminent. 12 seconds to live. Emergency Mozart.", 1);
@@ -0,0 +1,45 @@
+package uk.ac.cam.november.messages;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SpeechEventBusTest {
+
+    @Test
+    public void eventsShouldBeDeliveredInOrderOnOneThread() throws Exception {
+        final List<String> received = new ArrayList<String>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        SpeechListener listener = new SpeechListener() {
+            @Override
+            public void onSpeechStarted(String message) {
+                received.add(message);
+                threads.add(Thread.currentThread());
+                if (message.equals("9")) {
+                    done.countDown();
+                }
+            }
+        };
+        SpeechEventBus.subscribe(listener);
+        for (int i = 0; i < 10; i++) {
+            SpeechEventBus.publish(new SpeechEvent(SpeechEvent.Type.STARTED, Integer.toString(i), 0L));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        SpeechEventBus.unsubscribe(listener);
+
+        assertEquals(10, received.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.toString(i), received.get(i));
+            assertEquals(threads.get(0), threads.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class DepthMapTest {
+
+    /** 3 pixels wide and 2 high, centred on the origin */
+    private static DepthMap smallMap() {
+        return new DepthMap(new float[] { 0, 10, 20, 30, 40, 50 }, 3, 2, 1.0, 1.0);
+    }
+
+    @Test
+    public void depthShouldBeExactAtPixelCentres() {
+        DepthMap map = smallMap();
+        assertEquals(0, map.getDepth(-1, -0.5f), 1e-5);
+        assertEquals(10, map.getDepth(0, -0.5f), 1e-5);
+        assertEquals(20, map.getDepth(1, -0.5f), 1e-5);
+        assertEquals(30, map.getDepth(-1, 0.5f), 1e-5);
+        assertEquals(50, map.getDepth(1, 0.5f), 1e-5);
+    }
+
+    @Test
+    public void depthShouldInterpolateBetweenPixelCentres() {
+        DepthMap map = smallMap();
+        assertEquals(5, map.getDepth(-0.5f, -0.5f), 1e-5);
+        assertEquals(15, map.getDepth(-1, 0), 1e-5);
+        assertEquals(30, map.getDepth(0.5f, 0), 1e-5);
+        assertEquals(29.5f, map.getDepth(0.15f, 0.1f), 1e-4);
+    }
+
+    @Test
+    public void depthShouldClampToTheEdge() {
+        DepthMap map = smallMap();
+        assertEquals(0, map.getDepth(-1.5f, -1), 1e-5);
+        assertEquals(0, map.getDepth(-100, -100), 1e-5);
+        assertEquals(50, map.getDepth(100, 100), 1e-5);
+        assertEquals(45, map.getDepth(0.5f, 7), 1e-5);
+    }
+
+    @Test
+    public void batchShouldMatchSingleSamples() {
+        DepthMap map = smallMap();
+        Random random = new Random(40);
+        int n = 100;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = 4 * random.nextFloat() - 2;
+            ys[i] = 3 * random.nextFloat() - 1.5f;
+        }
+        float[] depths = new float[n];
+        map.getDepths(xs, ys, depths, n);
+        for (int i = 0; i < n; i++) {
+            assertEquals(map.getDepth(xs[i], ys[i]), depths[i], 0);
+        }
+    }
+
+    @Test
+    public void pixelIntensityShouldConvertToDepth() {
+        assertEquals(DepthMap.MIN_DEPTH_BOUNDARY, DepthMap.calculateDepth(255), 1e-5);
+        assertEquals(DepthMap.SHALLOW_DEPTH_BOUNDARY, DepthMap.calculateDepth(240), 1e-5);
+        assertEquals(DepthMap.DEEP_DEPTH_BOUNDARY, DepthMap.calculateDepth(200), 1e-5);
+        assertEquals(DepthMap.DEEP_DEPTH_BOUNDARY, DepthMap.calculateDepth(0), 1e-5);
+    }
+
+    /** A depth map image of a single grey level */
+    private static void writeGreyImage(File file, int grey, long lastModified) throws IOException {
+        BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                image.setRGB(x, y, grey * 0x010101);
+            }
+        }
+        ImageIO.write(image, "png", file);
+        file.setLastModified(lastModified);
+    }
+
+    private static float firstDepth(DepthTiles tiles) {
+        float[] tile = new float[tiles.getTileSize() * tiles.getTileSize()];
+        tiles.readTile(0, 0, 0, tile);
+        return tile[0];
+    }
+
+    @Test
+    public void tilesShouldBeConvertedAgainWhenTheImageChanges() throws IOException {
+        File file = File.createTempFile("depth", ".tiles");
+        file.delete();
+        file.deleteOnExit();
+        File image = File.createTempFile("depth", ".png");
+        image.deleteOnExit();
+        URL url = image.toURI().toURL();
+
+        writeGreyImage(image, 100, 1476748800000L);
+        DepthMap.openBundledTiles(file, url);
+        long written = file.lastModified();
+        assertEquals(DepthMap.calculateDepth(100), firstDepth(DepthMap.openBundledTiles(file, url)), 0.01);
+        assertEquals(written, file.lastModified());
+
+        writeGreyImage(image, 250, 1476748802000L);
+        assertEquals(DepthMap.calculateDepth(250), firstDepth(DepthMap.openBundledTiles(file, url)), 0.01);
+        // and the converted file is kept
+        assertEquals(DepthMap.calculateDepth(250), firstDepth(DepthTiles.open(file)), 0.01);
+    }
+
+    @Test
+    public void configuredTilesShouldBeUsedAsTheyAre() throws IOException {
+        File file = File.createTempFile("depth", ".tiles");
+        file.deleteOnExit();
+        DepthTiles.write(DepthTiles.encode(new float[] { 7, 8, 9, 10 }, 2, 2, 16), file);
+        byte[] before = Files.readAllBytes(file.toPath());
+
+        assertEquals(7, firstDepth(DepthMap.openTiles(file)), 0.01);
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    }
+
+}
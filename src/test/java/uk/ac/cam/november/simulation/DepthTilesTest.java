@@ -0,0 +1,119 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DepthTilesTest {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 21;
+
+    private static float[] randomDepths(Random random) {
+        float[] depths = new float[WIDTH * HEIGHT];
+        for (int i = 0; i < depths.length; i++) {
+            depths[i] = Math.round(100 * random.nextFloat() * 100) / 100f;
+        }
+        return depths;
+    }
+
+    private static float depthAt(DepthTiles tiles, int level, int x, int y) {
+        int size = tiles.getTileSize();
+        float[] tile = new float[size * size];
+        tiles.readTile(level, x / size, y / size, tile);
+        return tile[(y % size) * size + x % size];
+    }
+
+    @Test
+    public void levelZeroShouldHoldTheChart() throws IOException {
+        float[] depths = randomDepths(new Random(41));
+        DepthTiles tiles = DepthTiles.wrap(DepthTiles.encode(depths, WIDTH, HEIGHT, 8));
+        assertEquals(WIDTH, tiles.getWidth());
+        assertEquals(HEIGHT, tiles.getHeight());
+        assertEquals(5, tiles.getTilesAcross(0));
+        assertEquals(3, tiles.getTilesDown(0));
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                assertEquals(depths[y * WIDTH + x], depthAt(tiles, 0, x, y), 0.005);
+            }
+        }
+    }
+
+    @Test
+    public void pyramidShouldHalveDownToOneTile() throws IOException {
+        float[] depths = randomDepths(new Random(41));
+        DepthTiles tiles = DepthTiles.wrap(DepthTiles.encode(depths, WIDTH, HEIGHT, 8));
+        // 37x21, 19x11, 10x6, 5x3
+        assertEquals(4, tiles.getLevels());
+        assertEquals(19, tiles.getLevelWidth(1));
+        assertEquals(11, tiles.getLevelHeight(1));
+        assertEquals(1, tiles.getTilesAcross(3));
+        assertEquals(1, tiles.getTilesDown(3));
+
+        float mean = (depths[0] + depths[1] + depths[WIDTH] + depths[WIDTH + 1]) / 4;
+        assertEquals(mean, depthAt(tiles, 1, 0, 0), 0.01);
+        // the last column of an odd width is averaged with itself
+        float edge = (depths[WIDTH - 1] + depths[2 * WIDTH - 1]) / 2;
+        assertEquals(edge, depthAt(tiles, 1, 18, 0), 0.01);
+    }
+
+    @Test
+    public void mappedTilesShouldMatchTheEncodedOnes() throws IOException {
+        float[] depths = randomDepths(new Random(41));
+        ByteBuffer encoded = DepthTiles.encode(depths, WIDTH, HEIGHT, 8);
+        File file = File.createTempFile("depth", ".tiles");
+        file.deleteOnExit();
+        DepthTiles.write(encoded, file);
+        DepthTiles mapped = DepthTiles.open(file);
+        DepthTiles wrapped = DepthTiles.wrap(encoded);
+        for (int level = 0; level < wrapped.getLevels(); level++) {
+            for (int y = 0; y < wrapped.getLevelHeight(level); y++) {
+                for (int x = 0; x < wrapped.getLevelWidth(level); x++) {
+                    assertEquals(depthAt(wrapped, level, x, y), depthAt(mapped, level, x, y), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cacheShouldDecodeOnlyOnMisses() throws IOException {
+        DepthTiles tiles = DepthTiles.wrap(DepthTiles.encode(randomDepths(new Random(41)), WIDTH, HEIGHT, 8));
+        TileCache cache = new TileCache(tiles, 2);
+        cache.getTile(0, 0, 0);
+        cache.getTile(0, 1, 0);
+        cache.getTile(0, 0, 0);
+        assertEquals(2, cache.getMisses());
+        // evicts (1, 0), the least recently used
+        cache.getTile(0, 2, 0);
+        cache.getTile(0, 0, 0);
+        assertEquals(3, cache.getMisses());
+        cache.getTile(0, 1, 0);
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void depthMapShouldInterpolateAcrossTiles() throws IOException {
+        float[] depths = randomDepths(new Random(41));
+        DepthMap tiled = new DepthMap(DepthTiles.wrap(DepthTiles.encode(depths, WIDTH, HEIGHT, 4)), 1.0, 1.0);
+        DepthMap whole = new DepthMap(depths, WIDTH, HEIGHT, 1.0, 1.0);
+        Random random = new Random(41);
+        for (int i = 0; i < 1000; i++) {
+            float x = (WIDTH + 4) * random.nextFloat() - (WIDTH + 4) / 2f;
+            float y = (HEIGHT + 4) * random.nextFloat() - (HEIGHT + 4) / 2f;
+            assertEquals(whole.getDepth(x, y), tiled.getDepth(x, y), 1e-4);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileShouldBeRejected() throws IOException {
+        ByteBuffer encoded = DepthTiles.encode(randomDepths(new Random(41)), WIDTH, HEIGHT, 8);
+        encoded.limit(encoded.limit() - 2);
+        DepthTiles.wrap(encoded.slice());
+    }
+
+}
@@ -0,0 +1,75 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.network.PacketSink;
+import uk.ac.cam.november.simulation.network.QueuePacketSink;
+
+public class FleetTest {
+
+    private static Fleet runFleet(int boats, boolean parallel, LinkedBlockingQueue<Packet> packets, int steps)
+            throws Exception {
+        SteppedClock clock = new SteppedClock(Simulator.HEADLESS_START_TIME);
+        Fleet fleet = new Fleet(boats, new PacketSink[] { new QueuePacketSink(packets) }, clock, 7, 0, 0);
+        fleet.setParallel(parallel);
+        for (int i = 0; i < steps; i++) {
+            clock.advance(Simulator.STEP);
+            fleet.step(Simulator.STEP / 1000f);
+        }
+        return fleet;
+    }
+
+    @Test
+    public void parallelStepsMatchSerialSteps() throws Exception {
+        LinkedBlockingQueue<Packet> serialPackets = new LinkedBlockingQueue<Packet>();
+        LinkedBlockingQueue<Packet> parallelPackets = new LinkedBlockingQueue<Packet>();
+        Fleet serial = runFleet(1000, false, serialPackets, 200);
+        Fleet parallel = runFleet(1000, true, parallelPackets, 200);
+
+        for (int i = 0; i < serial.size(); i++) {
+            assertEquals(serial.getBoatX(i), parallel.getBoatX(i), 0f);
+            assertEquals(serial.getBoatY(i), parallel.getBoatY(i), 0f);
+            assertEquals(serial.getHeading(i), parallel.getHeading(i), 0f);
+        }
+        assertEquals(serialPackets.toString(), parallelPackets.toString());
+    }
+
+    @Test
+    public void boatsSendFromDistinctAddressesOnSchedule() throws Exception {
+        LinkedBlockingQueue<Packet> packets = new LinkedBlockingQueue<Packet>();
+        // 10 simulated seconds
+        Fleet fleet = runFleet(20, false, packets, 500);
+
+        Set<Integer> sources = new HashSet<Integer>();
+        for (Packet p : packets) {
+            sources.add(p.getSrc());
+        }
+        assertEquals(20, sources.size());
+
+        int perBoat = 0;
+        for (int interval : new int[] { BoatDataOutputter.COMPASS_INTERVAL, BoatDataOutputter.WIND_INTERVAL,
+                BoatDataOutputter.DEPTH_INTERVAL, BoatDataOutputter.SPEED_INTERVAL,
+                BoatDataOutputter.GPS_INTERVAL }) {
+            perBoat += 10000 / interval;
+        }
+        assertEquals(20 * perBoat, packets.size());
+        assertEquals(packets.size(), fleet.getSent());
+    }
+
+    @Test
+    public void boatsStayInWater() throws Exception {
+        Fleet fleet = runFleet(50, false, new LinkedBlockingQueue<Packet>(), 3000);
+        for (int i = 0; i < fleet.size(); i++) {
+            assertTrue(fleet.getWaterDepth(i) >= 2f);
+        }
+    }
+
+}
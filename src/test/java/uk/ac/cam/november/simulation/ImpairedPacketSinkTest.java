@@ -0,0 +1,167 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.network.PacketSink;
+
+public class ImpairedPacketSinkTest {
+
+    private static class ListSink implements PacketSink {
+        final List<Packet> packets = new ArrayList<Packet>();
+
+        @Override
+        public void sendPacket(Packet p) throws IOException {
+            packets.add(p);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static ListSink run(String sensor, String spec, long seed, int packets) throws IOException {
+        SteppedClock clock = new SteppedClock(0);
+        ListSink out = new ListSink();
+        ImpairedPacketSink sink = new ImpairedPacketSink(out, clock);
+        List<Impairment> chain = Impairments.parse(sensor, spec, new RandomStreams(seed));
+        sink.setImpairments(sensor, chain.toArray(new Impairment[chain.size()]));
+        for (int i = 0; i < packets; i++) {
+            clock.advance(100);
+            Packet p = DataGenerator.generateVesselHeadingPacket(i % 360);
+            p.getFields().setSID(i % 256);
+            sink.sendPacket(p);
+            sink.flush();
+        }
+        clock.advance(ImpairedPacketSink.MAX_DELAY);
+        sink.flush();
+        return out;
+    }
+
+    private static String headings(ListSink sink) {
+        StringBuilder sb = new StringBuilder();
+        for (Packet p : sink.packets) {
+            sb.append(p.getFields().getHeading()).append(' ');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void sameSeedImpairsTheSame() throws Exception {
+        String spec = "noise:2,drift:0.5,drop:0.1,jitter:300";
+        assertEquals(headings(run("heading", spec, 1, 500)), headings(run("heading", spec, 1, 500)));
+        assertTrue(!headings(run("heading", spec, 1, 500)).equals(headings(run("heading", spec, 2, 500))));
+    }
+
+    @Test
+    public void quantizationRoundsValues() throws Exception {
+        ListSink out = run("heading", "noise:3,quantize:5", 1, 100);
+        assertEquals(100, out.packets.size());
+        for (Packet p : out.packets) {
+            assertEquals(0f, p.getFields().getHeading() % 5f, 1e-4f);
+        }
+    }
+
+    @Test
+    public void dropoutLosesAboutTheGivenShare() throws Exception {
+        assertEquals(8000, run("heading", "drop:0.2", 1, 10000).packets.size(), 300);
+    }
+
+    @Test
+    public void burstLossLosesPacketsInRuns() throws Exception {
+        ListSink out = run("heading", "burst:0.05:0.25", 1, 10000);
+        // one in six packets is lost, in bursts averaging four packets
+        assertEquals(10000 * 5 / 6, out.packets.size(), 300);
+        int gaps = 0;
+        for (int i = 1; i < out.packets.size(); i++) {
+            if (out.packets.get(i).getFields().getSID() != (out.packets.get(i - 1).getFields().getSID() + 1) % 256) {
+                gaps++;
+            }
+        }
+        assertTrue(gaps < (10000 - out.packets.size()) / 2);
+    }
+
+    @Test
+    public void reorderingLetsLaterPacketsOvertake() throws Exception {
+        ListSink out = run("heading", "reorder:0.1:250", 1, 1000);
+        assertEquals(1000, out.packets.size());
+        int overtaken = 0;
+        for (int i = 1; i < out.packets.size(); i++) {
+            int a = out.packets.get(i - 1).getFields().getSID();
+            int b = out.packets.get(i).getFields().getSID();
+            if (((b - a) & 0xFF) > 128) {
+                overtaken++;
+            }
+        }
+        assertTrue(overtaken > 50);
+    }
+
+    @Test
+    public void stuckSensorRepeatsItsValue() throws Exception {
+        ListSink out = run("heading", "stuck:1:1", 1, 20);
+        // stuck for ten packets at a time, then one fresh value
+        assertEquals(out.packets.get(0).getFields().getHeading(), out.packets.get(9).getFields().getHeading(), 0f);
+        assertEquals(10f, out.packets.get(10).getFields().getHeading(), 0f);
+    }
+
+    @Test
+    public void otherSensorsAndPgnsPassUntouched() throws Exception {
+        SteppedClock clock = new SteppedClock(0);
+        ListSink out = new ListSink();
+        ImpairedPacketSink sink = new ImpairedPacketSink(out, clock);
+        sink.setImpairments("heading", new Impairments.Dropout(1, new RandomStreams(0).stream("x")));
+        Packet depth = DataGenerator.generateWaterDepthPacket(5f, 0f);
+        sink.sendPacket(depth);
+        sink.sendPacket(DataGenerator.generateVesselHeadingPacket(10f));
+        assertEquals(1, out.packets.size());
+        assertSame(depth, out.packets.get(0));
+        assertEquals(1, sink.getDropped());
+    }
+
+    @Test
+    public void propertiesWrapOnlyWhenConfigured() throws Exception {
+        ListSink out = new ListSink();
+        SteppedClock clock = new SteppedClock(0);
+        Properties none = new Properties();
+        assertSame(out, ImpairedPacketSink.fromProperties(out, clock, new RandomStreams(0), none));
+        Properties some = new Properties();
+        some.setProperty("sbs.impair.gps", "noise:5,jitter:200");
+        assertNotSame(out, ImpairedPacketSink.fromProperties(out, clock, new RandomStreams(0), some));
+    }
+
+    @Test
+    public void gpsNoiseIsInMetersBothWays() {
+        Impairment noise = Impairments.parse("gps", "noise:5", new RandomStreams(0)).get(0);
+        double lat = 52.2;
+        double lon = 0.12;
+        double northSq = 0;
+        double eastSq = 0;
+        int n = 4000;
+        for (int i = 0; i < n; i++) {
+            Packet p = DataGenerator.generateGPSPacket((float) lat, (float) lon, 0);
+            noise.apply(p, 0, 0);
+            double north = (p.getFields().getLatitude() - lat) * 111320.0;
+            double east = (p.getFields().getLongtitude() - lon) * 111320.0 * Math.cos(Math.toRadians(lat));
+            northSq += north * north;
+            eastSq += east * east;
+        }
+        assertEquals(5, Math.sqrt(northSq / n), 0.5);
+        assertEquals(5, Math.sqrt(eastSq / n), 0.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedSpecIsRejected() {
+        Impairments.parse("heading", "noise:2,jitter", new RandomStreams(0));
+    }
+
+}
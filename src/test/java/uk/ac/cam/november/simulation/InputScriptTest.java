@@ -0,0 +1,56 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class InputScriptTest {
+
+    private static InputScript parse(String text) throws IOException {
+        return InputScript.parse(new StringReader(text));
+    }
+
+    @Test
+    public void eventsShouldApplyInTimeOrder() throws IOException {
+        InputScript script = parse("# a comment\n\n10 left down\n0 w down\n12.5 left up\n20 d down\n");
+        SimulatorControls controls = new SimulatorControls();
+
+        script.apply(0, controls);
+        assertTrue(controls.KEY_UP);
+        assertFalse(controls.KEY_LEFT);
+
+        script.apply(11, controls);
+        assertTrue(controls.KEY_LEFT);
+
+        script.apply(12.5, controls);
+        assertFalse(controls.KEY_LEFT);
+        assertFalse(controls.KEY_RIGHT);
+
+        script.apply(100, controls);
+        assertTrue(controls.KEY_RIGHT);
+        assertTrue(controls.KEY_UP);
+    }
+
+    @Test
+    public void durationShouldBeTheEndOrTheLastEvent() throws IOException {
+        assertEquals(20, parse("0 up down\n20 up up\n").getDuration(), 0);
+        assertEquals(3600, parse("0 up down\n3600 end\n20 up up\n").getDuration(), 0);
+        assertEquals(0, parse("").getDuration(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownControlShouldBeRejected() throws IOException {
+        parse("0 jib down\n");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void badTimeShouldBeRejected() throws IOException {
+        parse("soon up down\n");
+    }
+
+}
@@ -0,0 +1,70 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SensorSchedulerTest {
+
+    @Test
+    public void fastSensorsSendSeveralTimesPerStep() {
+        SensorScheduler scheduler = new SensorScheduler(0);
+        scheduler.add(0, 100);
+        scheduler.add(1, 4);
+        int[] counts = new int[2];
+        long lastDue = 0;
+        for (long now = Simulator.STEP; now <= 60000; now += Simulator.STEP) {
+            int s;
+            while ((s = scheduler.next(now)) >= 0) {
+                counts[s]++;
+                assertTrue(scheduler.getDueMicros() >= lastDue);
+                assertTrue(scheduler.getDueMicros() <= now * 1000);
+                lastDue = scheduler.getDueMicros();
+            }
+        }
+        assertArrayEquals(new int[] { 6000, 240 }, counts);
+    }
+
+    @Test
+    public void ratesWhichDoNotDivideASecondDoNotDrift() {
+        SensorScheduler scheduler = new SensorScheduler(1000);
+        scheduler.add(0, 3);
+        long due = 0;
+        int count = 0;
+        for (long now = 1000; now <= 1000 + 3600 * 1000; now += Simulator.STEP) {
+            while (scheduler.next(now) >= 0) {
+                due = scheduler.getDueMicros();
+                count++;
+            }
+        }
+        assertEquals(3 * 3600, count);
+        assertEquals((1000 + 3600 * 1000) * 1000L, due);
+    }
+
+    @Test
+    public void sensorsDueTogetherComeLowestFirst() {
+        SensorScheduler scheduler = new SensorScheduler(0);
+        scheduler.add(2, 1);
+        scheduler.add(0, 1);
+        scheduler.add(1, 2);
+        assertEquals(1, scheduler.next(1000));
+        assertEquals(0, scheduler.next(1000));
+        assertEquals(1, scheduler.next(1000));
+        assertEquals(2, scheduler.next(1000));
+        assertEquals(-1, scheduler.next(1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ratesAboveTheLimitAreRejected() {
+        new SensorScheduler(0).add(0, 1000);
+    }
+
+    @Test
+    public void ratesAreParsedOverTheDefaults() {
+        double[] rates = BoatDataOutputter.parseRates("heading:10, wind:4");
+        assertArrayEquals(new double[] { 10, 4, 1, 1, 1 }, rates, 0);
+    }
+
+}
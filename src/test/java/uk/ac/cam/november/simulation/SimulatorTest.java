@@ -1,14 +1,29 @@
 package uk.ac.cam.november.simulation;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.HeadlessException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Field;
 import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.junit.Test;
 
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.network.PacketSink;
+import uk.ac.cam.november.simulation.network.PacketTranslator;
+import uk.ac.cam.november.simulation.network.QueuePacketSink;
 import uk.ac.cam.november.simulation.network.SimulatorServer;
 import uk.ac.cam.november.simulation.ui.SimulatorUI;
 
@@ -40,6 +55,72 @@ public class SimulatorTest {
         }
     }
     
+    @Test
+    public void headlessSimulatorShouldRunOnItsOwnClock() throws Exception {
+        LinkedBlockingQueue<Packet> packets = new LinkedBlockingQueue<Packet>();
+        SteppedClock clock = new SteppedClock(0);
+        Simulator sim = new Simulator(new QueuePacketSink(packets), clock, Simulator.DEFAULT_SEED, 0, 0);
+        InputScript script = InputScript.parse(new StringReader("0 up down\n600 end\n"));
+
+        long start = System.nanoTime();
+        long steps = sim.runHeadless(script);
+        assertTrue("ten minutes should take well under ten seconds", System.nanoTime() - start < 10000000000L);
+
+        assertEquals(600 * 1000 / Simulator.STEP, steps);
+        assertEquals(600000, clock.currentTimeMillis());
+        assertNull(getSimulatorUI(sim));
+        assertTrue(sim.getControls().KEY_UP);
+        // five sensors, roughly once a second each
+        assertTrue(packets.size() > 5 * 550);
+        long last = 0;
+        for (Packet p : packets) {
+            assertTrue(p.getTimestamp().getTime() >= last);
+            last = p.getTimestamp().getTime();
+        }
+        assertTrue(last <= 600000);
+    }
+
+    /**
+     * Runs a scenario with some turns headless, and returns the packets as
+     * they would be sent to the server.
+     */
+    private static byte[] runScenario(long seed) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        PacketSink sink = new PacketSink() {
+            @Override
+            public void sendPacket(Packet p) throws IOException {
+                PacketTranslator.write(out, p);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Simulator sim = new Simulator(sink, new SteppedClock(Simulator.HEADLESS_START_TIME), seed, 0, 0);
+        sim.runHeadless(InputScript.parse(new StringReader(
+                "0 up down\n5 left down\n7 left up\n20 right down\n21.5 right up\n40 up up\n120 end\n")));
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void sameScenarioAndSeedShouldSendIdenticalPackets() throws Exception {
+        byte[] first = runScenario(43);
+        byte[] second = runScenario(43);
+        assertTrue(first.length > 0);
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, runScenario(44)));
+    }
+
+    @Test
+    public void packetsShouldBeStampedWithSimulationTime() throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(runScenario(43)));
+        Packet first = PacketTranslator.read(in);
+        long t = first.getTimestamp().getTime() - Simulator.HEADLESS_START_TIME;
+        // the first packets are due exactly a second into the scenario
+        assertEquals(1000, t);
+    }
+
     private SimulatorUI getSimulatorUI(Simulator sim) throws Exception {
         Field uiField = Simulator.class.getDeclaredField("ui");
         uiField.setAccessible(true);
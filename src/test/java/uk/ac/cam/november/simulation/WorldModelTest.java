@@ -61,4 +61,24 @@ public class WorldModelTest {
         assertEquals(WorldModel.MAX_WIND_SPEED, wm.getWindSpeed(), 0.001);
     }
 
+    @Test
+    public void worldModelShouldInterpolateBetweenSteps() {
+        WorldModel wm = new WorldModel(0, 0);
+        float x0 = wm.getBoatX();
+        wm.setHeading(90);
+        wm.setBoatSpeed(10);
+        wm.step(1);
+        assertEquals(x0 + 10, wm.getBoatX(), 0.001);
+        assertEquals(x0 + 5, wm.getBoatX(0.5f), 0.001);
+        assertEquals(wm.getBoatY(), wm.getBoatY(0.5f), 0.001);
+        assertEquals(45, wm.getHeading(0.5f), 0.001);
+
+        // turning through north goes the short way round
+        wm.setHeading(350);
+        wm.step(0.1f);
+        wm.setHeading(10);
+        wm.step(0.1f);
+        assertEquals(360, wm.getHeading(0.5f), 0.001);
+    }
+
 }
@@ -0,0 +1,74 @@
+package uk.ac.cam.november.simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class WorldSnapshotTest {
+
+    @Test
+    public void nothingPublishedHasNoStep() {
+        WorldSnapshot s = new WorldSnapshot();
+        new WorldSnapshot.Buffer().read(s);
+        assertEquals(-1, s.getStep());
+    }
+
+    @Test
+    public void readCopiesTheLatestStep() {
+        WorldModel wm = new WorldModel(0, 0);
+        WorldSnapshot.Buffer buffer = new WorldSnapshot.Buffer();
+        wm.setBoatSpeed(10);
+        wm.setHeading(90);
+        wm.setWindSpeed(12);
+        wm.step(1f);
+        buffer.publish(wm);
+        wm.step(1f);
+        buffer.publish(wm);
+
+        WorldSnapshot s = new WorldSnapshot();
+        buffer.read(s);
+        assertEquals(1, s.getStep());
+        assertEquals(12, s.getWindSpeed(), 0.0001);
+        assertEquals(wm.getWaterDepth(), s.getWaterDepth(), 0.0001);
+        assertEquals(10, s.getBoatSpeed(), 0.0001);
+        assertEquals(wm.getBoatX(), s.getBoatX(1f), 0.0001);
+        assertEquals(wm.getBoatX(0.5f), s.getBoatX(0.5f), 0.0001);
+        assertEquals(wm.getBoatY(0.5f), s.getBoatY(0.5f), 0.0001);
+        assertEquals(wm.getHeading(0.5f), s.getHeading(0.5f), 0.0001);
+    }
+
+    @Test
+    public void readersNeverSeeAStepHalfPublished() throws Exception {
+        final WorldModel wm = new WorldModel(0, 0);
+        final WorldSnapshot.Buffer buffer = new WorldSnapshot.Buffer();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 200000; i++) {
+                    wm.setWindSpeed(i % 100);
+                    wm.setWaterDepth(i % 100);
+                    buffer.publish(wm);
+                }
+                done.set(true);
+            }
+        });
+        publisher.start();
+
+        WorldSnapshot s = new WorldSnapshot();
+        long lastStep = -1;
+        while (!done.get()) {
+            buffer.read(s);
+            assertEquals(s.getWindSpeed(), s.getWaterDepth(), 0f);
+            assertTrue(s.getStep() >= lastStep);
+            lastStep = s.getStep();
+        }
+        publisher.join();
+        buffer.read(s);
+        assertEquals(199999, s.getStep());
+    }
+
+}
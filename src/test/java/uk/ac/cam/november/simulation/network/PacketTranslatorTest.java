@@ -0,0 +1,113 @@
+package uk.ac.cam.november.simulation.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+import org.junit.Test;
+
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.DataGenerator;
+
+public class PacketTranslatorTest {
+
+    private static Packet[] samplePackets() {
+        Packet[] packets = { DataGenerator.generateVesselHeadingPacket(123.5f, 1f, -2f),
+                DataGenerator.generateWaterDepthPacket(12.25f, 0.5f), DataGenerator.generateWindDataPacket(7.5f, 45f),
+                DataGenerator.generateSpeedPacket(3.75f), DataGenerator.generateGPSPacket(52.2f, 0.12f, 3f) };
+        for (int i = 0; i < packets.length; i++) {
+            packets[i].setTimestamp(new Date(1465689600123L + i));
+            packets[i].setSrc(200 + i);
+        }
+        return packets;
+    }
+
+    private static Packet roundTrip(Packet p, int format, ByteBuffer buf) throws Exception {
+        buf.clear();
+        assertTrue(PacketTranslator.encode(p, buf, format));
+        buf.flip();
+        int len = buf.getInt();
+        assertEquals(buf.remaining(), len);
+        Packet decoded = PacketTranslator.decode(buf, len);
+        assertFalse(buf.hasRemaining());
+        return decoded;
+    }
+
+    @Test
+    public void binaryPacketsDecodeAsJsonPacketsDo() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        for (Packet p : samplePackets()) {
+            Packet json = roundTrip(p, PacketTranslator.FORMAT_JSON, buf);
+            Packet binary = roundTrip(p, PacketTranslator.FORMAT_BINARY, buf);
+            assertEquals(PacketTranslator.MSG_BINARY_PACKET, buf.get(4));
+            assertEquals(json.toString(), binary.toString());
+            assertEquals(json.getTimestamp(), binary.getTimestamp());
+            assertEquals(json.getDescription(), binary.getDescription());
+            assertEquals(json.getFields().getHeading(), binary.getFields().getHeading(), 0f);
+            assertEquals(json.getFields().getDeviation(), binary.getFields().getDeviation(), 0f);
+            assertEquals(json.getFields().getDepth(), binary.getFields().getDepth(), 0f);
+            assertEquals(json.getFields().getOffset(), binary.getFields().getOffset(), 0f);
+            assertEquals(json.getFields().getWindSpeed(), binary.getFields().getWindSpeed(), 0f);
+            assertEquals(json.getFields().getWindAngle(), binary.getFields().getWindAngle(), 0f);
+            assertEquals(json.getFields().getSpeedWaterReferenced(), binary.getFields().getSpeedWaterReferenced(),
+                    0f);
+            assertEquals(json.getFields().getSpeedWaterReferencedType(),
+                    binary.getFields().getSpeedWaterReferencedType());
+            assertEquals(json.getFields().getReference(), binary.getFields().getReference());
+            assertEquals(json.getFields().getLatitude(), binary.getFields().getLatitude(), 0f);
+            assertEquals(json.getFields().getLongtitude(), binary.getFields().getLongtitude(), 0f);
+            assertEquals(json.getFields().getAltitude(), binary.getFields().getAltitude(), 0f);
+        }
+    }
+
+    @Test
+    public void binaryPacketsAreAFractionOfTheSize() throws Exception {
+        ByteBuffer json = ByteBuffer.allocate(4096);
+        ByteBuffer binary = ByteBuffer.allocate(4096);
+        for (Packet p : samplePackets()) {
+            PacketTranslator.encode(p, json, PacketTranslator.FORMAT_JSON);
+            PacketTranslator.encode(p, binary, PacketTranslator.FORMAT_BINARY);
+        }
+        assertTrue(binary.position() * 10 < json.position());
+    }
+
+    @Test
+    public void packetWithNoBinaryFormIsSentAsJson() throws Exception {
+        Packet p = DataGenerator.generateSpeedPacket(1f);
+        p.setPgn(130577);
+        p.setDescription("Direction Data");
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        Packet decoded = roundTrip(p, PacketTranslator.FORMAT_BINARY, buf);
+        assertEquals('{', buf.get(4));
+        assertEquals(130577, decoded.getPgn());
+        assertEquals(1f, decoded.getFields().getSpeedWaterReferenced(), 0f);
+    }
+
+    @Test
+    public void packetWhichDoesNotFitLeavesBufferUntouched() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        buf.position(3);
+        assertFalse(PacketTranslator.encode(samplePackets()[0], buf, PacketTranslator.FORMAT_BINARY));
+        assertFalse(PacketTranslator.encode(samplePackets()[0], buf, PacketTranslator.FORMAT_JSON));
+        assertEquals(3, buf.position());
+    }
+
+    @Test
+    public void helloIsAPacketToServersWhichOnlyReadJson() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PacketTranslator.writeHello(new DataOutputStream(bytes), PacketTranslator.FORMAT_BINARY);
+        // as read by a server from before the binary format
+        Packet hello = PacketTranslator.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertTrue(PacketTranslator.isHello(hello));
+        assertEquals(PacketTranslator.FORMAT_BINARY, hello.getFields().getSID());
+        assertFalse(PacketTranslator.isHello(DataGenerator.generateSpeedPacket(1f)));
+    }
+
+}
@@ -0,0 +1,331 @@
+package uk.ac.cam.november.simulation.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.ac.cam.november.packet.Packet;
+import uk.ac.cam.november.simulation.DataGenerator;
+
+public class SimulatorServerTest {
+
+    private SimulatorServer server;
+
+    @Before
+    public void setUp() {
+        server = new SimulatorServer(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    private Socket connect() throws Exception {
+        Socket s = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        s.setSoTimeout(5000);
+        return s;
+    }
+
+    private static Packet headingPacket(float heading, int src) {
+        Packet p = DataGenerator.generateVesselHeadingPacket(heading);
+        p.setTimestamp(new Date(0));
+        p.setSrc(src);
+        return p;
+    }
+
+    private void waitFor(int packets) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getMessageQueue().size() < packets && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void packetsFromSeveralClientsAreQueued() throws Exception {
+        Socket a = connect();
+        Socket b = connect();
+        DataOutputStream outA = new DataOutputStream(a.getOutputStream());
+        DataOutputStream outB = new DataOutputStream(b.getOutputStream());
+        for (int i = 0; i < 10; i++) {
+            PacketTranslator.write(outA, headingPacket(i, 1));
+            PacketTranslator.write(outB, headingPacket(i, 2));
+        }
+        outA.flush();
+        outB.flush();
+
+        waitFor(20);
+        assertEquals(20, server.getMessageQueue().size());
+        long received = 0;
+        for (ClientConnection c : server.getClients()) {
+            received += c.getPacketsReceived();
+        }
+        assertEquals(20, received);
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void packetSplitAcrossWritesIsReassembled() throws Exception {
+        Socket a = connect();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PacketTranslator.write(new DataOutputStream(bytes), headingPacket(42, 3));
+        byte[] frame = bytes.toByteArray();
+
+        for (byte x : frame) {
+            a.getOutputStream().write(x);
+            a.getOutputStream().flush();
+        }
+
+        waitFor(1);
+        Packet p = server.getMessageQueue().poll();
+        assertEquals(3, p.getSrc());
+        assertEquals(127250, p.getPgn());
+        a.close();
+    }
+
+    @Test
+    public void badFramingDropsOnlyThatClient() throws Exception {
+        Socket bad = connect();
+        Socket good = connect();
+        new DataOutputStream(bad.getOutputStream()).writeInt(-5);
+
+        DataOutputStream out = new DataOutputStream(good.getOutputStream());
+        PacketTranslator.write(out, headingPacket(1, 4));
+        out.flush();
+
+        waitFor(1);
+        assertEquals(1, server.getMessageQueue().size());
+        assertEquals(-1, bad.getInputStream().read());
+        bad.close();
+        good.close();
+    }
+
+    @Test
+    public void clientAndServerAgreeOnBinaryFormat() throws Exception {
+        SimulatorClient client = new SimulatorClient(null, "localhost", server.getPort());
+        assertEquals(PacketTranslator.FORMAT_BINARY, client.getWireFormat());
+        client.sendPacket(headingPacket(90, 5));
+        client.flush();
+
+        waitFor(1);
+        Packet p = server.getMessageQueue().poll();
+        assertEquals(5, p.getSrc());
+        assertEquals(90, p.getFields().getHeading(), 0f);
+        assertEquals(PacketTranslator.FORMAT_BINARY, server.getClients().get(0).getWireFormat());
+        client.close();
+    }
+
+    private static Packet headingPacket(float heading, int src, long time) {
+        Packet p = headingPacket(heading, src);
+        p.setTimestamp(new Date(time));
+        return p;
+    }
+
+    /**
+     * Closes the server, and sends packets until the client notices.
+     *
+     * @return The number of packets sent meanwhile.
+     */
+    private int loseConnection(SimulatorClient client, long time) throws Exception {
+        server.close();
+        // writes fail once the closed connection is noticed
+        long deadline = System.currentTimeMillis() + 5000;
+        int sent = 0;
+        while (client.isConnected() && System.currentTimeMillis() < deadline) {
+            client.sendPacket(headingPacket(2, 6, time));
+            client.flush();
+            sent++;
+            Thread.sleep(10);
+        }
+        assertTrue(!client.isConnected());
+        return sent;
+    }
+
+    private void restartServerAndReconnect(SimulatorClient client, int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        server = null;
+        while (server == null && System.currentTimeMillis() < deadline) {
+            try {
+                server = new SimulatorServer(port);
+            } catch (RuntimeException e) {
+                Thread.sleep(50);
+            }
+        }
+        while (client.getReconnects() == 0 && System.currentTimeMillis() < deadline) {
+            client.flush();
+            Thread.sleep(10);
+        }
+        assertEquals(1, client.getReconnects());
+    }
+
+    private int countHeadings(float heading) {
+        int n = 0;
+        for (Packet p : server.getMessageQueue()) {
+            if (p.getFields().getHeading() == heading) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Test
+    public void clientReconnectsAndReplaysPackets() throws Exception {
+        int port = server.getPort();
+        SimulatorClient client = new SimulatorClient(null, "localhost", port);
+        client.sendPacket(headingPacket(1, 6));
+        client.flush();
+        waitFor(1);
+        int sent = loseConnection(client, 0);
+        for (int i = 0; i < 5; i++) {
+            client.sendPacket(headingPacket(3, 6));
+        }
+
+        restartServerAndReconnect(client, port);
+        waitFor(5);
+        assertEquals(5, countHeadings(3));
+        assertTrue(server.getMessageQueue().size() <= sent + 5);
+        client.close();
+    }
+
+    @Test
+    public void staleReplayedPacketsAreDropped() throws Exception {
+        int port = server.getPort();
+        SimulatorClient client = new SimulatorClient(null, "localhost", port);
+        client.sendPacket(headingPacket(1, 6, 0));
+        client.flush();
+        waitFor(1);
+        loseConnection(client, 0);
+        for (int i = 0; i < 5; i++) {
+            client.sendPacket(headingPacket(3, 6, 1000 + i));
+        }
+        long fresh = 1000 + SimulatorClient.REPLAY_MAX_AGE + 1000;
+        for (int i = 0; i < 5; i++) {
+            client.sendPacket(headingPacket(4, 6, fresh + i));
+        }
+
+        restartServerAndReconnect(client, port);
+        waitFor(5);
+        assertEquals(5, countHeadings(4));
+        assertEquals(0, countHeadings(3));
+        assertEquals(0, countHeadings(2));
+        assertTrue(client.getPacketsDropped() >= 5);
+        client.close();
+    }
+
+    @Test
+    public void stalledServerDoesNotHoldUpTheSimulation() throws Exception {
+        ServerSocket stalled = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        stalled.setReceiveBufferSize(4096);
+        SimulatorClient client = new SimulatorClient(null, null, stalled.getLocalPort());
+        // accepted, but never read from
+        Socket accepted = stalled.accept();
+
+        long deadline = System.currentTimeMillis() + 20000;
+        long longestFlush = 0;
+        while (client.isConnected() && System.currentTimeMillis() < deadline) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 100; i++) {
+                client.sendPacket(headingPacket(i, 7));
+            }
+            client.flush();
+            longestFlush = Math.max(longestFlush, System.nanoTime() - start);
+            Thread.sleep(10);
+        }
+        assertTrue(!client.isConnected());
+        assertTrue(longestFlush < TimeUnit.MILLISECONDS.toNanos(500));
+        client.close();
+        accepted.close();
+        stalled.close();
+    }
+
+    @Test
+    public void floodingClientDoesNotHoldUpOthers() throws Exception {
+        Socket quiet = connect();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClients().size() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        final Socket flood = connect();
+        final AtomicBoolean flooding = new AtomicBoolean(true);
+        Thread flooder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    DataOutputStream out = new DataOutputStream(flood.getOutputStream());
+                    while (flooding.get()) {
+                        for (int i = 0; i < 100; i++) {
+                            PacketTranslator.write(out, headingPacket(i, 8));
+                        }
+                        out.flush();
+                    }
+                } catch (Exception e) {
+                    // closed at the end of the test
+                }
+            }
+        });
+        flooder.start();
+        Thread.sleep(200);
+
+        DataOutputStream out = new DataOutputStream(quiet.getOutputStream());
+        PacketTranslator.write(out, headingPacket(1, 9));
+        out.flush();
+        ClientConnection quietConnection = server.getClients().get(0);
+        deadline = System.currentTimeMillis() + 1000;
+        while (quietConnection.getPacketsReceived() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        flooding.set(false);
+        assertEquals(1, quietConnection.getPacketsReceived());
+        flood.close();
+        flooder.join();
+        quiet.close();
+    }
+
+    @Test
+    public void slowClientDoesNotHoldUpOthers() throws Exception {
+        Socket slow = new Socket();
+        slow.setReceiveBufferSize(4096);
+        slow.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        Socket fast = connect();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getClients().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        DataInputStream in = new DataInputStream(fast.getInputStream());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("x");
+        }
+        // far more than the slow client's socket and outbound buffers hold
+        for (int i = 0; i < 20000; i++) {
+            server.onSpeechStarted(text.toString());
+            assertEquals(SubtitlePacket.PACKET_ID, in.readByte());
+            assertEquals(text.toString(), new SubtitlePacket(in).getSubtitle());
+        }
+
+        long dropped = 0;
+        for (ClientConnection c : server.getClients()) {
+            dropped += c.getSubtitlesDropped();
+        }
+        assertTrue(dropped > 0);
+        slow.close();
+        fast.close();
+    }
+
+}